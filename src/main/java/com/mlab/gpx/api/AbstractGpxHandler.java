@@ -0,0 +1,58 @@
+package com.mlab.gpx.api;
+
+/**
+ * Implementación vacía de GpxHandler. Las subclases solo
+ * sobreescriben los callbacks que necesitan.
+ * @author shiguera
+ *
+ */
+public abstract class AbstractGpxHandler implements GpxHandler {
+
+	@Override
+	public void startDocument() {
+	}
+
+	@Override
+	public void onWayPoint(String name, String description, long time,
+			double longitude, double latitude, double altitude, double[] extensions) {
+	}
+
+	@Override
+	public void startRoute(int routeIndex) {
+	}
+
+	@Override
+	public void onRoutePoint(int routeIndex, String name, String description, long time,
+			double longitude, double latitude, double altitude, double[] extensions) {
+	}
+
+	@Override
+	public void endRoute(int routeIndex) {
+	}
+
+	@Override
+	public void startTrack(int trackIndex) {
+	}
+
+	@Override
+	public void startSegment(int trackIndex, int segmentIndex) {
+	}
+
+	@Override
+	public void onTrackPoint(int trackIndex, int segmentIndex, long time,
+			double longitude, double latitude, double altitude, double[] extensions) {
+	}
+
+	@Override
+	public void endSegment(int trackIndex, int segmentIndex) {
+	}
+
+	@Override
+	public void endTrack(int trackIndex) {
+	}
+
+	@Override
+	public void endDocument() {
+	}
+
+}
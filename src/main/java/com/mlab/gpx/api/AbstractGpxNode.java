@@ -2,6 +2,20 @@ package com.mlab.gpx.api;
 
 public abstract class AbstractGpxNode implements GpxNode {
 
+	/**
+	 * Clase que declara el método asGpx() de cada clase de nodo
+	 */
+	private static final ClassValue<Class<?>> AS_GPX_OWNER = new ClassValue<Class<?>>() {
+		@Override
+		protected Class<?> computeValue(Class<?> type) {
+			try {
+				return type.getMethod("asGpx").getDeclaringClass();
+			} catch (NoSuchMethodException e) {
+				return null;
+			}
+		}
+	};
+
 	protected String tagname;
 	protected String namespace;
 	
@@ -15,6 +29,17 @@ public abstract class AbstractGpxNode implements GpxNode {
 		return null;
 	}
 
+	/**
+	 * Devuelve true si el método asGpx() de node es el que declara la
+	 * clase owner, esto es, si la clase del nodo no lo sobreescribe.
+	 * GpxWriter y CompositeGpxNode solo escriben directamente en su
+	 * StringBuilder los nodos que no lo sobreescriben; con los demás
+	 * utilizan asGpx().
+	 */
+	public static boolean inheritsAsGpx(GpxNode node, Class<?> owner) {
+		return node != null && AS_GPX_OWNER.get(node.getClass()) == owner;
+	}
+
 	@Override
 	public boolean add(GpxNode gpxNode) {
 		return false;
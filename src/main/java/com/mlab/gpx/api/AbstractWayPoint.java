@@ -1,7 +1,9 @@
 package com.mlab.gpx.api;
 
 import com.mlab.gpx.impl.srs.EllipsoidWGS84;
+import com.mlab.gpx.impl.util.DecimalFormatter;
 import com.mlab.gpx.impl.util.Util;
+import com.mlab.gpx.impl.util.XmlFactory;
 
 
 /**
@@ -116,32 +118,60 @@ public abstract class AbstractWayPoint extends AbstractGpxNode implements WayPoi
 	 */
 	@Override
 	public String asGpx() {
-		//System.out.println("HOLA"+this.toString());
-		String slat = Util.doubleToString(latitude, 12, 6);
-		String slon = Util.doubleToString(longitude, 12, 6);
-		
-		String cad="";
-		cad = "<"+this.tagname+" ";
-		cad += " lat=\""+slat+"\" lon=\""+slon+"\">";
+		StringBuilder builder = new StringBuilder(256);
+		appendGpx(builder);
+		return builder.toString();
+	}
+	/**
+	 * Añade la cadena gpx '<wpt>....</wpt>' al final de un StringBuilder.
+	 * Es lo que utilizan 'asGpx()' y el GpxWriter, que reutiliza el mismo
+	 * StringBuilder para todos los puntos.<br/>
+	 * El nombre y la descripción se escapan ('&amp;', '&lt;', '&gt;').
+	 * @param builder StringBuilder al que se añade el punto
+	 */
+	public void appendGpx(StringBuilder builder) {
+		builder.append('<').append(this.tagname).append(' ');
+		builder.append(" lat=\"");
+		Util.appendDouble(builder, latitude, 12, 6);
+		builder.append("\" lon=\"");
+		Util.appendDouble(builder, longitude, 12, 6);
+		builder.append("\">");
 		// Altitud
-		cad += "<ele>"+String.format("%8.2f",this.altitude).trim().replace(',', '.')+"</ele>";
+		builder.append("<ele>");
+		DecimalFormatter.append(builder, this.altitude, 2);
+		builder.append("</ele>");
 		// Time
-		cad += "<time>"+Util.dateTimeToStringGpxFormat(time)+"</time>";		
+		builder.append("<time>").append(Util.dateTimeToStringGpxFormat(time)).append("</time>");
 		// name
 		if(!this.name.isEmpty()) {
-			cad += "<name>"+this.name+"</name>";
+			builder.append("<name>");
+			XmlFactory.appendEscaped(builder, this.name);
+			builder.append("</name>");
 		}
-		// deac
+		// desc
 		if(!this.description.isEmpty()) {
-			cad += "<desc>"+this.description+"</desc>";
+			builder.append("<desc>");
+			XmlFactory.appendEscaped(builder, this.description);
+			builder.append("</desc>");
 		}
 		// extensions
-		//cad += "<extensions>";
-		// abstract method
-		cad += extensionsAsGpx();
-		//cad += "</extensions>";
-		cad += "</"+this.tagname+">";
-		return cad;	
+		appendExtensions(builder);
+		builder.append("</").append(this.tagname).append('>');
+	}
+
+	/**
+	 * Añade la cadena gpx de un WayPoint al StringBuilder: con appendGpx()
+	 * si es un AbstractWayPoint que no sobreescribe asGpx() y con asGpx()
+	 * si no, de modo que se respetan las subclases de los usuarios
+	 * @param builder StringBuilder al que se añade el punto
+	 * @param wp WayPoint
+	 */
+	public static void appendAsGpx(StringBuilder builder, GpxNode wp) {
+		if(wp instanceof AbstractWayPoint && inheritsAsGpx(wp, AbstractWayPoint.class)) {
+			((AbstractWayPoint)wp).appendGpx(builder);
+		} else {
+			builder.append(wp.asGpx());
+		}
 	}
 
 	/**
@@ -153,6 +183,16 @@ public abstract class AbstractWayPoint extends AbstractGpxNode implements WayPoi
 	 * @return
 	 */
 	protected abstract String extensionsAsGpx();
+	/**
+	 * Añade las extensiones al StringBuilder de 'appendGpx()'. Por defecto
+	 * añade 'extensionsAsGpx()'; las clases de la librería con extensiones lo
+	 * sobreescriben para escribirlas sin crear cadenas intermedias, pero solo
+	 * cuando el objeto es de esa misma clase: en las subclases se sigue
+	 * utilizando 'extensionsAsGpx()', que pueden haber sobreescrito.
+	 */
+	protected void appendExtensions(StringBuilder builder) {
+		builder.append(extensionsAsGpx());
+	}
 
 	/**
 	 * Build a copy of clling object
@@ -165,20 +205,19 @@ public abstract class AbstractWayPoint extends AbstractGpxNode implements WayPoi
 		StringBuilder builder = new StringBuilder();
 		builder.append(Util.dateTimeToStringGpxFormat(this.time));
 		builder.append(",");
-		builder.append(String.format("%d", this.time));
+		builder.append(this.time);
 		builder.append(",");
-		builder.append(Util.doubleToString(this.longitude, 12, 6));
+		Util.appendDouble(builder, this.longitude, 12, 6);
 		builder.append(",");
-		builder.append(Util.doubleToString(this.latitude, 12, 6));
+		Util.appendDouble(builder, this.latitude, 12, 6);
 		builder.append(",");
-		builder.append(Util.doubleToString(this.altitude, 12, 2));
+		Util.appendDouble(builder, this.altitude, 12, 2);
 		if(withUtmCoords) {
-			EllipsoidWGS84 ell = new EllipsoidWGS84();
-			double[] xy= ell.proyUTM(this.longitude, this.latitude);
+			double[] xy= EllipsoidWGS84.WGS84.proyUTM(this.longitude, this.latitude);
 			builder.append(",");
-			builder.append(Util.doubleToString(xy[0], 12, 2));
+			Util.appendDouble(builder, xy[0], 12, 2);
 			builder.append(",");
-			builder.append(Util.doubleToString(xy[1], 12, 2));
+			Util.appendDouble(builder, xy[1], 12, 2);
 		}
 		String exts = extensionsAsCsv();
 		if(!exts.isEmpty()) {
@@ -197,13 +236,13 @@ public abstract class AbstractWayPoint extends AbstractGpxNode implements WayPoi
 		builder.append(",");
 		builder.append(this.description);
 		builder.append(",");
-		builder.append(String.format("%d", time));
+		builder.append(time);
 		builder.append(",");
-		builder.append(Util.doubleToString(longitude, 12, LONG_DECIMALS));
+		Util.appendDouble(builder, longitude, 12, LONG_DECIMALS);
 		builder.append(",");
-		builder.append(Util.doubleToString(latitude, 12, LAT_DECIMALS));
+		Util.appendDouble(builder, latitude, 12, LAT_DECIMALS);
 		builder.append(",");
-		builder.append(Util.doubleToString(altitude, 12, ALT_DECIMALS));		
+		Util.appendDouble(builder, altitude, 12, ALT_DECIMALS);		
 		return builder.toString();
 	}
 	
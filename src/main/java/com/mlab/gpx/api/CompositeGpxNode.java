@@ -40,7 +40,11 @@ public abstract class CompositeGpxNode extends AbstractGpxNode {
 		StringBuilder builder = new StringBuilder();
 		builder.append(XmlFactory.createTag(namespace,tagname,true));
 		for(GpxNode node: nodes) {
-			builder.append(node.asGpx());
+			if(node instanceof WayPoint) {
+				AbstractWayPoint.appendAsGpx(builder, node);
+			} else {
+				builder.append(node.asGpx());
+			}
 		}
 		builder.append(XmlFactory.createTag(namespace,tagname,false));
 		return builder.toString();
@@ -0,0 +1,121 @@
+package com.mlab.gpx.api;
+
+/**
+ * Resultado de la lectura tolerante a errores de un documento gpx
+ * ('GpxFactory.recoverGpxDocument()').<br/>
+ * Si el documento está truncado o mal formado, isDamaged() es true y se
+ * guarda el motivo y la posición del error: línea y columna, desplazamiento
+ * en caracteres y, cuando se lee desde bytes en UTF-8, ISO-8859-1 o US-ASCII,
+ * desplazamiento en bytes. En un fichero truncado el desplazamiento en bytes
+ * es la longitud del fichero.<br/>
+ * Además se cuentan los puntos completos que se han leido y los que se
+ * han descartado por no tener coordenadas válidas.
+ *
+ * @author shiguera
+ *
+ */
+public class GpxDiagnostics {
+
+	private boolean damaged;
+	private String reason;
+	private int line;
+	private int column;
+	private long characterOffset;
+	private long byteOffset;
+	private int pointCount;
+	private int skippedPointCount;
+
+	public GpxDiagnostics() {
+		reset();
+	}
+
+	/**
+	 * Deja el objeto como recién creado para reutilizarlo en otra lectura
+	 */
+	public void reset() {
+		this.damaged = false;
+		this.reason = "";
+		this.line = -1;
+		this.column = -1;
+		this.characterOffset = -1L;
+		this.byteOffset = -1L;
+		this.pointCount = 0;
+		this.skippedPointCount = 0;
+	}
+
+	/**
+	 * Anota el error que ha detenido la lectura
+	 * @param reason Motivo del error
+	 * @param line Línea del error o -1
+	 * @param column Columna del error o -1
+	 * @param characterOffset Desplazamiento en caracteres o -1
+	 * @param byteOffset Desplazamiento en bytes o -1
+	 */
+	public void setDamage(String reason, int line, int column, long characterOffset, long byteOffset) {
+		this.damaged = true;
+		this.reason = (reason != null ? reason : "");
+		this.line = line;
+		this.column = column;
+		this.characterOffset = characterOffset;
+		this.byteOffset = byteOffset;
+	}
+	public void setPointCount(int pointCount) {
+		this.pointCount = pointCount;
+	}
+	public void setSkippedPointCount(int skippedPointCount) {
+		this.skippedPointCount = skippedPointCount;
+	}
+
+	/**
+	 * @return true si la lectura se ha detenido por un error
+	 */
+	public boolean isDamaged() {
+		return damaged;
+	}
+	/**
+	 * Motivo del error o cadena vacía si no hay error
+	 */
+	public String getReason() {
+		return reason;
+	}
+	public int getLine() {
+		return line;
+	}
+	public int getColumn() {
+		return column;
+	}
+	/**
+	 * Desplazamiento del error en caracteres o -1 si no se conoce
+	 */
+	public long getCharacterOffset() {
+		return characterOffset;
+	}
+	/**
+	 * Desplazamiento del error en bytes o -1 si no se conoce
+	 */
+	public long getByteOffset() {
+		return byteOffset;
+	}
+	/**
+	 * Puntos completos leidos y añadidos al documento (wpt, rtept y trkpt).
+	 * No cuenta los que rechaza TrackSegment.addWayPoint() (tiempo no creciente)
+	 */
+	public int getPointCount() {
+		return pointCount;
+	}
+	/**
+	 * Puntos descartados por no tener coordenadas válidas
+	 */
+	public int getSkippedPointCount() {
+		return skippedPointCount;
+	}
+
+	@Override
+	public String toString() {
+		if(!damaged) {
+			return "GpxDiagnostics[OK points="+pointCount+" skipped="+skippedPointCount+"]";
+		}
+		return "GpxDiagnostics[DAMAGED at byte "+byteOffset+" (line "+line+", column "+column+
+			") points="+pointCount+" skipped="+skippedPointCount+": "+reason+"]";
+	}
+}
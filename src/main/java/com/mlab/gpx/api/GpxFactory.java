@@ -1,22 +1,56 @@
 package com.mlab.gpx.api;
 
+import java.io.BufferedInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+import javax.xml.stream.XMLStreamException;
 
 import org.w3c.dom.Document;
-import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
 import com.mlab.gpx.impl.AndroidGpxFactory;
 import com.mlab.gpx.impl.GpxDocumentImpl;
+import com.mlab.gpx.impl.LazyGpxDocument;
 import com.mlab.gpx.impl.Route;
 import com.mlab.gpx.impl.SimpleGpxFactory;
 import com.mlab.gpx.impl.Track;
 import com.mlab.gpx.impl.TrackSegment;
 import com.mlab.gpx.impl.extensions.ClinometerGpxFactory;
 import com.mlab.gpx.impl.extensions.ExtendedGpxFactory;
+import com.mlab.gpx.impl.extensions.ExtensionSchema;
+import com.mlab.gpx.impl.stream.AsyncGpxReader;
+import com.mlab.gpx.impl.stream.GpxFileFollower;
+import com.mlab.gpx.impl.stream.GeoJsonReader;
+import com.mlab.gpx.impl.stream.GeoJsonWriter;
+import com.mlab.gpx.impl.stream.GpxBinaryReader;
+import com.mlab.gpx.impl.stream.GpxBinaryWriter;
+import com.mlab.gpx.impl.stream.GpxStreamReader;
+import com.mlab.gpx.impl.stream.GpxWriter;
+import com.mlab.gpx.impl.stream.IndexedWayPoint;
+import com.mlab.gpx.impl.stream.MappedGpxScanner;
+import com.mlab.gpx.impl.stream.ParallelGpxParser;
+import com.mlab.gpx.impl.stream.WayPointIterator;
+import com.mlab.gpx.impl.util.DecimalParser;
+import com.mlab.gpx.impl.util.GpxCompression;
+import com.mlab.gpx.impl.util.OffsetInputStream;
 import com.mlab.gpx.impl.util.Util;
 import com.mlab.gpx.impl.util.XmlFactory;
 
@@ -37,7 +71,8 @@ import com.mlab.gpx.impl.util.XmlFactory;
  * de leer las extensiones de los puntos, si existen.
  *  Dispone de los siguientes métodos:<br/>
  * - readGpxDocument(): Devuelve un gpxDocument a partir de un File<br/>
- * - parseGpxDocument() : Devuelve un GpxDocument a partir de un String xml <br/>
+ * - parseGpxDocument() : Devuelve un GpxDocument a partir de un String xml, un Reader
+ * o un InputStream. El documento se lee en una sola pasada con un GpxStreamReader (StAX)<br/>
  * - nodeAsFormatedXmlString() : Devuelve un String formateado en xml a partir
  * de un org.w3c.dom.Node<br/>
  * - createWayPoint(): crea un WayPoint del tipo correspondiente a la factory<br/>
@@ -52,9 +87,10 @@ import com.mlab.gpx.impl.util.XmlFactory;
 public abstract class GpxFactory {
 	private static final Logger LOG = Logger.getLogger(GpxFactory.class.getName());
 	
-	private final String WAYPOINT_NODENAME = "wpt";
+	private final String GPX_NODENAME = "gpx";
 	private final String ROUTE_NODENAME = "rte";
 	private final String TRACK_NODENAME = "trk";
+	private final String SEGMENT_NODENAME = "trkseg";
 	
 	
 	/**
@@ -63,6 +99,8 @@ public abstract class GpxFactory {
 	 */
 	public enum Type {SimpleGpxFactory, AndroidGpxFactory, ExtendedGpxFactory, ClinometerGpxFactory};
 	protected GpxFactory.Type factoryType; 
+	private volatile ExtensionSchema extensionSchema;
+	private static final Double MISSING_VALUE = Double.valueOf(-1.0);
 	
 	/**
 	 * Permite instanciar una factory concreta, adaptada al
@@ -96,75 +134,325 @@ public abstract class GpxFactory {
 	 * al documento GPX parseado o null si hay errores. 
 	 */
 	public GpxDocument parseGpxDocument(String cadgpx) {
-		Document doc= XmlFactory.parseXmlDocument(cadgpx);
-		//System.out.println(doc.getTextContent());
-		if(!isValidGpxDocument(doc)) {
+		if(cadgpx==null || cadgpx.length()==0) {
+			return null;
+		}
+		return parseGpxDocument(new StringReader(cadgpx));
+	}
+	/**
+	 * Parsea un documento GPX leido desde un Reader, en una sola pasada
+	 * y sin construir un árbol DOM. No cierra el Reader.
+	 * @param reader Reader con un documento xml válido del tipo GPX
+	 * @return GpxDocument o null si hay errores
+	 */
+	public GpxDocument parseGpxDocument(Reader reader) {
+		return parseGpxDocument(reader, GpxProjection.ALL);
+	}
+	/**
+	 * Parsea un documento GPX leyendo de los puntos solo los campos de la
+	 * proyección; el resto quedan sin valor. El tiempo se lee siempre, porque
+	 * los TrackSegment exigen puntos con tiempos crecientes. No cierra el Reader.
+	 * @param reader Reader con un documento xml válido del tipo GPX
+	 * @param projection Campos de los puntos que se leen
+	 * @return GpxDocument o null si hay errores
+	 */
+	public GpxDocument parseGpxDocument(Reader reader, GpxProjection projection) {
+		return parseGpxDocument(reader, projection, GpxFilter.ALL);
+	}
+	/**
+	 * Parsea un documento GPX leyendo solo los campos de la proyección de los
+	 * puntos que cumplen el filtro. Los Route, TrackSegment y Track que se
+	 * quedan sin puntos no se añaden al documento. No cierra el Reader.
+	 * @param reader Reader con un documento xml válido del tipo GPX
+	 * @param projection Campos de los puntos que se leen
+	 * @param filter Condiciones de los puntos que se leen
+	 * @return GpxDocument o null si hay errores
+	 */
+	public GpxDocument parseGpxDocument(Reader reader, GpxProjection projection, GpxFilter filter) {
+		try {
+			return parseGpxDocument(createStreamReader(reader, projection.with(GpxProjection.Field.TIME), filter));
+		} catch (XMLStreamException e) {
+			LOG.warning("GpxFactory.parseGpxDocument() ERROR: "+e.getMessage());
+			return null;
+		}
+	}
+	/**
+	 * Parsea un documento GPX leido desde un InputStream, en una sola pasada
+	 * y sin construir un árbol DOM. La codificación se toma de la declaración
+	 * xml del documento. No cierra el InputStream.
+	 * @param inputStream InputStream con un documento xml válido del tipo GPX
+	 * @return GpxDocument o null si hay errores
+	 */
+	public GpxDocument parseGpxDocument(InputStream inputStream) {
+		return parseGpxDocument(inputStream, GpxProjection.ALL);
+	}
+	/**
+	 * Parsea un documento GPX leyendo de los puntos solo los campos
+	 * de la proyección. Ver parseGpxDocument(Reader, GpxProjection).
+	 * No cierra el InputStream.
+	 * @param inputStream InputStream con un documento xml válido del tipo GPX
+	 * @param projection Campos de los puntos que se leen
+	 * @return GpxDocument o null si hay errores
+	 */
+	public GpxDocument parseGpxDocument(InputStream inputStream, GpxProjection projection) {
+		return parseGpxDocument(inputStream, projection, GpxFilter.ALL);
+	}
+	/**
+	 * Parsea un documento GPX leyendo solo los campos de la proyección de los
+	 * puntos que cumplen el filtro. Ver parseGpxDocument(Reader, GpxProjection, GpxFilter).
+	 * No cierra el InputStream.
+	 * @param inputStream InputStream con un documento xml válido del tipo GPX
+	 * @param projection Campos de los puntos que se leen
+	 * @param filter Condiciones de los puntos que se leen
+	 * @return GpxDocument o null si hay errores
+	 */
+	public GpxDocument parseGpxDocument(InputStream inputStream, GpxProjection projection, GpxFilter filter) {
+		try {
+			return parseGpxDocument(createStreamReader(inputStream, projection.with(GpxProjection.Field.TIME), filter));
+		} catch (XMLStreamException e) {
+			LOG.warning("GpxFactory.parseGpxDocument() ERROR: "+e.getMessage());
+			return null;
+		}
+	}
+	private GpxDocument parseGpxDocument(GpxStreamReader reader) throws XMLStreamException {
+		return parseGpxDocument(reader, null, null);
+	}
+	/**
+	 * Lee el documento. Con 'diagnostics' null los errores del xml se propagan;
+	 * si no, se anotan en 'diagnostics' y se devuelve lo leido hasta el error,
+	 * con la Route, TrackSegment y Track en curso si tienen puntos
+	 */
+	private GpxDocument parseGpxDocument(GpxStreamReader reader, GpxDiagnostics diagnostics,
+			OffsetInputStream offsets) throws XMLStreamException {
+		if(!reader.getRootName().equalsIgnoreCase(GPX_NODENAME)) {
+			reader.close();
+			if(diagnostics != null) {
+				diagnostics.setDamage("root element is not gpx: '"+reader.getRootName()+"'", -1, -1, -1L, -1L);
+			}
 			return null;
 		}
-		//Element gpx=doc.getDocumentElement();
-		
 		GpxDocument gpxDocument = createGpxDocument();
 		
 		// FIXME Procesar metadata
 		
-		// Procesar nodos WayPoint
-		processWayPoints(gpxDocument, doc);
-		
-		// Procesar nodos Route
-		processRoutes(gpxDocument, doc);
-		
-		// Procesar nodos TRK
-		processTracks(gpxDocument, doc);
+		Route route = null;
+		Track track = null;
+		TrackSegment segment = null;
+		boolean filtered = !reader.getFilter().isAll();
+		int points = 0;
+		try {
+			while(reader.hasNext()) {
+				boolean added = false;
+				switch(reader.next()) {
+				case GpxStreamReader.WAYPOINT:
+					WayPoint wp = createWayPoint(reader);
+					if(wp!=null) {
+						added = gpxDocument.addWayPoint(wp);
+					}
+					break;
+				case GpxStreamReader.START_ROUTE:
+					route = new Route();
+					break;
+				case GpxStreamReader.ROUTE_POINT:
+					added = addWayPoint(route, createWayPoint(reader));
+					break;
+				case GpxStreamReader.END_ROUTE:
+					if(!filtered || route.size() > 0) {
+						gpxDocument.addRoute(route);
+					}
+					route = null;
+					break;
+				case GpxStreamReader.START_TRACK:
+					track = new Track();
+					break;
+				case GpxStreamReader.START_SEGMENT:
+					segment = new TrackSegment();
+					break;
+				case GpxStreamReader.TRACK_POINT:
+					added = addWayPoint(segment, createWayPoint(reader));
+					break;
+				case GpxStreamReader.END_SEGMENT:
+					if(!filtered || segment.size() > 0) {
+						track.addTrackSegment(segment);
+					}
+					segment = null;
+					break;
+				case GpxStreamReader.END_TRACK:
+					if(!filtered || track.hasSegments()) {
+						gpxDocument.addTrack(track);
+					}
+					track = null;
+					break;
+				default:
+					break;
+				}
+				if(added) {
+					points++;
+				}
+			}
+		} catch (XMLStreamException e) {
+			if(diagnostics == null) {
+				throw e;
+			}
+			setDamage(diagnostics, e, reader, offsets);
+			// Se conservan los elementos abiertos con puntos completos
+			if(segment != null && segment.size() > 0 && track != null) {
+				track.addTrackSegment(segment);
+			}
+			if(track != null && track.hasSegments()) {
+				gpxDocument.addTrack(track);
+			}
+			if(route != null && route.size() > 0) {
+				gpxDocument.addRoute(route);
+			}
+		} finally {
+			reader.close();
+		}
+		if(diagnostics != null) {
+			diagnostics.setPointCount(points);
+			diagnostics.setSkippedPointCount(reader.getSkippedPointCount());
+		}
 		
 		// TODO Procesar nodos Extensions
 
 		return gpxDocument;
 	}
-	private void processWayPoints(GpxDocument gpxdocument, Document doc) {
-		NodeList nl=doc.getElementsByTagName(WAYPOINT_NODENAME);
-		//System.out.println("----------------\n"+nl.getLength()+"---------------\n");
-		for(int i=0; i< nl.getLength(); i++) {
-			WayPoint wp= parseWayPoint(XmlFactory.nodeAsFormatedXmlString(nl.item(i),false));
-			if(wp!=null) {
-				//System.out.println("GpxFactory.parseGpxDocument(): adding way point to gpxdoc...");	
-				gpxdocument.addWayPoint(wp);
+	private static void setDamage(GpxDiagnostics diagnostics, XMLStreamException e,
+			GpxStreamReader reader, OffsetInputStream offsets) {
+		int line = -1;
+		int column = -1;
+		long charOffset = -1L;
+		if(e.getLocation() != null) {
+			line = e.getLocation().getLineNumber();
+			column = e.getLocation().getColumnNumber();
+			charOffset = e.getLocation().getCharacterOffset();
+		}
+		long byteOffset = -1L;
+		if(offsets != null) {
+			String encoding = (reader != null ? reader.getEncoding() : null);
+			if(encoding == null || encoding.equalsIgnoreCase("UTF-8") || encoding.equalsIgnoreCase("UTF8")) {
+				byteOffset = offsets.byteOffsetOf(charOffset, true);
+			} else if(encoding.equalsIgnoreCase("ISO-8859-1") || encoding.equalsIgnoreCase("US-ASCII")) {
+				byteOffset = offsets.byteOffsetOf(charOffset, false);
 			}
 		}
+		String reason = e.getMessage();
+		if(e.getNestedException() != null && e.getNestedException().getMessage() != null) {
+			reason = e.getNestedException().getMessage();
+		}
+		diagnostics.setDamage(reason, line, column, charOffset, byteOffset);
 	}
-	private void processRoutes(GpxDocument gpxdocument, Document doc) {
-		NodeList nl=doc.getElementsByTagName(ROUTE_NODENAME);
-		for(int i=0; i< nl.getLength(); i++) {
-			Route rte= parseRoute(XmlFactory.nodeAsFormatedXmlString(nl.item(i),false));
-			if(rte!=null) {
-				gpxdocument.addRoute(rte);
-			}
+
+	/**
+	 * Lee un documento gpx sin descartarlo si está truncado o mal formado:
+	 * devuelve todos los puntos completos hasta el error, en una sola pasada,
+	 * y anota en 'diagnostics' el motivo y la posición del error.
+	 * No cierra el InputStream.
+	 * @param inputStream InputStream con el documento gpx
+	 * @param diagnostics GpxDiagnostics en el que se anota el resultado
+	 * @return GpxDocument o null si no se llega a leer el elemento 'gpx'
+	 */
+	public GpxDocument recoverGpxDocument(InputStream inputStream, GpxDiagnostics diagnostics) {
+		diagnostics.reset();
+		OffsetInputStream offsets = new OffsetInputStream(inputStream);
+		GpxStreamReader reader = null;
+		try {
+			reader = createStreamReader(offsets, GpxProjection.ALL, GpxFilter.ALL);
+			return parseGpxDocument(reader, diagnostics, offsets);
+		} catch (XMLStreamException e) {
+			setDamage(diagnostics, e, reader, offsets);
+			return null;
 		}
 	}
-	private void processTracks(GpxDocument gpxdocument, Document doc) {
-		NodeList nl=doc.getElementsByTagName(TRACK_NODENAME);
-		for(int i=0; i< nl.getLength(); i++) {
-			Track trk= parseTrack(XmlFactory.nodeAsFormatedXmlString(nl.item(i),false));
-			if(trk!=null) {
-				gpxdocument.addTrack(trk);
-			}
-		}	
+	/**
+	 * Lee un documento gpx tolerando errores desde un Reader. El desplazamiento
+	 * en bytes del error no se conoce. Ver recoverGpxDocument(InputStream, GpxDiagnostics)
+	 * @param gpxReader Reader con el documento gpx
+	 * @param diagnostics GpxDiagnostics en el que se anota el resultado
+	 * @return GpxDocument o null si no se llega a leer el elemento 'gpx'
+	 */
+	public GpxDocument recoverGpxDocument(Reader gpxReader, GpxDiagnostics diagnostics) {
+		diagnostics.reset();
+		try {
+			return parseGpxDocument(createStreamReader(gpxReader), diagnostics, null);
+		} catch (XMLStreamException e) {
+			setDamage(diagnostics, e, null, null);
+			return null;
+		}
 	}
-	private boolean isValidGpxDocument(Document doc) {
-		if(doc == null || doc.getDocumentElement().getNodeName().equalsIgnoreCase("gpx")==false) {
-			return false;
+	/**
+	 * Lee un fichero gpx, comprimido o no, tolerando errores. En los ficheros
+	 * comprimidos el desplazamiento es el del documento descomprimido.
+	 * Ver recoverGpxDocument(InputStream, GpxDiagnostics)
+	 * @param gpxFile Fichero gpx
+	 * @param diagnostics GpxDiagnostics en el que se anota el resultado
+	 * @return GpxDocument o null si no se llega a leer el elemento 'gpx'
+	 */
+	public GpxDocument recoverGpxDocument(File gpxFile, GpxDiagnostics diagnostics) {
+		InputStream is = null;
+		try {
+			is = GpxCompression.openInputStream(gpxFile);
+			GpxDocument gpxDoc = recoverGpxDocument(is, diagnostics);
+			if(gpxDoc != null) {
+				gpxDoc.setGpxFile(gpxFile);
+			}
+			return gpxDoc;
+		} catch (IOException e) {
+			diagnostics.reset();
+			diagnostics.setDamage(e.getMessage(), -1, -1, -1L, -1L);
+			return null;
+		} finally {
+			Util.close(is);
 		}
-		return true;
+	}
+	/**
+	 * Crea un GpxStreamReader que lee directamente a double[] las
+	 * extensiones de 'getExtensionTags()'
+	 */
+	private GpxStreamReader createStreamReader(Reader reader) throws XMLStreamException {
+		return createStreamReader(reader, GpxProjection.ALL, GpxFilter.ALL);
+	}
+	private GpxStreamReader createStreamReader(Reader reader, GpxProjection projection,
+			GpxFilter filter) throws XMLStreamException {
+		GpxStreamReader streamReader = new GpxStreamReader(reader);
+		streamReader.setExtensionSchema(getExtensionSchema());
+		streamReader.setProjection(projection);
+		streamReader.setFilter(filter);
+		return streamReader;
+	}
+	private GpxStreamReader createStreamReader(InputStream inputStream, GpxProjection projection,
+			GpxFilter filter) throws XMLStreamException {
+		GpxStreamReader streamReader = new GpxStreamReader(inputStream);
+		streamReader.setExtensionSchema(getExtensionSchema());
+		streamReader.setProjection(projection);
+		streamReader.setFilter(filter);
+		return streamReader;
+	}
+	private boolean addWayPoint(Route route, WayPoint wp) {
+		return (route!=null && wp!=null && route.addWayPoint(wp));
+	}
+	private boolean addWayPoint(TrackSegment segment, WayPoint wp) {
+		return (segment!=null && wp!=null && segment.addWayPoint(wp));
 	}
 	
 	/**
-	 * Read a GpxDocument from a file
+	 * Read a GpxDocument from a file. The file can be compressed
+	 * (gzip, deflate or zip); see GpxCompression
 	 * @param gpxFile
 	 * @return GpxDocument or null
 	 */
 	public static GpxDocument readGpxDocument(File gpxFile) {
-		String cad = Util.readFileToString(gpxFile);
 		GpxFactory factory = GpxFactory.getFactory(GpxFactory.Type.ExtendedGpxFactory);
-		GpxDocument gpxDoc = (GpxDocumentImpl) factory.parseGpxDocument(cad);
+		GpxDocument gpxDoc = null;
+		InputStream is = null;
+		try {
+			is = GpxCompression.openInputStream(gpxFile);
+			gpxDoc = factory.parseGpxDocument(is);
+		} catch (IOException e) {
+			LOG.warning("GpxFactory.readGpxDocument() ERROR: "+e.getMessage());
+		} finally {
+			Util.close(is);
+		}
 		if(gpxDoc!=null) {
 			gpxDoc.setGpxFile(gpxFile);
 		} else {
@@ -172,151 +460,633 @@ public abstract class GpxFactory {
 		}
 		return gpxDoc;
 	}
-	
 	/**
-	 * Crea una instancia de WayPoint a partir de la cadena
-	 * gpx del mismo 
-	 * @param cadgpx String <wpt lon=....></wpt>
-	 * @return WayPoint o null si hay errores
+	 * Lee todos los documentos de un fichero. De un zip se leen todas
+	 * las entradas '.gpx', en streaming y sin ficheros temporales; el resto
+	 * de ficheros, comprimidos o no, tienen un solo documento.
+	 * @param gpxFile Fichero gpx, gpx comprimido o zip
+	 * @return Lista con los GpxDocument que se han podido leer, vacía si
+	 * hay errores
 	 */
-	private WayPoint parseWayPoint(String cadgpx) {
-		Document doc = XmlFactory.parseXmlDocument(cadgpx);
-		if(doc==null) {
-			System.out.println("GpxFactory.prseWayPoint(): ERROR doc=null");
+	public List<GpxDocument> readGpxDocuments(File gpxFile) {
+		List<GpxDocument> docs = new ArrayList<GpxDocument>();
+		for(GpxDocument doc: readGpxDocumentEntries(gpxFile).values()) {
+			if(doc != null) {
+				docs.add(doc);
+			}
+		}
+		return docs;
+	}
+	/**
+	 * Lee todos los documentos de un fichero como readGpxDocuments(),
+	 * indexados por el nombre de la entrada del zip o por el nombre del
+	 * fichero si no es un zip
+	 * @param gpxFile Fichero gpx, gpx comprimido o zip
+	 * @return Map ordenado como el fichero; el valor es null si la entrada
+	 * no es un gpx válido. Si el fichero no se puede leer solo tiene las
+	 * entradas anteriores al error
+	 */
+	public Map<String, GpxDocument> readGpxDocumentEntries(File gpxFile) {
+		Map<String, GpxDocument> docs = new LinkedHashMap<String, GpxDocument>();
+		InputStream is = null;
+		try {
+			is = new BufferedInputStream(new FileInputStream(gpxFile));
+			if(GpxCompression.detect(is) != GpxCompression.Format.ZIP) {
+				try (InputStream decompressed = GpxCompression.decompress(is)) {
+					GpxDocument doc = parseGpxDocument(decompressed);
+					if(doc != null) {
+						doc.setGpxFile(gpxFile);
+					}
+					docs.put(gpxFile.getName(), doc);
+				}
+				return docs;
+			}
+			GpxCompression.ZipEntries entries = new GpxCompression.ZipEntries(is);
+			while(entries.next()) {
+				GpxDocument doc = parseGpxDocument(entries.getInputStream());
+				if(doc != null) {
+					doc.setGpxFile(gpxFile);
+				} else {
+					LOG.warning("GpxFactory.readGpxDocuments() ERROR: can't parse "+entries.getName());
+				}
+				docs.put(entries.getName(), doc);
+			}
+		} catch (IOException e) {
+			LOG.warning("GpxFactory.readGpxDocuments() ERROR: "+e.getMessage());
+		} finally {
+			Util.close(is);
+		}
+		return docs;
+	}
+	/**
+	 * Escribe un GpxDocument en un fichero en UTF-8, comprimido si la
+	 * extensión del fichero es '.gz', '.zip' o '.zz'; ver GpxCompression.
+	 * El documento se escribe con un GpxWriter, sin construir la cadena gpx completa
+	 * @param gpxDoc GpxDocument
+	 * @param gpxFile Fichero destino
+	 * @return true si se escribe el fichero, false si hay errores
+	 */
+	public static boolean writeGpxDocument(GpxDocument gpxDoc, File gpxFile) {
+		OutputStream os = null;
+		try {
+			os = GpxCompression.openOutputStream(gpxFile);
+			GpxWriter writer = new GpxWriter(os);
+			writer.writeDocument(gpxDoc);
+			writer.close();
+			os = null;
+			return true;
+		} catch (IOException e) {
+			LOG.warning("GpxFactory.writeGpxDocument() ERROR: "+e.getMessage());
+			return false;
+		} finally {
+			Util.close(os);
+		}
+	}
+	/**
+	 * Escribe un GpxDocument en formato binario (GpxBinaryWriter) con las
+	 * extensiones de la factory. Se lee con 'readBinaryGpxDocument()'
+	 * @param gpxDoc GpxDocument
+	 * @param binaryFile Fichero destino
+	 * @return true si se escribe el fichero, false si hay errores
+	 */
+	public boolean writeBinaryGpxDocument(GpxDocument gpxDoc, File binaryFile) {
+		GpxBinaryWriter writer = null;
+		try {
+			writer = new GpxBinaryWriter(new FileOutputStream(binaryFile), this);
+			writer.writeDocument(gpxDoc);
+			return true;
+		} catch (IOException e) {
+			LOG.warning("GpxFactory.writeBinaryGpxDocument() ERROR: "+e.getMessage());
+			return false;
+		} finally {
+			Util.close(writer);
+		}
+	}
+	/**
+	 * Lee un GpxDocument de un fichero en formato binario (GpxBinaryWriter)
+	 * @param binaryFile Fichero binario
+	 * @return GpxDocument o null si hay errores
+	 */
+	public GpxDocument readBinaryGpxDocument(File binaryFile) {
+		GpxBinaryReader reader = null;
+		try {
+			reader = new GpxBinaryReader(new FileInputStream(binaryFile), this);
+			GpxDocument gpxDoc = reader.readDocument();
+			gpxDoc.setGpxFile(binaryFile);
+			return gpxDoc;
+		} catch (IOException e) {
+			LOG.warning("GpxFactory.readBinaryGpxDocument() ERROR: "+e.getMessage());
 			return null;
+		} finally {
+			Util.close(reader);
+		}
+	}
+	/**
+	 * Escribe un GpxDocument como FeatureCollection GeoJSON (GeoJsonWriter)
+	 * con las extensiones de la factory
+	 * @param gpxDoc GpxDocument
+	 * @param geoJsonFile Fichero destino
+	 * @return true si se escribe el fichero, false si hay errores
+	 */
+	public boolean writeGeoJsonDocument(GpxDocument gpxDoc, File geoJsonFile) {
+		GeoJsonWriter writer = null;
+		try {
+			writer = new GeoJsonWriter(new FileOutputStream(geoJsonFile), this);
+			writer.writeDocument(gpxDoc);
+			return true;
+		} catch (IOException e) {
+			LOG.warning("GpxFactory.writeGeoJsonDocument() ERROR: "+e.getMessage());
+			return false;
+		} finally {
+			Util.close(writer);
 		}
-		if(!isValidWayPointDocument(doc)) {
-			System.out.println("GpxFactory.prseWayPoint(): ERROR not valid doc");
+	}
+	/**
+	 * Lee un GpxDocument de un fichero GeoJSON (GeoJsonReader)
+	 * @param geoJsonFile Fichero GeoJSON
+	 * @return GpxDocument o null si hay errores
+	 */
+	public GpxDocument readGeoJsonDocument(File geoJsonFile) {
+		GeoJsonReader reader = null;
+		try {
+			reader = new GeoJsonReader(new FileInputStream(geoJsonFile), this);
+			GpxDocument gpxDoc = reader.readDocument();
+			gpxDoc.setGpxFile(geoJsonFile);
+			return gpxDoc;
+		} catch (IOException e) {
+			LOG.warning("GpxFactory.readGeoJsonDocument() ERROR: "+e.getMessage());
 			return null;
+		} finally {
+			Util.close(reader);
 		}
-		Element wptElement=doc.getDocumentElement();
-
-		String namee=parseStringTag(doc,"name");
-		String descrip=parseStringTag(doc,"desc");
-		long t=parseTimeTag(doc,"time");
-
-		List<Double> values = new ArrayList<Double>();
+	}
+	/**
+	 * Lee un GpxDocument de un fichero generado por la propia librería
+	 * (GpxDocumentImpl.asGpx()) con MappedGpxScanner, que lee los bytes
+	 * del fichero mapeado en memoria sin pasar por JAXP. Si el fichero
+	 * contiene algo que el scanner no reconoce se lee con el parser estándar,
+	 * así que el resultado es el mismo que el de parseGpxDocument().<br/>
+	 * Solo las factories de la librería (factoryType != null) utilizan el
+	 * scanner, ya que este solo conoce las extensiones de 'getExtensionTags()'.
+	 * Los ficheros comprimidos se leen siempre con el parser estándar.
+	 * @param gpxFile Fichero gpx
+	 * @return GpxDocument o null si hay errores
+	 */
+	public GpxDocument readTrustedGpxDocument(File gpxFile) {
+		GpxDocument gpxDoc = null;
+		if(factoryType != null && !GpxCompression.isCompressed(gpxFile)) {
+			gpxDoc = new MappedGpxScanner(this).scan(gpxFile);
+		}
+		return readGpxDocument(gpxFile, gpxDoc);
+	}
+	/**
+	 * Lee un GpxDocument de un fichero de gran tamaño generado por la propia
+	 * librería con ParallelGpxParser, que divide el fichero en rangos de
+	 * bytes y los lee en paralelo en el ForkJoinPool. Si el fichero contiene
+	 * algo que no se reconoce se lee con el parser estándar, como en
+	 * readTrustedGpxDocument().
+	 * @param gpxFile Fichero gpx
+	 * @param pool ForkJoinPool en el que se leen los rangos
+	 * @return GpxDocument o null si hay errores
+	 */
+	public GpxDocument readGpxDocumentInParallel(File gpxFile, ForkJoinPool pool) {
+		GpxDocument gpxDoc = null;
+		if(factoryType != null && !GpxCompression.isCompressed(gpxFile)) {
+			gpxDoc = new ParallelGpxParser(this, pool).parse(gpxFile);
+		}
+		return readGpxDocument(gpxFile, gpxDoc);
+	}
+	/**
+	 * Abre un fichero gpx sin cargarlo en memoria: devuelve un LazyGpxDocument
+	 * que solo tiene un índice de los elementos del fichero y los lee cuando se
+	 * piden con getTrack(i), getRoute(i) o getWayPoint(i), manteniendo en memoria
+	 * como mucho 'cacheSize' elementos de cada tipo.<br/>
+	 * Si el fichero no se puede indexar o está comprimido se lee completo
+	 * con el parser estándar.
+	 * @param gpxFile Fichero gpx
+	 * @param cacheSize Número de elementos de cada tipo en la caché
+	 * @return GpxDocument o null si hay errores
+	 */
+	public GpxDocument openGpxDocument(File gpxFile, int cacheSize) {
+		GpxDocument gpxDoc = null;
+		if(!GpxCompression.isCompressed(gpxFile)) {
+			gpxDoc = LazyGpxDocument.open(this, gpxFile, cacheSize);
+		}
+		return readGpxDocument(gpxFile, gpxDoc);
+	}
+	public GpxDocument openGpxDocument(File gpxFile) {
+		return openGpxDocument(gpxFile, LazyGpxDocument.DEFAULT_CACHE_SIZE);
+	}
+	/**
+	 * Lee un fichero gpx de forma asíncrona: el fichero se lee con un
+	 * AsynchronousFileChannel y se parsea en el Executor, sin bloquear
+	 * el thread que llama. Ver AsyncGpxReader.
+	 * @param path Path del fichero gpx
+	 * @param executor Executor en el que se parsea el documento
+	 * @param listener GpxProgressListener que recibe los bytes leídos o null
+	 * @return CompletableFuture que se completa con el GpxDocument, con null
+	 * si el documento no es válido, o excepcionalmente si no se puede leer.
+	 * Se puede cancelar con cancel()
+	 */
+	public CompletableFuture<GpxDocument> readGpxDocumentAsync(Path path, Executor executor,
+			GpxProgressListener listener) {
+		return new AsyncGpxReader(this, executor, listener).read(path);
+	}
+	/**
+	 * Parsea de forma asíncrona en el Executor el documento gpx del InputStream
+	 * que proporciona el supplier. Ver AsyncGpxReader.
+	 * @param supplier Proporciona el InputStream, que se abre y se cierra en el Executor
+	 * @param totalBytes Tamaño del documento para el GpxProgressListener o -1
+	 * @param executor Executor en el que se lee el documento
+	 * @param listener GpxProgressListener que recibe los bytes leídos o null
+	 * @return CompletableFuture que se completa con el GpxDocument, con null
+	 * si el documento no es válido, o excepcionalmente si no se puede leer.
+	 * Se puede cancelar con cancel()
+	 */
+	public CompletableFuture<GpxDocument> parseGpxDocumentAsync(AsyncGpxReader.InputStreamSupplier supplier,
+			long totalBytes, Executor executor, GpxProgressListener listener) {
+		return new AsyncGpxReader(this, executor, listener).read(supplier, totalBytes);
+	}
+	/**
+	 * Completa la lectura de un fichero con el parser estándar si
+	 * la lectura rápida no ha tenido éxito (gpxDoc==null)
+	 */
+	private GpxDocument readGpxDocument(File gpxFile, GpxDocument gpxDoc) {
+		if(gpxDoc == null) {
+			InputStream is = null;
+			try {
+				is = GpxCompression.openInputStream(gpxFile);
+				gpxDoc = parseGpxDocument(is);
+			} catch (IOException e) {
+				LOG.warning("GpxFactory.readGpxDocument() ERROR: "+e.getMessage());
+			} finally {
+				Util.close(is);
+			}
+		}
+		if(gpxDoc!=null) {
+			gpxDoc.setGpxFile(gpxFile);
+		} else {
+			LOG.warning("GpxFactory.readGpxDocument() ERROR: can't parse GpxDocument "+gpxFile.getName());
+		}
+		return gpxDoc;
+	}
 
-		double lon, lat;
+	/**
+	 * Procesa un documento gpx en streaming enviando sus elementos
+	 * al GpxHandler, sin crear WayPoint's ni el GpxDocument. Las extensiones
+	 * de cada punto se pasan en el orden de 'getExtensionTags()'.
+	 * No cierra el InputStream.
+	 * @param inputStream InputStream con el documento gpx
+	 * @param handler GpxHandler que recibe los callbacks
+	 * @return true si el documento se procesa completo, false si hay errores
+	 */
+	public boolean parse(InputStream inputStream, GpxHandler handler) {
+		return parse(inputStream, handler, GpxProjection.ALL);
+	}
+	/**
+	 * Procesa un documento gpx enviando al GpxHandler solo los campos de la
+	 * proyección; el resto llegan sin valor ("", -1 o -1.0). No cierra el InputStream.
+	 * @param inputStream InputStream con el documento gpx
+	 * @param handler GpxHandler que recibe los callbacks
+	 * @param projection Campos de los puntos que se leen
+	 * @return true si el documento se procesa completo, false si hay errores
+	 */
+	public boolean parse(InputStream inputStream, GpxHandler handler, GpxProjection projection) {
+		return parse(inputStream, handler, projection, GpxFilter.ALL);
+	}
+	/**
+	 * Procesa un documento gpx enviando al GpxHandler solo los puntos que
+	 * cumplen el filtro, con los campos de la proyección. No cierra el InputStream.
+	 * @param inputStream InputStream con el documento gpx
+	 * @param handler GpxHandler que recibe los callbacks
+	 * @param projection Campos de los puntos que se leen
+	 * @param filter Condiciones de los puntos que se leen
+	 * @return true si el documento se procesa completo, false si hay errores
+	 */
+	public boolean parse(InputStream inputStream, GpxHandler handler, GpxProjection projection, GpxFilter filter) {
+		try {
+			return parse(createStreamReader(inputStream, projection, filter), handler);
+		} catch (XMLStreamException e) {
+			LOG.warning("GpxFactory.parse() ERROR: "+e.getMessage());
+			return false;
+		}
+	}
+	/**
+	 * Procesa un documento gpx leido desde un Reader enviando sus elementos
+	 * al GpxHandler. Ver parse(InputStream, GpxHandler)
+	 * @param reader Reader con el documento gpx
+	 * @param handler GpxHandler que recibe los callbacks
+	 * @return true si el documento se procesa completo, false si hay errores
+	 */
+	public boolean parse(Reader reader, GpxHandler handler) {
 		try {
-			lon=Double.parseDouble(wptElement.getAttribute("lon"));
-			lat=Double.parseDouble(wptElement.getAttribute("lat"));			
-		} catch (Exception e) {
-            e.printStackTrace();
+			return parse(createStreamReader(reader), handler);
+		} catch (XMLStreamException e) {
+			LOG.warning("GpxFactory.parse() ERROR: "+e.getMessage());
+			return false;
+		}
+	}
+	private boolean parse(GpxStreamReader reader, GpxHandler handler) throws XMLStreamException {
+		if(!reader.getRootName().equalsIgnoreCase(GPX_NODENAME)) {
+			reader.close();
+			return false;
+		}
+		double[] extensions = new double[reader.getDoubleTagCount()];
+		handler.startDocument();
+		try {
+			while(reader.hasNext()) {
+				switch(reader.next()) {
+				case GpxStreamReader.WAYPOINT:
+					reader.getDoubleValues(extensions);
+					handler.onWayPoint(reader.getName(), reader.getDescription(), reader.getTime(),
+						reader.getLongitude(), reader.getLatitude(), reader.getAltitude(), extensions);
+					break;
+				case GpxStreamReader.START_ROUTE:
+					handler.startRoute(reader.getRouteIndex());
+					break;
+				case GpxStreamReader.ROUTE_POINT:
+					reader.getDoubleValues(extensions);
+					handler.onRoutePoint(reader.getRouteIndex(), reader.getName(), reader.getDescription(),
+						reader.getTime(), reader.getLongitude(), reader.getLatitude(), reader.getAltitude(),
+						extensions);
+					break;
+				case GpxStreamReader.END_ROUTE:
+					handler.endRoute(reader.getRouteIndex());
+					break;
+				case GpxStreamReader.START_TRACK:
+					handler.startTrack(reader.getTrackIndex());
+					break;
+				case GpxStreamReader.START_SEGMENT:
+					handler.startSegment(reader.getTrackIndex(), reader.getSegmentIndex());
+					break;
+				case GpxStreamReader.TRACK_POINT:
+					reader.getDoubleValues(extensions);
+					handler.onTrackPoint(reader.getTrackIndex(), reader.getSegmentIndex(), reader.getTime(),
+						reader.getLongitude(), reader.getLatitude(), reader.getAltitude(), extensions);
+					break;
+				case GpxStreamReader.END_SEGMENT:
+					handler.endSegment(reader.getTrackIndex(), reader.getSegmentIndex());
+					break;
+				case GpxStreamReader.END_TRACK:
+					handler.endTrack(reader.getTrackIndex());
+					break;
+				default:
+					break;
+				}
+			}
+		} finally {
+			reader.close();
+		}
+		handler.endDocument();
+		return true;
+	}
+	
+	/**
+	 * Devuelve un iterator de los puntos (wpt, rtept y trkpt) del documento
+	 * gpx, con sus índices de route, track y segmento, sin construir el GpxDocument.
+	 * Hay que cerrar el iterator al terminar, lo que cierra también el InputStream.
+	 * @param inputStream InputStream con el documento gpx
+	 * @return WayPointIterator o null si el documento no se puede leer
+	 */
+	public WayPointIterator iterateWayPoints(InputStream inputStream) {
+		return iterateWayPoints(inputStream, GpxProjection.ALL);
+	}
+	/**
+	 * Devuelve un iterator de los puntos del documento gpx leyendo solo los
+	 * campos de la proyección; el resto quedan sin valor. Sin TIME los puntos
+	 * tienen tiempo -1. Ver iterateWayPoints(InputStream)
+	 * @param inputStream InputStream con el documento gpx
+	 * @param projection Campos de los puntos que se leen
+	 * @return WayPointIterator o null si el documento no se puede leer
+	 */
+	public WayPointIterator iterateWayPoints(InputStream inputStream, GpxProjection projection) {
+		return iterateWayPoints(inputStream, projection, GpxFilter.ALL);
+	}
+	/**
+	 * Devuelve un iterator de los puntos del documento gpx que cumplen el filtro,
+	 * con los campos de la proyección. Ver iterateWayPoints(InputStream, GpxProjection)
+	 * @param inputStream InputStream con el documento gpx
+	 * @param projection Campos de los puntos que se leen
+	 * @param filter Condiciones de los puntos que se leen
+	 * @return WayPointIterator o null si el documento no se puede leer
+	 */
+	public WayPointIterator iterateWayPoints(InputStream inputStream, GpxProjection projection, GpxFilter filter) {
+		try {
+			return new WayPointIterator(this, inputStream, projection, filter);
+		} catch (XMLStreamException e) {
+			LOG.warning("GpxFactory.iterateWayPoints() ERROR: "+e.getMessage());
+			Util.close(inputStream);
 			return null;
 		}
+	}
+	/**
+	 * Devuelve un iterator de los puntos del fichero gpx. Ver iterateWayPoints(InputStream)
+	 * @param path Path del fichero gpx
+	 * @return WayPointIterator o null si el documento no se puede leer
+	 * @throws IOException si no se puede abrir el fichero
+	 */
+	public WayPointIterator iterateWayPoints(Path path) throws IOException {
+		return iterateWayPoints(path, GpxProjection.ALL);
+	}
+	/**
+	 * Devuelve un iterator de los puntos del fichero gpx leyendo solo los
+	 * campos de la proyección. Ver iterateWayPoints(InputStream, GpxProjection)
+	 * @param path Path del fichero gpx
+	 * @param projection Campos de los puntos que se leen
+	 * @return WayPointIterator o null si el documento no se puede leer
+	 * @throws IOException si no se puede abrir el fichero
+	 */
+	public WayPointIterator iterateWayPoints(Path path, GpxProjection projection) throws IOException {
+		return iterateWayPoints(path, projection, GpxFilter.ALL);
+	}
+	/**
+	 * Devuelve un iterator de los puntos del fichero gpx que cumplen el filtro,
+	 * con los campos de la proyección. Ver iterateWayPoints(InputStream, GpxProjection, GpxFilter)
+	 * @param path Path del fichero gpx
+	 * @param projection Campos de los puntos que se leen
+	 * @param filter Condiciones de los puntos que se leen
+	 * @return WayPointIterator o null si el documento no se puede leer
+	 * @throws IOException si no se puede abrir el fichero
+	 */
+	public WayPointIterator iterateWayPoints(Path path, GpxProjection projection, GpxFilter filter) throws IOException {
+		InputStream in = Files.newInputStream(path);
+		try {
+			return iterateWayPoints(GpxCompression.decompress(in), projection, filter);
+		} catch (IOException | RuntimeException e) {
+			Util.close(in);
+			throw e;
+		}
+	}
+	/**
+	 * Devuelve un Stream secuencial de los puntos del fichero gpx, sin construir
+	 * el GpxDocument. El Stream debe cerrarse para liberar el fichero.
+	 * @param path Path del fichero gpx
+	 * @return Stream<IndexedWayPoint>
+	 * @throws IOException si no se puede abrir o leer el fichero
+	 */
+	public Stream<IndexedWayPoint> streamWayPoints(Path path) throws IOException {
+		WayPointIterator iterator = iterateWayPoints(path);
+		if(iterator == null) {
+			throw new IOException("GpxFactory.streamWayPoints(): can't read "+path);
+		}
+		return iterator.stream();
+	}
+	
+	/**
+	 * Devuelve un GpxFileFollower que lee incrementalmente los 'trkpt'
+	 * de un fichero gpx que se está escribiendo. Cada llamada a
+	 * GpxFileFollower.poll() añade al Track los puntos nuevos.
+	 * @param gpxFile Fichero gpx en grabación
+	 * @return GpxFileFollower con un Track vacío
+	 */
+	public GpxFileFollower followGpxFile(File gpxFile) {
+		return new GpxFileFollower(this, gpxFile);
+	}
+
+	/**
+	 * Crea un WayPoint del tipo de la factory con los valores del
+	 * punto en el que está posicionado el GpxStreamReader.
+	 * Si el reader tiene registradas las etiquetas numéricas de la factory
+	 * ('getExtensionTags()'), las extensiones se toman de sus valores; si no,
+	 * se obtienen a través de 'parseWayPointExtensions()'
+	 * @param reader GpxStreamReader posicionado en un punto
+	 * @return WayPoint o null si hay errores
+	 */
+	public WayPoint createWayPoint(GpxStreamReader reader) {
+		int count = reader.getDoubleTagCount();
+		List<Double> values = new ArrayList<Double>(3+count);
+		values.add(Double.valueOf(reader.getLongitude()));
+		values.add(Double.valueOf(reader.getLatitude()));
+		values.add(Double.valueOf(reader.getAltitude()));
 		
-		values.add(new Double(lon));
-		values.add(new Double(lat));
-		
-		double ele = parseDoubleTag(doc,"ele");
-		values.add(new Double(ele));
-				
-		// abstract method: extensiones que añade la implementación
+		// extensiones que añade la implementación
 		// Solo admite doubles
-		List<Double> extValues = parseWayPointExtensions(doc);
-		values.addAll(extValues);
+		if(count > 0) {
+			// El reader ya las ha leido, las de getExtensionTags().
+			// Las que no tiene el punto o no están en la proyección
+			// comparten el mismo Double
+			for(int i=0; i<count; i++) {
+				double value = reader.getDoubleValue(i);
+				values.add(value == -1.0 ? MISSING_VALUE : Double.valueOf(value));
+			}
+		} else {
+			values.addAll(parseWayPointExtensions(reader.getTags()));
+		}
 		
 		// Abstract method
-		WayPoint pt=createWayPoint(namee,descrip,t,values);
-		return pt;
+		return createWayPoint(reader.getName(), reader.getDescription(), reader.getTime(), values);
 	}
 
 	/**
-	 * Build a Route object from a gpx String
-	 * @param cadgpx
-	 * @return
+	 * Lee un WayPoint ('wpt', 'rtept' o 'trkpt') desde un fragmento gpx cuya raíz es ese elemento.
+	 * No cierra el Reader.
+	 * @param gpxReader Reader con el fragmento gpx
+	 * @return WayPoint o null si hay errores
 	 */
-	private Route parseRoute(String cadgpx) {
-		Route rte= new Route();
-		Document doc = XmlFactory.parseXmlDocument(cadgpx);
-		if(doc==null) {
-			return null;
-		}
-		if(!isValidRouteDocument(doc)) {
-			return null;
+	public WayPoint parseWayPoint(Reader gpxReader) {
+		WayPoint wp = null;
+		try {
+			GpxStreamReader reader = createStreamReader(gpxReader);
+			int event = reader.next();
+			if(event==GpxStreamReader.WAYPOINT || event==GpxStreamReader.ROUTE_POINT ||
+					event==GpxStreamReader.TRACK_POINT) {
+				wp = createWayPoint(reader);
+			}
+			reader.close();
+		} catch (XMLStreamException e) {
+			LOG.warning("GpxFactory.parseWayPoint() ERROR: "+e.getMessage());
 		}
-		NodeList nl=doc.getElementsByTagName("rtept");
-		if(nl.getLength()>0) {
-			for (int i=0; i<nl.getLength(); i++) {
-				try {
-					WayPoint wp= parseWayPoint(XmlFactory.nodeAsFormatedXmlString(nl.item(i),false));
-					if(wp!=null) {
-						rte.addWayPoint(wp);
+		return wp;
+	}
+
+	/**
+	 * Lee una Route ('rte') desde un fragmento gpx cuya raíz es ese elemento.
+	 * No cierra el Reader.
+	 * @param gpxReader Reader con el fragmento gpx
+	 * @return Route o null si hay errores
+	 */
+	public Route parseRoute(Reader gpxReader) {
+		Route rte = null;
+		try {
+			GpxStreamReader reader = createStreamReader(gpxReader);
+			if(reader.getRootName().equalsIgnoreCase(ROUTE_NODENAME)) {
+				rte = new Route();
+				while(reader.hasNext()) {
+					if(reader.next()==GpxStreamReader.ROUTE_POINT) {
+						addWayPoint(rte, createWayPoint(reader));
 					}
-				} catch (Exception e) {
-		            e.printStackTrace();
-					return null;
 				}
 			}
+			reader.close();
+		} catch (XMLStreamException e) {
+			LOG.warning("GpxFactory.parseRoute() ERROR: "+e.getMessage());
+			return null;
 		}
 		return rte;
 	}
 	
 	/**
-	 * Build a TrackSegment from a gpx String
-	 * @param cadgpx
-	 * @return
+	 * Lee un TrackSegment ('trkseg') desde un fragmento gpx cuya raíz es ese elemento.
+	 * No cierra el Reader.
+	 * @param gpxReader Reader con el fragmento gpx
+	 * @return TrackSegment o null si hay errores
 	 */
-	private TrackSegment parseTrackSegment(String cadgpx) {
-		TrackSegment ts= new TrackSegment();
-		Document doc = XmlFactory.parseXmlDocument(cadgpx);
-		if(doc==null) {
-			return null;
-		}
-		if(!this.isValidTrackSegmentDocument(doc)) {
-			return null;
-		}
-		NodeList nl=doc.getElementsByTagName("trkpt");
-		//System.out.println(nl.getLength());
-		if(nl.getLength()>0) {
-			for (int i=0; i<nl.getLength(); i++) {
-				try {
-					WayPoint wp= parseWayPoint(XmlFactory.nodeAsFormatedXmlString(nl.item(i),false));
-					if(wp!=null) {
-						ts.addWayPoint(wp);
+	public TrackSegment parseTrackSegment(Reader gpxReader) {
+		TrackSegment ts = null;
+		try {
+			GpxStreamReader reader = createStreamReader(gpxReader);
+			if(reader.getRootName().equalsIgnoreCase(SEGMENT_NODENAME)) {
+				ts = new TrackSegment();
+				while(reader.hasNext()) {
+					if(reader.next()==GpxStreamReader.TRACK_POINT) {
+						addWayPoint(ts, createWayPoint(reader));
 					}
-				} catch (Exception e) {
-		            e.printStackTrace();
-					return null;
 				}
 			}
+			reader.close();
+		} catch (XMLStreamException e) {
+			LOG.warning("GpxFactory.parseTrackSegment() ERROR: "+e.getMessage());
+			return null;
 		}
 		return ts;	
 	}
 
 	/**
-	 * Build a Track from a gpx String
-	 * @param cadgpx
-	 * @return
+	 * Lee un Track ('trk') desde un fragmento gpx cuya raíz es ese elemento.
+	 * No cierra el Reader.
+	 * @param gpxReader Reader con el fragmento gpx
+	 * @return Track o null si hay errores
 	 */
-	private Track parseTrack(String cadgpx) {
-		Track t= new Track();
-		Document doc = XmlFactory.parseXmlDocument(cadgpx);
-		if(doc==null) {
-			return null;
-		}
-		if(!isValidTrackDocument(doc)) {
-			return null;
-		}
-		// FIXME parse name
-		
-		// FIXME parse number
-		
-		// parse track segments
-		NodeList nl=doc.getElementsByTagName("trkseg");
-		if(nl.getLength()>0) {
-			for (int i=0; i<nl.getLength(); i++) {
-				try {
-					TrackSegment ts = this.parseTrackSegment(XmlFactory.nodeAsFormatedXmlString(nl.item(i),false));
-					if(ts!=null) {
-						t.addTrackSegment(ts);
-					}
-				} catch (Exception e) {
-		            e.printStackTrace();
-					return null;
+	public Track parseTrack(Reader gpxReader) {
+		Track t = null;
+		TrackSegment ts = null;
+		try {
+			GpxStreamReader reader = createStreamReader(gpxReader);
+			if(!reader.getRootName().equalsIgnoreCase(TRACK_NODENAME)) {
+				reader.close();
+				return null;
+			}
+			t = new Track();
+			while(reader.hasNext()) {
+				switch(reader.next()) {
+				case GpxStreamReader.START_SEGMENT:
+					ts = new TrackSegment();
+					break;
+				case GpxStreamReader.TRACK_POINT:
+					addWayPoint(ts, createWayPoint(reader));
+					break;
+				case GpxStreamReader.END_SEGMENT:
+					t.addTrackSegment(ts);
+					ts = null;
+					break;
+				default:
+					break;
 				}
 			}
+			reader.close();
+		} catch (XMLStreamException e) {
+			LOG.warning("GpxFactory.parseTrack() ERROR: "+e.getMessage());
+			return null;
 		}
 		return t;
 	}
@@ -358,6 +1128,26 @@ public abstract class GpxFactory {
 		return cad;
 	}
 
+	/**
+	 * Lee el contenido double de una etiqueta de un punto leido
+	 * por el GpxStreamReader
+	 * @param tags Map<String,String> con el texto de las etiquetas del punto
+	 * @param tagname String Nombre de la etiqueta de la que extraer el valor double
+	 * @return double contenido de la etiqueta o -1.0 si hay errores
+	 */
+	protected double parseDoubleTag(Map<String, String> tags, String tagname) {
+		double result=-1.0;
+		String cad = tags.get(tagname);
+		if(cad!=null) {
+			try {
+				result=DecimalParser.parseDouble(cad);
+			} catch (Exception e) {
+				LOG.warning("GpxFactory.parseDoubleTag(): can't parse number\n"+e.getMessage());
+			}
+		}
+		return result;		
+	}
+
 	// validate documents
 	protected boolean isValidWayPointDocument(Document doc) {
 		if(doc.getDocumentElement().getNodeName().equalsIgnoreCase("wpt")==false &&
@@ -387,6 +1177,29 @@ public abstract class GpxFactory {
 	}
 	
 	
+	/**
+	 * Nombres de las etiquetas de extensión que lee la factory, en el
+	 * orden en que se pasan a los GpxHandler. Por defecto ninguna.
+	 * @return String[] con los nombres de etiqueta ('mlab:speed',...)
+	 */
+	public String[] getExtensionTags() {
+		return new String[0];
+	}
+	/**
+	 * Tabla de slots de las extensiones de 'getExtensionTags()'. Se compila
+	 * la primera vez que se pide y se reutiliza en todas las lecturas
+	 * de la factory, por lo que 'getExtensionTags()' no debe cambiar.
+	 * @return ExtensionSchema de la factory
+	 */
+	public ExtensionSchema getExtensionSchema() {
+		ExtensionSchema schema = extensionSchema;
+		if(schema == null) {
+			schema = new ExtensionSchema(getExtensionTags());
+			extensionSchema = schema;
+		}
+		return schema;
+	}
+	
 	public GpxDocument createGpxDocument() {
 		return new GpxDocumentImpl();
 	}
@@ -412,6 +1225,25 @@ public abstract class GpxFactory {
 	 */
 	public abstract List<Double> parseWayPointExtensions(Document doc);
 	
+	/**
+	 * Método utilizado por el parser en streaming para obtener las extensiones
+	 * de un punto. Recibe el texto de las etiquetas hoja del punto indexado por
+	 * nombre de etiqueta ('mlab:speed',...) y devuelve un List\<Double\> con los
+	 * valores de las extensiones, igual que 'parseWayPointExtensions(Document)'.<br/>
+	 * Por compatibilidad, la implementación por defecto construye un pequeño
+	 * Document con esas etiquetas y delega en 'parseWayPointExtensions(Document)'.
+	 * Las subclases deberían sobreescribirlo para evitar crear el Document.
+	 * @param tags Map<String,String> con el texto de las etiquetas del punto
+	 * @return List<Double> con los valores de las extensiones
+	 */
+	public List<Double> parseWayPointExtensions(Map<String, String> tags) {
+		Document doc = XmlFactory.createDocument("wpt", tags);
+		if(doc==null) {
+			return new ArrayList<Double>();
+		}
+		return parseWayPointExtensions(doc);
+	}
+	
 //	public String asCsv(WayPoint wp) {
 //		return wp.asCsv(false);
 //	}
@@ -0,0 +1,166 @@
+package com.mlab.gpx.api;
+
+import com.mlab.gpx.impl.AndroidWayPoint;
+import com.mlab.gpx.impl.GpxEnvelope;
+
+/**
+ * Condiciones que tienen que cumplir los puntos de un documento gpx para
+ * leerse. Los puntos que no las cumplen se descartan durante el parseo,
+ * antes de crear el WayPoint o de añadirlo a un TrackSegment; el filtro de
+ * área se comprueba con las coordenadas de la etiqueta de apertura y el
+ * resto del punto se salta sin leerlo.<br/>
+ * Condiciones, que se pueden combinar:<br/>
+ * - withEnvelope(): la longitud y la latitud dentro de un GpxEnvelope, bordes incluidos<br/>
+ * - withTimeWindow(): el tiempo entre dos instantes, ambos incluidos. Los
+ * puntos sin tiempo se descartan<br/>
+ * - withMinimumAccuracy(): la precisión ('mlab:accuracy' de los
+ * AndroidWayPoint, en metros) igual o mejor que la indicada. Los puntos
+ * sin precisión se descartan<br/>
+ * Es inmutable. Se utiliza con 'GpxFactory.parseGpxDocument()',
+ * 'GpxFactory.parse()' y 'GpxFactory.iterateWayPoints()'.
+ *
+ * @author shiguera
+ *
+ */
+public final class GpxFilter {
+
+	/**
+	 * Etiqueta de la precisión de los puntos
+	 */
+	public static final String ACCURACY_TAG = "mlab:accuracy";
+
+	/**
+	 * Filtro que acepta todos los puntos
+	 */
+	public static final GpxFilter ALL = new GpxFilter(false, 0.0, 0.0, 0.0, 0.0,
+		false, 0L, 0L, false, 0.0);
+
+	private final boolean hasEnvelope;
+	private final double minLat, minLon, maxLat, maxLon;
+	private final boolean hasTimeWindow;
+	private final long startTime, endTime;
+	private final boolean hasAccuracy;
+	private final double maxAccuracy;
+
+	private GpxFilter(boolean hasEnvelope, double minLat, double minLon, double maxLat, double maxLon,
+			boolean hasTimeWindow, long startTime, long endTime, boolean hasAccuracy, double maxAccuracy) {
+		this.hasEnvelope = hasEnvelope;
+		this.minLat = minLat;
+		this.minLon = minLon;
+		this.maxLat = maxLat;
+		this.maxLon = maxLon;
+		this.hasTimeWindow = hasTimeWindow;
+		this.startTime = startTime;
+		this.endTime = endTime;
+		this.hasAccuracy = hasAccuracy;
+		this.maxAccuracy = maxAccuracy;
+	}
+
+	/**
+	 * Filtro con las condiciones de éste y el área indicada
+	 */
+	public GpxFilter withEnvelope(GpxEnvelope envelope) {
+		return new GpxFilter(true, envelope.getMinLat(), envelope.getMinLon(),
+			envelope.getMaxLat(), envelope.getMaxLon(),
+			hasTimeWindow, startTime, endTime, hasAccuracy, maxAccuracy);
+	}
+	/**
+	 * Filtro con las condiciones de éste y el intervalo de tiempo indicado
+	 * @param start Tiempo inicial en milisegundos UTC
+	 * @param end Tiempo final en milisegundos UTC
+	 */
+	public GpxFilter withTimeWindow(long start, long end) {
+		return new GpxFilter(hasEnvelope, minLat, minLon, maxLat, maxLon,
+			true, start, end, hasAccuracy, maxAccuracy);
+	}
+	/**
+	 * Filtro con las condiciones de éste y la precisión indicada
+	 * @param meters Precisión mínima: se aceptan los puntos con 'accuracy' menor o igual
+	 */
+	public GpxFilter withMinimumAccuracy(double meters) {
+		return new GpxFilter(hasEnvelope, minLat, minLon, maxLat, maxLon,
+			hasTimeWindow, startTime, endTime, true, meters);
+	}
+
+	public boolean hasEnvelope() {
+		return hasEnvelope;
+	}
+	public boolean hasTimeWindow() {
+		return hasTimeWindow;
+	}
+	public boolean hasAccuracy() {
+		return hasAccuracy;
+	}
+	/**
+	 * @return true si el filtro acepta todos los puntos
+	 */
+	public boolean isAll() {
+		return !hasEnvelope && !hasTimeWindow && !hasAccuracy;
+	}
+	public GpxEnvelope getEnvelope() {
+		return (hasEnvelope ? new GpxEnvelope(minLat, minLon, maxLat, maxLon) : null);
+	}
+	public long getStartTime() {
+		return startTime;
+	}
+	public long getEndTime() {
+		return endTime;
+	}
+	public double getMinimumAccuracy() {
+		return maxAccuracy;
+	}
+
+	/**
+	 * Comprueba la condición de área
+	 */
+	public boolean acceptsPosition(double longitude, double latitude) {
+		return !hasEnvelope || (latitude >= minLat && latitude <= maxLat &&
+			longitude >= minLon && longitude <= maxLon);
+	}
+	/**
+	 * Comprueba la condición de tiempo
+	 * @param time Tiempo del punto o -1 si no tiene
+	 */
+	public boolean acceptsTime(long time) {
+		return !hasTimeWindow || (time != -1L && time >= startTime && time <= endTime);
+	}
+	/**
+	 * Comprueba la condición de precisión
+	 * @param accuracy Precisión del punto o -1.0 si no tiene
+	 */
+	public boolean acceptsAccuracy(double accuracy) {
+		return !hasAccuracy || (accuracy >= 0.0 && accuracy <= maxAccuracy);
+	}
+	/**
+	 * Comprueba todas las condiciones
+	 */
+	public boolean accepts(double longitude, double latitude, long time, double accuracy) {
+		return acceptsPosition(longitude, latitude) && acceptsTime(time) && acceptsAccuracy(accuracy);
+	}
+	/**
+	 * Comprueba todas las condiciones con los valores de un WayPoint. La precisión
+	 * se toma de los AndroidWayPoint y sus subclases
+	 */
+	public boolean accepts(WayPoint wp) {
+		double accuracy = -1.0;
+		if(wp instanceof AndroidWayPoint) {
+			accuracy = ((AndroidWayPoint)wp).getAccuracy();
+		}
+		return accepts(wp.getLongitude(), wp.getLatitude(), wp.getTime(), accuracy);
+	}
+
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("GpxFilter[");
+		if(hasEnvelope) {
+			builder.append("envelope=").append(getEnvelope()).append(' ');
+		}
+		if(hasTimeWindow) {
+			builder.append("time=").append(startTime).append('-').append(endTime).append(' ');
+		}
+		if(hasAccuracy) {
+			builder.append("accuracy<=").append(maxAccuracy);
+		}
+		return builder.toString().trim()+"]";
+	}
+}
@@ -0,0 +1,49 @@
+package com.mlab.gpx.api;
+
+/**
+ * Interface para procesar un documento gpx en streaming mediante
+ * callbacks, al estilo de los handler SAX. Se utiliza con el
+ * método 'GpxFactory.parse()'.<br/>
+ * Los valores de los puntos se pasan como tipos primitivos, sin crear
+ * WayPoint's ni List\<Double\>. Las extensiones del punto llegan en un double[]
+ * en el orden de 'GpxFactory.getExtensionTags()'; ese array se reutiliza
+ * entre llamadas, por lo que solo es válido durante el callback.<br/>
+ * La clase AbstractGpxHandler proporciona implementaciones vacías
+ * de todos los métodos.
+ * @author shiguera
+ *
+ */
+public interface GpxHandler {
+
+	void startDocument();
+
+	/**
+	 * Elemento 'wpt' del documento
+	 */
+	void onWayPoint(String name, String description, long time,
+		double longitude, double latitude, double altitude, double[] extensions);
+
+	void startRoute(int routeIndex);
+	/**
+	 * Elemento 'rtept' de la Route 'routeIndex'
+	 */
+	void onRoutePoint(int routeIndex, String name, String description, long time,
+		double longitude, double latitude, double altitude, double[] extensions);
+	void endRoute(int routeIndex);
+
+	void startTrack(int trackIndex);
+	void startSegment(int trackIndex, int segmentIndex);
+	/**
+	 * Elemento 'trkpt' del segmento 'segmentIndex' del Track 'trackIndex'
+	 * @param time Tiempo en milisegundos UTC o -1 si no tiene
+	 * @param altitude Altitud o -1.0 si no tiene
+	 * @param extensions Valores de las extensiones en el orden de
+	 * 'GpxFactory.getExtensionTags()'. Las que no existen valen -1.0
+	 */
+	void onTrackPoint(int trackIndex, int segmentIndex, long time,
+		double longitude, double latitude, double altitude, double[] extensions);
+	void endSegment(int trackIndex, int segmentIndex);
+	void endTrack(int trackIndex);
+
+	void endDocument();
+}
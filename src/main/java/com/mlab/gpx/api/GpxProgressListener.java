@@ -0,0 +1,18 @@
+package com.mlab.gpx.api;
+
+/**
+ * Recibe el progreso de la lectura asíncrona de un documento gpx;
+ * ver 'GpxFactory.readGpxDocumentAsync()' y 'GpxFactory.parseGpxDocumentAsync()'.<br/>
+ * Se llama desde los threads del Executor o del canal asíncrono, así que
+ * las implementaciones deben ser thread-safe y no bloquear.
+ * @author shiguera
+ *
+ */
+public interface GpxProgressListener {
+
+	/**
+	 * @param bytesRead Bytes leídos hasta el momento
+	 * @param totalBytes Tamaño total en bytes o -1 si no se conoce
+	 */
+	void onProgress(long bytesRead, long totalBytes);
+}
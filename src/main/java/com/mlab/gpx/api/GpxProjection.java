@@ -0,0 +1,127 @@
+package com.mlab.gpx.api;
+
+import java.util.EnumSet;
+import java.util.Set;
+
+/**
+ * Campos de los puntos que necesita el que lee un documento gpx. Los campos
+ * que no están en la proyección no se copian, no se decodifican y no crean
+ * objetos durante la lectura; en los puntos quedan con su valor de 'no
+ * disponible': "" en name y desc, -1 en time y -1.0 en ele y en las
+ * extensiones.<br/>
+ * La longitud y la latitud se leen siempre. EXTENSIONS incluye las
+ * extensiones de la factory ('mlab:speed',...) y el resto de etiquetas
+ * del punto que no son campos propios.<br/>
+ * Es inmutable. Se utiliza con 'GpxFactory.parseGpxDocument()',
+ * 'GpxFactory.parse()' y 'GpxFactory.iterateWayPoints()'.
+ *
+ * @author shiguera
+ *
+ */
+public final class GpxProjection {
+
+	public enum Field {TIME, ELEVATION, NAME, DESCRIPTION, EXTENSIONS}
+
+	/**
+	 * Todos los campos: la lectura normal
+	 */
+	public static final GpxProjection ALL = new GpxProjection(EnumSet.allOf(Field.class));
+	/**
+	 * Solo longitud y latitud
+	 */
+	public static final GpxProjection POSITION = new GpxProjection(EnumSet.noneOf(Field.class));
+	/**
+	 * Longitud, latitud y tiempo
+	 */
+	public static final GpxProjection POSITION_TIME = new GpxProjection(EnumSet.of(Field.TIME));
+
+	private final boolean time, elevation, name, description, extensions;
+
+	private GpxProjection(Set<Field> fields) {
+		this.time = fields.contains(Field.TIME);
+		this.elevation = fields.contains(Field.ELEVATION);
+		this.name = fields.contains(Field.NAME);
+		this.description = fields.contains(Field.DESCRIPTION);
+		this.extensions = fields.contains(Field.EXTENSIONS);
+	}
+
+	/**
+	 * Proyección con la longitud, la latitud y los campos indicados
+	 */
+	public static GpxProjection of(Field... fields) {
+		Set<Field> set = EnumSet.noneOf(Field.class);
+		for(Field field: fields) {
+			set.add(field);
+		}
+		return new GpxProjection(set);
+	}
+	/**
+	 * Proyección con los campos de ésta más los indicados
+	 */
+	public GpxProjection with(Field... fields) {
+		Set<Field> set = getFields();
+		for(Field field: fields) {
+			set.add(field);
+		}
+		return new GpxProjection(set);
+	}
+
+	public boolean includes(Field field) {
+		switch(field) {
+		case TIME:
+			return time;
+		case ELEVATION:
+			return elevation;
+		case NAME:
+			return name;
+		case DESCRIPTION:
+			return description;
+		case EXTENSIONS:
+			return extensions;
+		}
+		return false;
+	}
+	public boolean includesTime() {
+		return time;
+	}
+	public boolean includesElevation() {
+		return elevation;
+	}
+	public boolean includesName() {
+		return name;
+	}
+	public boolean includesDescription() {
+		return description;
+	}
+	public boolean includesExtensions() {
+		return extensions;
+	}
+	/**
+	 * Campos incluidos, además de longitud y latitud
+	 */
+	public Set<Field> getFields() {
+		Set<Field> set = EnumSet.noneOf(Field.class);
+		for(Field field: Field.values()) {
+			if(includes(field)) {
+				set.add(field);
+			}
+		}
+		return set;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if(!(obj instanceof GpxProjection)) {
+			return false;
+		}
+		return getFields().equals(((GpxProjection)obj).getFields());
+	}
+	@Override
+	public int hashCode() {
+		return getFields().hashCode();
+	}
+	@Override
+	public String toString() {
+		return "GpxProjection"+getFields();
+	}
+}
@@ -1,15 +1,18 @@
 package com.mlab.gpx.impl;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import org.w3c.dom.Document;
 
 import com.mlab.gpx.api.GpxFactory;
 import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.extensions.ExtensionSchema;
 
 public class AndroidGpxFactory extends GpxFactory {
+
+	private static final String[] EXTENSION_TAGS = new String[] {"mlab:speed", "mlab:bearing", "mlab:accuracy"};
 	
 	private final Logger LOG = Logger.getLogger(getClass().getName());
 	
@@ -40,12 +43,24 @@ public class AndroidGpxFactory extends GpxFactory {
 	 */
 	@Override
 	public List<Double> parseWayPointExtensions(Document doc) {
-		//System.out.println("AndroidGpxFactory.parseWayPointExtension()");
-		List<Double> list = new ArrayList<Double>();
-		list.add(Double.valueOf(parseDoubleTag(doc, "mlab:speed")));
-		list.add(Double.valueOf(parseDoubleTag(doc, "mlab:bearing")));
-		list.add(Double.valueOf(parseDoubleTag(doc, "mlab:accuracy")));				
-		return list;
+		return ExtensionSchema.asList(getExtensionSchema().parse(doc));
+	}
+
+	/**
+	 * Extensiones que lee la factory, en el orden de los valores del WayPoint
+	 */
+	@Override
+	public String[] getExtensionTags() {
+		return EXTENSION_TAGS.clone();
+	}
+
+	/**
+	 * Versión en streaming de 'parseWayPointExtensions(Document)'. Recibe
+	 * el texto de las etiquetas del punto leido por el GpxStreamReader
+	 */
+	@Override
+	public List<Double> parseWayPointExtensions(Map<String, String> tags) {
+		return ExtensionSchema.asList(getExtensionSchema().parse(tags));
 	}
 	
 
@@ -92,21 +92,32 @@ public class AndroidWayPoint extends SimpleWayPoint {
 	@Override
 	protected String extensionsAsGpx() {
 		StringBuilder builder = new StringBuilder();
+		appendOwnExtensions(builder);
+		return builder.toString();
+	}
+	@Override
+	protected void appendExtensions(StringBuilder builder) {
+		if(getClass() == AndroidWayPoint.class) {
+			appendOwnExtensions(builder);
+		} else {
+			builder.append(extensionsAsGpx());
+		}
+	}
+	private void appendOwnExtensions(StringBuilder builder) {
 		builder.append("<extensions>");
-		builder.append(XmlFactory.createDoubleTag(namespace, "speed", speed, 12, SPEED_DECIMALS));
-		builder.append(XmlFactory.createDoubleTag(namespace, "bearing", bearing, 12, BEARING_DECIMALS));
-		builder.append(XmlFactory.createDoubleTag(namespace, "accuracy", accuracy, 12, ACCURACY_DECIMALS));
+		XmlFactory.appendDoubleTag(builder, namespace, "speed", speed, 12, SPEED_DECIMALS);
+		XmlFactory.appendDoubleTag(builder, namespace, "bearing", bearing, 12, BEARING_DECIMALS);
+		XmlFactory.appendDoubleTag(builder, namespace, "accuracy", accuracy, 12, ACCURACY_DECIMALS);
 		builder.append("</extensions>");
-		return builder.toString();
 	}
 	@Override
 	protected String extensionsAsCsv() {
 		StringBuilder builder = new StringBuilder();
-		builder.append(Util.doubleToString(this.speed, 12, SPEED_DECIMALS));
+		Util.appendDouble(builder, this.speed, 12, SPEED_DECIMALS);
 		builder.append(",");
-		builder.append(Util.doubleToString(this.bearing, 12, BEARING_DECIMALS));
+		Util.appendDouble(builder, this.bearing, 12, BEARING_DECIMALS);
 		builder.append(",");
-		builder.append(Util.doubleToString(this.accuracy, 12, ACCURACY_DECIMALS));
+		Util.appendDouble(builder, this.accuracy, 12, ACCURACY_DECIMALS);
 		return builder.toString();
 	}
 
@@ -8,6 +8,7 @@ import org.w3c.dom.Document;
 import com.mlab.gpx.api.GpxDocument;
 import com.mlab.gpx.api.GpxFactory;
 import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.stream.GpxWriter;
 import com.mlab.gpx.impl.util.XmlFactory;
 
 /**
@@ -36,13 +37,8 @@ import com.mlab.gpx.impl.util.XmlFactory;
 public class GpxDocumentImpl implements GpxDocument {	
 	private final String TAG_WAYPOINT = "wpt";
 	
-	final String HEAD = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>"+
-		"<gpx version=\"1.1\" creator=\"MercatorLab - http:mercatorlab.com\" "+
-		"xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" "+
-		"xmlns=\"http://www.topografix.com/GPX/1/1\" "+
-		"xsi:schemaLocation=\"http://www.topografix.com/GPX/1/1 http://www.topografix.com/GPX/1/1/gpx.xsd\" "+
-		"xmlns:mlab=\"http://mercatorlab.com/downloads/mlab.xsd\">";
-	final String FOOTER = "</gpx>";
+	final String HEAD = GpxWriter.HEAD;
+	final String FOOTER = GpxWriter.FOOTER;
 	
 	protected GpxFactory gpxFactory;
 	
@@ -217,36 +213,7 @@ public class GpxDocumentImpl implements GpxDocument {
 	 */
 	@Override
 	public String asGpx() {
-		String cad = "";
-		cad += HEAD;
-		
-		cad += this.metadata.asGpx();
-		
-		if(this.wpts.size()>0) {
-			for(int i=0; i<this.wpts.size(); i++) {
-				//System.out.println(this.wpts.get(i).asGpx());
-				cad += this.wpts.get(i).asGpx();
-			}
-		}
-
-		if(this.routes.size()>0) {
-			for(int i=0; i<this.routes.size(); i++) {
-				cad += this.routes.get(i).asGpx();
-			}
-		}
-		//System.out.println(cad);
-
-		if(this.tracks.size()>0) {
-			for(int i=0; i<this.tracks.size(); i++) {
-				cad += this.tracks.get(i).asGpx();
-			}
-		}
-		
-		// FIXME Falta resolver el elemento <extensions>
-		
-		
-		cad += FOOTER;
-		return cad;
+		return GpxWriter.asGpx(this);
 	}
 	
 	
@@ -0,0 +1,363 @@
+package com.mlab.gpx.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.w3c.dom.Document;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.stream.GpxElementIndex;
+import com.mlab.gpx.impl.stream.GpxIndex;
+import com.mlab.gpx.impl.util.Util;
+
+/**
+ * GpxDocument de solo lectura que no carga el fichero en memoria.<br/>
+ * Al abrirlo se construye un GpxIndex con la posición de cada 'wpt', 'rte'
+ * y 'trk'; getTrack(i), getRoute(i) y getWayPoint(i) leen del fichero solo
+ * el elemento pedido y lo guardan en una caché LRU de tamaño limitado.<br/>
+ * Los contadores (trackCount()...) y los datos del índice (número de puntos,
+ * tiempos inicial y final) no necesitan leer ningún elemento. Los métodos
+ * que devuelven las listas completas, asGpx() y getDomDocument() leen
+ * todos los elementos.<br/>
+ * Los métodos add y remove no modifican el documento y devuelven false;
+ * para editarlo hay que obtener un GpxDocument en memoria con toGpxDocument(),
+ * cuyos elementos se leen de nuevo y no se comparten con la caché.<br/>
+ * Los elementos se leen siempre del fichero indexado (getSourceFile());
+ * setGpxFile() solo cambia el fichero que devuelve getGpxFile().<br/>
+ * Los elementos 'metadata' y 'extensions' del documento no se leen.
+ *
+ * @author shiguera
+ *
+ */
+public class LazyGpxDocument implements GpxDocument {
+	private static final Logger LOG = Logger.getLogger(LazyGpxDocument.class.getName());
+
+	private static final String TAG_WAYPOINT = "wpt";
+	/**
+	 * Tamaño por defecto de la caché de cada tipo de elemento
+	 */
+	public static final int DEFAULT_CACHE_SIZE = 8;
+
+	private final GpxFactory gpxFactory;
+	private final GpxIndex index;
+	/**
+	 * Fichero del que se ha construido el índice
+	 */
+	private final File sourceFile;
+	private File gpxFile;
+
+	private final Map<Integer, Track> trackCache;
+	private final Map<Integer, Route> routeCache;
+	private final Map<Integer, WayPoint> wayPointCache;
+
+	/**
+	 * @param gpxFactory GpxFactory con el que se crean los elementos
+	 * @param gpxFile Fichero gpx
+	 * @param index GpxIndex del fichero
+	 * @param cacheSize Número máximo de elementos de cada tipo que se mantienen
+	 * en memoria
+	 */
+	public LazyGpxDocument(GpxFactory gpxFactory, File gpxFile, GpxIndex index, int cacheSize) {
+		this.gpxFactory = gpxFactory;
+		this.sourceFile = gpxFile;
+		this.gpxFile = gpxFile;
+		this.index = index;
+		int size = Math.max(1, cacheSize);
+		this.trackCache = new LruCache<Track>(size);
+		this.routeCache = new LruCache<Route>(size);
+		this.wayPointCache = new LruCache<WayPoint>(size);
+	}
+	public LazyGpxDocument(GpxFactory gpxFactory, File gpxFile, GpxIndex index) {
+		this(gpxFactory, gpxFile, index, DEFAULT_CACHE_SIZE);
+	}
+
+	/**
+	 * Abre un fichero gpx construyendo su índice
+	 * @param gpxFactory GpxFactory con el que se crean los elementos
+	 * @param gpxFile Fichero gpx
+	 * @param cacheSize Número máximo de elementos de cada tipo en memoria
+	 * @return LazyGpxDocument o null si no se puede indexar el fichero
+	 */
+	public static LazyGpxDocument open(GpxFactory gpxFactory, File gpxFile, int cacheSize) {
+		GpxIndex index = GpxIndex.build(gpxFile);
+		if(index == null) {
+			return null;
+		}
+		return new LazyGpxDocument(gpxFactory, gpxFile, index, cacheSize);
+	}
+
+	/**
+	 * Caché LRU con número máximo de entradas
+	 */
+	private static class LruCache<T> extends LinkedHashMap<Integer, T> {
+		private static final long serialVersionUID = 1L;
+		private final int maxSize;
+
+		LruCache(int maxSize) {
+			super(16, 0.75f, true);
+			this.maxSize = maxSize;
+		}
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<Integer, T> eldest) {
+			return size() > maxSize;
+		}
+	}
+
+	public GpxIndex getIndex() {
+		return index;
+	}
+	/**
+	 * Fichero indexado del que se leen los elementos
+	 */
+	public File getSourceFile() {
+		return sourceFile;
+	}
+
+	// Tracks
+	@Override
+	public synchronized Track getTrack(int i) {
+		Track track = trackCache.get(i);
+		if(track == null) {
+			track = readTrack(i);
+			if(track != null) {
+				trackCache.put(i, track);
+			}
+		}
+		return track;
+	}
+	private Track readTrack(int i) {
+		Reader reader = openElement(index.getTracks().get(i));
+		if(reader == null) {
+			return null;
+		}
+		Track track = gpxFactory.parseTrack(reader);
+		Util.close(reader);
+		return track;
+	}
+	@Override
+	public int trackCount() {
+		return index.getTracks().size();
+	}
+	@Override
+	public boolean hasTracks() {
+		return trackCount() > 0;
+	}
+	/**
+	 * Lee todos los tracks del documento
+	 */
+	@Override
+	public List<Track> getTracks() {
+		List<Track> list = new ArrayList<Track>();
+		for(int i=0; i<trackCount(); i++) {
+			Track track = getTrack(i);
+			if(track != null) {
+				list.add(track);
+			}
+		}
+		return list;
+	}
+	@Override
+	public boolean addTrack(Track track) {
+		return false;
+	}
+	@Override
+	public boolean removeTrack(Track track) {
+		return false;
+	}
+
+	// Routes
+	@Override
+	public synchronized Route getRoute(int i) {
+		Route route = routeCache.get(i);
+		if(route == null) {
+			route = readRoute(i);
+			if(route != null) {
+				routeCache.put(i, route);
+			}
+		}
+		return route;
+	}
+	private Route readRoute(int i) {
+		Reader reader = openElement(index.getRoutes().get(i));
+		if(reader == null) {
+			return null;
+		}
+		Route route = gpxFactory.parseRoute(reader);
+		Util.close(reader);
+		return route;
+	}
+	@Override
+	public int routeCount() {
+		return index.getRoutes().size();
+	}
+	@Override
+	public boolean hasRoutes() {
+		return routeCount() > 0;
+	}
+	/**
+	 * Lee todas las rutas del documento
+	 */
+	@Override
+	public List<Route> getRoutes() {
+		List<Route> list = new ArrayList<Route>();
+		for(int i=0; i<routeCount(); i++) {
+			Route route = getRoute(i);
+			if(route != null) {
+				list.add(route);
+			}
+		}
+		return list;
+	}
+	@Override
+	public boolean addRoute(Route rte) {
+		return false;
+	}
+	@Override
+	public boolean removeRoute(Route route) {
+		return false;
+	}
+
+	// WayPoints
+	@Override
+	public synchronized WayPoint getWayPoint(int i) {
+		WayPoint wp = wayPointCache.get(i);
+		if(wp == null) {
+			wp = readWayPoint(i);
+			if(wp != null) {
+				wayPointCache.put(i, wp);
+			}
+		}
+		return wp;
+	}
+	private WayPoint readWayPoint(int i) {
+		Reader reader = openElement(index.getWayPoints().get(i));
+		if(reader == null) {
+			return null;
+		}
+		WayPoint wp = gpxFactory.parseWayPoint(reader);
+		Util.close(reader);
+		if(wp != null) {
+			wp.setTag(TAG_WAYPOINT);
+		}
+		return wp;
+	}
+	@Override
+	public int wayPointCount() {
+		return index.getWayPoints().size();
+	}
+	@Override
+	public boolean hasWayPoints() {
+		return wayPointCount() > 0;
+	}
+	/**
+	 * Lee todos los WayPoint's individuales del documento
+	 */
+	@Override
+	public List<WayPoint> getWayPoints() {
+		List<WayPoint> list = new ArrayList<WayPoint>();
+		for(int i=0; i<wayPointCount(); i++) {
+			WayPoint wp = getWayPoint(i);
+			if(wp != null) {
+				list.add(wp);
+			}
+		}
+		return list;
+	}
+	@Override
+	public boolean addWayPoint(WayPoint wp) {
+		return false;
+	}
+	@Override
+	public boolean removeWayPoint(WayPoint wp) {
+		return false;
+	}
+
+	/**
+	 * Lee del fichero los bytes de un elemento
+	 * @return Reader sobre el elemento o null si hay errores
+	 */
+	private Reader openElement(GpxElementIndex entry) {
+		if(entry.getLength() > Integer.MAX_VALUE) {
+			LOG.warning("LazyGpxDocument: element too large "+entry);
+			return null;
+		}
+		byte[] bytes = new byte[(int)entry.getLength()];
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(sourceFile, "r");
+			raf.seek(entry.getOffset());
+			raf.readFully(bytes);
+		} catch (IOException e) {
+			LOG.warning("LazyGpxDocument.openElement() ERROR: "+e.getMessage());
+			return null;
+		} finally {
+			Util.close(raf);
+		}
+		return new InputStreamReader(new ByteArrayInputStream(bytes), index.getCharset());
+	}
+
+	/**
+	 * Crea un GpxDocument en memoria con todos los elementos del documento.
+	 * Los elementos se leen del fichero sin pasar por la caché, así que
+	 * editar la copia no cambia lo que devuelve este documento
+	 */
+	public GpxDocument toGpxDocument() {
+		GpxDocument doc = gpxFactory.createGpxDocument();
+		for(int i=0; i<wayPointCount(); i++) {
+			WayPoint wp = readWayPoint(i);
+			if(wp != null) {
+				doc.addWayPoint(wp);
+			}
+		}
+		for(int i=0; i<routeCount(); i++) {
+			Route route = readRoute(i);
+			if(route != null) {
+				doc.addRoute(route);
+			}
+		}
+		for(int i=0; i<trackCount(); i++) {
+			Track track = readTrack(i);
+			if(track != null) {
+				doc.addTrack(track);
+			}
+		}
+		doc.setGpxFile(gpxFile);
+		return doc;
+	}
+
+	@Override
+	public String asGpx() {
+		return toGpxDocument().asGpx();
+	}
+	@Override
+	public Document getDomDocument() {
+		return toGpxDocument().getDomDocument();
+	}
+	@Override
+	public Metadata getMetadata() {
+		return new Metadata();
+	}
+	@Override
+	public Extensions getExtensions() {
+		return new Extensions();
+	}
+	@Override
+	public File getGpxFile() {
+		return gpxFile;
+	}
+	@Override
+	public void setGpxFile(File gpxFile) {
+		this.gpxFile = gpxFile;
+	}
+}
@@ -1,6 +1,7 @@
 package com.mlab.gpx.impl;
 
 import com.mlab.gpx.api.CompositeGpxNode;
+import com.mlab.gpx.impl.util.XmlFactory;
 
 /**
  * Clase para el elemento metadata de un documento gpx.
@@ -52,7 +53,7 @@ public class Metadata extends CompositeGpxNode {
 		StringBuilder builder = new StringBuilder();
 		if(!name.isEmpty()) {
 			builder.append("<name>");
-			builder.append(this.name);
+			XmlFactory.appendEscaped(builder, this.name);
 			builder.append("</name>");
 		}		
 		return builder.toString();
@@ -61,7 +62,7 @@ public class Metadata extends CompositeGpxNode {
 		StringBuilder builder = new StringBuilder();
 		if(!desc.isEmpty()) {
 			builder.append("<desc>");
-			builder.append(this.desc);
+			XmlFactory.appendEscaped(builder, this.desc);
 			builder.append("</desc>");
 		}		
 		return builder.toString();
@@ -70,7 +71,7 @@ public class Metadata extends CompositeGpxNode {
 		StringBuilder builder = new StringBuilder();
 		if(!author.isEmpty()) {
 			builder.append("<author>");
-			builder.append(this.author);
+			XmlFactory.appendEscaped(builder, this.author);
 			builder.append("</author>");
 		}		
 		return builder.toString();
@@ -79,7 +80,7 @@ public class Metadata extends CompositeGpxNode {
 		StringBuilder builder = new StringBuilder();
 		if(!copyright.isEmpty()) {
 			builder.append("<copyright>");
-			builder.append(this.copyright);
+			XmlFactory.appendEscaped(builder, this.copyright);
 			builder.append("</copyright>");
 		}		
 		return builder.toString();
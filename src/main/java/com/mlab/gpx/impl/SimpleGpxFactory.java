@@ -2,6 +2,7 @@ package com.mlab.gpx.impl;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import org.w3c.dom.Document;
@@ -44,6 +45,15 @@ public class SimpleGpxFactory extends GpxFactory {
 		List<Double> res = new ArrayList<Double>();
 		return res;
 	}
+
+	/**
+	 * Versión en streaming de 'parseWayPointExtensions(Document)'.
+	 * Los SimpleWayPoint no tienen extensiones
+	 */
+	@Override
+	public List<Double> parseWayPointExtensions(Map<String, String> tags) {
+		return new ArrayList<Double>();
+	}
 	
 	
 }
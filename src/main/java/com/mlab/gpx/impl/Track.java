@@ -1,9 +1,4 @@
 package com.mlab.gpx.impl;
-import java.io.ByteArrayInputStream;
-import java.io.InputStream;
-
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
 
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
@@ -11,6 +6,8 @@ import org.w3c.dom.Element;
 import com.mlab.gpx.api.CompositeGpxNode;
 import com.mlab.gpx.api.GpxNode;
 import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.stream.GpxWriter;
+import com.mlab.gpx.impl.util.XmlFactory;
 
 /**
  * La clase Track guarda un track de un documento GpxDocument. Básicamente consiste
@@ -153,37 +150,12 @@ public class Track  extends CompositeGpxNode {
 		this.type = type;
 	}
 
+	/**
+	 * Cadena gpx '<trk>...</trk>'; ver GpxWriter
+	 */
 	@Override
 	public String asGpx() {
-		String cad="<trk>";
-		if(!this.name.equals("")) {
-			cad += "<name>"+this.name+"</name>";
-		}
-		if(!this.cmt.equals("")) {
-			cad += "<cmt>"+this.cmt+"</cmt>";
-		}
-		if(!this.desc.equals("")) {
-			cad += "<desc>"+this.desc+"</desc>";
-		}
-		if(!this.src.equals("")) {
-			cad += "<src>"+this.src+"</src>";
-		}
-		if(!this.link.equals("")) {
-			cad += "<link>"+this.link+"</link>";
-		}
-		if(this.number!=-1) {
-			cad += "<number>"+String.format("%d", this.number)+"</number>";
-		}
-		if(!this.type.equals("")) {
-			cad += "<type>"+this.type+"</type>";
-		}
-		if(this.size()>0) {
-			for(int i=0; i<this.size(); i++){
-				cad += this.nodes.get(i).asGpx();				
-			}
-		}
-		cad += "</trk>";
-		return cad;		
+		return GpxWriter.asGpx(this);
 	}
 	
 	public String asCsv(boolean withUtmCoords) {
@@ -348,22 +320,11 @@ public class Track  extends CompositeGpxNode {
 	
 
 	public Element asElement() {
-		DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-		DocumentBuilder dBuilder=null;
-		InputStream is = null;
-		Document doc = null;
-		Element el=null;
-		try {
-			dBuilder = dbFactory.newDocumentBuilder();
-		    is = new ByteArrayInputStream(this.asGpx().getBytes("UTF-8"));
-		    doc = dBuilder.parse(is);	
-			doc.getDocumentElement().normalize();
-			el=doc.getDocumentElement();
-		} catch (Exception e) {
-            e.printStackTrace();
-            return null;
-        }
-		return el;
+		Document doc = XmlFactory.parseXmlDocument(this.asGpx());
+		if(doc == null) {
+			return null;
+		}
+		return doc.getDocumentElement();
 	}
 
 	@Override
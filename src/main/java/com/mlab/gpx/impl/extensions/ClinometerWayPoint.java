@@ -75,15 +75,26 @@ public class ClinometerWayPoint extends AndroidWayPoint {
 	@Override
 	public String extensionsAsGpx() {
 		StringBuilder builder = new StringBuilder();
+		appendOwnExtensions(builder);
+		return builder.toString();
+	}
+	@Override
+	protected void appendExtensions(StringBuilder builder) {
+		if(getClass() == ClinometerWayPoint.class) {
+			appendOwnExtensions(builder);
+		} else {
+			builder.append(extensionsAsGpx());
+		}
+	}
+	private void appendOwnExtensions(StringBuilder builder) {
 		builder.append("<extensions>");
-		builder.append(XmlFactory.createDoubleTag(namespace, "speed", speed, 12, SPEED_DECIMALS));
-		builder.append(XmlFactory.createDoubleTag(namespace, "bearing", bearing, 12, BEARING_DECIMALS));
-		builder.append(XmlFactory.createDoubleTag(namespace, "accuracy", accuracy, 12, ACCURACY_DECIMALS));
-		builder.append(XmlFactory.createDoubleTag(namespace, "escora", escora, 12, ANGLE_DECIMALS));
-		builder.append(XmlFactory.createDoubleTag(namespace, "cabeceo", cabeceo, 12, ANGLE_DECIMALS));
-		builder.append(XmlFactory.createDoubleTag(namespace, "guinada", guinada, 12, ANGLE_DECIMALS));
+		XmlFactory.appendDoubleTag(builder, namespace, "speed", speed, 12, SPEED_DECIMALS);
+		XmlFactory.appendDoubleTag(builder, namespace, "bearing", bearing, 12, BEARING_DECIMALS);
+		XmlFactory.appendDoubleTag(builder, namespace, "accuracy", accuracy, 12, ACCURACY_DECIMALS);
+		XmlFactory.appendDoubleTag(builder, namespace, "escora", escora, 12, ANGLE_DECIMALS);
+		XmlFactory.appendDoubleTag(builder, namespace, "cabeceo", cabeceo, 12, ANGLE_DECIMALS);
+		XmlFactory.appendDoubleTag(builder, namespace, "guinada", guinada, 12, ANGLE_DECIMALS);
 		builder.append("</extensions>");
-		return builder.toString();
 	}
 	
 	@Override
@@ -92,11 +103,11 @@ public class ClinometerWayPoint extends AndroidWayPoint {
 		builder.append(super.asCsv(withUtmCoords));
 		//System.out.println(builder.toString());
 		builder.append(",");
-		builder.append(Util.doubleToString(this.escora, 12, ANGLE_DECIMALS));
+		Util.appendDouble(builder, this.escora, 12, ANGLE_DECIMALS);
 		builder.append(",");
-		builder.append(Util.doubleToString(this.cabeceo, 12, ANGLE_DECIMALS));
+		Util.appendDouble(builder, this.cabeceo, 12, ANGLE_DECIMALS);
 		builder.append(",");
-		builder.append(Util.doubleToString(this.guinada, 12, ANGLE_DECIMALS));
+		Util.appendDouble(builder, this.guinada, 12, ANGLE_DECIMALS);
 		return builder.toString();
 	}
 	public double getEscora() {
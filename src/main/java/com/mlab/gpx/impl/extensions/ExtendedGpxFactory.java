@@ -1,7 +1,7 @@
 package com.mlab.gpx.impl.extensions;
 
-import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
 import java.util.logging.Logger;
 
 import org.w3c.dom.Document;
@@ -11,6 +11,8 @@ import com.mlab.gpx.api.WayPoint;
 
 public class ExtendedGpxFactory extends GpxFactory {
 
+	private static final String[] EXTENSION_TAGS = new String[] {"mlab:speed", "mlab:bearing", "mlab:accuracy", "mlab:ax", "mlab:ay", "mlab:az", "mlab:pressure"};
+
 	private final Logger LOG = Logger.getLogger(getClass().getName());
 	
  	public ExtendedGpxFactory() {
@@ -50,17 +52,24 @@ public class ExtendedGpxFactory extends GpxFactory {
 	 */
 	@Override
 	public List<Double> parseWayPointExtensions(Document doc) {
-		//System.out.println("ExtendedGpxFactory.parseWayPointExtension()");
-		List<Double> list = new ArrayList<Double>();
-		list.add(Double.valueOf(this.parseDoubleTag(doc, "mlab:speed")));
-		list.add(Double.valueOf(this.parseDoubleTag(doc, "mlab:bearing")));
-		list.add(Double.valueOf(this.parseDoubleTag(doc, "mlab:accuracy")));				
-		list.add(Double.valueOf(this.parseDoubleTag(doc, "mlab:ax")));
-		list.add(Double.valueOf(this.parseDoubleTag(doc, "mlab:ay")));
-		list.add(Double.valueOf(this.parseDoubleTag(doc, "mlab:az")));
-		list.add(Double.valueOf(this.parseDoubleTag(doc, "mlab:pressure")));
-		
-		return list;
+		return ExtensionSchema.asList(getExtensionSchema().parse(doc));
+	}
+
+	/**
+	 * Extensiones que lee la factory, en el orden de los valores del WayPoint
+	 */
+	@Override
+	public String[] getExtensionTags() {
+		return EXTENSION_TAGS.clone();
+	}
+
+	/**
+	 * Versión en streaming de 'parseWayPointExtensions(Document)'. Recibe
+	 * el texto de las etiquetas del punto leido por el GpxStreamReader
+	 */
+	@Override
+	public List<Double> parseWayPointExtensions(Map<String, String> tags) {
+		return ExtensionSchema.asList(getExtensionSchema().parse(tags));
 	}
 	
 //	@Override
@@ -81,16 +81,27 @@ public class ExtendedWayPoint extends AndroidWayPoint {
 	@Override
 	public String extensionsAsGpx() {
 		StringBuilder builder = new StringBuilder();
+		appendOwnExtensions(builder);
+		return builder.toString();
+	}
+	@Override
+	protected void appendExtensions(StringBuilder builder) {
+		if(getClass() == ExtendedWayPoint.class) {
+			appendOwnExtensions(builder);
+		} else {
+			builder.append(extensionsAsGpx());
+		}
+	}
+	private void appendOwnExtensions(StringBuilder builder) {
 		builder.append("<extensions>");
-		builder.append(XmlFactory.createDoubleTag(namespace, "speed", speed, 12, SPEED_DECIMALS));
-		builder.append(XmlFactory.createDoubleTag(namespace, "bearing", bearing, 12, BEARING_DECIMALS));
-		builder.append(XmlFactory.createDoubleTag(namespace, "accuracy", accuracy, 12, ACCURACY_DECIMALS));
-		builder.append(XmlFactory.createDoubleTag(namespace, "ax", ax, 12, ACCELERATION_DECIMALS));
-		builder.append(XmlFactory.createDoubleTag(namespace, "ay", ay, 12, ACCELERATION_DECIMALS));
-		builder.append(XmlFactory.createDoubleTag(namespace, "az", az, 12, ACCELERATION_DECIMALS));
-		builder.append(XmlFactory.createDoubleTag(namespace, "pressure", pressure, 12, PRESSURE_DECIMALS));
+		XmlFactory.appendDoubleTag(builder, namespace, "speed", speed, 12, SPEED_DECIMALS);
+		XmlFactory.appendDoubleTag(builder, namespace, "bearing", bearing, 12, BEARING_DECIMALS);
+		XmlFactory.appendDoubleTag(builder, namespace, "accuracy", accuracy, 12, ACCURACY_DECIMALS);
+		XmlFactory.appendDoubleTag(builder, namespace, "ax", ax, 12, ACCELERATION_DECIMALS);
+		XmlFactory.appendDoubleTag(builder, namespace, "ay", ay, 12, ACCELERATION_DECIMALS);
+		XmlFactory.appendDoubleTag(builder, namespace, "az", az, 12, ACCELERATION_DECIMALS);
+		XmlFactory.appendDoubleTag(builder, namespace, "pressure", pressure, 12, PRESSURE_DECIMALS);
 		builder.append("</extensions>");
-		return builder.toString();
 	}
 	
 	@Override
@@ -99,13 +110,13 @@ public class ExtendedWayPoint extends AndroidWayPoint {
 		builder.append(super.asCsv(withUtmCoords));
 		//System.out.println(builder.toString());
 		builder.append(",");
-		builder.append(Util.doubleToString(this.ax, 12, ACCELERATION_DECIMALS));
+		Util.appendDouble(builder, this.ax, 12, ACCELERATION_DECIMALS);
 		builder.append(",");
-		builder.append(Util.doubleToString(this.ay, 12, ACCELERATION_DECIMALS));
+		Util.appendDouble(builder, this.ay, 12, ACCELERATION_DECIMALS);
 		builder.append(",");
-		builder.append(Util.doubleToString(this.az, 12, ACCELERATION_DECIMALS));
+		Util.appendDouble(builder, this.az, 12, ACCELERATION_DECIMALS);
 		builder.append(",");
-		builder.append(Util.doubleToString(this.pressure, 12, PRESSURE_DECIMALS));
+		Util.appendDouble(builder, this.pressure, 12, PRESSURE_DECIMALS);
 		return builder.toString();
 	}
 
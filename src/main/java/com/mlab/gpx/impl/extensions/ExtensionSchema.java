@@ -0,0 +1,156 @@
+package com.mlab.gpx.impl.extensions;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Node;
+
+import com.mlab.gpx.impl.util.DecimalParser;
+
+/**
+ * Tabla compilada de las extensiones numéricas de los WayPoint de una factory:
+ * asigna a cada nombre de etiqueta ('mlab:speed',...) su posición (slot) en
+ * el double[] de valores, en el orden de 'GpxFactory.getExtensionTags()'.<br/>
+ * Cada factory compila la suya una sola vez ('GpxFactory.getExtensionSchema()')
+ * y la comparten el GpxStreamReader, que rellena los slots según encuentra
+ * las etiquetas, y los métodos parseWayPointExtensions() de las factories,
+ * que recorren el Document o el Map del punto una sola vez sea cual sea el
+ * número de extensiones, en lugar de hacer un getElementsByTagName() por
+ * extensión.<br/>
+ * Es inmutable y se puede compartir entre threads. Las extensiones que
+ * no existen o no son números valen -1.0; si una etiqueta aparece varias
+ * veces vale la primera.
+ *
+ * @author shiguera
+ *
+ */
+public final class ExtensionSchema {
+	private static final Logger LOG = Logger.getLogger(ExtensionSchema.class.getName());
+
+	private static final double MISSING = -1.0;
+
+	private final String[] tags;
+	private final Map<String, Integer> slots;
+
+	/**
+	 * @param tags Nombres completos de las etiquetas, en el orden de los slots
+	 */
+	public ExtensionSchema(String[] tags) {
+		this.tags = tags.clone();
+		this.slots = new HashMap<String, Integer>(tags.length * 2);
+		for(int i=tags.length-1; i>=0; i--) {
+			slots.put(tags[i], Integer.valueOf(i));
+		}
+	}
+
+	/**
+	 * Número de slots
+	 */
+	public int size() {
+		return tags.length;
+	}
+	public String getTag(int slot) {
+		return tags[slot];
+	}
+	public String[] getTags() {
+		return tags.clone();
+	}
+	/**
+	 * Slot de una etiqueta
+	 * @param tag Nombre completo de la etiqueta
+	 * @return Slot o -1 si la etiqueta no es una extensión del esquema
+	 */
+	public int slotOf(String tag) {
+		Integer slot = slots.get(tag);
+		return (slot != null ? slot.intValue() : -1);
+	}
+
+	/**
+	 * double[] de size() elementos con todos los valores a -1.0
+	 */
+	public double[] newValues() {
+		double[] values = new double[tags.length];
+		Arrays.fill(values, MISSING);
+		return values;
+	}
+
+	/**
+	 * Lee las extensiones de un Document con un único recorrido del árbol
+	 * @param doc Document del punto
+	 * @return double[] con los valores en el orden de los slots
+	 */
+	public double[] parse(Document doc) {
+		double[] values = newValues();
+		if(doc == null || tags.length == 0) {
+			return values;
+		}
+		boolean[] found = new boolean[tags.length];
+		int pending = tags.length;
+		// Recorrido en orden de documento, como getElementsByTagName()
+		Node node = doc.getDocumentElement();
+		while(node != null && pending > 0) {
+			if(node.getNodeType() == Node.ELEMENT_NODE) {
+				int slot = slotOf(node.getNodeName());
+				if(slot >= 0 && !found[slot]) {
+					found[slot] = true;
+					pending--;
+					values[slot] = parseValue(node.getTextContent(), slot);
+				}
+			}
+			node = nextNode(node);
+		}
+		return values;
+	}
+	private static Node nextNode(Node node) {
+		if(node.getFirstChild() != null) {
+			return node.getFirstChild();
+		}
+		while(node != null) {
+			if(node.getNextSibling() != null) {
+				return node.getNextSibling();
+			}
+			node = node.getParentNode();
+		}
+		return null;
+	}
+	/**
+	 * Lee las extensiones del texto de las etiquetas de un punto
+	 * @param tagValues Texto de las etiquetas indexado por nombre
+	 * @return double[] con los valores en el orden de los slots
+	 */
+	public double[] parse(Map<String, String> tagValues) {
+		double[] values = newValues();
+		for(int i=0; i<tags.length; i++) {
+			String cad = tagValues.get(tags[i]);
+			if(cad != null) {
+				values[i] = parseValue(cad, i);
+			}
+		}
+		return values;
+	}
+	private double parseValue(CharSequence cad, int slot) {
+		try {
+			return DecimalParser.parseDouble(cad);
+		} catch (NumberFormatException e) {
+			LOG.warning("ExtensionSchema: can't parse number "+tags[slot]+"="+cad);
+			return MISSING;
+		}
+	}
+
+	/**
+	 * Convierte los valores al List&lt;Double&gt; que reciben
+	 * los createWayPoint() de las factories
+	 */
+	public static List<Double> asList(double[] values) {
+		List<Double> list = new ArrayList<Double>(values.length);
+		for(double value: values) {
+			list.add(Double.valueOf(value));
+		}
+		return list;
+	}
+}
@@ -15,6 +15,14 @@ import de.micromata.opengis.kml.v_2_2_0.Placemark;
 import de.micromata.opengis.kml.v_2_2_0.Style;
 import de.micromata.opengis.kml.v_2_2_0.StyleSelector;
 
+/**
+ * Construye objetos Kml de JAK a partir de elementos gpx. JAK es una
+ * dependencia opcional; para exportar documentos grandes sin crear el
+ * modelo de objetos se utiliza KmlWriter.
+ *
+ * @author shiguera
+ *
+ */
 public class Gpx2KmlFactory {
 
 	private final static int DEFAULT_PLACEMARK_IMAGE_WITH = 400;
@@ -0,0 +1,337 @@
+package com.mlab.gpx.impl.kml;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import com.mlab.gpx.api.CompositeGpxNode;
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxNode;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.Route;
+import com.mlab.gpx.impl.Track;
+import com.mlab.gpx.impl.TrackSegment;
+import com.mlab.gpx.impl.util.BufferedTextWriter;
+import com.mlab.gpx.impl.util.DecimalFormatter;
+import com.mlab.gpx.impl.util.GpxTimeCodec;
+import com.mlab.gpx.impl.util.XmlFactory;
+
+/**
+ * Escribe documentos KML o KMZ de forma incremental, sin el modelo de
+ * objetos de JAK (Gpx2KmlFactory), así que la memoria utilizada no depende
+ * del número de puntos.<br/>
+ * El texto se acumula en un BufferedTextWriter. Las coordenadas se escriben
+ * con DecimalFormatter: 6 decimales para longitud y latitud y 2 para la
+ * altitud y los TimeStamp en ISO-8601 con milisegundos.<br/>
+ * writeDocument() escribe un GpxDocument completo: los estilos por defecto,
+ * los wpt como Placemark con Point, cada Route como Placemark con LineString
+ * y cada Track como Placemark con un LineString por TrackSegment (MultiGeometry
+ * si tiene varios). También se puede escribir por partes: writeStartDocument(),
+ * writeLineStyle(), writeIconStyle(), writeWayPoint(), writeRoute(),
+ * writeTrack(), writeTrackSegment() y writeEndDocument().<br/>
+ * Los LineString necesitan al menos dos puntos; los segmentos y rutas con
+ * menos se ignoran. createKmz() escribe el documento como 'doc.kml' dentro
+ * de un fichero KMZ. No es thread-safe.
+ *
+ * @author shiguera
+ *
+ */
+public class KmlWriter implements Closeable, Flushable {
+
+	public static final String HEAD = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"+
+		"<kml xmlns=\"http://www.opengis.net/kml/2.2\">";
+	public static final String FOOTER = "</kml>";
+
+	/**
+	 * Identificadores de los estilos que escribe writeDocument()
+	 */
+	public static final String TRACK_STYLE = "trackStyle";
+	public static final String ROUTE_STYLE = "routeStyle";
+	public static final String WAYPOINT_STYLE = "wayPointStyle";
+
+	/**
+	 * Nombre del documento KML dentro de un KMZ
+	 */
+	public static final String KMZ_ENTRY = "doc.kml";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int COORDINATE_DECIMALS = 6;
+	private static final int ALTITUDE_DECIMALS = 2;
+
+	private final BufferedTextWriter out;
+	private final StringBuilder buffer;
+
+	/**
+	 * @param writer Writer destino. Se cierra con close()
+	 */
+	public KmlWriter(Writer writer) {
+		this.out = new BufferedTextWriter(writer);
+		this.buffer = out.getBuffer();
+	}
+	/**
+	 * Escribe en UTF-8
+	 * @param outputStream OutputStream destino. Se cierra con close()
+	 */
+	public KmlWriter(OutputStream outputStream) {
+		this(new OutputStreamWriter(outputStream, UTF8));
+	}
+
+	/**
+	 * KmlWriter que escribe un fichero KMZ con una única entrada 'doc.kml'.
+	 * close() termina el fichero zip y cierra el OutputStream
+	 */
+	public static KmlWriter createKmz(OutputStream outputStream) throws IOException {
+		ZipOutputStream zip = new ZipOutputStream(outputStream);
+		zip.putNextEntry(new ZipEntry(KMZ_ENTRY));
+		return new KmlWriter(zip);
+	}
+
+	/**
+	 * Escribe el documento completo con los estilos por defecto y vacía el
+	 * destino, sin cerrarlo. Los elementos se piden uno a uno, así que con un
+	 * LazyGpxDocument solo está en memoria el elemento que se escribe.
+	 * @param gpxDoc GpxDocument
+	 * @param name Nombre del documento KML
+	 */
+	public void writeDocument(GpxDocument gpxDoc, String name) throws IOException {
+		writeStartDocument(name);
+		writeLineStyle(TRACK_STYLE, "7f0000ff", 4.0);
+		writeLineStyle(ROUTE_STYLE, "7fff0000", 3.0);
+		writeIconStyle(WAYPOINT_STYLE, "ff00ffff", 1.0);
+		int count = gpxDoc.wayPointCount();
+		if(count > 0) {
+			writeStartFolder("Waypoints");
+			for(int i=0; i<count; i++) {
+				writeWayPoint(gpxDoc.getWayPoint(i), WAYPOINT_STYLE);
+			}
+			writeEndFolder();
+		}
+		count = gpxDoc.routeCount();
+		for(int i=0; i<count; i++) {
+			writeRoute(gpxDoc.getRoute(i), "Route "+(i+1), ROUTE_STYLE);
+		}
+		count = gpxDoc.trackCount();
+		for(int i=0; i<count; i++) {
+			writeTrack(gpxDoc.getTrack(i), TRACK_STYLE);
+		}
+		writeEndDocument();
+		flush();
+	}
+	/**
+	 * Escribe la cabecera xml y la apertura de 'kml' y 'Document'
+	 * @param name Nombre del documento o null
+	 */
+	public void writeStartDocument(String name) throws IOException {
+		buffer.append(HEAD).append("<Document>");
+		appendText("name", name);
+		buffer.append("<open>1</open>");
+	}
+	/**
+	 * Escribe el cierre de 'Document' y 'kml'
+	 */
+	public void writeEndDocument() throws IOException {
+		buffer.append("</Document>").append(FOOTER);
+		out.drain();
+	}
+	public void writeStartFolder(String name) throws IOException {
+		buffer.append("<Folder>");
+		appendText("name", name);
+	}
+	public void writeEndFolder() throws IOException {
+		buffer.append("</Folder>");
+		out.drain();
+	}
+	/**
+	 * Escribe un Style con un LineStyle
+	 * @param id Identificador del estilo
+	 * @param color Color KML 'aabbggrr'
+	 * @param width Ancho de la línea
+	 */
+	public void writeLineStyle(String id, String color, double width) throws IOException {
+		appendStartStyle(id);
+		buffer.append("<LineStyle><color>");
+		XmlFactory.appendEscaped(buffer, color);
+		buffer.append("</color><width>");
+		DecimalFormatter.append(buffer, width, 1);
+		buffer.append("</width></LineStyle></Style>");
+	}
+	/**
+	 * Escribe un Style con un IconStyle, con el icono por defecto
+	 * @param id Identificador del estilo
+	 * @param color Color KML 'aabbggrr'
+	 * @param scale Escala del icono
+	 */
+	public void writeIconStyle(String id, String color, double scale) throws IOException {
+		appendStartStyle(id);
+		buffer.append("<IconStyle><color>");
+		XmlFactory.appendEscaped(buffer, color);
+		buffer.append("</color><scale>");
+		DecimalFormatter.append(buffer, scale, 1);
+		buffer.append("</scale></IconStyle></Style>");
+	}
+	/**
+	 * Escribe un Placemark con un Point
+	 * @param wp WayPoint
+	 * @param styleId Identificador del estilo o null
+	 */
+	public void writeWayPoint(WayPoint wp, String styleId) throws IOException {
+		if(wp == null) {
+			return;
+		}
+		buffer.append("<Placemark>");
+		appendText("name", wp.getName());
+		appendText("description", wp.getDescription());
+		if(wp.getTime() >= 0L) {
+			buffer.append("<TimeStamp><when>");
+			GpxTimeCodec.appendIsoTo(buffer, wp.getTime());
+			buffer.append("</when></TimeStamp>");
+		}
+		appendStyleUrl(styleId);
+		buffer.append("<Point><coordinates>");
+		appendCoordinates(wp);
+		buffer.append("</coordinates></Point></Placemark>");
+		out.drain();
+	}
+	/**
+	 * Escribe un Placemark con un LineString
+	 * @param name Nombre del Placemark o null
+	 */
+	public void writeRoute(Route route, String name, String styleId) throws IOException {
+		writeLineString(route, name, styleId);
+	}
+	/**
+	 * Escribe un Placemark con un LineString
+	 * @param name Nombre del Placemark o null
+	 */
+	public void writeTrackSegment(TrackSegment segment, String name, String styleId) throws IOException {
+		writeLineString(segment, name, styleId);
+	}
+	/**
+	 * Escribe un Placemark con el nombre y la descripción del Track y un
+	 * LineString por cada TrackSegment de dos o más puntos, en un
+	 * MultiGeometry si hay más de uno
+	 */
+	public void writeTrack(Track track, String styleId) throws IOException {
+		if(track == null) {
+			return;
+		}
+		int lines = 0;
+		int count = track.segmentsCount();
+		for(int i=0; i<count; i++) {
+			if(isLine(track.getTrackSegment(i))) {
+				lines++;
+			}
+		}
+		if(lines == 0) {
+			return;
+		}
+		buffer.append("<Placemark>");
+		appendText("name", track.getName());
+		appendText("description", track.getDesc());
+		appendStyleUrl(styleId);
+		if(lines > 1) {
+			buffer.append("<MultiGeometry>");
+		}
+		for(int i=0; i<count; i++) {
+			TrackSegment segment = track.getTrackSegment(i);
+			if(isLine(segment)) {
+				appendLineString(segment);
+			}
+		}
+		if(lines > 1) {
+			buffer.append("</MultiGeometry>");
+		}
+		buffer.append("</Placemark>");
+		out.drain();
+	}
+
+	/**
+	 * Vuelca el buffer en el destino y lo vacía
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+	/**
+	 * Vuelca el buffer y cierra el destino
+	 */
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	private void writeLineString(CompositeGpxNode node, String name, String styleId) throws IOException {
+		if(!isLine(node)) {
+			return;
+		}
+		buffer.append("<Placemark>");
+		appendText("name", name);
+		appendStyleUrl(styleId);
+		appendLineString(node);
+		buffer.append("</Placemark>");
+		out.drain();
+	}
+	private void appendLineString(CompositeGpxNode node) throws IOException {
+		buffer.append("<LineString><tessellate>1</tessellate><coordinates>");
+		int count = node.size();
+		for(int i=0; i<count; i++) {
+			GpxNode point = node.get(i);
+			if(point instanceof WayPoint) {
+				appendCoordinates((WayPoint)point);
+				buffer.append(' ');
+				out.drain();
+			}
+		}
+		buffer.append("</coordinates></LineString>");
+	}
+	private static boolean isLine(CompositeGpxNode node) {
+		return node != null && node.size() >= 2;
+	}
+	private void appendCoordinates(WayPoint wp) {
+		DecimalFormatter.append(buffer, wp.getLongitude(), COORDINATE_DECIMALS);
+		buffer.append(',');
+		DecimalFormatter.append(buffer, wp.getLatitude(), COORDINATE_DECIMALS);
+		buffer.append(',');
+		DecimalFormatter.append(buffer, wp.getAltitude(), ALTITUDE_DECIMALS);
+	}
+	private void appendStartStyle(String id) {
+		buffer.append("<Style id=\"");
+		appendAttribute(id);
+		buffer.append("\">");
+	}
+	private void appendStyleUrl(String styleId) {
+		if(styleId != null && !styleId.isEmpty()) {
+			buffer.append("<styleUrl>#");
+			XmlFactory.appendEscaped(buffer, styleId);
+			buffer.append("</styleUrl>");
+		}
+	}
+	private void appendText(String tag, String text) {
+		if(text != null && !text.isEmpty()) {
+			buffer.append('<').append(tag).append('>');
+			XmlFactory.appendEscaped(buffer, text);
+			buffer.append("</").append(tag).append('>');
+		}
+	}
+	private void appendAttribute(String text) {
+		int length = text.length();
+		for(int i=0; i<length; i++) {
+			char c = text.charAt(i);
+			if(c == '"') {
+				buffer.append("&quot;");
+			} else if(c == '&') {
+				buffer.append("&amp;");
+			} else if(c == '<') {
+				buffer.append("&lt;");
+			} else {
+				buffer.append(c);
+			}
+		}
+	}
+}
@@ -17,6 +17,17 @@ public abstract class Ellipsoid {
 	 * @return double[] con la xutm y la yutm
 	 */
 	public double[] proyUTM(double longitude, double latitude) {
+		return proyUTM(longitude, latitude, new double[2]);
+	}
+	/**
+	 * Obtiene la proyección UTM de un punto en un array que se puede reutilizar
+	 * entre puntos
+	 * @param longitude 
+	 * @param latitude
+	 * @param xy double[2] en el que se guardan la xutm y la yutm
+	 * @return el mismo array xy
+	 */
+	public double[] proyUTM(double longitude, double latitude, double[] xy) {
 		double lonrad = longitude * Math.PI / 180.0;
 		//System.out.println("lonrad = "+lonrad);
 		double latrad = latitude * Math.PI / 180.0;
@@ -61,7 +72,8 @@ public abstract class Ellipsoid {
 			y += 10000000.0;
 		}
 		
-		double[] xy = new double[] {x,y};
+		xy[0] = x;
+		xy[1] = y;
 		return xy;
 	}
 	
@@ -2,6 +2,12 @@ package com.mlab.gpx.impl.srs;
 
 public class EllipsoidWGS84 extends Ellipsoid {
 
+	/**
+	 * Instancia compartida. El elipsoide no tiene estado, así que se puede
+	 * utilizar desde cualquier thread
+	 */
+	public static final EllipsoidWGS84 WGS84 = new EllipsoidWGS84();
+
 	private final String NAME = "WGS84";
 	private final double a = 6378137.0;
 	private final double b = 6356752.3142;
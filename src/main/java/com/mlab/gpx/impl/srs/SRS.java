@@ -3,6 +3,8 @@ package com.mlab.gpx.impl.srs;
 import java.util.Calendar;
 import java.util.TimeZone;
 
+import com.mlab.gpx.impl.util.DecimalFormatter;
+
 
 public class SRS {
 
@@ -16,11 +18,7 @@ public class SRS {
 	}
 	
 	public static String doubleToString(double value, int digits, int decimals) {
-		return String.format(cadFormatDouble(digits,decimals),value).trim().replace(',', '.');
-	}
-	private static String cadFormatDouble(int digits, int decimals) {
-		String cadformat = "%"+String.format("%d.%d", digits, decimals)+"f";
-		return cadformat;
+		return DecimalFormatter.format(value, decimals);
 	}
 
 	public static double round(double d, int decimals) {
@@ -0,0 +1,294 @@
+package com.mlab.gpx.impl.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.logging.Logger;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxProgressListener;
+import com.mlab.gpx.impl.util.GpxCompression;
+import com.mlab.gpx.impl.util.Util;
+
+/**
+ * Lectura asíncrona de documentos gpx. Los métodos devuelven enseguida un
+ * CompletableFuture&lt;GpxDocument&gt; y la lectura se hace en el Executor
+ * indicado, sin bloquear el thread que llama:
+ * <ul>
+ * <li>read(Path) lee el fichero con un AsynchronousFileChannel, de modo
+ * que ningún thread queda bloqueado mientras se espera al disco, y después
+ * parsea los bytes en el Executor.</li>
+ * <li>read(InputStreamSupplier) abre el InputStream y lo parsea en el
+ * Executor, para fuentes que no son ficheros (peticiones http...).</li>
+ * </ul>
+ * Cancelar el future con cancel() detiene la lectura en el siguiente bloque
+ * de bytes. El GpxProgressListener, si no es null, recibe los bytes leídos.<br/>
+ * Los documentos comprimidos (gzip, deflate o zip) se descomprimen en
+ * streaming; ver GpxCompression. El progreso se refiere a los bytes comprimidos.<br/>
+ * El future se completa con null si el documento no es gpx válido, como
+ * GpxFactory.parseGpxDocument(), y excepcionalmente si no se puede leer o
+ * si la lectura lanza cualquier otra excepción.
+ *
+ * @author shiguera
+ *
+ */
+public class AsyncGpxReader {
+	private static final Logger LOG = Logger.getLogger(AsyncGpxReader.class.getName());
+
+	/**
+	 * Tamaño de los bloques de lectura y frecuencia de los avisos de progreso
+	 */
+	private static final int BLOCK_SIZE = 1 << 16;
+
+	/**
+	 * Proporciona el InputStream del que se lee. Se llama desde el Executor,
+	 * así que puede bloquear
+	 */
+	public interface InputStreamSupplier {
+		InputStream open() throws IOException;
+	}
+
+	private final GpxFactory factory;
+	private final Executor executor;
+	private final GpxProgressListener listener;
+
+	/**
+	 * @param factory GpxFactory con la que se parsea el documento
+	 * @param executor Executor en el que se parsea. Si es un ExecutorService,
+	 * se utiliza también para los callbacks del AsynchronousFileChannel
+	 * @param listener GpxProgressListener o null
+	 */
+	public AsyncGpxReader(GpxFactory factory, Executor executor, GpxProgressListener listener) {
+		this.factory = factory;
+		this.executor = executor;
+		this.listener = listener;
+	}
+
+	/**
+	 * Lee un fichero gpx con un AsynchronousFileChannel
+	 * @param path Path del fichero, de menos de 2GB
+	 * @return CompletableFuture con el GpxDocument
+	 */
+	public CompletableFuture<GpxDocument> read(Path path) {
+		final CompletableFuture<GpxDocument> future = new CompletableFuture<GpxDocument>();
+		AsynchronousFileChannel channel = null;
+		try {
+			if(executor instanceof ExecutorService) {
+				channel = AsynchronousFileChannel.open(path,
+					Collections.singleton(StandardOpenOption.READ), (ExecutorService)executor);
+			} else {
+				channel = AsynchronousFileChannel.open(path, StandardOpenOption.READ);
+			}
+			long size = channel.size();
+			if(size > Integer.MAX_VALUE) {
+				throw new IOException("file too large "+path);
+			}
+			ByteBuffer buffer = ByteBuffer.allocate((int)size);
+			new ChannelReader(channel, buffer, future, path.toFile()).readNext();
+		} catch (IOException | RuntimeException e) {
+			LOG.warning("AsyncGpxReader.read() ERROR: "+e.getMessage());
+			Util.close(channel);
+			future.completeExceptionally(e);
+		}
+		return future;
+	}
+
+	/**
+	 * Abre y lee el InputStream en el Executor
+	 * @param supplier Proporciona el InputStream, que se cierra al terminar
+	 * @param totalBytes Tamaño del documento para el GpxProgressListener o -1
+	 * @return CompletableFuture con el GpxDocument
+	 */
+	public CompletableFuture<GpxDocument> read(final InputStreamSupplier supplier, final long totalBytes) {
+		final CompletableFuture<GpxDocument> future = new CompletableFuture<GpxDocument>();
+		execute(future, new Runnable() {
+			@Override
+			public void run() {
+				if(future.isDone()) {
+					return;
+				}
+				InputStream is = null;
+				try {
+					is = supplier.open();
+					try (InputStream decompressed = GpxCompression.decompress(
+							new ProgressInputStream(is, future, listener, totalBytes))) {
+						parse(decompressed, future, null);
+					}
+				} catch (Throwable e) {
+					future.completeExceptionally(e);
+				} finally {
+					Util.close(is);
+				}
+			}
+		});
+		return future;
+	}
+
+	private void execute(CompletableFuture<GpxDocument> future, Runnable task) {
+		try {
+			executor.execute(task);
+		} catch (RejectedExecutionException e) {
+			future.completeExceptionally(e);
+		}
+	}
+	/**
+	 * Parsea el documento y completa el future
+	 * @param gpxFile Fichero del documento o null
+	 */
+	private void parse(InputStream is, CompletableFuture<GpxDocument> future, File gpxFile) {
+		if(future.isDone()) {
+			return;
+		}
+		GpxDocument doc = factory.parseGpxDocument(is);
+		if(doc != null && gpxFile != null) {
+			doc.setGpxFile(gpxFile);
+		}
+		future.complete(doc);
+	}
+
+	/**
+	 * Encadena las lecturas asíncronas del canal hasta llenar el buffer
+	 */
+	private class ChannelReader implements CompletionHandler<Integer, Void> {
+		private final AsynchronousFileChannel channel;
+		private final ByteBuffer buffer;
+		private final CompletableFuture<GpxDocument> future;
+		private final File gpxFile;
+
+		ChannelReader(AsynchronousFileChannel channel, ByteBuffer buffer,
+				CompletableFuture<GpxDocument> future, File gpxFile) {
+			this.channel = channel;
+			this.buffer = buffer;
+			this.future = future;
+			this.gpxFile = gpxFile;
+		}
+		void readNext() {
+			if(future.isDone()) {
+				Util.close(channel);
+				return;
+			}
+			if(!buffer.hasRemaining()) {
+				Util.close(channel);
+				parseBuffer();
+				return;
+			}
+			ByteBuffer block = buffer.duplicate();
+			block.limit(Math.min(buffer.capacity(), buffer.position() + BLOCK_SIZE));
+			channel.read(block, buffer.position(), null, this);
+		}
+		@Override
+		public void completed(Integer count, Void attachment) {
+			// Lo que escape de aquí lo descarta el grupo del canal
+			// y el future no se completaría nunca
+			try {
+				if(count.intValue() < 0) {
+					// El fichero ha disminuido de tamaño
+					buffer.limit(buffer.position());
+				} else {
+					buffer.position(buffer.position() + count.intValue());
+					if(listener != null) {
+						listener.onProgress(buffer.position(), buffer.capacity());
+					}
+				}
+				readNext();
+			} catch (Throwable e) {
+				failed(e, attachment);
+			}
+		}
+		@Override
+		public void failed(Throwable exc, Void attachment) {
+			Util.close(channel);
+			future.completeExceptionally(exc);
+		}
+		private void parseBuffer() {
+			execute(future, new Runnable() {
+				@Override
+				public void run() {
+					InputStream is = new ProgressInputStream(new ByteArrayInputStream(buffer.array(), 0,
+						buffer.position()), future, null, -1L);
+					try (InputStream decompressed = GpxCompression.decompress(is)) {
+						parse(decompressed, future, gpxFile);
+					} catch (Throwable e) {
+						future.completeExceptionally(e);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * InputStream que informa del progreso y se interrumpe
+	 * si el future se completa o se cancela
+	 */
+	private static class ProgressInputStream extends FilterInputStream {
+		private final CompletableFuture<?> future;
+		private final GpxProgressListener listener;
+		private final long totalBytes;
+		private long bytesRead;
+		private long lastReport;
+
+		ProgressInputStream(InputStream in, CompletableFuture<?> future,
+				GpxProgressListener listener, long totalBytes) {
+			super(in);
+			this.future = future;
+			this.listener = listener;
+			this.totalBytes = totalBytes;
+			this.bytesRead = 0L;
+			this.lastReport = 0L;
+		}
+		/**
+		 * Sin mark(), para que reset() no cuente dos veces los mismos bytes
+		 */
+		@Override
+		public boolean markSupported() {
+			return false;
+		}
+		@Override
+		public int read() throws IOException {
+			checkCancelled();
+			int b = super.read();
+			if(b >= 0) {
+				advance(1);
+			}
+			return b;
+		}
+		@Override
+		public int read(byte[] b, int off, int len) throws IOException {
+			checkCancelled();
+			int count = super.read(b, off, len);
+			if(count > 0) {
+				advance(count);
+			} else if(count < 0 && listener != null && lastReport != bytesRead) {
+				lastReport = bytesRead;
+				listener.onProgress(bytesRead, totalBytes);
+			}
+			return count;
+		}
+		private void checkCancelled() throws IOException {
+			if(future.isDone()) {
+				throw new IOException("AsyncGpxReader: read cancelled", new CancellationException());
+			}
+		}
+		private void advance(int count) {
+			bytesRead += count;
+			if(listener != null && (bytesRead - lastReport >= BLOCK_SIZE || bytesRead == totalBytes)) {
+				lastReport = bytesRead;
+				listener.onProgress(bytesRead, totalBytes);
+			}
+		}
+	}
+}
@@ -0,0 +1,423 @@
+package com.mlab.gpx.impl.stream;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import com.mlab.gpx.api.AbstractGpxHandler;
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxHandler;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.Track;
+import com.mlab.gpx.impl.TrackSegment;
+import com.mlab.gpx.impl.extensions.ExtensionSchema;
+import com.mlab.gpx.impl.srs.EllipsoidWGS84;
+import com.mlab.gpx.impl.util.BufferedTextWriter;
+import com.mlab.gpx.impl.util.DecimalFormatter;
+import com.mlab.gpx.impl.util.GpxTimeCodec;
+import com.mlab.gpx.impl.util.Util;
+
+/**
+ * Exporta los puntos de los tracks a csv, fila a fila, en un Writer o un
+ * OutputStream (UTF-8), con un BufferedTextWriter.<br/>
+ * Las columnas se eligen con una lista de Column: tiempo gpx, tiempo en
+ * milisegundos, longitud, latitud, altitud, coordenadas UTM, canales de
+ * extensión y velocidad y rumbo calculados con el punto anterior del mismo
+ * segmento. La proyección UTM utiliza un único elipsoide y un único array
+ * para todas las filas.<br/>
+ * Los puntos se pueden escribir desde un GpxDocument, un Track, un
+ * TrackSegment o, sin construir el documento, desde 'GpxFactory.parse()'
+ * con el GpxHandler de asGpxHandler(). No es thread-safe.
+ *
+ * @author shiguera
+ *
+ */
+public class CsvTrackWriter implements Closeable, Flushable {
+
+	/**
+	 * Columna del csv: tipo, nombre en la cabecera y número de decimales.
+	 * Es inmutable
+	 */
+	public static final class Column {
+
+		public enum Type {TIME, EPOCH, LONGITUDE, LATITUDE, ELEVATION, UTM_X, UTM_Y,
+			SPEED, BEARING, EXTENSION}
+
+		/**
+		 * Tiempo en formato gpx, 'yyyy-MM-ddTHH:mm:ss.ssZ'
+		 */
+		public static final Column TIME = new Column(Type.TIME, "time", 0, -1);
+		/**
+		 * Tiempo en milisegundos UTC
+		 */
+		public static final Column EPOCH = new Column(Type.EPOCH, "epoch", 0, -1);
+		public static final Column LONGITUDE = new Column(Type.LONGITUDE, "lon", 6, -1);
+		public static final Column LATITUDE = new Column(Type.LATITUDE, "lat", 6, -1);
+		public static final Column ELEVATION = new Column(Type.ELEVATION, "ele", 2, -1);
+		public static final Column UTM_X = new Column(Type.UTM_X, "utm_x", 2, -1);
+		public static final Column UTM_Y = new Column(Type.UTM_Y, "utm_y", 2, -1);
+		/**
+		 * Velocidad en m/sg desde el punto anterior del segmento (Util.speed()),
+		 * o -1.0 en el primer punto
+		 */
+		public static final Column SPEED = new Column(Type.SPEED, "speed", 2, -1);
+		/**
+		 * Rumbo en grados desde el punto anterior del segmento (Util.bearing()),
+		 * o -1.0 en el primer punto
+		 */
+		public static final Column BEARING = new Column(Type.BEARING, "bearing", 1, -1);
+
+		/**
+		 * Columnas de 'AbstractWayPoint.asCsv(false)' sin las extensiones
+		 */
+		public static final List<Column> BASIC = Collections.unmodifiableList(Arrays.asList(
+			TIME, EPOCH, LONGITUDE, LATITUDE, ELEVATION));
+
+		private final Type type;
+		private final String name;
+		private final int decimals;
+		private final int index;
+
+		private Column(Type type, String name, int decimals, int index) {
+			this.type = type;
+			this.name = name;
+			this.decimals = decimals;
+			this.index = index;
+		}
+
+		/**
+		 * Canal de extensión
+		 * @param name Nombre en la cabecera
+		 * @param index Posición de la extensión: la de 'GpxFactory.getExtensionTags()'
+		 * y la de WayPoint.getValues() menos 3
+		 * @param decimals Número de decimales
+		 */
+		public static Column extension(String name, int index, int decimals) {
+			if(index < 0) {
+				throw new IllegalArgumentException("Negative extension index: "+index);
+			}
+			return new Column(Type.EXTENSION, name, decimals, index);
+		}
+		/**
+		 * Columnas de todas las extensiones de un ExtensionSchema, con el
+		 * nombre de la etiqueta sin prefijo ('mlab:speed' -> 'speed')
+		 */
+		public static List<Column> extensions(ExtensionSchema schema, int decimals) {
+			List<Column> columns = new ArrayList<Column>();
+			for(int i=0; i<schema.size(); i++) {
+				String tag = schema.getTag(i);
+				columns.add(extension(tag.substring(tag.indexOf(':')+1), i, decimals));
+			}
+			return columns;
+		}
+		/**
+		 * La misma columna con otro número de decimales
+		 */
+		public Column withDecimals(int decimals) {
+			return new Column(type, name, decimals, index);
+		}
+		/**
+		 * La misma columna con otro nombre en la cabecera
+		 */
+		public Column withName(String name) {
+			return new Column(type, name, decimals, index);
+		}
+
+		public Type getType() {
+			return type;
+		}
+		public String getName() {
+			return name;
+		}
+		public int getDecimals() {
+			return decimals;
+		}
+		/**
+		 * Posición de la extensión o -1 si no es una columna de extensión
+		 */
+		public int getIndex() {
+			return index;
+		}
+		@Override
+		public String toString() {
+			return name;
+		}
+	}
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private final BufferedTextWriter out;
+	private final Column[] columns;
+	private final boolean withHeader;
+	private final boolean needsUtm;
+	private final boolean needsExtensions;
+	private final StringBuilder buffer;
+	private final double[] xy;
+	private char delimiter;
+	private boolean headerWritten;
+	private long rowCount;
+
+	// Punto anterior del segmento, para SPEED y BEARING
+	private boolean hasPrevious;
+	private long previousTime;
+	private double previousLongitude, previousLatitude, previousAltitude;
+
+	/**
+	 * Error de escritura durante el GpxHandler; se lanza en flush() y close()
+	 */
+	private IOException pendingException;
+
+	/**
+	 * @param writer Writer destino. Se cierra con close()
+	 * @param columns Columnas del csv, en orden
+	 * @param withHeader true para escribir una primera fila con los nombres
+	 * de las columnas
+	 */
+	public CsvTrackWriter(Writer writer, List<Column> columns, boolean withHeader) {
+		if(columns == null || columns.isEmpty()) {
+			throw new IllegalArgumentException("CsvTrackWriter needs at least one column");
+		}
+		this.out = new BufferedTextWriter(writer);
+		this.columns = columns.toArray(new Column[columns.size()]);
+		this.withHeader = withHeader;
+		boolean utm = false;
+		boolean extensions = false;
+		for(Column column: this.columns) {
+			utm |= (column.type == Column.Type.UTM_X || column.type == Column.Type.UTM_Y);
+			extensions |= (column.type == Column.Type.EXTENSION);
+		}
+		this.needsUtm = utm;
+		this.needsExtensions = extensions;
+		this.buffer = out.getBuffer();
+		this.xy = new double[2];
+		this.delimiter = ',';
+		this.headerWritten = false;
+		this.rowCount = 0L;
+		this.hasPrevious = false;
+	}
+	/**
+	 * Escribe en UTF-8
+	 * @param outputStream OutputStream destino. Se cierra con close()
+	 */
+	public CsvTrackWriter(OutputStream outputStream, List<Column> columns, boolean withHeader) {
+		this(new OutputStreamWriter(outputStream, UTF8), columns, withHeader);
+	}
+
+	/**
+	 * Cambia el separador de columnas, ',' por defecto. Hay que fijarlo
+	 * antes de escribir la primera fila
+	 */
+	public void setDelimiter(char delimiter) {
+		this.delimiter = delimiter;
+	}
+	public char getDelimiter() {
+		return delimiter;
+	}
+	/**
+	 * Filas escritas, sin contar la cabecera
+	 */
+	public long getRowCount() {
+		return rowCount;
+	}
+
+	/**
+	 * Escribe todos los tracks del documento. Los tracks se piden uno
+	 * a uno, así que con un LazyGpxDocument solo hay uno en memoria
+	 */
+	public void writeDocument(GpxDocument gpxDoc) throws IOException {
+		int count = gpxDoc.trackCount();
+		for(int i=0; i<count; i++) {
+			writeTrack(gpxDoc.getTrack(i));
+		}
+	}
+	public void writeTrack(Track track) throws IOException {
+		if(track == null) {
+			return;
+		}
+		int count = track.segmentsCount();
+		for(int i=0; i<count; i++) {
+			writeTrackSegment(track.getTrackSegment(i));
+		}
+	}
+	public void writeTrackSegment(TrackSegment segment) throws IOException {
+		if(segment == null) {
+			return;
+		}
+		startSegment();
+		int count = segment.size();
+		for(int i=0; i<count; i++) {
+			writeWayPoint(segment.getWayPoint(i));
+		}
+	}
+	/**
+	 * Empieza un segmento nuevo: el siguiente punto no tiene punto anterior
+	 * para calcular la velocidad y el rumbo
+	 */
+	public void startSegment() {
+		hasPrevious = false;
+	}
+	/**
+	 * Escribe la fila de un punto. Las extensiones se toman de WayPoint.getValues()
+	 */
+	public void writeWayPoint(WayPoint wp) throws IOException {
+		if(wp == null) {
+			return;
+		}
+		double[] values = (needsExtensions ? wp.getValues() : null);
+		writeRow(wp.getTime(), wp.getLongitude(), wp.getLatitude(), wp.getAltitude(), values, 3);
+	}
+	/**
+	 * Escribe la fila de un punto a partir de sus valores
+	 * @param time Tiempo en milisegundos UTC
+	 * @param extensions Valores de las extensiones en el orden de
+	 * 'GpxFactory.getExtensionTags()' o null
+	 */
+	public void writePoint(long time, double longitude, double latitude, double altitude,
+			double[] extensions) throws IOException {
+		writeRow(time, longitude, latitude, altitude, extensions, 0);
+	}
+
+	/**
+	 * GpxHandler que escribe los 'trkpt' de 'GpxFactory.parse()' sin crear
+	 * WayPoint's. Si hay un error de escritura, las filas siguientes se
+	 * descartan y el error se lanza en flush() o close()
+	 */
+	public GpxHandler asGpxHandler() {
+		return new AbstractGpxHandler() {
+			@Override
+			public void startSegment(int trackIndex, int segmentIndex) {
+				CsvTrackWriter.this.startSegment();
+			}
+			@Override
+			public void onTrackPoint(int trackIndex, int segmentIndex, long time,
+					double longitude, double latitude, double altitude, double[] extensions) {
+				if(pendingException != null) {
+					return;
+				}
+				try {
+					writePoint(time, longitude, latitude, altitude, extensions);
+				} catch (IOException e) {
+					pendingException = e;
+				}
+			}
+		};
+	}
+
+	/**
+	 * Escribe la cabecera si falta, vuelca el buffer en el destino y lo vacía
+	 */
+	@Override
+	public void flush() throws IOException {
+		throwPendingException();
+		writeHeaderIfNeeded();
+		out.flush();
+	}
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void writeRow(long time, double longitude, double latitude, double altitude,
+			double[] values, int offset) throws IOException {
+		writeHeaderIfNeeded();
+		if(needsUtm) {
+			EllipsoidWGS84.WGS84.proyUTM(longitude, latitude, xy);
+		}
+		for(int i=0; i<columns.length; i++) {
+			if(i > 0) {
+				buffer.append(delimiter);
+			}
+			Column column = columns[i];
+			switch(column.type) {
+			case TIME:
+				GpxTimeCodec.appendTo(buffer, time);
+				break;
+			case EPOCH:
+				buffer.append(time);
+				break;
+			case LONGITUDE:
+				DecimalFormatter.append(buffer, longitude, column.decimals);
+				break;
+			case LATITUDE:
+				DecimalFormatter.append(buffer, latitude, column.decimals);
+				break;
+			case ELEVATION:
+				DecimalFormatter.append(buffer, altitude, column.decimals);
+				break;
+			case UTM_X:
+				DecimalFormatter.append(buffer, xy[0], column.decimals);
+				break;
+			case UTM_Y:
+				DecimalFormatter.append(buffer, xy[1], column.decimals);
+				break;
+			case SPEED:
+				DecimalFormatter.append(buffer, speed(time, longitude, latitude, altitude), column.decimals);
+				break;
+			case BEARING:
+				double bearing = (hasPrevious ?
+					Util.bearing(previousLongitude, previousLatitude, longitude, latitude) : -1.0);
+				DecimalFormatter.append(buffer, bearing, column.decimals);
+				break;
+			case EXTENSION:
+				int index = offset + column.index;
+				double value = (values != null && index < values.length ? values[index] : -1.0);
+				DecimalFormatter.append(buffer, value, column.decimals);
+				break;
+			}
+		}
+		buffer.append('\n');
+		rowCount++;
+		hasPrevious = true;
+		previousTime = time;
+		previousLongitude = longitude;
+		previousLatitude = latitude;
+		previousAltitude = altitude;
+		out.drain();
+	}
+	/**
+	 * Velocidad desde el punto anterior con la fórmula de Util.speed(),
+	 * o -1.0 si no hay punto anterior o no ha pasado al menos un segundo
+	 */
+	private double speed(long time, double longitude, double latitude, double altitude) {
+		if(!hasPrevious) {
+			return -1.0;
+		}
+		double seconds = (double)((time - previousTime) / 1000L);
+		if(seconds <= 0.0) {
+			return -1.0;
+		}
+		return Util.dist3D(previousLongitude, previousLatitude, previousAltitude,
+			longitude, latitude, altitude) / seconds;
+	}
+	private void writeHeaderIfNeeded() {
+		if(withHeader && !headerWritten) {
+			for(int i=0; i<columns.length; i++) {
+				if(i > 0) {
+					buffer.append(delimiter);
+				}
+				buffer.append(columns[i].name);
+			}
+			buffer.append('\n');
+		}
+		headerWritten = true;
+	}
+	private void throwPendingException() throws IOException {
+		if(pendingException != null) {
+			IOException e = pendingException;
+			pendingException = null;
+			throw e;
+		}
+	}
+}
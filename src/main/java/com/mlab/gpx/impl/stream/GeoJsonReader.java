@@ -0,0 +1,653 @@
+package com.mlab.gpx.impl.stream;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.Route;
+import com.mlab.gpx.impl.Track;
+import com.mlab.gpx.impl.TrackSegment;
+import com.mlab.gpx.impl.util.DecimalParser;
+import com.mlab.gpx.impl.util.GpxTimeCodec;
+
+/**
+ * Lee una FeatureCollection GeoJSON, como las que escribe GeoJsonWriter,
+ * y construye un GpxDocument con los WayPoint de la factory.<br/>
+ * El texto se lee de forma incremental con un buffer propio, sin construir
+ * un árbol JSON y sin crear Strings para las claves ni los números. Solo
+ * se guardan en memoria los valores de la Feature que se está leyendo, en
+ * arrays que se reutilizan.<br/>
+ * - Point: wpt, con las propiedades 'name', 'desc', 'time' y las extensiones
+ * de la factory<br/>
+ * - LineString: Route si 'gpxType' es 'rte' y Track con un TrackSegment si no<br/>
+ * - MultiLineString: Track con un TrackSegment por línea<br/>
+ * Los tiempos y las extensiones de los puntos de las líneas se leen de
+ * 'properties.coordinateProperties' ('times' y las etiquetas de
+ * 'factory.getExtensionTags()'). Los que faltan valen -1 y la altitud que
+ * falta vale 0. Las demás geometrías y propiedades se ignoran.
+ * Si el texto no es JSON válido los métodos arrojan IOException.
+ *
+ * @author shiguera
+ *
+ */
+public class GeoJsonReader implements Closeable {
+
+	private static final Double MISSING_VALUE = Double.valueOf(-1.0);
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final int POINT = 1;
+	private static final int LINE_STRING = 2;
+	private static final int MULTI_LINE_STRING = 3;
+
+	private final Reader in;
+	private final GpxFactory factory;
+	private final String[] extensionTags;
+	private final char[] buffer;
+	private int position;
+	private int limit;
+	/**
+	 * Texto de la última cadena leida
+	 */
+	private final StringBuilder text;
+	private char[] number;
+
+	// Valores de la Feature que se está leyendo
+	private int geometry;
+	private double[] coordinates;
+	private int pointCount;
+	private int[] lineStarts;
+	private int lineCount;
+	private long[] times;
+	private int timeCount;
+	private double[][] channels;
+	private int[] channelCounts;
+	private double[] pointExtensions;
+	private String gpxType, name, cmt, desc, src, link, type;
+	private int trackNumber;
+	private long time;
+
+	/**
+	 * @param in Reader con el texto. Se cierra con close()
+	 * @param factory GpxFactory con la que se crean los WayPoint
+	 */
+	public GeoJsonReader(Reader in, GpxFactory factory) {
+		this.in = in;
+		this.factory = factory;
+		this.extensionTags = factory.getExtensionTags();
+		this.buffer = new char[1 << 16];
+		this.position = 0;
+		this.limit = 0;
+		this.text = new StringBuilder(64);
+		this.number = new char[32];
+		this.coordinates = new double[3 * 256];
+		this.lineStarts = new int[8];
+		this.times = new long[256];
+		this.channels = new double[extensionTags.length][256];
+		this.channelCounts = new int[extensionTags.length];
+		this.pointExtensions = new double[extensionTags.length];
+	}
+	/**
+	 * Lee texto UTF-8
+	 * @param in InputStream. Se cierra con close()
+	 */
+	public GeoJsonReader(InputStream in, GpxFactory factory) {
+		this(new InputStreamReader(in, UTF8), factory);
+	}
+
+	/**
+	 * Lee la FeatureCollection completa
+	 */
+	public GpxDocument readDocument() throws IOException {
+		GpxDocument gpxDoc = factory.createGpxDocument();
+		expect('{');
+		if(!isEmpty('}')) {
+			do {
+				readString();
+				expect(':');
+				if(isKey("features")) {
+					expect('[');
+					if(!isEmpty(']')) {
+						do {
+							readFeature(gpxDoc);
+						} while(hasNext(']'));
+					}
+				} else {
+					skipValue();
+				}
+			} while(hasNext('}'));
+		}
+		return gpxDoc;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private void readFeature(GpxDocument gpxDoc) throws IOException {
+		geometry = 0;
+		pointCount = 0;
+		lineCount = 0;
+		timeCount = 0;
+		for(int i=0; i<extensionTags.length; i++) {
+			channelCounts[i] = 0;
+			pointExtensions[i] = -1.0;
+		}
+		gpxType = name = cmt = desc = src = link = type = null;
+		trackNumber = -1;
+		time = -1L;
+		expect('{');
+		if(!isEmpty('}')) {
+			do {
+				readString();
+				expect(':');
+				if(isKey("geometry")) {
+					readGeometry();
+				} else if(isKey("properties")) {
+					readProperties();
+				} else {
+					skipValue();
+				}
+			} while(hasNext('}'));
+		}
+		if(geometry == POINT && pointCount > 0) {
+			WayPoint wp = createWayPoint(name, desc, time, 0, null);
+			if(wp != null) {
+				gpxDoc.addWayPoint(wp);
+			}
+		} else if(geometry == LINE_STRING && "rte".equals(gpxType)) {
+			Route route = new Route();
+			for(int i=0; i<pointCount; i++) {
+				WayPoint wp = createLinePoint(i);
+				if(wp != null) {
+					route.addWayPoint(wp);
+				}
+			}
+			gpxDoc.addRoute(route);
+		} else if(geometry == LINE_STRING || geometry == MULTI_LINE_STRING) {
+			gpxDoc.addTrack(createTrack());
+		}
+	}
+	private Track createTrack() {
+		Track track = new Track();
+		track.setName(name);
+		track.setCmt(cmt);
+		track.setDesc(desc);
+		track.setSrc(src);
+		track.setLink(link);
+		track.setType(type);
+		track.setNumber(trackNumber);
+		for(int l=0; l<lineCount; l++) {
+			int end = (l + 1 < lineCount ? lineStarts[l + 1] : pointCount);
+			TrackSegment segment = new TrackSegment();
+			for(int i=lineStarts[l]; i<end; i++) {
+				WayPoint wp = createLinePoint(i);
+				if(wp != null) {
+					segment.addWayPoint(wp);
+				}
+			}
+			track.addTrackSegment(segment);
+		}
+		return track;
+	}
+	private WayPoint createLinePoint(int index) {
+		long pointTime = (index < timeCount ? times[index] : -1L);
+		return createWayPoint("", "", pointTime, index, channels);
+	}
+	/**
+	 * WayPoint con las coordenadas del punto index y las extensiones de
+	 * los canales o, si channels es null, de las propiedades del Point
+	 */
+	private WayPoint createWayPoint(String wpName, String wpDesc, long wpTime, int index, double[][] pointChannels) {
+		List<Double> values = new ArrayList<Double>(3 + extensionTags.length);
+		values.add(Double.valueOf(coordinates[3*index]));
+		values.add(Double.valueOf(coordinates[3*index + 1]));
+		values.add(Double.valueOf(coordinates[3*index + 2]));
+		for(int i=0; i<extensionTags.length; i++) {
+			double value;
+			if(pointChannels == null) {
+				value = pointExtensions[i];
+			} else {
+				value = (index < channelCounts[i] ? pointChannels[i][index] : -1.0);
+			}
+			values.add(value == -1.0 ? MISSING_VALUE : Double.valueOf(value));
+		}
+		return factory.createWayPoint(wpName != null ? wpName : "",
+			wpDesc != null ? wpDesc : "", wpTime, values);
+	}
+
+	private void readGeometry() throws IOException {
+		if(readNull()) {
+			return;
+		}
+		expect('{');
+		if(isEmpty('}')) {
+			return;
+		}
+		do {
+			readString();
+			expect(':');
+			if(isKey("type")) {
+				readString();
+				if(isKey("Point")) {
+					geometry = POINT;
+				} else if(isKey("LineString")) {
+					geometry = LINE_STRING;
+				} else if(isKey("MultiLineString")) {
+					geometry = MULTI_LINE_STRING;
+				} else {
+					geometry = -1;
+				}
+			} else if(isKey("coordinates")) {
+				readCoordinates();
+			} else {
+				skipValue();
+			}
+		} while(hasNext('}'));
+	}
+	/**
+	 * Lee un array de coordenadas de cualquier profundidad. Cada array de
+	 * posiciones se guarda como una línea
+	 * @return 0 si es una posición, 1 si es un array de posiciones...
+	 */
+	private int readCoordinates() throws IOException {
+		expect('[');
+		skipWhitespace();
+		char c = peek();
+		if(c == ']') {
+			next();
+			addLine(pointCount);
+			return 1;
+		}
+		if(c != '[') {
+			readPosition();
+			return 0;
+		}
+		int start = pointCount;
+		int depth;
+		do {
+			depth = readCoordinates();
+		} while(hasNext(']'));
+		if(depth == 0) {
+			addLine(start);
+		}
+		return depth + 1;
+	}
+	/**
+	 * Lee una posición [lon, lat, ele...] después del '['
+	 */
+	private void readPosition() throws IOException {
+		if(coordinates.length < 3 * (pointCount + 1)) {
+			coordinates = grow(coordinates);
+		}
+		int base = 3 * pointCount;
+		coordinates[base + 2] = 0.0;
+		int index = 0;
+		do {
+			double value = readNumberOrNull(Double.NaN);
+			if(index < 3) {
+				coordinates[base + index] = value;
+			}
+			index++;
+		} while(hasNext(']'));
+		if(index < 2) {
+			throw new IOException("Invalid GeoJSON position");
+		}
+		pointCount++;
+	}
+	private void addLine(int start) {
+		if(lineCount == lineStarts.length) {
+			int[] copy = new int[2 * lineStarts.length];
+			System.arraycopy(lineStarts, 0, copy, 0, lineCount);
+			lineStarts = copy;
+		}
+		lineStarts[lineCount++] = start;
+	}
+
+	private void readProperties() throws IOException {
+		if(readNull()) {
+			return;
+		}
+		expect('{');
+		if(isEmpty('}')) {
+			return;
+		}
+		do {
+			readString();
+			expect(':');
+			int slot = slotOfKey();
+			if(isKey(GeoJsonWriter.GPX_TYPE)) {
+				gpxType = readText();
+			} else if(isKey("name")) {
+				name = readText();
+			} else if(isKey("cmt")) {
+				cmt = readText();
+			} else if(isKey("desc")) {
+				desc = readText();
+			} else if(isKey("src")) {
+				src = readText();
+			} else if(isKey("link")) {
+				link = readText();
+			} else if(isKey("type")) {
+				type = readText();
+			} else if(isKey("number")) {
+				trackNumber = (int)readNumberOrNull(-1.0);
+			} else if(isKey("time")) {
+				time = readTime();
+			} else if(isKey(GeoJsonWriter.COORDINATE_PROPERTIES)) {
+				readCoordinateProperties();
+			} else if(slot >= 0) {
+				pointExtensions[slot] = readNumberOrNull(-1.0);
+			} else {
+				skipValue();
+			}
+		} while(hasNext('}'));
+	}
+	private void readCoordinateProperties() throws IOException {
+		if(readNull()) {
+			return;
+		}
+		expect('{');
+		if(isEmpty('}')) {
+			return;
+		}
+		do {
+			readString();
+			expect(':');
+			int slot = slotOfKey();
+			if(isKey(GeoJsonWriter.TIMES)) {
+				timeCount = 0;
+				readChannel(-1);
+			} else if(slot >= 0) {
+				channelCounts[slot] = 0;
+				readChannel(slot);
+			} else {
+				skipValue();
+			}
+		} while(hasNext('}'));
+	}
+	/**
+	 * Lee los valores de un array de cualquier profundidad en el orden de
+	 * las coordenadas. slot -1 son los tiempos
+	 */
+	private void readChannel(int slot) throws IOException {
+		skipWhitespace();
+		if(peek() != '[') {
+			if(slot < 0) {
+				if(timeCount == times.length) {
+					times = grow(times);
+				}
+				times[timeCount++] = readTime();
+			} else {
+				if(channelCounts[slot] == channels[slot].length) {
+					channels[slot] = grow(channels[slot]);
+				}
+				channels[slot][channelCounts[slot]++] = readNumberOrNull(-1.0);
+			}
+			return;
+		}
+		next();
+		if(isEmpty(']')) {
+			return;
+		}
+		do {
+			readChannel(slot);
+		} while(hasNext(']'));
+	}
+	/**
+	 * Fecha gpx, milisegundos o null. Devuelve -1 si no es válida
+	 */
+	private long readTime() throws IOException {
+		skipWhitespace();
+		if(peek() == '"') {
+			readString();
+			long t = GpxTimeCodec.parse(text);
+			return (t == GpxTimeCodec.INVALID_TIME ? -1L : t);
+		}
+		return (long)readNumberOrNull(-1.0);
+	}
+	/**
+	 * Índice de la extensión cuya etiqueta es la última cadena leida o -1
+	 */
+	private int slotOfKey() {
+		for(int i=0; i<extensionTags.length; i++) {
+			if(isKey(extensionTags[i])) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	// Lectura de tokens JSON
+
+	/**
+	 * Cadena o null
+	 */
+	private String readText() throws IOException {
+		if(readNull()) {
+			return null;
+		}
+		readString();
+		return text.toString();
+	}
+	private double readNumberOrNull(double nullValue) throws IOException {
+		if(readNull()) {
+			return nullValue;
+		}
+		return readNumber();
+	}
+	private boolean readNull() throws IOException {
+		skipWhitespace();
+		if(peek() == 'n') {
+			readLiteral("null");
+			return true;
+		}
+		return false;
+	}
+	private double readNumber() throws IOException {
+		skipWhitespace();
+		int length = 0;
+		while(true) {
+			char c = peek();
+			if((c >= '0' && c <= '9') || c == '-' || c == '+' || c == '.' || c == 'e' || c == 'E') {
+				if(length == number.length) {
+					char[] copy = new char[2 * number.length];
+					System.arraycopy(number, 0, copy, 0, length);
+					number = copy;
+				}
+				number[length++] = next();
+			} else {
+				break;
+			}
+		}
+		if(length == 0) {
+			throw new IOException("Invalid GeoJSON number at '"+peek()+"'");
+		}
+		try {
+			return DecimalParser.parseDouble(number, 0, length);
+		} catch (NumberFormatException e) {
+			throw new IOException("Invalid GeoJSON number: "+new String(number, 0, length));
+		}
+	}
+	/**
+	 * Lee una cadena en 'text'
+	 */
+	private void readString() throws IOException {
+		expect('"');
+		text.setLength(0);
+		while(true) {
+			char c = next();
+			if(c == '"') {
+				return;
+			}
+			if(c == '\\') {
+				c = next();
+				switch(c) {
+				case 'b':
+					c = '\b';
+					break;
+				case 'f':
+					c = '\f';
+					break;
+				case 'n':
+					c = '\n';
+					break;
+				case 'r':
+					c = '\r';
+					break;
+				case 't':
+					c = '\t';
+					break;
+				case 'u':
+					int code = 0;
+					for(int i=0; i<4; i++) {
+						int digit = Character.digit(next(), 16);
+						if(digit < 0) {
+							throw new IOException("Invalid GeoJSON escape");
+						}
+						code = (code << 4) | digit;
+					}
+					c = (char)code;
+					break;
+				default:
+					// '"', '\\' y '/'
+				}
+			}
+			text.append(c);
+		}
+	}
+	private void readLiteral(String literal) throws IOException {
+		for(int i=0; i<literal.length(); i++) {
+			if(next() != literal.charAt(i)) {
+				throw new IOException("Invalid GeoJSON literal, expected "+literal);
+			}
+		}
+	}
+	private void skipValue() throws IOException {
+		skipWhitespace();
+		char c = peek();
+		if(c == '{') {
+			next();
+			if(!isEmpty('}')) {
+				do {
+					readString();
+					expect(':');
+					skipValue();
+				} while(hasNext('}'));
+			}
+		} else if(c == '[') {
+			next();
+			if(!isEmpty(']')) {
+				do {
+					skipValue();
+				} while(hasNext(']'));
+			}
+		} else if(c == '"') {
+			readString();
+		} else if(c == 't') {
+			readLiteral("true");
+		} else if(c == 'f') {
+			readLiteral("false");
+		} else if(c == 'n') {
+			readLiteral("null");
+		} else {
+			readNumber();
+		}
+	}
+	/**
+	 * true si la última cadena leida es key
+	 */
+	private boolean isKey(String key) {
+		int length = key.length();
+		if(text.length() != length) {
+			return false;
+		}
+		for(int i=0; i<length; i++) {
+			if(text.charAt(i) != key.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	/**
+	 * Consume el cierre si el objeto o array está vacío
+	 */
+	private boolean isEmpty(char close) throws IOException {
+		skipWhitespace();
+		if(peek() == close) {
+			next();
+			return true;
+		}
+		return false;
+	}
+	/**
+	 * Consume ',' y devuelve true o consume el cierre y devuelve false
+	 */
+	private boolean hasNext(char close) throws IOException {
+		skipWhitespace();
+		char c = next();
+		if(c == ',') {
+			return true;
+		}
+		if(c == close) {
+			return false;
+		}
+		throw new IOException("Invalid GeoJSON, expected ',' or '"+close+"' but found '"+c+"'");
+	}
+	private void expect(char expected) throws IOException {
+		skipWhitespace();
+		char c = next();
+		if(c != expected) {
+			throw new IOException("Invalid GeoJSON, expected '"+expected+"' but found '"+c+"'");
+		}
+	}
+	private void skipWhitespace() throws IOException {
+		while(true) {
+			char c = peek();
+			if(c == ' ' || c == '\n' || c == '\r' || c == '\t' || c == '\uFEFF') {
+				position++;
+			} else {
+				return;
+			}
+		}
+	}
+	private char peek() throws IOException {
+		if(position == limit) {
+			fill();
+		}
+		return buffer[position];
+	}
+	private char next() throws IOException {
+		if(position == limit) {
+			fill();
+		}
+		return buffer[position++];
+	}
+	private void fill() throws IOException {
+		limit = in.read(buffer, 0, buffer.length);
+		position = 0;
+		if(limit <= 0) {
+			limit = 0;
+			throw new IOException("Truncated GeoJSON document");
+		}
+	}
+
+	private static double[] grow(double[] array) {
+		double[] copy = new double[2 * array.length];
+		System.arraycopy(array, 0, copy, 0, array.length);
+		return copy;
+	}
+	private static long[] grow(long[] array) {
+		long[] copy = new long[2 * array.length];
+		System.arraycopy(array, 0, copy, 0, array.length);
+		return copy;
+	}
+}
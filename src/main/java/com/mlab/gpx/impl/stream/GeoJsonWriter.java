@@ -0,0 +1,378 @@
+package com.mlab.gpx.impl.stream;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+
+import com.mlab.gpx.api.CompositeGpxNode;
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxNode;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.Route;
+import com.mlab.gpx.impl.Track;
+import com.mlab.gpx.impl.TrackSegment;
+import com.mlab.gpx.impl.util.BufferedTextWriter;
+import com.mlab.gpx.impl.util.DecimalFormatter;
+import com.mlab.gpx.impl.util.GpxTimeCodec;
+
+/**
+ * Escribe un GpxDocument como una FeatureCollection GeoJSON de forma
+ * incremental con un BufferedTextWriter.<br/>
+ * - Cada wpt es una Feature con un Point; la propiedad 'time' es la fecha
+ * en ISO-8601 con milisegundos y cada extensión es una propiedad con su
+ * etiqueta<br/>
+ * - Cada Route es una Feature con un LineString<br/>
+ * - Cada Track es una Feature con un LineString si tiene un único
+ * TrackSegment o un MultiLineString con un LineString por TrackSegment<br/>
+ * En las líneas, los tiempos y las extensiones de cada punto se escriben en
+ * 'properties.coordinateProperties': 'times' y un array por extensión,
+ * alineados con las coordenadas (arrays de arrays en un MultiLineString).
+ * La propiedad 'gpxType' ('wpt', 'rte' o 'trk') y los textos del Track
+ * permiten a GeoJsonReader reconstruir el documento.<br/>
+ * Las coordenadas son [lon, lat, ele] con 6, 6 y 2 decimales, como en el gpx;
+ * las extensiones se escriben con todos sus dígitos y los valores no finitos
+ * como null. No es thread-safe.
+ *
+ * @author shiguera
+ *
+ */
+public class GeoJsonWriter implements Closeable, Flushable {
+
+	static final String GPX_TYPE = "gpxType";
+	static final String COORDINATE_PROPERTIES = "coordinateProperties";
+	static final String TIMES = "times";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final int COORDINATE_DECIMALS = 6;
+	private static final int ALTITUDE_DECIMALS = 2;
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private final BufferedTextWriter out;
+	private final String[] extensionTags;
+	private final StringBuilder buffer;
+	/**
+	 * true hasta que se escribe la primera Feature de la colección
+	 */
+	private boolean firstFeature;
+
+	/**
+	 * @param writer Writer destino. Se cierra con close()
+	 * @param extensionTags Etiquetas de las extensiones, en el orden de
+	 * WayPoint.getValues() a partir de la posición 3
+	 */
+	public GeoJsonWriter(Writer writer, String[] extensionTags) {
+		this.out = new BufferedTextWriter(writer);
+		this.extensionTags = extensionTags.clone();
+		this.buffer = out.getBuffer();
+		this.firstFeature = true;
+	}
+	/**
+	 * Escribe en UTF-8 las extensiones de 'factory.getExtensionTags()'
+	 * @param outputStream OutputStream destino. Se cierra con close()
+	 */
+	public GeoJsonWriter(OutputStream outputStream, GpxFactory factory) {
+		this(new OutputStreamWriter(outputStream, UTF8), factory.getExtensionTags());
+	}
+
+	/**
+	 * Escribe el documento completo y vacía el destino, sin cerrarlo.
+	 * Los elementos se piden uno a uno, así que con un LazyGpxDocument solo
+	 * está en memoria el elemento que se escribe.
+	 */
+	public void writeDocument(GpxDocument gpxDoc) throws IOException {
+		writeStartCollection();
+		int count = gpxDoc.wayPointCount();
+		for(int i=0; i<count; i++) {
+			writeWayPoint(gpxDoc.getWayPoint(i));
+		}
+		count = gpxDoc.routeCount();
+		for(int i=0; i<count; i++) {
+			writeRoute(gpxDoc.getRoute(i));
+		}
+		count = gpxDoc.trackCount();
+		for(int i=0; i<count; i++) {
+			writeTrack(gpxDoc.getTrack(i));
+		}
+		writeEndCollection();
+		flush();
+	}
+	public void writeStartCollection() throws IOException {
+		buffer.append("{\"type\":\"FeatureCollection\",\"features\":[");
+		firstFeature = true;
+	}
+	public void writeEndCollection() throws IOException {
+		buffer.append("]}");
+		out.drain();
+	}
+	/**
+	 * Escribe una Feature con un Point
+	 */
+	public void writeWayPoint(WayPoint wp) throws IOException {
+		if(wp == null) {
+			return;
+		}
+		appendStartFeature("Point");
+		appendCoordinates(wp);
+		buffer.append("},\"properties\":{");
+		appendProperty(GPX_TYPE, "wpt", true);
+		appendProperty("name", wp.getName(), false);
+		appendProperty("desc", wp.getDescription(), false);
+		if(wp.getTime() >= 0L) {
+			buffer.append(",\"time\":");
+			appendTime(wp.getTime());
+		}
+		if(extensionTags.length > 0) {
+			double[] values = wp.getValues();
+			for(int i=0; i<extensionTags.length; i++) {
+				buffer.append(',');
+				appendString(extensionTags[i]);
+				buffer.append(':');
+				appendExtension(values, 3 + i);
+			}
+		}
+		buffer.append("}}");
+		out.drain();
+	}
+	/**
+	 * Escribe una Feature con un LineString
+	 */
+	public void writeRoute(Route route) throws IOException {
+		if(route == null) {
+			return;
+		}
+		appendStartFeature("LineString");
+		appendLine(route);
+		buffer.append("},\"properties\":{");
+		appendProperty(GPX_TYPE, "rte", true);
+		appendCoordinateProperties(new CompositeGpxNode[] {route}, false);
+		buffer.append("}}");
+		out.drain();
+	}
+	/**
+	 * Escribe una Feature con un LineString
+	 */
+	public void writeTrackSegment(TrackSegment segment) throws IOException {
+		if(segment == null) {
+			return;
+		}
+		Track track = new Track();
+		track.addTrackSegment(segment);
+		writeTrack(track);
+	}
+	/**
+	 * Escribe una Feature con un LineString, si el Track tiene un único
+	 * TrackSegment, o con un MultiLineString
+	 */
+	public void writeTrack(Track track) throws IOException {
+		if(track == null) {
+			return;
+		}
+		CompositeGpxNode[] segments = new CompositeGpxNode[track.segmentsCount()];
+		for(int i=0; i<segments.length; i++) {
+			segments[i] = track.getTrackSegment(i);
+		}
+		boolean multi = (segments.length != 1);
+		appendStartFeature(multi ? "MultiLineString" : "LineString");
+		if(multi) {
+			buffer.append('[');
+			for(int i=0; i<segments.length; i++) {
+				if(i > 0) {
+					buffer.append(',');
+				}
+				appendLine(segments[i]);
+			}
+			buffer.append(']');
+		} else {
+			appendLine(segments[0]);
+		}
+		buffer.append("},\"properties\":{");
+		appendProperty(GPX_TYPE, "trk", true);
+		appendProperty("name", track.getName(), false);
+		appendProperty("cmt", track.getCmt(), false);
+		appendProperty("desc", track.getDesc(), false);
+		appendProperty("src", track.getSrc(), false);
+		appendProperty("link", track.getLink(), false);
+		appendProperty("type", track.getType(), false);
+		if(track.getNumber() != -1) {
+			buffer.append(",\"number\":").append(track.getNumber());
+		}
+		appendCoordinateProperties(segments, multi);
+		buffer.append("}}");
+		out.drain();
+	}
+
+	/**
+	 * Vuelca el buffer en el destino y lo vacía
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+	/**
+	 * Vuelca el buffer y cierra el destino
+	 */
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	private void appendStartFeature(String geometry) {
+		if(!firstFeature) {
+			buffer.append(',');
+		}
+		firstFeature = false;
+		buffer.append("{\"type\":\"Feature\",\"geometry\":{\"type\":\"").append(geometry)
+			.append("\",\"coordinates\":");
+	}
+	private void appendLine(CompositeGpxNode node) throws IOException {
+		buffer.append('[');
+		boolean first = true;
+		int count = node.size();
+		for(int i=0; i<count; i++) {
+			GpxNode point = node.get(i);
+			if(point instanceof WayPoint) {
+				if(!first) {
+					buffer.append(',');
+				}
+				first = false;
+				appendCoordinates((WayPoint)point);
+				out.drain();
+			}
+		}
+		buffer.append(']');
+	}
+	private void appendCoordinates(WayPoint wp) {
+		buffer.append('[');
+		appendNumber(wp.getLongitude(), COORDINATE_DECIMALS);
+		buffer.append(',');
+		appendNumber(wp.getLatitude(), COORDINATE_DECIMALS);
+		buffer.append(',');
+		appendNumber(wp.getAltitude(), ALTITUDE_DECIMALS);
+		buffer.append(']');
+	}
+	/**
+	 * Escribe 'coordinateProperties' con los tiempos y las extensiones de
+	 * los puntos de las líneas
+	 */
+	private void appendCoordinateProperties(CompositeGpxNode[] lines, boolean multi) throws IOException {
+		buffer.append(",\"").append(COORDINATE_PROPERTIES).append("\":{\"").append(TIMES).append("\":");
+		appendChannel(lines, multi, -1);
+		for(int c=0; c<extensionTags.length; c++) {
+			buffer.append(',');
+			appendString(extensionTags[c]);
+			buffer.append(':');
+			appendChannel(lines, multi, c);
+		}
+		buffer.append('}');
+	}
+	/**
+	 * Array con los tiempos (channel -1) o con una extensión de los puntos
+	 */
+	private void appendChannel(CompositeGpxNode[] lines, boolean multi, int channel) throws IOException {
+		if(multi) {
+			buffer.append('[');
+		}
+		for(int l=0; l<lines.length; l++) {
+			if(l > 0) {
+				buffer.append(',');
+			}
+			buffer.append('[');
+			boolean first = true;
+			int count = lines[l].size();
+			for(int i=0; i<count; i++) {
+				GpxNode node = lines[l].get(i);
+				if(!(node instanceof WayPoint)) {
+					continue;
+				}
+				if(!first) {
+					buffer.append(',');
+				}
+				first = false;
+				WayPoint wp = (WayPoint)node;
+				if(channel < 0) {
+					if(wp.getTime() >= 0L) {
+						appendTime(wp.getTime());
+					} else {
+						buffer.append("null");
+					}
+				} else {
+					appendExtension(wp.getValues(), 3 + channel);
+				}
+				out.drain();
+			}
+			buffer.append(']');
+		}
+		if(multi) {
+			buffer.append(']');
+		}
+	}
+	private void appendExtension(double[] values, int index) {
+		if(index < values.length && !Double.isNaN(values[index]) && !Double.isInfinite(values[index])) {
+			buffer.append(values[index]);
+		} else {
+			buffer.append("null");
+		}
+	}
+	private void appendNumber(double value, int decimals) {
+		if(Double.isNaN(value) || Double.isInfinite(value)) {
+			buffer.append("null");
+		} else {
+			DecimalFormatter.append(buffer, value, decimals);
+		}
+	}
+	private void appendTime(long time) {
+		buffer.append('"');
+		GpxTimeCodec.appendIsoTo(buffer, time);
+		buffer.append('"');
+	}
+	/**
+	 * Añade "name":"value" si value no está vacío
+	 */
+	private void appendProperty(String name, String value, boolean first) {
+		if(value == null || value.isEmpty()) {
+			return;
+		}
+		if(!first) {
+			buffer.append(',');
+		}
+		appendString(name);
+		buffer.append(':');
+		appendString(value);
+	}
+	private void appendString(String text) {
+		buffer.append('"');
+		int length = text.length();
+		for(int i=0; i<length; i++) {
+			char c = text.charAt(i);
+			switch(c) {
+			case '"':
+				buffer.append("\\\"");
+				break;
+			case '\\':
+				buffer.append("\\\\");
+				break;
+			case '\n':
+				buffer.append("\\n");
+				break;
+			case '\r':
+				buffer.append("\\r");
+				break;
+			case '\t':
+				buffer.append("\\t");
+				break;
+			default:
+				if(c < 0x20) {
+					buffer.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xF]);
+				} else {
+					buffer.append(c);
+				}
+			}
+		}
+		buffer.append('"');
+	}
+}
@@ -0,0 +1,91 @@
+package com.mlab.gpx.impl.stream;
+
+import com.mlab.gpx.impl.GpxEnvelope;
+
+/**
+ * Cabecera de un documento en formato binario (GpxBinaryWriter): versión,
+ * etiquetas de las extensiones, área y tiempos inicial y final de los puntos
+ * y número de elementos. Se lee con 'GpxBinaryReader.readHeader()' sin
+ * decodificar los puntos. Es inmutable.
+ *
+ * @author shiguera
+ *
+ */
+public final class GpxBinaryHeader {
+
+	private final int version;
+	private final String[] extensionTags;
+	private final double minLon, minLat, maxLon, maxLat;
+	private final long startTime, endTime;
+	private final int pointCount, wayPointCount, routeCount, trackCount;
+
+	GpxBinaryHeader(int version, String[] extensionTags,
+			double minLon, double minLat, double maxLon, double maxLat,
+			long startTime, long endTime,
+			int pointCount, int wayPointCount, int routeCount, int trackCount) {
+		this.version = version;
+		this.extensionTags = extensionTags.clone();
+		this.minLon = minLon;
+		this.minLat = minLat;
+		this.maxLon = maxLon;
+		this.maxLat = maxLat;
+		this.startTime = startTime;
+		this.endTime = endTime;
+		this.pointCount = pointCount;
+		this.wayPointCount = wayPointCount;
+		this.routeCount = routeCount;
+		this.trackCount = trackCount;
+	}
+
+	public int getVersion() {
+		return version;
+	}
+	/**
+	 * Etiquetas de las extensiones de los puntos, en el orden en que se guardan
+	 */
+	public String[] getExtensionTags() {
+		return extensionTags.clone();
+	}
+	/**
+	 * Área de todos los puntos o null si el documento no tiene puntos
+	 */
+	public GpxEnvelope getEnvelope() {
+		if(pointCount == 0) {
+			return null;
+		}
+		return new GpxEnvelope(minLat, minLon, maxLat, maxLon);
+	}
+	/**
+	 * Tiempo menor de los puntos o -1 si ninguno tiene tiempo
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+	/**
+	 * Tiempo mayor de los puntos o -1 si ninguno tiene tiempo
+	 */
+	public long getEndTime() {
+		return endTime;
+	}
+	/**
+	 * Número total de puntos: wpt, rtept y trkpt
+	 */
+	public int getPointCount() {
+		return pointCount;
+	}
+	public int getWayPointCount() {
+		return wayPointCount;
+	}
+	public int getRouteCount() {
+		return routeCount;
+	}
+	public int getTrackCount() {
+		return trackCount;
+	}
+
+	@Override
+	public String toString() {
+		return "GpxBinaryHeader[version="+version+" points="+pointCount+" wpts="+wayPointCount+
+			" routes="+routeCount+" tracks="+trackCount+" time="+startTime+"-"+endTime+"]";
+	}
+}
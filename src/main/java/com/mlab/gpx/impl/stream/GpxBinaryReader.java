@@ -0,0 +1,275 @@
+package com.mlab.gpx.impl.stream;
+
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.Route;
+import com.mlab.gpx.impl.Track;
+import com.mlab.gpx.impl.TrackSegment;
+import com.mlab.gpx.impl.extensions.ExtensionSchema;
+
+/**
+ * Lee los documentos que escribe GpxBinaryWriter. Los puntos se crean con
+ * el método createWayPoint() de la factory; las extensiones guardadas se
+ * asignan por su etiqueta a las de 'factory.getExtensionTags()' y las que
+ * no están en el fichero valen -1.0.<br/>
+ * Lee de un buffer propio, sin DataInputStream. readHeader() lee solo la
+ * cabecera. Si el stream no tiene el formato binario, o un bloque tiene más
+ * puntos de los que indica la cabecera, los métodos arrojan IOException.
+ *
+ * @author shiguera
+ *
+ */
+public class GpxBinaryReader implements Closeable {
+
+	private static final Double MISSING_VALUE = Double.valueOf(-1.0);
+
+	private final InputStream in;
+	private final GpxFactory factory;
+	private final byte[] buffer;
+	private int position;
+	private int limit;
+	private GpxBinaryHeader header;
+	/**
+	 * Slot en la factory de cada extensión del fichero, o -1
+	 */
+	private int[] slots;
+	/**
+	 * Puntos de la cabecera que quedan por leer
+	 */
+	private int remainingPoints;
+	private long[] times;
+	private double[] values;
+
+	/**
+	 * @param in InputStream con el documento. Se cierra con close()
+	 * @param factory GpxFactory con la que se crean los WayPoint
+	 */
+	public GpxBinaryReader(InputStream in, GpxFactory factory) {
+		this.in = in;
+		this.factory = factory;
+		this.buffer = new byte[1 << 16];
+		this.position = 0;
+		this.limit = 0;
+		this.times = new long[0];
+		this.values = new double[0];
+	}
+
+	/**
+	 * Lee la cabecera, si no se ha leido ya
+	 */
+	public GpxBinaryHeader readHeader() throws IOException {
+		if(header != null) {
+			return header;
+		}
+		for(byte b: GpxBinaryWriter.MAGIC) {
+			if(readByte() != b) {
+				throw new IOException("Not a gpx binary document");
+			}
+		}
+		int version = readByte();
+		if(version != GpxBinaryWriter.VERSION) {
+			throw new IOException("Unsupported gpx binary version: "+version);
+		}
+		String[] tags = new String[readCount()];
+		for(int i=0; i<tags.length; i++) {
+			tags[i] = readString();
+		}
+		double minLon = Double.longBitsToDouble(readLong());
+		double minLat = Double.longBitsToDouble(readLong());
+		double maxLon = Double.longBitsToDouble(readLong());
+		double maxLat = Double.longBitsToDouble(readLong());
+		long startTime = readSignedVarLong();
+		long endTime = readSignedVarLong();
+		int points = readCount();
+		int wpts = readCount();
+		int routes = readCount();
+		int tracks = readCount();
+		header = new GpxBinaryHeader(version, tags, minLon, minLat, maxLon, maxLat,
+			startTime, endTime, points, wpts, routes, tracks);
+		remainingPoints = points;
+		ExtensionSchema schema = factory.getExtensionSchema();
+		slots = new int[tags.length];
+		for(int i=0; i<tags.length; i++) {
+			slots[i] = schema.slotOf(tags[i]);
+		}
+		return header;
+	}
+	/**
+	 * Lee el documento completo
+	 */
+	public GpxDocument readDocument() throws IOException {
+		GpxBinaryHeader head = readHeader();
+		GpxDocument gpxDoc = factory.createGpxDocument();
+		for(WayPoint wp: readBlock()) {
+			gpxDoc.addWayPoint(wp);
+		}
+		for(int r=0; r<head.getRouteCount(); r++) {
+			Route route = new Route();
+			for(WayPoint wp: readBlock()) {
+				route.addWayPoint(wp);
+			}
+			gpxDoc.addRoute(route);
+		}
+		for(int t=0; t<head.getTrackCount(); t++) {
+			Track track = new Track();
+			track.setName(readString());
+			track.setCmt(readString());
+			track.setDesc(readString());
+			track.setSrc(readString());
+			track.setLink(readString());
+			track.setType(readString());
+			track.setNumber((int)readSignedVarLong());
+			int segments = readCount();
+			for(int s=0; s<segments; s++) {
+				TrackSegment segment = new TrackSegment();
+				for(WayPoint wp: readBlock()) {
+					segment.addWayPoint(wp);
+				}
+				track.addTrackSegment(segment);
+			}
+			gpxDoc.addTrack(track);
+		}
+		return gpxDoc;
+	}
+
+	@Override
+	public void close() throws IOException {
+		in.close();
+	}
+
+	private List<WayPoint> readBlock() throws IOException {
+		int count = readCount();
+		// Antes de reservar memoria: un bloque corrupto no puede
+		// tener más puntos de los que quedan según la cabecera
+		if(count > remainingPoints) {
+			throw new IOException("Corrupt gpx binary block: "+count+" points");
+		}
+		remainingPoints -= count;
+		List<WayPoint> points = new ArrayList<WayPoint>(count);
+		if(count == 0) {
+			return points;
+		}
+		int channels = 3 + slots.length;
+		if((long)channels * count > Integer.MAX_VALUE) {
+			throw new IOException("Corrupt gpx binary block: "+count+" points");
+		}
+		if(values.length < channels * count) {
+			values = new double[channels * count];
+			times = new long[count];
+		}
+		String[] names = new String[count];
+		String[] descriptions = new String[count];
+		int named = readCount();
+		if(named > count) {
+			throw new IOException("Corrupt gpx binary block");
+		}
+		int index = 0;
+		for(int i=0; i<named; i++) {
+			int skip = readCount();
+			if(skip >= count - index) {
+				throw new IOException("Corrupt gpx binary block");
+			}
+			index += skip;
+			names[index] = readString();
+			descriptions[index] = readString();
+		}
+		long time = 0L;
+		long delta = 0L;
+		for(int i=0; i<count; i++) {
+			delta += readSignedVarLong();
+			time += delta;
+			times[i] = time;
+		}
+		for(int c=0; c<channels; c++) {
+			int decimals = readByte();
+			if(decimals >= GpxBinaryWriter.POWERS_OF_TEN.length) {
+				throw new IOException("Corrupt gpx binary block");
+			}
+			double scale = GpxBinaryWriter.POWERS_OF_TEN[decimals];
+			long value = 0L;
+			for(int i=c*count; i<(c+1)*count; i++) {
+				value += readSignedVarLong();
+				values[i] = value / scale;
+			}
+		}
+		int factoryCount = factory.getExtensionSchema().size();
+		for(int i=0; i<count; i++) {
+			List<Double> pointValues = new ArrayList<Double>(3 + factoryCount);
+			pointValues.add(Double.valueOf(values[i]));
+			pointValues.add(Double.valueOf(values[count + i]));
+			pointValues.add(Double.valueOf(values[2*count + i]));
+			for(int k=0; k<factoryCount; k++) {
+				pointValues.add(MISSING_VALUE);
+			}
+			for(int k=0; k<slots.length; k++) {
+				if(slots[k] >= 0) {
+					double value = values[(3+k)*count + i];
+					pointValues.set(3 + slots[k], value == -1.0 ? MISSING_VALUE : Double.valueOf(value));
+				}
+			}
+			WayPoint wp = factory.createWayPoint(names[i] != null ? names[i] : "",
+				descriptions[i] != null ? descriptions[i] : "", times[i], pointValues);
+			if(wp != null) {
+				points.add(wp);
+			}
+		}
+		return points;
+	}
+
+	private int readCount() throws IOException {
+		long count = readVarLong();
+		if(count < 0L || count > Integer.MAX_VALUE) {
+			throw new IOException("Corrupt gpx binary count: "+count);
+		}
+		return (int)count;
+	}
+	private String readString() throws IOException {
+		int length = readCount();
+		byte[] bytes = new byte[length];
+		for(int i=0; i<length; i++) {
+			bytes[i] = (byte)readByte();
+		}
+		return new String(bytes, GpxBinaryWriter.UTF8);
+	}
+	private long readSignedVarLong() throws IOException {
+		long value = readVarLong();
+		return (value >>> 1) ^ -(value & 1L);
+	}
+	private long readVarLong() throws IOException {
+		long value = 0L;
+		for(int shift=0; shift<64; shift+=7) {
+			int b = readByte();
+			value |= (long)(b & 0x7F) << shift;
+			if((b & 0x80) == 0) {
+				return value;
+			}
+		}
+		throw new IOException("Corrupt gpx binary varint");
+	}
+	private long readLong() throws IOException {
+		long value = 0L;
+		for(int i=0; i<8; i++) {
+			value = (value << 8) | readByte();
+		}
+		return value;
+	}
+	private int readByte() throws IOException {
+		if(position == limit) {
+			limit = in.read(buffer, 0, buffer.length);
+			position = 0;
+			if(limit <= 0) {
+				limit = 0;
+				throw new EOFException("Truncated gpx binary document");
+			}
+		}
+		return buffer[position++] & 0xFF;
+	}
+}
@@ -0,0 +1,335 @@
+package com.mlab.gpx.impl.stream;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.Route;
+import com.mlab.gpx.impl.Track;
+import com.mlab.gpx.impl.TrackSegment;
+
+/**
+ * Escribe un GpxDocument o un Track en un formato binario compacto que se
+ * lee con GpxBinaryReader sin pasar por el parser xml.<br/>
+ * Formato:<br/>
+ * - Cabecera: 'MGPB', versión, etiquetas de las extensiones, área
+ * (minLon, minLat, maxLon, maxLat como double), tiempos inicial y final y
+ * número de puntos, wpt, rte y trk (ver GpxBinaryHeader)<br/>
+ * - Bloque con los wpt, un bloque por Route y, por cada Track, sus textos
+ * ('name', 'cmt', 'desc', 'src', 'link', 'type'), 'number' y un bloque por
+ * TrackSegment<br/>
+ * - Cada bloque guarda el número de puntos, los nombres y descripciones que
+ * no están vacíos y los puntos por columnas: el tiempo como diferencia de
+ * diferencias y la longitud, la latitud, la altitud y cada extensión como
+ * diferencias de enteros en coma fija. Todos los enteros son varint con
+ * codificación zigzag.<br/>
+ * Los decimales de cada columna se eligen en cada bloque: los mínimos con
+ * los que se recuperan exactamente todos los valores, hasta un máximo de
+ * MAX_COORDINATE_DECIMALS, MAX_ELEVATION_DECIMALS o MAX_EXTENSION_DECIMALS.
+ * Los valores leidos de un gpx con esos decimales o menos, como los que
+ * escribe la librería, se recuperan exactamente; los demás se redondean.
+ * Los valores NaN o infinitos no se pueden guardar.
+ *
+ * @author shiguera
+ *
+ */
+public class GpxBinaryWriter implements Closeable, Flushable {
+
+	static final byte[] MAGIC = new byte[] {'M', 'G', 'P', 'B'};
+	static final int VERSION = 1;
+	static final Charset UTF8 = Charset.forName("UTF-8");
+
+	public static final int MAX_COORDINATE_DECIMALS = 9;
+	public static final int MAX_ELEVATION_DECIMALS = 3;
+	public static final int MAX_EXTENSION_DECIMALS = 6;
+
+	static final double[] POWERS_OF_TEN = new double[] {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
+	private static final double MAX_EXACT = 9007199254740992.0;
+
+	private final OutputStream out;
+	private final String[] extensionTags;
+	private final byte[] buffer;
+	private int position;
+	/**
+	 * Valores de los puntos del bloque por columnas; se reutiliza entre bloques
+	 */
+	private double[] values;
+	private long[] times;
+
+	/**
+	 * @param out OutputStream destino. Se cierra con close()
+	 * @param extensionTags Etiquetas de las extensiones, en el orden de
+	 * WayPoint.getValues() a partir de la posición 3
+	 */
+	public GpxBinaryWriter(OutputStream out, String[] extensionTags) {
+		this.out = out;
+		this.extensionTags = extensionTags.clone();
+		this.buffer = new byte[1 << 16];
+		this.position = 0;
+		this.values = new double[0];
+		this.times = new long[0];
+	}
+	/**
+	 * Guarda las extensiones de 'factory.getExtensionTags()'
+	 */
+	public GpxBinaryWriter(OutputStream out, GpxFactory factory) {
+		this(out, factory.getExtensionTags());
+	}
+
+	/**
+	 * Escribe el documento completo
+	 */
+	public void writeDocument(GpxDocument gpxDoc) throws IOException {
+		List<WayPoint> wpts = new ArrayList<WayPoint>();
+		for(int i=0; i<gpxDoc.wayPointCount(); i++) {
+			wpts.add(gpxDoc.getWayPoint(i));
+		}
+		List<Route> routes = new ArrayList<Route>();
+		for(int i=0; i<gpxDoc.routeCount(); i++) {
+			routes.add(gpxDoc.getRoute(i));
+		}
+		List<Track> tracks = new ArrayList<Track>();
+		for(int i=0; i<gpxDoc.trackCount(); i++) {
+			tracks.add(gpxDoc.getTrack(i));
+		}
+		write(wpts, routes, tracks);
+	}
+	/**
+	 * Escribe un documento con un único Track
+	 */
+	public void writeTrack(Track track) throws IOException {
+		List<Track> tracks = new ArrayList<Track>();
+		tracks.add(track);
+		write(new ArrayList<WayPoint>(), new ArrayList<Route>(), tracks);
+	}
+
+	@Override
+	public void flush() throws IOException {
+		drain();
+		out.flush();
+	}
+	@Override
+	public void close() throws IOException {
+		try {
+			flush();
+		} finally {
+			out.close();
+		}
+	}
+
+	private void write(List<WayPoint> wpts, List<Route> routes, List<Track> tracks) throws IOException {
+		writeHeader(wpts, routes, tracks);
+		writeBlock(wpts);
+		for(Route route: routes) {
+			writeBlock(pointsOf(route.size(), route, null));
+		}
+		for(Track track: tracks) {
+			writeString(track.getName());
+			writeString(track.getCmt());
+			writeString(track.getDesc());
+			writeString(track.getSrc());
+			writeString(track.getLink());
+			writeString(track.getType());
+			writeSignedVarLong(track.getNumber());
+			int count = track.segmentsCount();
+			writeVarLong(count);
+			for(int i=0; i<count; i++) {
+				TrackSegment segment = track.getTrackSegment(i);
+				writeBlock(pointsOf(segment.size(), null, segment));
+			}
+		}
+		flush();
+	}
+	private static List<WayPoint> pointsOf(int count, Route route, TrackSegment segment) {
+		List<WayPoint> points = new ArrayList<WayPoint>(count);
+		for(int i=0; i<count; i++) {
+			points.add(route != null ? route.getWayPoint(i) : segment.getWayPoint(i));
+		}
+		return points;
+	}
+
+	private void writeHeader(List<WayPoint> wpts, List<Route> routes, List<Track> tracks) throws IOException {
+		// Área, tiempos y número de puntos
+		double[] bounds = new double[] {Double.MAX_VALUE, Double.MAX_VALUE, -Double.MAX_VALUE, -Double.MAX_VALUE};
+		long[] span = new long[] {-1L, -1L};
+		int points = updateBounds(wpts, bounds, span);
+		for(Route route: routes) {
+			points += updateBounds(pointsOf(route.size(), route, null), bounds, span);
+		}
+		for(Track track: tracks) {
+			for(int i=0; i<track.segmentsCount(); i++) {
+				TrackSegment segment = track.getTrackSegment(i);
+				points += updateBounds(pointsOf(segment.size(), null, segment), bounds, span);
+			}
+		}
+		if(points == 0) {
+			bounds = new double[4];
+		}
+		for(byte b: MAGIC) {
+			writeByte(b);
+		}
+		writeByte(VERSION);
+		writeVarLong(extensionTags.length);
+		for(String tag: extensionTags) {
+			writeString(tag);
+		}
+		for(double bound: bounds) {
+			writeLong(Double.doubleToLongBits(bound));
+		}
+		writeSignedVarLong(span[0]);
+		writeSignedVarLong(span[1]);
+		writeVarLong(points);
+		writeVarLong(wpts.size());
+		writeVarLong(routes.size());
+		writeVarLong(tracks.size());
+	}
+	private static int updateBounds(List<WayPoint> points, double[] bounds, long[] span) {
+		for(WayPoint wp: points) {
+			bounds[0] = Math.min(bounds[0], wp.getLongitude());
+			bounds[1] = Math.min(bounds[1], wp.getLatitude());
+			bounds[2] = Math.max(bounds[2], wp.getLongitude());
+			bounds[3] = Math.max(bounds[3], wp.getLatitude());
+			long time = wp.getTime();
+			if(time != -1L) {
+				if(span[0] == -1L || time < span[0]) {
+					span[0] = time;
+				}
+				if(span[1] == -1L || time > span[1]) {
+					span[1] = time;
+				}
+			}
+		}
+		return points.size();
+	}
+
+	private void writeBlock(List<WayPoint> points) throws IOException {
+		int count = points.size();
+		writeVarLong(count);
+		if(count == 0) {
+			return;
+		}
+		int channels = 3 + extensionTags.length;
+		if(values.length < channels * count) {
+			values = new double[channels * count];
+			times = new long[count];
+		}
+		// Nombres y descripciones
+		int named = 0;
+		for(int i=0; i<count; i++) {
+			WayPoint wp = points.get(i);
+			if(!isEmpty(wp.getName()) || !isEmpty(wp.getDescription())) {
+				named++;
+			}
+		}
+		writeVarLong(named);
+		int last = 0;
+		for(int i=0; i<count; i++) {
+			WayPoint wp = points.get(i);
+			times[i] = wp.getTime();
+			if(!isEmpty(wp.getName()) || !isEmpty(wp.getDescription())) {
+				writeVarLong(i - last);
+				writeString(wp.getName());
+				writeString(wp.getDescription());
+				last = i;
+			}
+			double[] pointValues = (extensionTags.length > 0 ? wp.getValues() : null);
+			values[i] = wp.getLongitude();
+			values[count + i] = wp.getLatitude();
+			values[2*count + i] = wp.getAltitude();
+			for(int c=3; c<channels; c++) {
+				values[c*count + i] = (c < pointValues.length ? pointValues[c] : -1.0);
+			}
+		}
+		// Tiempos: diferencia de diferencias
+		long previous = 0L;
+		long previousDelta = 0L;
+		for(int i=0; i<count; i++) {
+			long delta = times[i] - previous;
+			writeSignedVarLong(delta - previousDelta);
+			previous = times[i];
+			previousDelta = delta;
+		}
+		// Columnas en coma fija
+		for(int c=0; c<channels; c++) {
+			int max = (c < 2 ? MAX_COORDINATE_DECIMALS : (c == 2 ? MAX_ELEVATION_DECIMALS : MAX_EXTENSION_DECIMALS));
+			int decimals = decimalsOf(values, c*count, (c+1)*count, max);
+			writeByte(decimals);
+			double scale = POWERS_OF_TEN[decimals];
+			long previousValue = 0L;
+			for(int i=c*count; i<(c+1)*count; i++) {
+				long value = Math.round(values[i] * scale);
+				writeSignedVarLong(value - previousValue);
+				previousValue = value;
+			}
+		}
+	}
+	/**
+	 * Decimales mínimos con los que se recuperan exactamente los valores,
+	 * como mucho max
+	 */
+	private static int decimalsOf(double[] values, int from, int to, int max) {
+		int decimals = 0;
+		for(int i=from; i<to && decimals<max; i++) {
+			while(decimals < max && !isExact(values[i], decimals)) {
+				decimals++;
+			}
+		}
+		return decimals;
+	}
+	private static boolean isExact(double value, int decimals) {
+		double scaled = value * POWERS_OF_TEN[decimals];
+		if(!(Math.abs(scaled) < MAX_EXACT)) {
+			return false;
+		}
+		return Math.round(scaled) / POWERS_OF_TEN[decimals] == value;
+	}
+	private static boolean isEmpty(String cad) {
+		return cad == null || cad.isEmpty();
+	}
+
+	private void writeString(String cad) throws IOException {
+		byte[] bytes = (cad != null ? cad : "").getBytes(UTF8);
+		writeVarLong(bytes.length);
+		for(byte b: bytes) {
+			writeByte(b);
+		}
+	}
+	private void writeSignedVarLong(long value) throws IOException {
+		writeVarLong((value << 1) ^ (value >> 63));
+	}
+	private void writeVarLong(long value) throws IOException {
+		if(buffer.length - position < 10) {
+			drain();
+		}
+		while((value & ~0x7FL) != 0L) {
+			buffer[position++] = (byte)((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		buffer[position++] = (byte)value;
+	}
+	private void writeLong(long value) throws IOException {
+		for(int shift=56; shift>=0; shift-=8) {
+			writeByte((int)(value >>> shift));
+		}
+	}
+	private void writeByte(int b) throws IOException {
+		if(position == buffer.length) {
+			drain();
+		}
+		buffer[position++] = (byte)b;
+	}
+	private void drain() throws IOException {
+		if(position > 0) {
+			out.write(buffer, 0, position);
+			position = 0;
+		}
+	}
+}
@@ -0,0 +1,416 @@
+package com.mlab.gpx.impl.stream;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.lang.reflect.Method;
+import java.nio.charset.Charset;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Logger;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.impl.util.GpxCompression;
+import com.mlab.gpx.impl.util.Util;
+
+/**
+ * Carga masiva de ficheros gpx: recorre un árbol de directorios o una lista
+ * de Path's y lee los ficheros en paralelo, entregando cada GpxDocument o
+ * cada error a un Sink junto con el tiempo de lectura del fichero.<br/>
+ * Los ficheros se leen con 'GpxFactory.readTrustedGpxDocument()', que usa el
+ * scanner rápido con los ficheros escritos por la librería y el parser
+ * estándar con el resto. De los zip se leen todas las entradas '.gpx' con
+ * 'GpxFactory.readGpxDocumentEntries()'; cada entrada llega al Sink y al
+ * journal por separado, con el Path 'fichero.zip!entrada.gpx'. Como mucho hay 'parallelism' ficheros en proceso a
+ * la vez, así que la memoria no depende del tamaño del corpus. Si no se
+ * indica un ExecutorService se utilizan virtual threads cuando la JVM
+ * los tiene (Java 21+) y si no un pool fijo de 'parallelism' threads.<br/>
+ * Con setJournal() se guarda en un fichero de texto cada Path procesado;
+ * si la carga se interrumpe, al volver a lanzarla con el mismo journal
+ * se saltan los ficheros ya procesados.<br/>
+ * Las llamadas al Sink están serializadas, por lo que el Sink no necesita
+ * ser thread-safe.
+ *
+ * @author shiguera
+ *
+ */
+public class GpxCorpusLoader {
+	private static final Logger LOG = Logger.getLogger(GpxCorpusLoader.class.getName());
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final String STATUS_OK = "OK";
+	private static final String STATUS_FAILED = "FAILED";
+	/**
+	 * Separador entre el zip y el nombre de la entrada en los Path de las entradas
+	 */
+	public static final String ENTRY_SEPARATOR = "!";
+
+	/**
+	 * Recibe los resultados de la carga
+	 */
+	public interface Sink {
+		/**
+		 * @param path Fichero leído o 'fichero.zip!entrada.gpx'
+		 * @param doc GpxDocument leído
+		 * @param nanos Tiempo de lectura del fichero en nanosegundos; en
+		 * las entradas de un zip, el tiempo medio por entrada
+		 */
+		void onDocument(Path path, GpxDocument doc, long nanos);
+		/**
+		 * @param path Fichero que no se ha podido leer
+		 * @param cause Excepción o null si el fichero no es un gpx válido
+		 * @param nanos Tiempo empleado en nanosegundos
+		 */
+		void onFailure(Path path, Throwable cause, long nanos);
+	}
+
+	private final GpxFactory factory;
+	private final int parallelism;
+	private final ExecutorService executor;
+	private final boolean ownExecutor;
+	private Path journal;
+	private String[] extensions;
+
+	private final AtomicInteger loaded;
+	private final AtomicInteger failed;
+	private final AtomicInteger skipped;
+
+	/**
+	 * @param factory GpxFactory con la que se leen los ficheros
+	 * @param executor ExecutorService en el que se leen los ficheros. No se cierra
+	 * @param parallelism Número máximo de ficheros en proceso a la vez
+	 */
+	public GpxCorpusLoader(GpxFactory factory, ExecutorService executor, int parallelism) {
+		this(factory, executor, parallelism, false);
+	}
+	/**
+	 * Crea el loader con su propio Executor: virtual threads si la JVM
+	 * los tiene y si no un pool fijo de 'parallelism' threads
+	 * @param factory GpxFactory con la que se leen los ficheros
+	 * @param parallelism Número máximo de ficheros en proceso a la vez
+	 */
+	public GpxCorpusLoader(GpxFactory factory, int parallelism) {
+		this(factory, createExecutor(parallelism), parallelism, true);
+	}
+	private GpxCorpusLoader(GpxFactory factory, ExecutorService executor, int parallelism, boolean ownExecutor) {
+		this.factory = factory;
+		this.executor = executor;
+		this.parallelism = Math.max(1, parallelism);
+		this.ownExecutor = ownExecutor;
+		this.journal = null;
+		this.extensions = new String[] {".gpx", ".gpx.gz", ".zip"};
+		this.loaded = new AtomicInteger();
+		this.failed = new AtomicInteger();
+		this.skipped = new AtomicInteger();
+	}
+
+	/**
+	 * Executor de virtual threads (Java 21+) o pool fijo de threads
+	 */
+	private static ExecutorService createExecutor(int parallelism) {
+		try {
+			Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService)method.invoke(null);
+		} catch (Exception e) {
+			return Executors.newFixedThreadPool(Math.max(1, parallelism));
+		}
+	}
+
+	/**
+	 * Fichero en el que se anotan los Path procesados. Si ya existe,
+	 * los Path anotados se saltan
+	 */
+	public void setJournal(Path journal) {
+		this.journal = journal;
+	}
+	public Path getJournal() {
+		return journal;
+	}
+	/**
+	 * Extensiones de los ficheros que se cargan al recorrer un directorio,
+	 * sin distinguir mayúsculas. Por defecto '.gpx', '.gpx.gz' y '.zip';
+	 * de los zip se cargan todas las entradas '.gpx'
+	 */
+	public void setExtensions(String... extensions) {
+		this.extensions = extensions.clone();
+	}
+	public int getLoadedCount() {
+		return loaded.get();
+	}
+	public int getFailedCount() {
+		return failed.get();
+	}
+	/**
+	 * Ficheros saltados por estar ya en el journal
+	 */
+	public int getSkippedCount() {
+		return skipped.get();
+	}
+
+	/**
+	 * Carga los ficheros con las extensiones configuradas del árbol de directorios
+	 * @param root Directorio raíz
+	 * @param sink Sink que recibe los resultados
+	 * @throws IOException si no se puede recorrer el directorio o escribir el journal
+	 * @throws InterruptedException si se interrumpe el thread que llama; los
+	 * ficheros en proceso terminan antes de salir
+	 */
+	public void load(Path root, Sink sink) throws IOException, InterruptedException {
+		final Run run = new Run(sink);
+		try {
+			Files.walkFileTree(root, new SimpleFileVisitor<Path>() {
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+					if(attrs.isRegularFile() && hasExtension(file)) {
+						if(!run.submit(file)) {
+							return FileVisitResult.TERMINATE;
+						}
+					}
+					return FileVisitResult.CONTINUE;
+				}
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException exc) {
+					run.fail(file, exc, 0L);
+					return FileVisitResult.CONTINUE;
+				}
+			});
+		} finally {
+			run.finish();
+		}
+	}
+	/**
+	 * Carga una lista de ficheros
+	 * @param paths Ficheros gpx
+	 * @param sink Sink que recibe los resultados
+	 * @throws IOException si no se puede escribir el journal
+	 * @throws InterruptedException si se interrumpe el thread que llama
+	 */
+	public void load(List<Path> paths, Sink sink) throws IOException, InterruptedException {
+		Run run = new Run(sink);
+		try {
+			for(Path path: paths) {
+				if(!run.submit(path)) {
+					break;
+				}
+			}
+		} finally {
+			run.finish();
+		}
+	}
+
+	/**
+	 * Libera el Executor si lo ha creado el loader
+	 */
+	public void close() {
+		if(ownExecutor) {
+			executor.shutdown();
+		}
+	}
+
+	private boolean hasExtension(Path file) {
+		Path name = file.getFileName();
+		if(name == null) {
+			return false;
+		}
+		String filename = name.toString().toLowerCase();
+		for(String extension: extensions) {
+			if(filename.endsWith(extension.toLowerCase())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Estado de una llamada a load()
+	 */
+	private class Run {
+		private final Sink sink;
+		private final Semaphore permits;
+		private final Set<String> done;
+		private BufferedWriter journalWriter;
+		/**
+		 * Se escribe desde los threads del Executor, bajo el lock del Run,
+		 * y se lee en submit() desde el thread que llama a load()
+		 */
+		private volatile IOException journalError;
+		private boolean interrupted;
+
+		Run(Sink sink) throws IOException {
+			this.sink = sink;
+			this.permits = new Semaphore(parallelism);
+			this.done = readJournal();
+			if(journal != null) {
+				journalWriter = new BufferedWriter(new OutputStreamWriter(Files.newOutputStream(journal,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND), UTF8));
+			}
+		}
+
+		/**
+		 * Lanza la lectura de un fichero, esperando si hay 'parallelism'
+		 * ficheros en proceso
+		 * @return false si hay que dejar de lanzar ficheros
+		 */
+		boolean submit(final Path path) {
+			if(interrupted || journalError != null) {
+				return false;
+			}
+			if(done.contains(path.toString())) {
+				skipped.incrementAndGet();
+				return true;
+			}
+			try {
+				permits.acquire();
+			} catch (InterruptedException e) {
+				interrupted = true;
+				return false;
+			}
+			try {
+				executor.execute(new Runnable() {
+					@Override
+					public void run() {
+						try {
+							read(path);
+						} finally {
+							permits.release();
+						}
+					}
+				});
+			} catch (RejectedExecutionException e) {
+				permits.release();
+				fail(path, e, 0L);
+			}
+			return true;
+		}
+
+		private void read(Path path) {
+			long start = System.nanoTime();
+			try {
+				if(GpxCompression.detect(path.toFile()) == GpxCompression.Format.ZIP) {
+					readZip(path, start);
+					return;
+				}
+				GpxDocument doc = factory.readTrustedGpxDocument(path.toFile());
+				long nanos = System.nanoTime() - start;
+				if(doc != null) {
+					succeed(path, doc, nanos);
+				} else {
+					fail(path, null, nanos);
+				}
+			} catch (IOException | RuntimeException e) {
+				fail(path, e, System.nanoTime() - start);
+			}
+		}
+		/**
+		 * Lee todas las entradas de un zip y entrega cada una con su propio
+		 * Path. Las entradas que ya están en el journal se saltan
+		 */
+		private void readZip(Path path, long start) {
+			Map<String, GpxDocument> docs = factory.readGpxDocumentEntries(path.toFile());
+			if(docs.isEmpty()) {
+				fail(path, null, System.nanoTime() - start);
+				return;
+			}
+			long nanos = (System.nanoTime() - start) / docs.size();
+			for(Map.Entry<String, GpxDocument> entry: docs.entrySet()) {
+				Path entryPath = path.resolveSibling(path.getFileName() + ENTRY_SEPARATOR + entry.getKey());
+				if(done.contains(entryPath.toString())) {
+					skipped.incrementAndGet();
+				} else if(entry.getValue() != null) {
+					succeed(entryPath, entry.getValue(), nanos);
+				} else {
+					fail(entryPath, null, nanos);
+				}
+			}
+		}
+
+		synchronized void succeed(Path path, GpxDocument doc, long nanos) {
+			loaded.incrementAndGet();
+			try {
+				sink.onDocument(path, doc, nanos);
+			} catch (RuntimeException e) {
+				LOG.warning("GpxCorpusLoader: sink error "+e.getMessage());
+			}
+			writeJournal(STATUS_OK, path, nanos);
+		}
+		synchronized void fail(Path path, Throwable cause, long nanos) {
+			failed.incrementAndGet();
+			try {
+				sink.onFailure(path, cause, nanos);
+			} catch (RuntimeException e) {
+				LOG.warning("GpxCorpusLoader: sink error "+e.getMessage());
+			}
+			writeJournal(STATUS_FAILED, path, nanos);
+		}
+		/**
+		 * Anota un fichero procesado: estado, milisegundos y path
+		 */
+		private void writeJournal(String status, Path path, long nanos) {
+			if(journalWriter == null || journalError != null) {
+				return;
+			}
+			try {
+				journalWriter.write(status+"\t"+(nanos / 1000000L)+"\t"+path.toString());
+				journalWriter.newLine();
+				journalWriter.flush();
+			} catch (IOException e) {
+				journalError = e;
+			}
+		}
+
+		/**
+		 * Espera a que terminen los ficheros en proceso y cierra el journal
+		 */
+		void finish() throws IOException, InterruptedException {
+			permits.acquireUninterruptibly(parallelism);
+			permits.release(parallelism);
+			IOException error;
+			synchronized(this) {
+				Util.close(journalWriter);
+				error = journalError;
+			}
+			if(error != null) {
+				throw error;
+			}
+			if(interrupted) {
+				throw new InterruptedException("GpxCorpusLoader: load interrupted");
+			}
+		}
+
+		private Set<String> readJournal() throws IOException {
+			Set<String> paths = new HashSet<String>();
+			if(journal == null || !Files.exists(journal)) {
+				return paths;
+			}
+			BufferedReader reader = Files.newBufferedReader(journal, UTF8);
+			try {
+				String line;
+				while((line = reader.readLine()) != null) {
+					int tab1 = line.indexOf('\t');
+					int tab2 = (tab1 < 0 ? -1 : line.indexOf('\t', tab1 + 1));
+					if(tab2 > 0) {
+						paths.add(line.substring(tab2 + 1));
+					}
+				}
+			} finally {
+				reader.close();
+			}
+			return paths;
+		}
+	}
+}
@@ -0,0 +1,101 @@
+package com.mlab.gpx.impl.stream;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Entrada de un GpxIndex: posición en el fichero de un elemento 'wpt',
+ * 'rte', 'trk' o 'trkseg', junto con su número de puntos y el tiempo del
+ * primer y último punto con 'time'. Los 'trk' tienen además la entrada de
+ * cada uno de sus 'trkseg'.
+ *
+ * @author shiguera
+ *
+ */
+public class GpxElementIndex {
+
+	private final String tag;
+	private final long offset;
+	private long length;
+	private int pointCount;
+	private long startTime;
+	private long endTime;
+	private final List<GpxElementIndex> segments;
+
+	GpxElementIndex(String tag, long offset) {
+		this.tag = tag;
+		this.offset = offset;
+		this.length = 0L;
+		this.pointCount = 0;
+		this.startTime = -1L;
+		this.endTime = -1L;
+		this.segments = new ArrayList<GpxElementIndex>();
+	}
+
+	void setEnd(long end) {
+		this.length = end - offset;
+	}
+	/**
+	 * Añade un punto al elemento
+	 * @param time Tiempo del punto o -1 si no tiene
+	 */
+	void addPoint(long time) {
+		pointCount++;
+		if(time != -1L) {
+			if(startTime == -1L) {
+				startTime = time;
+			}
+			endTime = time;
+		}
+	}
+	void addSegment(GpxElementIndex segment) {
+		segments.add(segment);
+	}
+
+	/**
+	 * @return Nombre del elemento: 'wpt', 'rte', 'trk' o 'trkseg'
+	 */
+	public String getTag() {
+		return tag;
+	}
+	/**
+	 * @return Posición en bytes del '&lt;' de la etiqueta de apertura
+	 */
+	public long getOffset() {
+		return offset;
+	}
+	/**
+	 * @return Longitud en bytes del elemento, hasta el final de la etiqueta de cierre
+	 */
+	public long getLength() {
+		return length;
+	}
+	public int getPointCount() {
+		return pointCount;
+	}
+	/**
+	 * @return Tiempo del primer punto con 'time' o -1
+	 */
+	public long getStartTime() {
+		return startTime;
+	}
+	/**
+	 * @return Tiempo del último punto con 'time' o -1
+	 */
+	public long getEndTime() {
+		return endTime;
+	}
+	/**
+	 * @return Entradas de los 'trkseg' de un 'trk'; vacía para el resto
+	 */
+	public List<GpxElementIndex> getSegments() {
+		return Collections.unmodifiableList(segments);
+	}
+
+	@Override
+	public String toString() {
+		return tag+"[offset="+offset+", length="+length+", points="+pointCount+
+			", start="+startTime+", end="+endTime+"]";
+	}
+}
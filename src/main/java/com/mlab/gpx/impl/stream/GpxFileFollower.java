@@ -0,0 +1,304 @@
+package com.mlab.gpx.impl.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.Charset;
+import java.util.logging.Logger;
+
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.impl.Track;
+import com.mlab.gpx.impl.util.Util;
+
+/**
+ * Lee un fichero gpx que se está escribiendo (grabación en curso), al que
+ * se van añadiendo elementos 'trkpt' y que todavía no tiene las etiquetas
+ * de cierre.<br/>
+ * El follower guarda la posición del fichero hasta la que ha leído; cada
+ * llamada a poll() lee solo los bytes nuevos, parsea los 'trkpt' completos
+ * y los añade al Track con Track.addWayPoint(), que a su vez utiliza
+ * TrackSegment.addWayPoint(). Un 'trkpt' incompleto se guarda hasta que
+ * llegan el resto de sus bytes. Cada 'trkseg' o 'trk' nuevo del fichero
+ * empieza un nuevo TrackSegment del Track.<br/>
+ * Los puntos que no se pueden añadir (tiempo no creciente) se descartan.
+ * Solo se leen los 'trkpt'; el resto de elementos se ignoran.<br/>
+ * poll() y getTrack() están sincronizados sobre el follower; para
+ * recorrer el Track mientras otro thread llama a poll() hay que
+ * sincronizar sobre el follower.
+ *
+ * @author shiguera
+ *
+ */
+public class GpxFileFollower {
+	private static final Logger LOG = Logger.getLogger(GpxFileFollower.class.getName());
+
+	private static final byte[] TRKPT_END = "</trkpt>".getBytes(Charset.forName("US-ASCII"));
+	private static final byte[] COMMENT_END = "-->".getBytes(Charset.forName("US-ASCII"));
+	private static final byte[] SEGMENT_SEPARATOR = "</trkseg><trkseg>".getBytes(Charset.forName("US-ASCII"));
+	private static final int READ_BUFFER_SIZE = 1 << 16;
+
+	private final GpxFactory factory;
+	private final File file;
+	private final Track track;
+	private long position;
+	private byte[] pending;
+	private int pendingLength;
+	private String encoding;
+	private boolean newSegment;
+
+	/**
+	 * @param factory GpxFactory con la que se crean los WayPoint
+	 * @param file Fichero gpx que se está escribiendo
+	 * @param track Track al que se añaden los puntos leídos
+	 */
+	public GpxFileFollower(GpxFactory factory, File file, Track track) {
+		this.factory = factory;
+		this.file = file;
+		this.track = track;
+		this.position = 0L;
+		this.pending = new byte[READ_BUFFER_SIZE];
+		this.pendingLength = 0;
+		this.encoding = null;
+		this.newSegment = false;
+	}
+	public GpxFileFollower(GpxFactory factory, File file) {
+		this(factory, file, new Track());
+	}
+
+	/**
+	 * Track con los puntos leídos hasta el momento
+	 */
+	public synchronized Track getTrack() {
+		return track;
+	}
+	public File getFile() {
+		return file;
+	}
+	/**
+	 * Posición del fichero hasta la que se ha leído
+	 */
+	public synchronized long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Lee los bytes añadidos al fichero desde la última llamada y añade
+	 * al Track los 'trkpt' completos
+	 * @return Número de puntos añadidos al Track o -1 si hay errores
+	 * (el fichero no se puede leer, se ha truncado o los puntos están
+	 * mal formados)
+	 */
+	public synchronized int poll() {
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			long length = raf.length();
+			if(length < position) {
+				LOG.warning("GpxFileFollower.poll() ERROR: file truncated "+file.getName());
+				return -1;
+			}
+			if(length == position) {
+				return 0;
+			}
+			raf.seek(position);
+			while(position < length) {
+				int count = (int)Math.min(length - position, READ_BUFFER_SIZE);
+				ensureCapacity(pendingLength + count);
+				raf.readFully(pending, pendingLength, count);
+				pendingLength += count;
+				position += count;
+			}
+		} catch (IOException e) {
+			LOG.warning("GpxFileFollower.poll() ERROR: "+e.getMessage());
+			return -1;
+		} finally {
+			Util.close(raf);
+		}
+		return processPending();
+	}
+
+	private void ensureCapacity(int capacity) {
+		if(capacity > pending.length) {
+			byte[] newPending = new byte[Math.max(capacity, pending.length * 2)];
+			System.arraycopy(pending, 0, newPending, 0, pendingLength);
+			pending = newPending;
+		}
+	}
+
+	/**
+	 * Recorre los bytes pendientes, separa los 'trkpt' completos y los
+	 * añade al Track. Los bytes a partir del primer elemento incompleto
+	 * quedan pendientes para la siguiente llamada. Los puntos de cada
+	 * segmento nuevo del fichero se separan con '&lt;/trkseg&gt;&lt;trkseg&gt;',
+	 * de modo que el comienzo de segmento viaja con los propios puntos.
+	 */
+	private int processPending() {
+		ByteArrayOutputStream points = new ByteArrayOutputStream();
+		int pointCount = 0;
+		boolean firstSegmentNew = false;
+		int lastSegment = 0;
+		int pos = 0;
+		while(pos < pendingLength) {
+			int start = indexOf(pending, (byte)'<', pos, pendingLength);
+			if(start < 0) {
+				pos = pendingLength;
+				break;
+			}
+			int end;
+			if(startsWith(start, "<!--")) {
+				end = indexOf(pending, COMMENT_END, start + 4, pendingLength);
+				end = (end < 0 ? -1 : end + COMMENT_END.length);
+			} else if(isTag(start, "trkpt")) {
+				end = indexOf(pending, (byte)'>', start, pendingLength);
+				if(end > 0 && pending[end-1] != '/') {
+					end = indexOf(pending, TRKPT_END, end, pendingLength);
+					end = (end < 0 ? -1 : end + TRKPT_END.length);
+				} else if(end > 0) {
+					end++;
+				}
+				if(end > 0) {
+					if(pointCount == 0) {
+						firstSegmentNew = newSegment;
+					} else if(newSegment) {
+						points.write(SEGMENT_SEPARATOR, 0, SEGMENT_SEPARATOR.length);
+						lastSegment++;
+					}
+					points.write(pending, start, end - start);
+					pointCount++;
+					newSegment = false;
+				}
+			} else {
+				end = indexOf(pending, (byte)'>', start, pendingLength);
+				if(end > 0) {
+					end++;
+					if(isTag(start, "trkseg") || isTag(start, "trk")) {
+						newSegment = true;
+					} else if(startsWith(start, "<?xml")) {
+						encoding = readEncoding(start, end);
+					}
+				}
+			}
+			if(end < 0) {
+				// Elemento incompleto
+				pos = start;
+				break;
+			}
+			pos = end;
+		}
+		System.arraycopy(pending, pos, pending, 0, pendingLength - pos);
+		pendingLength -= pos;
+		if(pointCount == 0) {
+			return 0;
+		}
+		return addPoints(points.toByteArray(), firstSegmentNew, lastSegment);
+	}
+
+	/**
+	 * Parsea los 'trkpt' como un fragmento 'trk' y los añade al Track. Un
+	 * punto empieza un TrackSegment si es el primero válido de su 'trkseg'
+	 * en el fragmento, salvo en el primer 'trkseg' si no empieza un segmento
+	 * del fichero. Así un punto no válido no desplaza los comienzos de
+	 * segmento, y si ningún punto de un segmento nuevo es válido el
+	 * comienzo pasa a la siguiente llamada.
+	 * @param firstSegmentNew Si el primer 'trkseg' del fragmento empieza un segmento
+	 * @param lastSegment Índice del último 'trkseg' del fragmento
+	 */
+	private int addPoints(byte[] points, boolean firstSegmentNew, int lastSegment) {
+		ByteArrayOutputStream fragment = new ByteArrayOutputStream(points.length + 80);
+		Charset charset = Charset.forName("US-ASCII");
+		byte[] head = ((encoding != null ? "<?xml version=\"1.0\" encoding=\""+encoding+"\"?>" : "") +
+				"<trk><trkseg>").getBytes(charset);
+		byte[] foot = "</trkseg></trk>".getBytes(charset);
+		fragment.write(head, 0, head.length);
+		fragment.write(points, 0, points.length);
+		fragment.write(foot, 0, foot.length);
+		WayPointIterator iterator = factory.iterateWayPoints(new ByteArrayInputStream(fragment.toByteArray()));
+		if(iterator == null) {
+			return -1;
+		}
+		int added = 0;
+		int currentSegment = (firstSegmentNew ? -1 : 0);
+		try {
+			while(iterator.hasNext()) {
+				IndexedWayPoint point = iterator.next();
+				boolean newTrackSegment = (point.getSegmentIndex() != currentSegment);
+				currentSegment = point.getSegmentIndex();
+				if(track.addWayPoint(point.getWayPoint(), newTrackSegment)) {
+					added++;
+				}
+			}
+			if(currentSegment < lastSegment) {
+				newSegment = true;
+			}
+		} catch (IllegalStateException e) {
+			LOG.warning("GpxFileFollower.poll() ERROR: "+e.getMessage());
+			return -1;
+		} finally {
+			iterator.close();
+		}
+		return added;
+	}
+
+	private String readEncoding(int start, int end) {
+		String decl = new String(pending, start, end - start, Charset.forName("US-ASCII"));
+		int index = decl.indexOf("encoding");
+		if(index < 0) {
+			return null;
+		}
+		int q = index + 8;
+		while(q < decl.length() && decl.charAt(q) != '"' && decl.charAt(q) != '\'') {
+			q++;
+		}
+		if(q >= decl.length()) {
+			return null;
+		}
+		int qend = decl.indexOf(decl.charAt(q), q + 1);
+		return (qend > q ? decl.substring(q + 1, qend) : null);
+	}
+
+	private boolean startsWith(int start, String prefix) {
+		if(start + prefix.length() > pendingLength) {
+			return false;
+		}
+		for(int i=0; i<prefix.length(); i++) {
+			if(pending[start + i] != prefix.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+	/**
+	 * true si en 'start' empieza la etiqueta de apertura 'name'
+	 */
+	private boolean isTag(int start, String name) {
+		int after = start + 1 + name.length();
+		if(after >= pendingLength || !startsWith(start + 1, name)) {
+			return false;
+		}
+		byte b = pending[after];
+		return b == '>' || b == '/' || b <= ' ';
+	}
+	private static int indexOf(byte[] buf, byte b, int from, int to) {
+		for(int i=from; i<to; i++) {
+			if(buf[i] == b) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	private static int indexOf(byte[] buf, byte[] target, int from, int to) {
+		int last = to - target.length;
+		for(int i=from; i<=last; i++) {
+			int j = 0;
+			while(j < target.length && buf[i + j] == target[j]) {
+				j++;
+			}
+			if(j == target.length) {
+				return i;
+			}
+		}
+		return -1;
+	}
+}
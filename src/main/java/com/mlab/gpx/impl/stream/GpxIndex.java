@@ -0,0 +1,379 @@
+package com.mlab.gpx.impl.stream;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.mlab.gpx.impl.util.GpxTimeCodec;
+import com.mlab.gpx.impl.util.Util;
+
+/**
+ * Índice de un fichero gpx: posición en bytes, número de puntos y tiempos
+ * de cada 'wpt', 'rte', 'trk' y 'trkseg'. Se construye con build(), que
+ * recorre el fichero una sola vez a nivel de bytes, sin parsear los puntos:
+ * solo reconoce las etiquetas y lee el contenido de los 'time'.<br/>
+ * Lo utiliza LazyGpxDocument para leer después solo los elementos
+ * que se piden.
+ *
+ * @author shiguera
+ *
+ */
+public class GpxIndex {
+	private static final Logger LOG = Logger.getLogger(GpxIndex.class.getName());
+
+	private static final String TAG_GPX = "gpx";
+	private static final String TAG_WAYPOINT = "wpt";
+	private static final String TAG_ROUTE = "rte";
+	private static final String TAG_ROUTEPOINT = "rtept";
+	private static final String TAG_TRACK = "trk";
+	private static final String TAG_SEGMENT = "trkseg";
+	private static final String TAG_TRACKPOINT = "trkpt";
+	private static final String TAG_TIME = "time";
+
+	private final Charset charset;
+	private final long fileLength;
+	private final List<GpxElementIndex> wayPoints;
+	private final List<GpxElementIndex> routes;
+	private final List<GpxElementIndex> tracks;
+
+	private GpxIndex(Charset charset, long fileLength, List<GpxElementIndex> wayPoints,
+			List<GpxElementIndex> routes, List<GpxElementIndex> tracks) {
+		this.charset = charset;
+		this.fileLength = fileLength;
+		this.wayPoints = Collections.unmodifiableList(wayPoints);
+		this.routes = Collections.unmodifiableList(routes);
+		this.tracks = Collections.unmodifiableList(tracks);
+	}
+
+	/**
+	 * Codificación del documento, tomada de la declaración xml
+	 */
+	public Charset getCharset() {
+		return charset;
+	}
+	/**
+	 * Longitud en bytes del fichero indexado
+	 */
+	public long getFileLength() {
+		return fileLength;
+	}
+	public List<GpxElementIndex> getWayPoints() {
+		return wayPoints;
+	}
+	public List<GpxElementIndex> getRoutes() {
+		return routes;
+	}
+	public List<GpxElementIndex> getTracks() {
+		return tracks;
+	}
+
+	/**
+	 * Construye el índice de un fichero gpx
+	 * @param file Fichero gpx
+	 * @return GpxIndex o null si el fichero no se puede leer, no es un
+	 * documento gpx, está mal formado o no tiene una codificación compatible
+	 * con ASCII (UTF-16...)
+	 */
+	public static GpxIndex build(File file) {
+		InputStream is = null;
+		try {
+			is = new BufferedInputStream(new FileInputStream(file), 1 << 16);
+			return new Builder(is).build();
+		} catch (IOException e) {
+			LOG.warning("GpxIndex.build() ERROR: "+e.getMessage());
+			return null;
+		} finally {
+			Util.close(is);
+		}
+	}
+
+	/**
+	 * Recorre el documento byte a byte reconociendo las etiquetas
+	 */
+	private static class Builder {
+		private final InputStream in;
+		private long position;
+		private final StringBuilder name;
+		private final StringBuilder timeText;
+		private Charset charset;
+
+		private final List<GpxElementIndex> wayPoints;
+		private final List<GpxElementIndex> routes;
+		private final List<GpxElementIndex> tracks;
+
+		private int depth;
+		private boolean rootFound;
+		private GpxElementIndex element;
+		private GpxElementIndex segment;
+		private int pointDepth;
+		private long pointTime;
+		private boolean inTime;
+
+		Builder(InputStream in) {
+			this.in = in;
+			this.position = 0L;
+			this.name = new StringBuilder();
+			this.timeText = new StringBuilder();
+			this.charset = Charset.forName("UTF-8");
+			this.wayPoints = new ArrayList<GpxElementIndex>();
+			this.routes = new ArrayList<GpxElementIndex>();
+			this.tracks = new ArrayList<GpxElementIndex>();
+			this.pointDepth = -1;
+		}
+
+		private int read() throws IOException {
+			int c = in.read();
+			if(c != -1) {
+				position++;
+			}
+			return c;
+		}
+
+		GpxIndex build() throws IOException {
+			int c = read();
+			if(c == 0xFE || c == 0xFF || c == 0) {
+				// UTF-16 o UTF-32
+				return null;
+			}
+			if(c == 0xEF) {
+				// BOM UTF-8
+				read();
+				read();
+				c = read();
+			}
+			while(c != -1) {
+				if(c == '<') {
+					if(!readMarkup(position-1)) {
+						return null;
+					}
+				} else if(inTime) {
+					timeText.append((char)c);
+				}
+				c = read();
+			}
+			if(!rootFound || depth != 0) {
+				return null;
+			}
+			return new GpxIndex(charset, position, wayPoints, routes, tracks);
+		}
+
+		/**
+		 * Lee una etiqueta, comentario, CDATA, instrucción de proceso
+		 * o declaración desde después del '&lt;'
+		 * @return false si el documento está mal formado o no es gpx
+		 */
+		private boolean readMarkup(long start) throws IOException {
+			int c = read();
+			if(c == '!') {
+				c = read();
+				if(c == '-') {
+					return skipUntil("-->");
+				} else if(c == '[') {
+					return skipUntil("]]>");
+				} else {
+					return skipDeclaration();
+				}
+			} else if(c == '?') {
+				return readProcessingInstruction();
+			} else if(c == '/') {
+				c = readName(read());
+				while(c != '>' && c != -1) {
+					c = read();
+				}
+				if(c == -1) {
+					return false;
+				}
+				endTag(name.toString());
+				return true;
+			} else {
+				c = readName(c);
+				if(name.length() == 0) {
+					return false;
+				}
+				int previous = c;
+				char quote = 0;
+				while(c != -1) {
+					if(quote != 0) {
+						if(c == quote) {
+							quote = 0;
+						}
+					} else if(c == '"' || c == '\'') {
+						quote = (char)c;
+					} else if(c == '>') {
+						break;
+					}
+					previous = c;
+					c = read();
+				}
+				if(c == -1) {
+					return false;
+				}
+				String tag = name.toString();
+				if(!startTag(tag, start)) {
+					return false;
+				}
+				if(previous == '/') {
+					endTag(tag);
+				}
+				return true;
+			}
+		}
+		private int readName(int c) throws IOException {
+			name.setLength(0);
+			while(c != -1 && c != '>' && c != '/' && c > ' ') {
+				name.append((char)c);
+				c = read();
+			}
+			return c;
+		}
+		private boolean skipUntil(String end) throws IOException {
+			int matched = 0;
+			int c = read();
+			while(c != -1) {
+				if(c == end.charAt(matched)) {
+					matched++;
+					if(matched == end.length()) {
+						return true;
+					}
+				} else {
+					matched = (c == end.charAt(0) ? 1 : 0);
+				}
+				c = read();
+			}
+			return false;
+		}
+		/**
+		 * Salta un '&lt;!DOCTYPE ...&gt;', con su posible subconjunto interno
+		 */
+		private boolean skipDeclaration() throws IOException {
+			int brackets = 0;
+			int c = read();
+			while(c != -1) {
+				if(c == '[') {
+					brackets++;
+				} else if(c == ']') {
+					brackets--;
+				} else if(c == '>' && brackets <= 0) {
+					return true;
+				}
+				c = read();
+			}
+			return false;
+		}
+		/**
+		 * Lee un '&lt;?...?&gt;'. De la declaración xml se obtiene la codificación
+		 */
+		private boolean readProcessingInstruction() throws IOException {
+			StringBuilder text = new StringBuilder();
+			int c = read();
+			while(c != -1) {
+				text.append((char)c);
+				int length = text.length();
+				if(length >= 2 && text.charAt(length-2) == '?' && text.charAt(length-1) == '>') {
+					break;
+				}
+				c = read();
+			}
+			if(c == -1) {
+				return false;
+			}
+			if(text.toString().startsWith("xml")) {
+				int index = text.indexOf("encoding");
+				if(index >= 0) {
+					int q1 = text.indexOf("\"", index);
+					int q2 = text.indexOf("'", index);
+					int q = (q1 >= 0 && (q2 < 0 || q1 < q2)) ? q1 : q2;
+					if(q >= 0) {
+						int end = text.indexOf(String.valueOf(text.charAt(q)), q+1);
+						if(end > q) {
+							String encoding = text.substring(q+1, end);
+							try {
+								charset = Charset.forName(encoding);
+							} catch (Exception e) {
+								LOG.warning("GpxIndex: unsupported encoding "+encoding);
+								return false;
+							}
+							if(encoding.toUpperCase().startsWith("UTF-16") ||
+									encoding.toUpperCase().startsWith("UTF-32")) {
+								return false;
+							}
+						}
+					}
+				}
+			}
+			return true;
+		}
+
+		private boolean startTag(String tag, long start) {
+			depth++;
+			if(depth == 1) {
+				if(rootFound || !tag.equals(TAG_GPX)) {
+					return false;
+				}
+				rootFound = true;
+			} else if(depth == 2) {
+				if(tag.equals(TAG_WAYPOINT)) {
+					element = new GpxElementIndex(tag, start);
+					wayPoints.add(element);
+					startPoint();
+				} else if(tag.equals(TAG_ROUTE)) {
+					element = new GpxElementIndex(tag, start);
+					routes.add(element);
+				} else if(tag.equals(TAG_TRACK)) {
+					element = new GpxElementIndex(tag, start);
+					tracks.add(element);
+				}
+			} else if(depth == 3 && element != null) {
+				if(element.getTag().equals(TAG_ROUTE) && tag.equals(TAG_ROUTEPOINT)) {
+					startPoint();
+				} else if(element.getTag().equals(TAG_TRACK) && tag.equals(TAG_SEGMENT)) {
+					segment = new GpxElementIndex(tag, start);
+					element.addSegment(segment);
+				}
+			} else if(depth == 4 && segment != null && tag.equals(TAG_TRACKPOINT)) {
+				startPoint();
+			}
+			if(pointDepth != -1 && depth == pointDepth+1 && tag.equals(TAG_TIME)) {
+				inTime = true;
+				timeText.setLength(0);
+			}
+			return true;
+		}
+		private void startPoint() {
+			pointDepth = depth;
+			pointTime = -1L;
+		}
+		private void endTag(String tag) {
+			if(inTime && depth == pointDepth+1) {
+				inTime = false;
+				if(pointTime == -1L) {
+					long t = GpxTimeCodec.parse(timeText);
+					pointTime = (t == GpxTimeCodec.INVALID_TIME ? -1L : t);
+				}
+			}
+			if(depth == pointDepth) {
+				pointDepth = -1;
+				if(segment != null) {
+					segment.addPoint(pointTime);
+				}
+				element.addPoint(pointTime);
+			}
+			if(depth == 3 && segment != null) {
+				segment.setEnd(position);
+				segment = null;
+			}
+			if(depth == 2 && element != null) {
+				element.setEnd(position);
+				element = null;
+			}
+			depth--;
+		}
+	}
+}
@@ -0,0 +1,566 @@
+package com.mlab.gpx.impl.stream;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import com.mlab.gpx.api.GpxFilter;
+import com.mlab.gpx.api.GpxProjection;
+import com.mlab.gpx.impl.extensions.ExtensionSchema;
+import com.mlab.gpx.impl.util.DecimalParser;
+import com.mlab.gpx.impl.util.GpxTimeCodec;
+import com.mlab.gpx.impl.util.XmlFactory;
+
+/**
+ * Lector de documentos gpx en una sola pasada, construido sobre un
+ * XMLStreamReader (StAX). No construye ningún árbol DOM: recorre el documento
+ * y se detiene en cada elemento relevante devolviendo un evento:<br/>
+ * <ul>
+ * <li>WAYPOINT: un elemento 'wpt' completo</li>
+ * <li>START_ROUTE, ROUTE_POINT, END_ROUTE: elementos 'rte' y 'rtept'</li>
+ * <li>START_TRACK, START_SEGMENT, TRACK_POINT, END_SEGMENT, END_TRACK: elementos
+ * 'trk', 'trkseg' y 'trkpt'</li>
+ * <li>END_DOCUMENT: fin del documento</li>
+ * </ul>
+ * Tras un evento de punto, los getters devuelven los valores del punto
+ * leido: lon, lat, ele, time, name, desc y el resto de etiquetas hoja
+ * (por ejemplo las extensiones 'mlab:speed') a través de getTags().<br/>
+ * Las etiquetas numéricas registradas con setDoubleTags() y 'ele' se leen
+ * directamente del buffer de texto a un double[], sin crear Strings, con
+ * DecimalParser; 'time' se lee del mismo modo con GpxTimeCodec.<br/>
+ * Con setProjection() se leen solo algunos campos de los puntos; el resto
+ * quedan con su valor de 'no disponible'. Con setFilter() se descartan los
+ * puntos que no cumplen un GpxFilter (área, tiempo, precisión).<br/>
+ * Los valores del punto solo son válidos hasta la siguiente llamada a next().
+ * Los puntos sin 'lat' o 'lon' válidos se descartan.
+ *
+ * @author shiguera
+ *
+ */
+public class GpxStreamReader {
+	private static final Logger LOG = Logger.getLogger(GpxStreamReader.class.getName());
+
+	public static final int WAYPOINT = 1;
+	public static final int START_ROUTE = 2;
+	public static final int ROUTE_POINT = 3;
+	public static final int END_ROUTE = 4;
+	public static final int START_TRACK = 5;
+	public static final int START_SEGMENT = 6;
+	public static final int TRACK_POINT = 7;
+	public static final int END_SEGMENT = 8;
+	public static final int END_TRACK = 9;
+	public static final int END_DOCUMENT = 10;
+
+	private static final String TAG_WAYPOINT = "wpt";
+	private static final String TAG_ROUTE = "rte";
+	private static final String TAG_ROUTEPOINT = "rtept";
+	private static final String TAG_TRACK = "trk";
+	private static final String TAG_SEGMENT = "trkseg";
+	private static final String TAG_TRACKPOINT = "trkpt";
+	private static final String TAG_ELEVATION = "ele";
+	private static final String TAG_TIME = "time";
+	private static final String TAG_NAME = "name";
+	private static final String TAG_DESCRIPTION = "desc";
+
+	private final XMLStreamReader xml;
+	private final String rootName;
+	/**
+	 * true si el reader ya está posicionado en el elemento raíz
+	 * y este todavía no se ha procesado
+	 */
+	private boolean atRoot;
+	private boolean finished;
+
+	private boolean inRoute, inTrack, inSegment;
+	private int routeIndex, trackIndex, segmentIndex;
+
+	// Valores del último punto leido
+	private String name;
+	private String description;
+	private long time;
+	private double longitude;
+	private double latitude;
+	private double altitude;
+	private boolean hasAltitude;
+	private boolean hasTime;
+	private final Map<String, String> tags;
+	private final StringBuilder text;
+	private ExtensionSchema schema;
+	private double[] doubleValues;
+	private boolean[] doubleFound;
+	private GpxProjection projection;
+	private GpxFilter filter;
+	private int skippedPointCount;
+
+	/**
+	 * Crea un GpxStreamReader a partir de un Reader de caracteres
+	 * @param reader Reader con el documento gpx
+	 * @throws XMLStreamException si el documento no es xml válido
+	 */
+	public GpxStreamReader(Reader reader) throws XMLStreamException {
+		this(XmlFactory.createXmlStreamReader(reader));
+	}
+	/**
+	 * Crea un GpxStreamReader a partir de un InputStream. La codificación
+	 * se obtiene de la declaración xml del documento.
+	 * @param inputStream InputStream con el documento gpx
+	 * @throws XMLStreamException si el documento no es xml válido
+	 */
+	public GpxStreamReader(InputStream inputStream) throws XMLStreamException {
+		this(XmlFactory.createXmlStreamReader(inputStream));
+	}
+
+	private GpxStreamReader(XMLStreamReader xml) throws XMLStreamException {
+		this.xml = xml;
+		this.tags = new HashMap<String, String>();
+		this.text = new StringBuilder();
+		setDoubleTags(new String[0]);
+		this.projection = GpxProjection.ALL;
+		this.filter = GpxFilter.ALL;
+		this.routeIndex = -1;
+		this.trackIndex = -1;
+		this.segmentIndex = -1;
+		// Avanzar hasta el elemento raíz
+		while(xml.getEventType() != XMLStreamConstants.START_ELEMENT && xml.hasNext()) {
+			xml.next();
+		}
+		if(xml.getEventType() == XMLStreamConstants.START_ELEMENT) {
+			this.rootName = xml.getLocalName();
+			this.atRoot = true;
+		} else {
+			this.rootName = "";
+			this.finished = true;
+		}
+	}
+
+	/**
+	 * Registra las etiquetas numéricas de los puntos (por ejemplo
+	 * las extensiones 'mlab:speed',...) que se leen directamente a un
+	 * double[], sin pasar por getTags(). Sus valores se obtienen con
+	 * getDoubleValue() en el mismo orden de 'tagnames'.
+	 * @param tagnames String[] nombres completos de etiqueta
+	 */
+	public void setDoubleTags(String[] tagnames) {
+		setExtensionSchema(new ExtensionSchema(tagnames));
+	}
+	/**
+	 * Campos de los puntos que se leen. Las etiquetas de los campos que no
+	 * están en la proyección se saltan sin copiar su texto ni crear objetos.
+	 * Por defecto GpxProjection.ALL
+	 */
+	public void setProjection(GpxProjection projection) {
+		this.projection = projection;
+	}
+	public GpxProjection getProjection() {
+		return projection;
+	}
+	/**
+	 * Condiciones de los puntos que se leen. Los puntos que no las
+	 * cumplen se saltan como los que no tienen coordenadas válidas.
+	 * Por defecto GpxFilter.ALL
+	 */
+	public void setFilter(GpxFilter filter) {
+		this.filter = filter;
+	}
+	public GpxFilter getFilter() {
+		return filter;
+	}
+	/**
+	 * Igual que setDoubleTags() con un ExtensionSchema ya compilado,
+	 * normalmente el de la factory ('GpxFactory.getExtensionSchema()')
+	 */
+	public void setExtensionSchema(ExtensionSchema schema) {
+		this.schema = schema;
+		this.doubleValues = new double[schema.size()];
+		this.doubleFound = new boolean[schema.size()];
+	}
+
+	/**
+	 * Nombre del elemento raíz del documento ('gpx' en un documento gpx
+	 * completo, 'trk', 'wpt',... en un fragmento)
+	 * @return String nombre del elemento raíz o cadena vacía si no hay
+	 */
+	public String getRootName() {
+		return rootName;
+	}
+	/**
+	 * Codificación del documento según el parser xml
+	 * @return String nombre de la codificación o null si no se conoce
+	 */
+	public String getEncoding() {
+		return xml.getEncoding();
+	}
+	/**
+	 * Puntos descartados hasta el momento por no tener coordenadas válidas
+	 */
+	public int getSkippedPointCount() {
+		return skippedPointCount;
+	}
+
+	public boolean hasNext() {
+		return !finished;
+	}
+
+	/**
+	 * Avanza hasta el siguiente elemento relevante del documento
+	 * @return int Uno de los eventos WAYPOINT, START_ROUTE,... END_DOCUMENT
+	 * @throws XMLStreamException si el documento está mal formado
+	 */
+	public int next() throws XMLStreamException {
+		if(finished) {
+			return END_DOCUMENT;
+		}
+		while(atRoot || xml.hasNext()) {
+			int event;
+			boolean root = atRoot;
+			if(atRoot) {
+				event = xml.getEventType();
+				atRoot = false;
+			} else {
+				event = xml.next();
+			}
+			if(event == XMLStreamConstants.START_ELEMENT) {
+				String tag = xml.getLocalName();
+				if(root && !tag.equals(TAG_WAYPOINT) && !tag.equals(TAG_ROUTE) && !tag.equals(TAG_TRACK)) {
+					// Fragmentos gpx cuya raíz es un trkseg, trkpt o rtept
+					if(tag.equals(TAG_SEGMENT)) {
+						inSegment = true;
+						segmentIndex++;
+						return START_SEGMENT;
+					} else if(tag.equals(TAG_TRACKPOINT) && readPoint(tag)) {
+						return TRACK_POINT;
+					} else if(tag.equals(TAG_ROUTEPOINT) && readPoint(tag)) {
+						return ROUTE_POINT;
+					}
+				} else if(inSegment) {
+					if(tag.equals(TAG_TRACKPOINT) && readPoint(tag)) {
+						return TRACK_POINT;
+					}
+				} else if(inTrack) {
+					if(tag.equals(TAG_SEGMENT)) {
+						inSegment = true;
+						segmentIndex++;
+						return START_SEGMENT;
+					}
+				} else if(inRoute) {
+					if(tag.equals(TAG_ROUTEPOINT) && readPoint(tag)) {
+						return ROUTE_POINT;
+					}
+				} else if(tag.equals(TAG_WAYPOINT)) {
+					if(readPoint(tag)) {
+						return WAYPOINT;
+					}
+				} else if(tag.equals(TAG_ROUTE)) {
+					inRoute = true;
+					routeIndex++;
+					return START_ROUTE;
+				} else if(tag.equals(TAG_TRACK)) {
+					inTrack = true;
+					trackIndex++;
+					segmentIndex = -1;
+					return START_TRACK;
+				}
+			} else if(event == XMLStreamConstants.END_ELEMENT) {
+				String tag = xml.getLocalName();
+				if(inSegment && tag.equals(TAG_SEGMENT)) {
+					inSegment = false;
+					return END_SEGMENT;
+				} else if(inTrack && !inSegment && tag.equals(TAG_TRACK)) {
+					inTrack = false;
+					return END_TRACK;
+				} else if(inRoute && tag.equals(TAG_ROUTE)) {
+					inRoute = false;
+					return END_ROUTE;
+				}
+			}
+		}
+		finished = true;
+		return END_DOCUMENT;
+	}
+
+	/**
+	 * Lee un elemento punto completo, desde su etiqueta de apertura
+	 * (en la que está posicionado el reader) hasta la de cierre.
+	 * @return true si el punto tiene coordenadas válidas
+	 */
+	private boolean readPoint(String pointTag) throws XMLStreamException {
+		tags.clear();
+		altitude = -1.0;
+		hasAltitude = false;
+		time = -1L;
+		hasTime = false;
+		Arrays.fill(doubleValues, -1.0);
+		Arrays.fill(doubleFound, false);
+		String slat = xml.getAttributeValue(null, "lat");
+		String slon = xml.getAttributeValue(null, "lon");
+		try {
+			latitude = DecimalParser.parseDouble(slat);
+			longitude = DecimalParser.parseDouble(slon);
+		} catch (Exception e) {
+			skippedPointCount++;
+			skipElement();
+			LOG.warning("GpxStreamReader.readPoint(): invalid coordinates in "+pointTag+
+				" lat="+slat+" lon="+slon);
+			return false;
+		}
+		if(!filter.acceptsPosition(longitude, latitude)) {
+			skipElement();
+			return false;
+		}
+		int depth = 1;
+		boolean leaf = false;
+		while(depth > 0) {
+			int event = xml.next();
+			switch(event) {
+			case XMLStreamConstants.START_ELEMENT:
+				depth++;
+				leaf = isProjected(xml.getLocalName());
+				if(leaf) {
+					text.setLength(0);
+				}
+				break;
+			case XMLStreamConstants.CHARACTERS:
+			case XMLStreamConstants.CDATA:
+			case XMLStreamConstants.SPACE:
+				if(leaf) {
+					text.append(xml.getTextCharacters(), xml.getTextStart(), xml.getTextLength());
+				}
+				break;
+			case XMLStreamConstants.END_ELEMENT:
+				depth--;
+				if(leaf) {
+					storeTag(xml.getLocalName());
+				}
+				leaf = false;
+				break;
+			default:
+				break;
+			}
+		}
+		if(filter != GpxFilter.ALL && !acceptsFilter()) {
+			return false;
+		}
+		name = stringTag(TAG_NAME);
+		description = stringTag(TAG_DESCRIPTION);
+		return true;
+	}
+	/**
+	 * Salta el resto del elemento en el que está posicionado el reader
+	 */
+	private void skipElement() throws XMLStreamException {
+		int depth = 1;
+		while(depth > 0) {
+			int event = xml.next();
+			if(event == XMLStreamConstants.START_ELEMENT) {
+				depth++;
+			} else if(event == XMLStreamConstants.END_ELEMENT) {
+				depth--;
+			}
+		}
+	}
+	/**
+	 * Comprueba las condiciones de tiempo y precisión del filtro. Si el punto
+	 * se acepta, borra los valores leidos solo para el filtro que no están
+	 * en la proyección
+	 */
+	private boolean acceptsFilter() {
+		int slot = schema.slotOf(GpxFilter.ACCURACY_TAG);
+		double accuracy = (slot >= 0 ? doubleValues[slot] : doubleTag(GpxFilter.ACCURACY_TAG));
+		if(!filter.acceptsTime(time) || !filter.acceptsAccuracy(accuracy)) {
+			return false;
+		}
+		if(!projection.includesTime()) {
+			time = -1L;
+		}
+		if(!projection.includesExtensions()) {
+			if(slot >= 0) {
+				doubleValues[slot] = -1.0;
+			} else {
+				tags.remove(GpxFilter.ACCURACY_TAG);
+			}
+		}
+		return true;
+	}
+	/**
+	 * Si hay que leer una etiqueta del punto según la proyección
+	 */
+	private boolean isProjected(String tag) {
+		if(projection == GpxProjection.ALL) {
+			return true;
+		}
+		if(tag.equals(TAG_ELEVATION)) {
+			return projection.includesElevation();
+		} else if(tag.equals(TAG_TIME)) {
+			return projection.includesTime() || filter.hasTimeWindow();
+		} else if(tag.equals(TAG_NAME)) {
+			return projection.includesName();
+		} else if(tag.equals(TAG_DESCRIPTION)) {
+			return projection.includesDescription();
+		}
+		return projection.includesExtensions() ||
+			(filter.hasAccuracy() && tag.equals(GpxFilter.ACCURACY_TAG));
+	}
+	/**
+	 * Guarda el texto de un elemento hoja. Si una etiqueta aparece
+	 * varias veces se guarda la primera
+	 */
+	private void storeTag(String tag) {
+		if(tag.equals(TAG_ELEVATION)) {
+			if(!hasAltitude) {
+				altitude = parseText(tag);
+				hasAltitude = true;
+			}
+			return;
+		}
+		if(tag.equals(TAG_TIME)) {
+			if(!hasTime) {
+				time = parseTime();
+				hasTime = true;
+			}
+			return;
+		}
+		int slot = schema.slotOf(tag);
+		if(slot >= 0) {
+			if(!doubleFound[slot]) {
+				doubleValues[slot] = parseText(tag);
+				doubleFound[slot] = true;
+			}
+			return;
+		}
+		if(!tags.containsKey(tag)) {
+			tags.put(tag, text.toString());
+		}
+	}
+	private double parseText(String tag) {
+		try {
+			return DecimalParser.parseDouble(text);
+		} catch (NumberFormatException e) {
+			LOG.warning("GpxStreamReader.readPoint(): can't parse number "+tag+"="+text);
+			return -1.0;
+		}
+	}
+	private String stringTag(String tagname) {
+		String cad = tags.get(tagname);
+		return (cad != null ? cad : "");
+	}
+	private long parseTime() {
+		long t = GpxTimeCodec.parse(text, 0, text.length());
+		if(t == GpxTimeCodec.INVALID_TIME) {
+			LOG.warning("GpxStreamReader.readPoint(): can't parse time "+text);
+			t = -1L;
+		}
+		return t;
+	}
+	private double doubleTag(String tagname) {
+		double result = -1.0;
+		String cad = tags.get(tagname);
+		if(cad != null) {
+			try {
+				result = DecimalParser.parseDouble(cad);
+			} catch (Exception e) {
+				LOG.warning("GpxStreamReader.doubleTag(): can't parse number "+cad);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * Libera los recursos del XMLStreamReader. No cierra
+	 * la fuente de datos subyacente.
+	 */
+	public void close() {
+		try {
+			xml.close();
+		} catch (XMLStreamException e) {
+			LOG.warning("GpxStreamReader.close(): "+e.getMessage());
+		}
+		finished = true;
+	}
+
+	// getters del punto actual
+	public String getName() {
+		return name;
+	}
+	public String getDescription() {
+		return description;
+	}
+	public long getTime() {
+		return time;
+	}
+	public double getLongitude() {
+		return longitude;
+	}
+	public double getLatitude() {
+		return latitude;
+	}
+	public double getAltitude() {
+		return altitude;
+	}
+	/**
+	 * Contenido de texto de los elementos hoja del último punto leido, indexado por
+	 * el nombre completo de la etiqueta ('time', 'mlab:speed',...). Si una etiqueta
+	 * aparece varias veces se guarda la primera. No incluye 'ele', 'time' ni las
+	 * etiquetas registradas con setDoubleTags().
+	 * @return Map<String,String> Solo es válido hasta la siguiente llamada a next()
+	 */
+	public Map<String, String> getTags() {
+		return tags;
+	}
+	/**
+	 * Copia en 'values' los valores double de las etiquetas 'tagnames'
+	 * del último punto leido, en el mismo orden. Las etiquetas
+	 * que no existen o no son números valen -1.0
+	 * @param tagnames String[] nombres de etiqueta ('mlab:speed',...)
+	 * @param values double[] de al menos tagnames.length elementos
+	 */
+	public void getDoubleTags(String[] tagnames, double[] values) {
+		for(int i=0; i<tagnames.length; i++) {
+			int slot = schema.slotOf(tagnames[i]);
+			if(slot >= 0) {
+				values[i] = doubleValues[slot];
+			} else if(tagnames[i].equals(TAG_ELEVATION)) {
+				values[i] = altitude;
+			} else {
+				values[i] = doubleTag(tagnames[i]);
+			}
+		}
+	}
+	/**
+	 * Número de etiquetas registradas con setDoubleTags()
+	 */
+	public int getDoubleTagCount() {
+		return schema.size();
+	}
+	/**
+	 * Valor en el último punto leido de la etiqueta registrada en la
+	 * posición 'index' de setDoubleTags(); -1.0 si el punto no la tiene
+	 * o no es un número
+	 */
+	public double getDoubleValue(int index) {
+		return doubleValues[index];
+	}
+	/**
+	 * Copia en 'values' los valores de las etiquetas registradas
+	 * con setDoubleTags(), en el mismo orden
+	 * @param values double[] de al menos getDoubleTagCount() elementos
+	 */
+	public void getDoubleValues(double[] values) {
+		System.arraycopy(doubleValues, 0, values, 0, doubleValues.length);
+	}
+	public int getRouteIndex() {
+		return routeIndex;
+	}
+	public int getTrackIndex() {
+		return trackIndex;
+	}
+	public int getSegmentIndex() {
+		return segmentIndex;
+	}
+}
@@ -0,0 +1,262 @@
+package com.mlab.gpx.impl.stream;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+
+import com.mlab.gpx.api.AbstractGpxNode;
+import com.mlab.gpx.api.AbstractWayPoint;
+import com.mlab.gpx.api.CompositeGpxNode;
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxNode;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.Metadata;
+import com.mlab.gpx.impl.Route;
+import com.mlab.gpx.impl.Track;
+import com.mlab.gpx.impl.TrackSegment;
+import com.mlab.gpx.impl.util.BufferedTextWriter;
+import com.mlab.gpx.impl.util.XmlFactory;
+
+/**
+ * Escribe documentos gpx de forma incremental en un Writer, un OutputStream
+ * o un WritableByteChannel.<br/>
+ * El texto se acumula en un BufferedTextWriter. Los puntos se escriben
+ * con 'AbstractWayPoint.appendGpx()', sin crear cadenas por punto;
+ * los nodos cuya clase sobreescribe asGpx() se escriben con su asGpx().<br/>
+ * La salida es la misma que la de los métodos asGpx() de GpxDocumentImpl,
+ * Track y TrackSegment, que utilizan esta clase. Los textos ('name', 'desc'...)
+ * se escapan.<br/>
+ * Un documento se puede escribir completo con writeDocument() o por partes:
+ * writeStartDocument(), writeMetadata(), writeWayPoint(), writeRoute(),
+ * writeTrack() y writeEndDocument(). No es thread-safe.
+ *
+ * @author shiguera
+ *
+ */
+public class GpxWriter implements Closeable, Flushable {
+
+	/**
+	 * Cabecera de los documentos gpx de la librería
+	 */
+	public static final String HEAD = "<?xml version=\"1.0\" encoding=\"UTF-8\" ?>"+
+		"<gpx version=\"1.1\" creator=\"MercatorLab - http:mercatorlab.com\" "+
+		"xmlns:xsi=\"http://www.w3.org/2001/XMLSchema-instance\" "+
+		"xmlns=\"http://www.topografix.com/GPX/1/1\" "+
+		"xsi:schemaLocation=\"http://www.topografix.com/GPX/1/1 http://www.topografix.com/GPX/1/1/gpx.xsd\" "+
+		"xmlns:mlab=\"http://mercatorlab.com/downloads/mlab.xsd\">";
+	public static final String FOOTER = "</gpx>";
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	/**
+	 * Buffer y destino; sin destino si solo se escribe en el buffer (asGpx())
+	 */
+	private final BufferedTextWriter out;
+	private final StringBuilder buffer;
+
+	/**
+	 * @param writer Writer destino. Se cierra con close()
+	 */
+	public GpxWriter(Writer writer) {
+		this.out = new BufferedTextWriter(writer);
+		this.buffer = out.getBuffer();
+	}
+	/**
+	 * Escribe en UTF-8
+	 * @param outputStream OutputStream destino. Se cierra con close()
+	 */
+	public GpxWriter(OutputStream outputStream) {
+		this(new OutputStreamWriter(outputStream, UTF8));
+	}
+	/**
+	 * Escribe en UTF-8
+	 * @param channel Canal destino. Se cierra con close()
+	 */
+	public GpxWriter(WritableByteChannel channel) {
+		this(Channels.newWriter(channel, UTF8.newEncoder(), -1));
+	}
+	/**
+	 * GpxWriter sin destino, que acumula todo en el buffer
+	 */
+	private GpxWriter() {
+		this((Writer)null);
+	}
+
+	/**
+	 * Cadena gpx completa de un GpxDocument, con cabecera xml
+	 */
+	public static String asGpx(GpxDocument gpxDoc) {
+		GpxWriter gpxWriter = new GpxWriter();
+		try {
+			gpxWriter.writeDocument(gpxDoc);
+		} catch (IOException e) {
+			// Sin destino no se escribe nada fuera del buffer
+		}
+		return gpxWriter.buffer.toString();
+	}
+	/**
+	 * Cadena gpx '<trk>...</trk>' de un Track
+	 */
+	public static String asGpx(Track track) {
+		GpxWriter gpxWriter = new GpxWriter();
+		try {
+			gpxWriter.writeTrackElement(track);
+		} catch (IOException e) {
+			// Sin destino no se escribe nada fuera del buffer
+		}
+		return gpxWriter.buffer.toString();
+	}
+
+	/**
+	 * Escribe el documento completo y vacía el destino, sin cerrarlo.<br/>
+	 * Los elementos se piden uno a uno (getTrack(i)...), así que con un
+	 * LazyGpxDocument solo está en memoria el elemento que se escribe.
+	 */
+	public void writeDocument(GpxDocument gpxDoc) throws IOException {
+		writeStartDocument();
+		writeMetadata(gpxDoc.getMetadata());
+		int count = gpxDoc.wayPointCount();
+		for(int i=0; i<count; i++) {
+			writeWayPoint(gpxDoc.getWayPoint(i));
+		}
+		count = gpxDoc.routeCount();
+		for(int i=0; i<count; i++) {
+			writeRoute(gpxDoc.getRoute(i));
+		}
+		count = gpxDoc.trackCount();
+		for(int i=0; i<count; i++) {
+			writeTrack(gpxDoc.getTrack(i));
+		}
+		// FIXME Falta resolver el elemento <extensions>
+		writeEndDocument();
+		flush();
+	}
+	/**
+	 * Escribe la cabecera xml y la etiqueta de apertura 'gpx'
+	 */
+	public void writeStartDocument() throws IOException {
+		buffer.append(HEAD);
+	}
+	/**
+	 * Escribe la etiqueta de cierre 'gpx'
+	 */
+	public void writeEndDocument() throws IOException {
+		buffer.append(FOOTER);
+		out.drain();
+	}
+	public void writeMetadata(Metadata metadata) throws IOException {
+		if(metadata != null) {
+			buffer.append(metadata.asGpx());
+		}
+	}
+	/**
+	 * Escribe un punto con su etiqueta ('wpt', 'rtept' o 'trkpt')
+	 */
+	public void writeWayPoint(WayPoint wp) throws IOException {
+		if(wp == null) {
+			return;
+		}
+		AbstractWayPoint.appendAsGpx(buffer, wp);
+		out.drain();
+	}
+	public void writeRoute(Route route) throws IOException {
+		writeComposite(route);
+	}
+	public void writeTrackSegment(TrackSegment segment) throws IOException {
+		writeComposite(segment);
+	}
+	/**
+	 * Escribe un Track. Si su clase sobreescribe asGpx() se escribe su asGpx()
+	 */
+	public void writeTrack(Track track) throws IOException {
+		if(track == null) {
+			return;
+		}
+		if(!AbstractGpxNode.inheritsAsGpx(track, Track.class)) {
+			buffer.append(track.asGpx());
+			out.drain();
+			return;
+		}
+		writeTrackElement(track);
+	}
+
+	/**
+	 * Escribe los elementos del Track; lo utiliza también 'Track.asGpx()'
+	 */
+	private void writeTrackElement(Track track) throws IOException {
+		buffer.append("<trk>");
+		appendText("name", track.getName());
+		appendText("cmt", track.getCmt());
+		appendText("desc", track.getDesc());
+		appendText("src", track.getSrc());
+		appendText("link", track.getLink());
+		if(track.getNumber() != -1) {
+			buffer.append("<number>").append(track.getNumber()).append("</number>");
+		}
+		appendText("type", track.getType());
+		int count = track.size();
+		for(int i=0; i<count; i++) {
+			writeNode(track.get(i));
+		}
+		buffer.append("</trk>");
+		out.drain();
+	}
+
+	/**
+	 * Vuelca el buffer en el destino y lo vacía
+	 */
+	@Override
+	public void flush() throws IOException {
+		out.flush();
+	}
+	/**
+	 * Vuelca el buffer y cierra el destino
+	 */
+	@Override
+	public void close() throws IOException {
+		out.close();
+	}
+
+	private void writeComposite(CompositeGpxNode node) throws IOException {
+		if(node == null) {
+			return;
+		}
+		if(!AbstractGpxNode.inheritsAsGpx(node, CompositeGpxNode.class)) {
+			buffer.append(node.asGpx());
+			out.drain();
+			return;
+		}
+		buffer.append(XmlFactory.createTag(node.getNamespace(), node.getTagName(), true));
+		int count = node.size();
+		for(int i=0; i<count; i++) {
+			writeNode(node.get(i));
+		}
+		buffer.append(XmlFactory.createTag(node.getNamespace(), node.getTagName(), false));
+		out.drain();
+	}
+	private void writeNode(GpxNode node) throws IOException {
+		if(node instanceof WayPoint) {
+			writeWayPoint((WayPoint)node);
+		} else if(node instanceof Track) {
+			writeTrack((Track)node);
+		} else if(node instanceof CompositeGpxNode) {
+			writeComposite((CompositeGpxNode)node);
+		} else if(node != null) {
+			buffer.append(node.asGpx());
+			out.drain();
+		}
+	}
+	private void appendText(String tag, String text) {
+		if(text != null && !text.isEmpty()) {
+			buffer.append('<').append(tag).append('>');
+			XmlFactory.appendEscaped(buffer, text);
+			buffer.append("</").append(tag).append('>');
+		}
+	}
+}
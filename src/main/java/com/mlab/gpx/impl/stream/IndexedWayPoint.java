@@ -0,0 +1,54 @@
+package com.mlab.gpx.impl.stream;
+
+import com.mlab.gpx.api.WayPoint;
+
+/**
+ * WayPoint leido en streaming junto con su posición en el documento gpx.<br/>
+ * El tipo de punto se obtiene con getWayPoint().getTag(): 'wpt', 'rtept' o 'trkpt'.
+ * Los índices que no aplican al tipo de punto valen -1
+ * (por ejemplo el trackIndex de un 'wpt').
+ *
+ * @author shiguera
+ *
+ */
+public class IndexedWayPoint {
+
+	private final WayPoint wayPoint;
+	private final int routeIndex;
+	private final int trackIndex;
+	private final int segmentIndex;
+
+	public IndexedWayPoint(WayPoint wayPoint, int routeIndex, int trackIndex, int segmentIndex) {
+		this.wayPoint = wayPoint;
+		this.routeIndex = routeIndex;
+		this.trackIndex = trackIndex;
+		this.segmentIndex = segmentIndex;
+	}
+
+	public WayPoint getWayPoint() {
+		return wayPoint;
+	}
+	/**
+	 * Índice de la Route del punto en el documento o -1
+	 */
+	public int getRouteIndex() {
+		return routeIndex;
+	}
+	/**
+	 * Índice del Track del punto en el documento o -1
+	 */
+	public int getTrackIndex() {
+		return trackIndex;
+	}
+	/**
+	 * Índice del TrackSegment del punto dentro de su Track o -1
+	 */
+	public int getSegmentIndex() {
+		return segmentIndex;
+	}
+
+	@Override
+	public String toString() {
+		return "["+routeIndex+","+trackIndex+","+segmentIndex+"] "+wayPoint.toString();
+	}
+}
@@ -0,0 +1,665 @@
+package com.mlab.gpx.impl.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.logging.Logger;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.Route;
+import com.mlab.gpx.impl.Track;
+import com.mlab.gpx.impl.TrackSegment;
+import com.mlab.gpx.impl.util.DecimalParser;
+import com.mlab.gpx.impl.util.GpxTimeCodec;
+import com.mlab.gpx.impl.util.Util;
+
+/**
+ * Lector rápido de documentos gpx generados por la propia librería
+ * (GpxDocumentImpl.asGpx()). Trabaja directamente sobre los bytes de un
+ * MappedByteBuffer, sin JAXP, sin decodificar caracteres y sin crear
+ * Strings salvo para 'name' y 'desc'. Los números y las fechas se
+ * leen directamente desde los bytes.<br/>
+ * Solo reconoce la estructura que escribe la librería: elementos 'metadata',
+ * 'wpt', 'rte/rtept', 'trk/trkseg/trkpt' con 'ele', 'time', 'name', 'desc' y las
+ * extensiones de 'GpxFactory.getExtensionTags()'. Ante cualquier cosa
+ * inesperada (comentarios, entidades, CDATA, etiquetas desconocidas, otra
+ * codificación, fechas no válidas...) scan() devuelve null y el
+ * llamante debe utilizar el parser estándar; ver 'GpxFactory.readTrustedGpxDocument()'.
+ *
+ * @author shiguera
+ *
+ */
+public class MappedGpxScanner {
+	private static final Logger LOG = Logger.getLogger(MappedGpxScanner.class.getName());
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final byte[] XML_DECLARATION = bytes("<?xml");
+	private static final byte[] GPX_OPEN = bytes("<gpx");
+	private static final byte[] GPX_CLOSE = bytes("</gpx>");
+	private static final byte[] METADATA_EMPTY = bytes("<metadata/>");
+	private static final byte[] METADATA_OPEN = bytes("<metadata>");
+	private static final byte[] METADATA_CLOSE = bytes("</metadata>");
+	private static final byte[] WPT_OPEN = bytes("<wpt");
+	private static final byte[] WPT_CLOSE = bytes("</wpt>");
+	private static final byte[] RTE_OPEN = bytes("<rte>");
+	private static final byte[] RTE_CLOSE = bytes("</rte>");
+	private static final byte[] RTEPT_OPEN = bytes("<rtept");
+	private static final byte[] RTEPT_CLOSE = bytes("</rtept>");
+	private static final byte[] TRK_OPEN = bytes("<trk>");
+	private static final byte[] TRK_CLOSE = bytes("</trk>");
+	private static final byte[] TRKSEG_OPEN = bytes("<trkseg>");
+	private static final byte[] TRKSEG_CLOSE = bytes("</trkseg>");
+	private static final byte[] TRKPT_OPEN = bytes("<trkpt");
+	private static final byte[] TRKPT_CLOSE = bytes("</trkpt>");
+	private static final byte[] ELE_OPEN = bytes("<ele>");
+	private static final byte[] ELE_CLOSE = bytes("</ele>");
+	private static final byte[] TIME_OPEN = bytes("<time>");
+	private static final byte[] TIME_CLOSE = bytes("</time>");
+	private static final byte[] NAME_OPEN = bytes("<name>");
+	private static final byte[] NAME_CLOSE = bytes("</name>");
+	private static final byte[] DESC_OPEN = bytes("<desc>");
+	private static final byte[] DESC_CLOSE = bytes("</desc>");
+	private static final byte[] EXTENSIONS_OPEN = bytes("<extensions>");
+	private static final byte[] EXTENSIONS_CLOSE = bytes("</extensions>");
+	private static final byte[] LAT = bytes("lat");
+	private static final byte[] LON = bytes("lon");
+	private static final byte[] ENCODING = bytes("encoding=");
+
+	/**
+	 * Excepción interna para abandonar el scan en cuanto se encuentra
+	 * algo que el scanner no reconoce. No construye la pila.
+	 */
+	private static class UnexpectedContentException extends Exception {
+		private static final long serialVersionUID = 1L;
+		UnexpectedContentException() {
+			super(null, null, false, false);
+		}
+	}
+	private static final UnexpectedContentException UNEXPECTED = new UnexpectedContentException();
+
+	/**
+	 * Evento de los elementos de texto de un 'trk' (name, number...), que se ignoran
+	 */
+	private static final int TRACK_ELEMENT = 0;
+
+	private final GpxFactory factory;
+	private final String[] extensionTags;
+	private final byte[][] extensionOpenTags;
+	private final byte[][] extensionCloseTags;
+
+	private ByteBuffer buf;
+	private int pos;
+	private int limit;
+
+	// Valores del punto actual
+	private double lon, lat, ele;
+	private long time;
+	private String name, desc;
+	private final double[] extensions;
+	private final StringBuilder timeText = new StringBuilder();
+
+	/**
+	 * @param factory GpxFactory que crea los WayPoint y define las
+	 * extensiones que se reconocen ('getExtensionTags()')
+	 */
+	public MappedGpxScanner(GpxFactory factory) {
+		this.factory = factory;
+		this.extensionTags = factory.getExtensionTags();
+		this.extensionOpenTags = new byte[extensionTags.length][];
+		this.extensionCloseTags = new byte[extensionTags.length][];
+		for(int i=0; i<extensionTags.length; i++) {
+			extensionOpenTags[i] = bytes("<"+extensionTags[i]+">");
+			extensionCloseTags[i] = bytes("</"+extensionTags[i]+">");
+		}
+		this.extensions = new double[extensionTags.length];
+	}
+
+	/**
+	 * Lee un fichero gpx a través de un MappedByteBuffer
+	 * @param file Fichero gpx
+	 * @return GpxDocument o null si el fichero no tiene el formato esperado,
+	 * no se puede leer o supera los 2GB
+	 */
+	public GpxDocument scan(File file) {
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			FileChannel channel = raf.getChannel();
+			if(channel.size() > Integer.MAX_VALUE) {
+				return null;
+			}
+			return scan(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		} catch (IOException e) {
+			LOG.warning("MappedGpxScanner.scan() ERROR: "+e.getMessage());
+			return null;
+		} finally {
+			Util.close(raf);
+		}
+	}
+
+	/**
+	 * Lee un documento gpx codificado en UTF-8 desde un ByteBuffer,
+	 * entre su posición y su límite
+	 * @param buffer ByteBuffer con el documento
+	 * @return GpxDocument o null si el documento no tiene el formato esperado
+	 */
+	public GpxDocument scan(ByteBuffer buffer) {
+		ScanResult result = scanRange(buffer, true);
+		if(result == null) {
+			return null;
+		}
+		return assemble(factory, Collections.singletonList(result));
+	}
+
+	/**
+	 * Lee los eventos de un rango de bytes, entre la posición y el límite del
+	 * buffer. El rango debe empezar en el inicio del documento (documentStart)
+	 * o en el inicio de una etiqueta, y terminar al final del documento o
+	 * justo antes de una etiqueta. Si no es así la lectura falla.
+	 * @return ScanResult o null si el rango no tiene el formato esperado
+	 */
+	ScanResult scanRange(ByteBuffer buffer, boolean documentStart) {
+		this.buf = buffer;
+		this.pos = buffer.position();
+		this.limit = buffer.limit();
+		ScanResult result = new ScanResult();
+		try {
+			scanEvents(result, documentStart);
+			return result;
+		} catch (UnexpectedContentException e) {
+			LOG.fine("MappedGpxScanner.scan(): unexpected content at byte "+pos);
+			return null;
+		} catch (IndexOutOfBoundsException e) {
+			return null;
+		} finally {
+			this.buf = null;
+		}
+	}
+
+	private void scanHeader() throws UnexpectedContentException {
+		// BOM UTF-8
+		if(limit-pos >= 3 && (buf.get(pos)&0xFF)==0xEF && (buf.get(pos+1)&0xFF)==0xBB &&
+				(buf.get(pos+2)&0xFF)==0xBF) {
+			pos += 3;
+		}
+		skipWhitespace();
+		if(startsWith(XML_DECLARATION)) {
+			pos += XML_DECLARATION.length;
+			int end = indexOf((byte)'?', pos);
+			checkEncoding(pos, end);
+			pos = end + 1;
+			expect((byte)'>');
+		}
+		skipWhitespace();
+		expect(GPX_OPEN);
+		int end = indexOf((byte)'>', pos);
+		if(buf.get(end-1) == '/') {
+			throw UNEXPECTED;
+		}
+		pos = end + 1;
+	}
+
+	private void scanEvents(ScanResult result, boolean documentStart) throws UnexpectedContentException {
+		if(documentStart) {
+			scanHeader();
+		}
+		while(true) {
+			skipWhitespace();
+			if(pos == limit) {
+				return;
+			}
+			if(startsWith(TRKPT_OPEN)) {
+				pos += TRKPT_OPEN.length;
+				WayPoint wp = scanPoint(TRKPT_CLOSE);
+				if(wp != null) {
+					result.add(GpxStreamReader.TRACK_POINT, wp);
+				}
+			} else if(startsWith(TRKSEG_CLOSE)) {
+				pos += TRKSEG_CLOSE.length;
+				result.add(GpxStreamReader.END_SEGMENT, null);
+			} else if(startsWith(TRKSEG_OPEN)) {
+				pos += TRKSEG_OPEN.length;
+				result.add(GpxStreamReader.START_SEGMENT, null);
+			} else if(startsWith(TRK_CLOSE)) {
+				pos += TRK_CLOSE.length;
+				result.add(GpxStreamReader.END_TRACK, null);
+			} else if(startsWith(TRK_OPEN)) {
+				pos += TRK_OPEN.length;
+				result.add(GpxStreamReader.START_TRACK, null);
+			} else if(startsWith(WPT_OPEN)) {
+				pos += WPT_OPEN.length;
+				WayPoint wp = scanPoint(WPT_CLOSE);
+				if(wp != null) {
+					result.add(GpxStreamReader.WAYPOINT, wp);
+				}
+			} else if(startsWith(RTE_OPEN)) {
+				pos += RTE_OPEN.length;
+				result.add(GpxStreamReader.START_ROUTE, scanRoute());
+			} else if(startsWith(METADATA_EMPTY)) {
+				pos += METADATA_EMPTY.length;
+			} else if(startsWith(METADATA_OPEN)) {
+				pos = indexOf(METADATA_CLOSE, pos) + METADATA_CLOSE.length;
+			} else if(startsWith(GPX_CLOSE)) {
+				pos += GPX_CLOSE.length;
+				skipWhitespace();
+				if(pos != limit) {
+					throw UNEXPECTED;
+				}
+				result.add(GpxStreamReader.END_DOCUMENT, null);
+				return;
+			} else if(startsWith(EXTENSIONS_OPEN)) {
+				throw UNEXPECTED;
+			} else {
+				skipTextElement();
+				result.add(TRACK_ELEMENT, null);
+			}
+		}
+	}
+
+	private Route scanRoute() throws UnexpectedContentException {
+		Route route = new Route();
+		while(true) {
+			skipWhitespace();
+			if(startsWith(RTE_CLOSE)) {
+				pos += RTE_CLOSE.length;
+				return route;
+			} else if(startsWith(RTEPT_OPEN)) {
+				pos += RTEPT_OPEN.length;
+				WayPoint wp = scanPoint(RTEPT_CLOSE);
+				if(wp != null) {
+					route.addWayPoint(wp);
+				}
+			} else {
+				throw UNEXPECTED;
+			}
+		}
+	}
+
+	/**
+	 * Monta el GpxDocument con los eventos de los ScanResult, en orden,
+	 * comprobando que la estructura es correcta: 'wpt' y 'rte' fuera de los
+	 * 'trk', 'trkpt' dentro de un 'trkseg' y el documento cerrado con '</gpx>'.
+	 * @return GpxDocument o null si la estructura no es la esperada
+	 */
+	static GpxDocument assemble(GpxFactory factory, List<ScanResult> results) {
+		GpxDocument doc = factory.createGpxDocument();
+		Track track = null;
+		TrackSegment segment = null;
+		boolean closed = false;
+		for(ScanResult result: results) {
+			for(int i=0; i<result.size(); i++) {
+				if(closed) {
+					return null;
+				}
+				int event = result.getEvent(i);
+				switch(event) {
+				case GpxStreamReader.WAYPOINT:
+				case GpxStreamReader.START_ROUTE:
+					if(track != null) {
+						return null;
+					}
+					if(event == GpxStreamReader.WAYPOINT) {
+						doc.addWayPoint((WayPoint)result.getValue(i));
+					} else {
+						doc.addRoute((Route)result.getValue(i));
+					}
+					break;
+				case GpxStreamReader.START_TRACK:
+					if(track != null) {
+						return null;
+					}
+					track = new Track();
+					break;
+				case TRACK_ELEMENT:
+					if(track == null || segment != null) {
+						return null;
+					}
+					break;
+				case GpxStreamReader.START_SEGMENT:
+					if(track == null || segment != null) {
+						return null;
+					}
+					segment = new TrackSegment();
+					break;
+				case GpxStreamReader.TRACK_POINT:
+					if(segment == null) {
+						return null;
+					}
+					segment.addWayPoint((WayPoint)result.getValue(i));
+					break;
+				case GpxStreamReader.END_SEGMENT:
+					if(segment == null) {
+						return null;
+					}
+					track.addTrackSegment(segment);
+					segment = null;
+					break;
+				case GpxStreamReader.END_TRACK:
+					if(track == null || segment != null) {
+						return null;
+					}
+					doc.addTrack(track);
+					track = null;
+					break;
+				case GpxStreamReader.END_DOCUMENT:
+					if(track != null) {
+						return null;
+					}
+					closed = true;
+					break;
+				default:
+					return null;
+				}
+			}
+		}
+		return (closed ? doc : null);
+	}
+
+	/**
+	 * Lee un punto desde después del nombre de la etiqueta de apertura
+	 * hasta después de la etiqueta de cierre 'closeTag'
+	 */
+	private WayPoint scanPoint(byte[] closeTag) throws UnexpectedContentException {
+		boolean hasLat = false, hasLon = false;
+		// Atributos
+		while(true) {
+			skipWhitespace();
+			byte b = buf.get(pos);
+			if(b == '>') {
+				pos++;
+				break;
+			}
+			if(startsWith(LAT) && buf.get(pos+3) == '=' && !hasLat) {
+				pos += 4;
+				lat = scanQuotedNumber();
+				hasLat = true;
+			} else if(startsWith(LON) && buf.get(pos+3) == '=' && !hasLon) {
+				pos += 4;
+				lon = scanQuotedNumber();
+				hasLon = true;
+			} else {
+				throw UNEXPECTED;
+			}
+		}
+		if(!hasLat || !hasLon) {
+			throw UNEXPECTED;
+		}
+		ele = -1.0;
+		time = -1L;
+		name = "";
+		desc = "";
+		for(int i=0; i<extensions.length; i++) {
+			extensions[i] = -1.0;
+		}
+		boolean hasEle = false, hasTime = false, hasName = false, hasDesc = false, hasExtensions = false;
+		// Elementos hijo
+		while(true) {
+			skipWhitespace();
+			if(startsWith(closeTag)) {
+				pos += closeTag.length;
+				break;
+			} else if(startsWith(ELE_OPEN) && !hasEle) {
+				pos += ELE_OPEN.length;
+				ele = scanNumber();
+				expect(ELE_CLOSE);
+				hasEle = true;
+			} else if(startsWith(TIME_OPEN) && !hasTime) {
+				pos += TIME_OPEN.length;
+				time = scanTime();
+				expect(TIME_CLOSE);
+				hasTime = true;
+			} else if(startsWith(NAME_OPEN) && !hasName) {
+				pos += NAME_OPEN.length;
+				name = scanText();
+				expect(NAME_CLOSE);
+				hasName = true;
+			} else if(startsWith(DESC_OPEN) && !hasDesc) {
+				pos += DESC_OPEN.length;
+				desc = scanText();
+				expect(DESC_CLOSE);
+				hasDesc = true;
+			} else if(startsWith(EXTENSIONS_OPEN) && !hasExtensions) {
+				pos += EXTENSIONS_OPEN.length;
+				scanExtensions();
+				hasExtensions = true;
+			} else {
+				throw UNEXPECTED;
+			}
+		}
+		List<Double> values = new ArrayList<Double>(3+extensions.length);
+		values.add(Double.valueOf(lon));
+		values.add(Double.valueOf(lat));
+		values.add(Double.valueOf(ele));
+		for(int i=0; i<extensions.length; i++) {
+			values.add(Double.valueOf(extensions[i]));
+		}
+		return factory.createWayPoint(name, desc, time, values);
+	}
+
+	private void scanExtensions() throws UnexpectedContentException {
+		long found = 0L;
+		while(true) {
+			skipWhitespace();
+			if(startsWith(EXTENSIONS_CLOSE)) {
+				pos += EXTENSIONS_CLOSE.length;
+				return;
+			}
+			int slot = -1;
+			for(int i=0; i<extensionOpenTags.length; i++) {
+				if(startsWith(extensionOpenTags[i])) {
+					slot = i;
+					break;
+				}
+			}
+			if(slot == -1 || slot >= 64 || (found & (1L<<slot)) != 0) {
+				throw UNEXPECTED;
+			}
+			found |= (1L<<slot);
+			pos += extensionOpenTags[slot].length;
+			extensions[slot] = scanNumber();
+			expect(extensionCloseTags[slot]);
+		}
+	}
+
+	/**
+	 * Salta un elemento de texto simple '<tag>texto</tag>' sin elementos hijo
+	 */
+	private void skipTextElement() throws UnexpectedContentException {
+		expect((byte)'<');
+		int start = pos;
+		while(isNameByte(buf.get(pos))) {
+			pos++;
+		}
+		int end = pos;
+		if(end == start) {
+			throw UNEXPECTED;
+		}
+		expect((byte)'>');
+		scanTextEnd();
+		expect((byte)'<');
+		expect((byte)'/');
+		for(int i=start; i<end; i++) {
+			expect(buf.get(i));
+		}
+		expect((byte)'>');
+	}
+
+	private double scanQuotedNumber() throws UnexpectedContentException {
+		expect((byte)'"');
+		double value = scanNumber();
+		expect((byte)'"');
+		return value;
+	}
+
+	/**
+	 * Lee un número decimal [-]ddd[.ddd] directamente de los bytes con
+	 * DecimalParser. Los exponentes y cualquier otro formato abandonan el scan
+	 */
+	private double scanNumber() throws UnexpectedContentException {
+		int start = pos;
+		while(true) {
+			byte b = buf.get(pos);
+			if((b >= '0' && b <= '9') || b == '.' || ((b == '-' || b == '+') && pos == start)) {
+				pos++;
+			} else {
+				break;
+			}
+		}
+		if(pos == start) {
+			throw UNEXPECTED;
+		}
+		try {
+			return DecimalParser.parseDouble(buf, start, pos);
+		} catch (NumberFormatException e) {
+			throw UNEXPECTED;
+		}
+	}
+
+	/**
+	 * Lee una fecha hasta el siguiente '<' con GpxTimeCodec
+	 */
+	private long scanTime() throws UnexpectedContentException {
+		timeText.setLength(0);
+		while(true) {
+			byte b = buf.get(pos);
+			if(b == '<') {
+				break;
+			}
+			if(b < 0 || timeText.length() > 64) {
+				throw UNEXPECTED;
+			}
+			timeText.append((char)b);
+			pos++;
+		}
+		long t = GpxTimeCodec.parse(timeText);
+		if(t == GpxTimeCodec.INVALID_TIME) {
+			throw UNEXPECTED;
+		}
+		return t;
+	}
+
+	/**
+	 * Lee el texto hasta el siguiente '<'. Si el texto contiene
+	 * entidades se abandona el scan
+	 */
+	private String scanText() throws UnexpectedContentException {
+		int start = pos;
+		scanTextEnd();
+		if(pos == start) {
+			return "";
+		}
+		byte[] bytes = new byte[pos-start];
+		for(int i=0; i<bytes.length; i++) {
+			bytes[i] = buf.get(start+i);
+		}
+		return new String(bytes, UTF8);
+	}
+	private void scanTextEnd() throws UnexpectedContentException {
+		while(true) {
+			byte b = buf.get(pos);
+			if(b == '<') {
+				return;
+			}
+			if(b == '&') {
+				throw UNEXPECTED;
+			}
+			pos++;
+		}
+	}
+
+	/**
+	 * Comprueba que la declaración xml entre start y end no declara
+	 * una codificación distinta de UTF-8
+	 */
+	private void checkEncoding(int start, int end) throws UnexpectedContentException {
+		int index = -1;
+		for(int i=start; i<=end-ENCODING.length; i++) {
+			if(matches(ENCODING, i)) {
+				index = i + ENCODING.length;
+				break;
+			}
+		}
+		if(index == -1) {
+			return;
+		}
+		byte quote = buf.get(index);
+		if(!matchesIgnoreCase("UTF-8", index+1) || buf.get(index+6) != quote) {
+			throw UNEXPECTED;
+		}
+	}
+	private boolean matchesIgnoreCase(String value, int at) {
+		for(int i=0; i<value.length(); i++) {
+			if(Character.toUpperCase((char)buf.get(at+i)) != value.charAt(i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void skipWhitespace() {
+		while(pos < limit) {
+			byte b = buf.get(pos);
+			if(b != ' ' && b != '\n' && b != '\r' && b != '\t') {
+				return;
+			}
+			pos++;
+		}
+	}
+	private boolean startsWith(byte[] token) {
+		return matches(token, pos);
+	}
+	private boolean matches(byte[] token, int at) {
+		if(at + token.length > limit) {
+			return false;
+		}
+		for(int i=0; i<token.length; i++) {
+			if(buf.get(at+i) != token[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+	private void expect(byte[] token) throws UnexpectedContentException {
+		if(!startsWith(token)) {
+			throw UNEXPECTED;
+		}
+		pos += token.length;
+	}
+	private void expect(byte b) throws UnexpectedContentException {
+		if(buf.get(pos) != b) {
+			throw UNEXPECTED;
+		}
+		pos++;
+	}
+	private int indexOf(byte b, int from) throws UnexpectedContentException {
+		for(int i=from; i<limit; i++) {
+			if(buf.get(i) == b) {
+				return i;
+			}
+		}
+		throw UNEXPECTED;
+	}
+	private int indexOf(byte[] token, int from) throws UnexpectedContentException {
+		for(int i=from; i<=limit-token.length; i++) {
+			if(matches(token, i)) {
+				return i;
+			}
+		}
+		throw UNEXPECTED;
+	}
+	private static boolean isNameByte(byte b) {
+		return (b >= 'a' && b <= 'z') || (b >= 'A' && b <= 'Z') || (b >= '0' && b <= '9') ||
+			b == ':' || b == '_' || b == '-' || b == '.';
+	}
+	private static byte[] bytes(String cad) {
+		return cad.getBytes(UTF8);
+	}
+}
@@ -0,0 +1,227 @@
+package com.mlab.gpx.impl.stream;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveTask;
+import java.util.logging.Logger;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.impl.util.Util;
+
+/**
+ * Lee un fichero gpx de gran tamaño en paralelo. El fichero se divide en
+ * rangos de bytes que empiezan siempre en una etiqueta '&lt;trkpt', de modo que
+ * ningún punto queda partido entre dos rangos. Cada rango se mapea en memoria y
+ * se lee con su propio MappedGpxScanner en un ForkJoinPool; después se montan
+ * en orden los Track y TrackSegment con 'MappedGpxScanner.assemble()'.<br/>
+ * Igual que MappedGpxScanner, solo reconoce los documentos que escribe la
+ * propia librería. Si algún rango no tiene el formato esperado, parse()
+ * devuelve null y el llamante debe utilizar el parser estándar; ver
+ * 'GpxFactory.readGpxDocumentInParallel()'.<br/>
+ * La factory se usa desde varios threads a la vez, por lo que su método
+ * createWayPoint() debe ser thread-safe (lo son los de las factories de la librería).
+ *
+ * @author shiguera
+ *
+ */
+public class ParallelGpxParser {
+	private static final Logger LOG = Logger.getLogger(ParallelGpxParser.class.getName());
+
+	private static final byte[] TRKPT_OPEN = new byte[] {'<','t','r','k','p','t'};
+	/**
+	 * Tamaño mínimo de los rangos cuando se calcula automáticamente
+	 */
+	private static final long MIN_CHUNK_SIZE = 1L << 20;
+	/**
+	 * Tamaño máximo de los rangos. Limita la memoria mapeada por tarea
+	 */
+	private static final long MAX_CHUNK_SIZE = 256L << 20;
+	/**
+	 * Bytes en los que se busca el inicio de un '&lt;trkpt' a partir
+	 * del límite nominal de cada rango
+	 */
+	private static final int SEARCH_WINDOW = 1 << 20;
+
+	private final GpxFactory factory;
+	private final ForkJoinPool pool;
+	private final long chunkSize;
+
+	/**
+	 * @param factory GpxFactory que crea los WayPoint
+	 * @param pool ForkJoinPool en el que se leen los rangos
+	 * @param chunkSize Tamaño aproximado de los rangos en bytes, como máximo
+	 * MAX_CHUNK_SIZE. Con 0 se calcula a partir del tamaño del fichero y del
+	 * paralelismo del pool
+	 */
+	public ParallelGpxParser(GpxFactory factory, ForkJoinPool pool, long chunkSize) {
+		this.factory = factory;
+		this.pool = pool;
+		this.chunkSize = chunkSize;
+	}
+	/**
+	 * @param factory GpxFactory que crea los WayPoint
+	 * @param pool ForkJoinPool en el que se leen los rangos
+	 */
+	public ParallelGpxParser(GpxFactory factory, ForkJoinPool pool) {
+		this(factory, pool, 0L);
+	}
+	/**
+	 * Utiliza el ForkJoinPool común
+	 * @param factory GpxFactory que crea los WayPoint
+	 */
+	public ParallelGpxParser(GpxFactory factory) {
+		this(factory, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * Lee el fichero en paralelo
+	 * @param file Fichero gpx
+	 * @return GpxDocument o null si el fichero no tiene el formato esperado
+	 * o no se puede leer
+	 */
+	public GpxDocument parse(File file) {
+		RandomAccessFile raf = null;
+		try {
+			raf = new RandomAccessFile(file, "r");
+			FileChannel channel = raf.getChannel();
+			long[] bounds = splitPoints(channel);
+			if(bounds == null) {
+				return null;
+			}
+			List<ForkJoinTask<ScanResult>> tasks = new ArrayList<ForkJoinTask<ScanResult>>(bounds.length-1);
+			for(int i=0; i<bounds.length-1; i++) {
+				tasks.add(pool.submit(new ChunkTask(factory, channel, bounds[i], bounds[i+1], i==0)));
+			}
+			List<ScanResult> results = new ArrayList<ScanResult>(tasks.size());
+			boolean failed = false;
+			for(ForkJoinTask<ScanResult> task: tasks) {
+				if(failed) {
+					task.cancel(false);
+					continue;
+				}
+				ScanResult result;
+				try {
+					result = task.join();
+				} catch (RuntimeException e) {
+					// Error inesperado en un rango: se lee de forma secuencial
+					LOG.warning("ParallelGpxParser.parse() ERROR: "+e);
+					result = null;
+				}
+				if(result == null) {
+					failed = true;
+				}
+				results.add(result);
+			}
+			if(failed) {
+				return null;
+			}
+			return MappedGpxScanner.assemble(factory, results);
+		} catch (IOException e) {
+			LOG.warning("ParallelGpxParser.parse() ERROR: "+e.getMessage());
+			return null;
+		} finally {
+			Util.close(raf);
+		}
+	}
+
+	/**
+	 * Calcula los límites de los rangos: el primero es 0, el último el
+	 * tamaño del fichero y los intermedios posiciones de un '&lt;trkpt'
+	 * @return Array de límites o null si algún rango resulta
+	 * mayor de lo que se puede mapear
+	 */
+	private long[] splitPoints(FileChannel channel) throws IOException {
+		long size = channel.size();
+		long chunkSize = this.chunkSize;
+		if(chunkSize <= 0) {
+			chunkSize = Math.max(MIN_CHUNK_SIZE, size / (pool.getParallelism()*4L));
+		}
+		chunkSize = Math.min(chunkSize, MAX_CHUNK_SIZE);
+		List<Long> bounds = new ArrayList<Long>();
+		bounds.add(Long.valueOf(0L));
+		long nominal = chunkSize;
+		while(nominal < size) {
+			long last = bounds.get(bounds.size()-1).longValue();
+			long bound = findPoint(channel, Math.max(nominal, last+1), size);
+			if(bound > 0) {
+				if(bound - last > Integer.MAX_VALUE) {
+					return null;
+				}
+				bounds.add(Long.valueOf(bound));
+				nominal = bound + chunkSize;
+			} else {
+				nominal += chunkSize;
+			}
+		}
+		if(size - bounds.get(bounds.size()-1).longValue() > Integer.MAX_VALUE) {
+			return null;
+		}
+		bounds.add(Long.valueOf(size));
+		long[] result = new long[bounds.size()];
+		for(int i=0; i<result.length; i++) {
+			result[i] = bounds.get(i).longValue();
+		}
+		return result;
+	}
+	/**
+	 * Busca el primer '&lt;trkpt' a partir de 'from' dentro de SEARCH_WINDOW bytes
+	 * @return Posición en el fichero o -1 si no se encuentra
+	 */
+	private static long findPoint(FileChannel channel, long from, long size) throws IOException {
+		int length = (int)Math.min(SEARCH_WINDOW, size - from);
+		if(length < TRKPT_OPEN.length) {
+			return -1L;
+		}
+		ByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, from, length);
+		for(int i=0; i<=length-TRKPT_OPEN.length; i++) {
+			int j = 0;
+			while(j < TRKPT_OPEN.length && window.get(i+j) == TRKPT_OPEN[j]) {
+				j++;
+			}
+			if(j == TRKPT_OPEN.length) {
+				return from + i;
+			}
+		}
+		return -1L;
+	}
+
+	/**
+	 * Lee un rango del fichero con un MappedGpxScanner propio
+	 */
+	private static class ChunkTask extends RecursiveTask<ScanResult> {
+		private static final long serialVersionUID = 1L;
+
+		private final GpxFactory factory;
+		private final FileChannel channel;
+		private final long start;
+		private final long end;
+		private final boolean documentStart;
+
+		ChunkTask(GpxFactory factory, FileChannel channel, long start, long end, boolean documentStart) {
+			this.factory = factory;
+			this.channel = channel;
+			this.start = start;
+			this.end = end;
+			this.documentStart = documentStart;
+		}
+
+		@Override
+		protected ScanResult compute() {
+			try {
+				ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end-start);
+				return new MappedGpxScanner(factory).scanRange(buffer, documentStart);
+			} catch (IOException e) {
+				LOG.warning("ParallelGpxParser.ChunkTask ERROR: "+e.getMessage());
+				return null;
+			}
+		}
+	}
+}
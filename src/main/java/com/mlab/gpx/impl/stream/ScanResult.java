@@ -0,0 +1,46 @@
+package com.mlab.gpx.impl.stream;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+/**
+ * Secuencia de eventos que produce MappedGpxScanner al leer un rango
+ * de bytes. Los eventos son las constantes de GpxStreamReader; los
+ * WAYPOINT y TRACK_POINT llevan asociado su WayPoint y los START_ROUTE
+ * la Route completa.<br/>
+ * Permite leer trozos de un documento por separado (ParallelGpxParser)
+ * y montar después el GpxDocument en orden con 'MappedGpxScanner.assemble()'.
+ *
+ * @author shiguera
+ *
+ */
+final class ScanResult {
+
+	private int[] events;
+	private final ArrayList<Object> values;
+	private int count;
+
+	ScanResult() {
+		this.events = new int[256];
+		this.values = new ArrayList<Object>(256);
+		this.count = 0;
+	}
+
+	void add(int event, Object value) {
+		if(count == events.length) {
+			events = Arrays.copyOf(events, count*2);
+		}
+		events[count++] = event;
+		values.add(value);
+	}
+
+	int size() {
+		return count;
+	}
+	int getEvent(int index) {
+		return events[index];
+	}
+	Object getValue(int index) {
+		return values.get(index);
+	}
+}
@@ -0,0 +1,166 @@
+package com.mlab.gpx.impl.stream;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+import javax.xml.stream.XMLStreamException;
+
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFilter;
+import com.mlab.gpx.api.GpxProjection;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.util.Util;
+
+/**
+ * Iterator de los puntos ('wpt', 'rtept' y 'trkpt') de un documento gpx,
+ * en orden de documento. Lee el documento bajo demanda con un GpxStreamReader,
+ * de modo que nunca se construye el GpxDocument, ni los Track, TrackSegment o
+ * TSerie: en memoria solo está el punto actual.<br/>
+ * Los WayPoint se crean con el método createWayPoint() de la factory,
+ * así que su tipo depende de la factory utilizada.<br/>
+ * Hay que cerrar el iterator al terminar; close() cierra también el
+ * InputStream del que se lee. Si el documento está mal formado,
+ * hasNext() y next() arrojan IllegalStateException.
+ *
+ * @author shiguera
+ *
+ */
+public class WayPointIterator implements Iterator<IndexedWayPoint>, Closeable {
+
+	private final GpxFactory factory;
+	private final InputStream inputStream;
+	private final GpxStreamReader reader;
+	private IndexedWayPoint nextPoint;
+
+	/**
+	 * Crea un iterator sobre el documento gpx del InputStream
+	 * @param factory GpxFactory con la que se crean los WayPoint
+	 * @param inputStream InputStream con el documento gpx. Se cierra con close()
+	 * @throws XMLStreamException si el inicio del documento no es xml válido
+	 */
+	public WayPointIterator(GpxFactory factory, InputStream inputStream) throws XMLStreamException {
+		this(factory, inputStream, GpxProjection.ALL);
+	}
+	/**
+	 * Crea un iterator que lee solo los campos de la proyección
+	 * @param factory GpxFactory con la que se crean los WayPoint
+	 * @param inputStream InputStream con el documento gpx. Se cierra con close()
+	 * @param projection Campos de los puntos que se leen
+	 * @throws XMLStreamException si el inicio del documento no es xml válido
+	 */
+	public WayPointIterator(GpxFactory factory, InputStream inputStream, GpxProjection projection) throws XMLStreamException {
+		this(factory, inputStream, projection, GpxFilter.ALL);
+	}
+	/**
+	 * Crea un iterator de los puntos que cumplen el filtro, con los campos de la proyección
+	 * @param factory GpxFactory con la que se crean los WayPoint
+	 * @param inputStream InputStream con el documento gpx. Se cierra con close()
+	 * @param projection Campos de los puntos que se leen
+	 * @param filter Condiciones de los puntos que se leen
+	 * @throws XMLStreamException si el inicio del documento no es xml válido
+	 */
+	public WayPointIterator(GpxFactory factory, InputStream inputStream, GpxProjection projection,
+			GpxFilter filter) throws XMLStreamException {
+		this.factory = factory;
+		this.inputStream = inputStream;
+		this.reader = new GpxStreamReader(inputStream);
+		this.reader.setExtensionSchema(factory.getExtensionSchema());
+		this.reader.setProjection(projection);
+		this.reader.setFilter(filter);
+		this.nextPoint = null;
+	}
+
+	@Override
+	public boolean hasNext() {
+		if(nextPoint == null) {
+			nextPoint = advance();
+		}
+		return nextPoint != null;
+	}
+
+	@Override
+	public IndexedWayPoint next() {
+		if(!hasNext()) {
+			throw new NoSuchElementException();
+		}
+		IndexedWayPoint result = nextPoint;
+		nextPoint = null;
+		return result;
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	private IndexedWayPoint advance() {
+		try {
+			while(reader.hasNext()) {
+				IndexedWayPoint point = null;
+				switch(reader.next()) {
+				case GpxStreamReader.WAYPOINT:
+					point = create("wpt", -1, -1, -1);
+					break;
+				case GpxStreamReader.ROUTE_POINT:
+					point = create("rtept", reader.getRouteIndex(), -1, -1);
+					break;
+				case GpxStreamReader.TRACK_POINT:
+					point = create("trkpt", -1, reader.getTrackIndex(), reader.getSegmentIndex());
+					break;
+				default:
+					break;
+				}
+				if(point != null) {
+					return point;
+				}
+			}
+		} catch (XMLStreamException e) {
+			close();
+			throw new IllegalStateException("WayPointIterator: can't parse gpx document", e);
+		}
+		return null;
+	}
+	private IndexedWayPoint create(String tag, int routeIndex, int trackIndex, int segmentIndex) {
+		WayPoint wp = factory.createWayPoint(reader);
+		if(wp == null) {
+			return null;
+		}
+		wp.setTag(tag);
+		return new IndexedWayPoint(wp, routeIndex, trackIndex, segmentIndex);
+	}
+
+	/**
+	 * Cierra el reader y el InputStream del que se lee
+	 */
+	@Override
+	public void close() {
+		reader.close();
+		Util.close(inputStream);
+	}
+
+	/**
+	 * Spliterator secuencial y ordenado sobre este iterator
+	 */
+	public Spliterator<IndexedWayPoint> spliterator() {
+		return Spliterators.spliteratorUnknownSize(this, Spliterator.ORDERED | Spliterator.NONNULL);
+	}
+
+	/**
+	 * Stream secuencial de los puntos. Cerrar el Stream cierra el iterator
+	 * y el InputStream
+	 */
+	public Stream<IndexedWayPoint> stream() {
+		return StreamSupport.stream(spliterator(), false).onClose(new Runnable() {
+			@Override
+			public void run() {
+				close();
+			}
+		});
+	}
+}
@@ -0,0 +1,433 @@
+package com.mlab.gpx.impl.tserie;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.TrackSegment;
+
+/**
+ * TSerie de solo lectura sobre un fichero por columnas mapeado en memoria
+ * con FileChannel.map(). Los tiempos y los valores no se copian al heap:
+ * las consultas ('getTime()', 'getValues(long)', 'indexOfFloor()'...)
+ * leen directamente del fichero mapeado, de modo que se pueden mantener
+ * abiertas muchas series sin que el recolector de basura tenga que
+ * recorrerlas. 'indexOfFloor()' e 'indexOfCeiling()' hacen búsqueda binaria.<br/>
+ * Formato del fichero (little-endian):<br/>
+ * - Cabecera: 'MGPC', versión, número de filas, dimensión y el nombre de
+ * cada canal ('lon', 'lat', 'ele' y las etiquetas de las extensiones),
+ * completada hasta múltiplo de 8 bytes<br/>
+ * - Una sección por canal, cada una mapeada por separado: los tiempos
+ * como long y después cada canal de valores como double<br/>
+ * Los ficheros se escriben con los métodos estáticos 'write()' y se abren
+ * con 'open()'. 'add()' devuelve siempre false. close() cierra el fichero;
+ * las secciones mapeadas siguen siendo válidas hasta que el recolector
+ * libera la instancia. Las consultas son thread-safe.
+ *
+ * @author shiguera
+ *
+ */
+public class MappedTSerie extends TSerie implements Closeable {
+
+	private static final byte[] MAGIC = new byte[] {'M', 'G', 'P', 'C'};
+	private static final int VERSION = 1;
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	/**
+	 * Filas que se acumulan por canal antes de escribir en el fichero
+	 */
+	private static final int WRITE_ROWS = 1024;
+
+	private final RandomAccessFile file;
+	private final int count;
+	private final String[] channels;
+	private final LongBuffer times;
+	private final DoubleBuffer[] values;
+
+	private MappedTSerie(RandomAccessFile file, int count, String[] channels,
+			LongBuffer times, DoubleBuffer[] values) {
+		super();
+		this.file = file;
+		this.count = count;
+		this.channels = channels;
+		this.times = times;
+		this.values = values;
+	}
+
+	/**
+	 * Abre un fichero escrito con 'write()'
+	 * @param columnFile Fichero por columnas
+	 * @return MappedTSerie sobre el fichero
+	 * @throws IOException si el fichero no existe o no tiene el formato
+	 */
+	public static MappedTSerie open(File columnFile) throws IOException {
+		RandomAccessFile raf = new RandomAccessFile(columnFile, "r");
+		try {
+			FileChannel channel = raf.getChannel();
+			ByteBuffer head = readFully(channel, 0L, 16);
+			for(int i=0; i<MAGIC.length; i++) {
+				if(head.get(i) != MAGIC[i]) {
+					throw new IOException("Not a column tserie file");
+				}
+			}
+			int version = head.getInt(4);
+			if(version != VERSION) {
+				throw new IOException("Unsupported column tserie version: "+version);
+			}
+			int count = head.getInt(8);
+			int dimension = head.getInt(12);
+			if(count < 0 || dimension < 0) {
+				throw new IOException("Corrupt column tserie header");
+			}
+			String[] channels = new String[dimension];
+			long position = 16L;
+			for(int i=0; i<dimension; i++) {
+				int length = readFully(channel, position, 4).getInt(0);
+				if(length < 0 || position + 4L + length > channel.size()) {
+					throw new IOException("Corrupt column tserie header");
+				}
+				ByteBuffer name = readFully(channel, position + 4L, length);
+				channels[i] = new String(name.array(), 0, length, UTF8);
+				position += 4L + length;
+			}
+			long start = align(position);
+			long section = 8L * count;
+			if(start + section * (dimension + 1) > channel.size()) {
+				throw new IOException("Truncated column tserie file");
+			}
+			LongBuffer times = map(channel, start, section).asLongBuffer();
+			DoubleBuffer[] values = new DoubleBuffer[dimension];
+			for(int i=0; i<dimension; i++) {
+				values[i] = map(channel, start + section * (i + 1), section).asDoubleBuffer();
+			}
+			return new MappedTSerie(raf, count, channels, times, values);
+		} catch (IOException e) {
+			raf.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Escribe una TSerie en formato de columnas
+	 * @param tserie TSerie origen
+	 * @param channels Nombres de los canales, uno por dimensión, o null
+	 * @param columnFile Fichero destino
+	 * @throws IllegalArgumentException si el número de nombres no coincide
+	 * con la dimensión
+	 */
+	public static void write(TSerie tserie, String[] channels, File columnFile) throws IOException {
+		int dimension = tserie.getDimension();
+		ColumnWriter writer = new ColumnWriter(columnFile, tserie.size(),
+			checkChannels(channels, dimension));
+		try {
+			for(int i=0; i<tserie.size(); i++) {
+				writer.writeRow(tserie.getTime(i), tserie.getValues(i));
+			}
+		} finally {
+			writer.close();
+		}
+	}
+	/**
+	 * Escribe los puntos de un TrackSegment en formato de columnas, con
+	 * los canales de 'channelsOf(factory)'
+	 */
+	public static void write(TrackSegment segment, GpxFactory factory, File columnFile) throws IOException {
+		String[] channels = channelsOf(factory);
+		ColumnWriter writer = new ColumnWriter(columnFile, segment.size(), channels);
+		try {
+			for(int i=0; i<segment.size(); i++) {
+				WayPoint wp = segment.getWayPoint(i);
+				writer.writeRow(wp.getTime(), wp.getValues());
+			}
+		} finally {
+			writer.close();
+		}
+	}
+	/**
+	 * Nombres de los canales de los WayPoint de una factory:
+	 * 'lon', 'lat', 'ele' y 'factory.getExtensionTags()'
+	 */
+	public static String[] channelsOf(GpxFactory factory) {
+		String[] tags = factory.getExtensionTags();
+		String[] channels = new String[3 + tags.length];
+		channels[0] = "lon";
+		channels[1] = "lat";
+		channels[2] = "ele";
+		System.arraycopy(tags, 0, channels, 3, tags.length);
+		return channels;
+	}
+
+	/**
+	 * Nombres de los canales, en el orden de getValues()
+	 */
+	public String[] getChannels() {
+		return channels.clone();
+	}
+	/**
+	 * Índice del canal con ese nombre o -1
+	 */
+	public int indexOfChannel(String name) {
+		for(int i=0; i<channels.length; i++) {
+			if(channels[i].equals(name)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+	/**
+	 * Valor de un canal en la fila index, sin crear el array de valores
+	 * @throws IndexOutOfBoundsException si index o channel no son válidos
+	 */
+	public double getValue(int index, int channel) {
+		return values[channel].get(index);
+	}
+
+	/**
+	 * La serie es de solo lectura
+	 */
+	@Override
+	public boolean canAdd(long t, double[] values) {
+		return false;
+	}
+	/**
+	 * La serie es de solo lectura: devuelve false
+	 */
+	@Override
+	public boolean add(long t, double[] values) {
+		return false;
+	}
+	@Override
+	public int size() {
+		return count;
+	}
+	@Override
+	public long getTime(int index) {
+		return times.get(index);
+	}
+	@Override
+	public long firsTime() {
+		if(count > 0) {
+			return times.get(0);
+		}
+		return -1l;
+	}
+	@Override
+	public long lastTime() {
+		if(count > 0) {
+			return times.get(count - 1);
+		}
+		return -1l;
+	}
+	@Override
+	public double[] getValues(int index) {
+		double[] result = new double[values.length];
+		for(int i=0; i<values.length; i++) {
+			result[i] = values[i].get(index);
+		}
+		return result;
+	}
+	/**
+	 * Igual que 'TSerie.getValues(long)': valores interpolados entre el
+	 * tiempo anterior y el posterior, los de la fila si el tiempo coincide
+	 * o null si está fuera de rango
+	 */
+	@Override
+	public double[] getValues(long t) {
+		int floorindex = indexOfFloor(t);
+		if(floorindex==-1) {
+			return null;
+		}
+		long floortime = times.get(floorindex);
+		if(t==floortime) {
+			return getValues(floorindex);
+		}
+		double rel = (double)(t - floortime)/
+				(double)(times.get(floorindex+1)-floortime);
+		double[] result = new double[values.length];
+		for(int i=0; i<values.length; i++) {
+			double floorvalue = values[i].get(floorindex);
+			result[i] = floorvalue + rel*(values[i].get(floorindex+1)-floorvalue);
+		}
+		return result;
+	}
+	@Override
+	public int indexOfFloor(long t) {
+		if(!isInRange(t)) {
+			return -1;
+		}
+		int index = search(t);
+		return (index >= 0 ? index : -index - 2);
+	}
+	@Override
+	public int indexOfCeiling(long t) {
+		if(!isInRange(t)) {
+			return -1;
+		}
+		int index = search(t);
+		return (index >= 0 ? index : -index - 1);
+	}
+	@Override
+	public boolean isInRange(long t) {
+		return count > 0 && t >= times.get(0) && t <= times.get(count - 1);
+	}
+	@Override
+	public int getDimension() {
+		return values.length;
+	}
+	/**
+	 * La serie es de solo lectura: no hace nada
+	 */
+	@Override
+	public void empty() {
+	}
+
+	@Override
+	public void close() throws IOException {
+		file.close();
+	}
+
+	/**
+	 * Búsqueda binaria en los tiempos. Devuelve el índice de t o
+	 * (-(punto de inserción) - 1), como Arrays.binarySearch()
+	 */
+	private int search(long t) {
+		int low = 0;
+		int high = count - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			long time = times.get(mid);
+			if(time < t) {
+				low = mid + 1;
+			} else if(time > t) {
+				high = mid - 1;
+			} else {
+				return mid;
+			}
+		}
+		return -(low + 1);
+	}
+
+	private static ByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+		ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+		return buffer.order(ByteOrder.LITTLE_ENDIAN);
+	}
+	private static ByteBuffer readFully(FileChannel channel, long position, int size) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+		while(buffer.hasRemaining()) {
+			if(channel.read(buffer, position + buffer.position()) < 0) {
+				throw new IOException("Truncated column tserie file");
+			}
+		}
+		return buffer;
+	}
+	private static long align(long position) {
+		return (position + 7L) & ~7L;
+	}
+	private static String[] checkChannels(String[] channels, int dimension) {
+		if(channels == null) {
+			channels = new String[dimension];
+			for(int i=0; i<dimension; i++) {
+				channels[i] = "";
+			}
+		}
+		if(channels.length != dimension) {
+			throw new IllegalArgumentException("Channels: "+channels.length+" dimension: "+dimension);
+		}
+		return channels;
+	}
+
+	/**
+	 * Escribe las filas en las secciones de cada canal. Cada canal
+	 * acumula WRITE_ROWS valores en su buffer antes de escribirlos en su
+	 * posición del fichero, de modo que no se necesita la serie completa en
+	 * memoria. Los valores que no caben en la dimensión se ignoran y los que
+	 * faltan se escriben como -1.0.
+	 */
+	private static class ColumnWriter implements Closeable {
+		private final RandomAccessFile file;
+		private final FileChannel channel;
+		private final int count;
+		private final ByteBuffer[] buffers;
+		private final long[] positions;
+		private int rows;
+
+		ColumnWriter(File columnFile, int count, String[] channels) throws IOException {
+			this.file = new RandomAccessFile(columnFile, "rw");
+			this.channel = file.getChannel();
+			this.count = count;
+			this.rows = 0;
+			try {
+				channel.truncate(0L);
+				int length = 16;
+				byte[][] names = new byte[channels.length][];
+				for(int i=0; i<channels.length; i++) {
+					names[i] = channels[i].getBytes(UTF8);
+					length += 4 + names[i].length;
+				}
+				ByteBuffer head = ByteBuffer.allocate((int)align(length)).order(ByteOrder.LITTLE_ENDIAN);
+				head.put(MAGIC).putInt(VERSION).putInt(count).putInt(channels.length);
+				for(byte[] name: names) {
+					head.putInt(name.length).put(name);
+				}
+				head.position(0);
+				writeFully(head, 0L);
+				buffers = new ByteBuffer[channels.length + 1];
+				positions = new long[channels.length + 1];
+				for(int i=0; i<buffers.length; i++) {
+					buffers[i] = ByteBuffer.allocate(8 * WRITE_ROWS).order(ByteOrder.LITTLE_ENDIAN);
+					positions[i] = head.capacity() + 8L * count * i;
+				}
+			} catch (IOException e) {
+				file.close();
+				throw e;
+			}
+		}
+
+		void writeRow(long time, double[] rowValues) throws IOException {
+			if(rows == count) {
+				throw new IOException("Too many rows for column tserie file");
+			}
+			buffers[0].putLong(time);
+			for(int i=1; i<buffers.length; i++) {
+				buffers[i].putDouble(i - 1 < rowValues.length ? rowValues[i - 1] : -1.0);
+			}
+			rows++;
+			if(!buffers[0].hasRemaining()) {
+				drain();
+			}
+		}
+		@Override
+		public void close() throws IOException {
+			try {
+				drain();
+				if(rows != count) {
+					throw new IOException("Missing rows in column tserie file: "+rows+" of "+count);
+				}
+			} finally {
+				file.close();
+			}
+		}
+		private void drain() throws IOException {
+			for(int i=0; i<buffers.length; i++) {
+				buffers[i].flip();
+				int length = buffers[i].remaining();
+				writeFully(buffers[i], positions[i]);
+				positions[i] += length;
+				buffers[i].clear();
+			}
+		}
+		private void writeFully(ByteBuffer buffer, long position) throws IOException {
+			while(buffer.hasRemaining()) {
+				position += channel.write(buffer, position);
+			}
+		}
+	}
+}
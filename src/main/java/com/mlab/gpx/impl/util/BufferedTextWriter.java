@@ -0,0 +1,99 @@
+package com.mlab.gpx.impl.util;
+
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * Buffer de texto de los writers incrementales (GpxWriter, KmlWriter,
+ * GeoJsonWriter, CsvTrackWriter).<br/>
+ * Los elementos se añaden al StringBuilder de getBuffer(), que se reutiliza,
+ * y drain() lo vuelca en el Writer destino cuando supera FLUSH_SIZE
+ * caracteres, así que la memoria utilizada no depende del tamaño del
+ * documento. El volcado pasa por un char[] fijo, sin crear cadenas.<br/>
+ * Sin destino (Writer null) todo se acumula en el buffer. No es thread-safe.
+ *
+ * @author shiguera
+ *
+ */
+public class BufferedTextWriter implements Closeable, Flushable {
+
+	/**
+	 * Caracteres a partir de los que se vuelca el buffer en el destino
+	 */
+	public static final int FLUSH_SIZE = 8192;
+
+	/**
+	 * Destino o null si solo se escribe en el buffer
+	 */
+	private final Writer writer;
+	private final StringBuilder buffer;
+	/**
+	 * Array con el que se pasa el buffer al Writer sin crear cadenas
+	 */
+	private final char[] chars;
+
+	/**
+	 * @param writer Writer destino o null para acumular todo en el buffer.
+	 * Se cierra con close()
+	 */
+	public BufferedTextWriter(Writer writer) {
+		this.writer = writer;
+		if(writer != null) {
+			this.buffer = new StringBuilder(FLUSH_SIZE + 1024);
+			this.chars = new char[FLUSH_SIZE];
+		} else {
+			this.buffer = new StringBuilder(1024);
+			this.chars = null;
+		}
+	}
+
+	/**
+	 * StringBuilder al que se añade el texto
+	 */
+	public StringBuilder getBuffer() {
+		return buffer;
+	}
+	/**
+	 * Vuelca el buffer en el destino si ha superado FLUSH_SIZE
+	 */
+	public void drain() throws IOException {
+		if(writer != null && buffer.length() >= FLUSH_SIZE) {
+			writeBuffer();
+		}
+	}
+	/**
+	 * Vuelca el buffer en el destino y lo vacía
+	 */
+	@Override
+	public void flush() throws IOException {
+		if(writer != null) {
+			writeBuffer();
+			writer.flush();
+		}
+	}
+	/**
+	 * Vuelca el buffer y cierra el destino
+	 */
+	@Override
+	public void close() throws IOException {
+		if(writer != null) {
+			try {
+				flush();
+			} finally {
+				writer.close();
+			}
+		}
+	}
+
+	private void writeBuffer() throws IOException {
+		int length = buffer.length();
+		for(int start=0; start<length; start+=chars.length) {
+			int end = Math.min(length, start + chars.length);
+			buffer.getChars(start, end, chars, 0);
+			writer.write(chars, 0, end - start);
+		}
+		buffer.setLength(0);
+	}
+}
@@ -0,0 +1,211 @@
+package com.mlab.gpx.impl.util;
+
+import java.util.Locale;
+
+/**
+ * Escritura de números decimales con un número fijo de decimales, sin
+ * String.format() y sin depender del Locale, en un String, un StringBuilder,
+ * un char[] o un byte[] ASCII.<br/>
+ * El resultado es idéntico al de String.format("%N.Mf", value).trim().replace(',', '.')
+ * con un Locale de dígitos ASCII: Formatter redondea 'half up' los dígitos
+ * de la representación más corta del double (la de Double.toString()), que
+ * está a menos de media ulp del valor. Cuando el valor escalado por 10^M está
+ * lejos del punto medio entre dos enteros, los dos redondeos coinciden y se
+ * escribe el entero redondeado con aritmética de long. Si está a menos de la
+ * suma de los errores posibles del punto medio, si el valor escalado
+ * supera 10^15 o si el número no es finito, se delega en
+ * String.format(Locale.ROOT, ...).<br/>
+ * Los métodos son estáticos y thread-safe. Los valores negativos y el
+ * cero negativo llevan signo ('-0.00'), igual que con Formatter.
+ *
+ * @author shiguera
+ *
+ */
+public final class DecimalFormatter {
+
+	/**
+	 * Valor escalado máximo de la vía rápida: por debajo de 10^15 la parte
+	 * decimal de un double se conoce con un error menor que 0.25
+	 */
+	private static final double MAX_FAST_SCALED = 1e15;
+	/**
+	 * Error relativo máximo del valor escalado: media ulp de la representación
+	 * decimal más media ulp de la multiplicación, con margen
+	 */
+	private static final double RELATIVE_ERROR = 1e-15;
+	private static final int MAX_FAST_DECIMALS = 18;
+	private static final double[] POWERS_OF_TEN = new double[] {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+
+	private DecimalFormatter() {
+	}
+
+	/**
+	 * Equivalente a String.format("%.Nf", value) con Locale.ROOT
+	 * @param value Número
+	 * @param decimals Número de decimales
+	 * @throws IllegalArgumentException si decimals es negativo
+	 */
+	public static String format(double value, int decimals) {
+		checkDecimals(decimals);
+		long scaled = scale(value, decimals);
+		if(scaled < 0L) {
+			return slowFormat(value, decimals);
+		}
+		char[] chars = new char[length(value, scaled, decimals)];
+		write(value, scaled, decimals, chars, 0);
+		return new String(chars);
+	}
+	/**
+	 * Añade el número al final de un StringBuilder
+	 * @return El mismo StringBuilder
+	 * @throws IllegalArgumentException si decimals es negativo
+	 */
+	public static StringBuilder append(StringBuilder builder, double value, int decimals) {
+		checkDecimals(decimals);
+		long scaled = scale(value, decimals);
+		if(scaled < 0L) {
+			return builder.append(slowFormat(value, decimals));
+		}
+		int start = builder.length();
+		int length = length(value, scaled, decimals);
+		builder.setLength(start + length);
+		int pos = start + length;
+		for(int i=0; i<decimals; i++) {
+			builder.setCharAt(--pos, (char)('0' + (int)(scaled % 10L)));
+			scaled /= 10L;
+		}
+		if(decimals > 0) {
+			builder.setCharAt(--pos, '.');
+		}
+		do {
+			builder.setCharAt(--pos, (char)('0' + (int)(scaled % 10L)));
+			scaled /= 10L;
+		} while(scaled > 0L);
+		if(pos > start) {
+			builder.setCharAt(--pos, '-');
+		}
+		return builder;
+	}
+	/**
+	 * Escribe el número en buffer[offset]...
+	 * @return Posición siguiente al último carácter escrito
+	 * @throws IllegalArgumentException si decimals es negativo
+	 * @throws ArrayIndexOutOfBoundsException si no cabe en el buffer
+	 */
+	public static int format(double value, int decimals, char[] buffer, int offset) {
+		checkDecimals(decimals);
+		long scaled = scale(value, decimals);
+		if(scaled < 0L) {
+			String cad = slowFormat(value, decimals);
+			cad.getChars(0, cad.length(), buffer, offset);
+			return offset + cad.length();
+		}
+		return write(value, scaled, decimals, buffer, offset);
+	}
+	/**
+	 * Escribe el número en ASCII en buffer[offset]...
+	 * @return Posición siguiente al último byte escrito
+	 * @throws IllegalArgumentException si decimals es negativo
+	 * @throws ArrayIndexOutOfBoundsException si no cabe en el buffer
+	 */
+	public static int format(double value, int decimals, byte[] buffer, int offset) {
+		checkDecimals(decimals);
+		long scaled = scale(value, decimals);
+		if(scaled < 0L) {
+			String cad = slowFormat(value, decimals);
+			for(int i=0; i<cad.length(); i++) {
+				buffer[offset++] = (byte)cad.charAt(i);
+			}
+			return offset;
+		}
+		int end = offset + length(value, scaled, decimals);
+		int pos = end;
+		for(int i=0; i<decimals; i++) {
+			buffer[--pos] = (byte)('0' + (int)(scaled % 10L));
+			scaled /= 10L;
+		}
+		if(decimals > 0) {
+			buffer[--pos] = '.';
+		}
+		do {
+			buffer[--pos] = (byte)('0' + (int)(scaled % 10L));
+			scaled /= 10L;
+		} while(scaled > 0L);
+		if(pos > offset) {
+			buffer[--pos] = '-';
+		}
+		return end;
+	}
+
+	/**
+	 * Valor absoluto redondeado y multiplicado por 10^decimals, o -1 si hay
+	 * que utilizar Formatter
+	 */
+	private static long scale(double value, int decimals) {
+		if(decimals > MAX_FAST_DECIMALS) {
+			return -1L;
+		}
+		double scaled = Math.abs(value) * POWERS_OF_TEN[decimals];
+		// También descarta NaN e Infinity
+		if(!(scaled < MAX_FAST_SCALED)) {
+			return -1L;
+		}
+		double floor = Math.floor(scaled);
+		double fraction = scaled - floor;
+		if(Math.abs(fraction - 0.5) <= scaled * RELATIVE_ERROR) {
+			return -1L;
+		}
+		return (long)floor + (fraction > 0.5 ? 1L : 0L);
+	}
+	private static int length(double value, long scaled, int decimals) {
+		int length = (decimals > 0 ? decimals + 1 : 0);
+		long integer = scaled;
+		for(int i=0; i<decimals; i++) {
+			integer /= 10L;
+		}
+		do {
+			length++;
+			integer /= 10L;
+		} while(integer > 0L);
+		if(isNegative(value)) {
+			length++;
+		}
+		return length;
+	}
+	private static int write(double value, long scaled, int decimals, char[] buffer, int offset) {
+		int end = offset + length(value, scaled, decimals);
+		int pos = end;
+		for(int i=0; i<decimals; i++) {
+			buffer[--pos] = (char)('0' + (int)(scaled % 10L));
+			scaled /= 10L;
+		}
+		if(decimals > 0) {
+			buffer[--pos] = '.';
+		}
+		do {
+			buffer[--pos] = (char)('0' + (int)(scaled % 10L));
+			scaled /= 10L;
+		} while(scaled > 0L);
+		if(pos > offset) {
+			buffer[--pos] = '-';
+		}
+		return end;
+	}
+	/**
+	 * Formatter escribe el signo de todos los valores con el bit de signo,
+	 * incluso -0.0 y los que se redondean a cero
+	 */
+	private static boolean isNegative(double value) {
+		return Double.compare(value, 0.0) < 0;
+	}
+	private static String slowFormat(double value, int decimals) {
+		return String.format(Locale.ROOT, "%." + decimals + "f", value);
+	}
+	private static void checkDecimals(int decimals) {
+		if(decimals < 0) {
+			throw new IllegalArgumentException("Negative decimals: " + decimals);
+		}
+	}
+}
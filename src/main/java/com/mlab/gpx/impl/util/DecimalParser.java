@@ -0,0 +1,176 @@
+package com.mlab.gpx.impl.util;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Lectura de números decimales sin crear objetos, desde un CharSequence,
+ * un rango de un char[] o un rango de bytes ASCII de un ByteBuffer.<br/>
+ * Los números con el formato que escribe la librería, [-]ddd[.ddd], se leen
+ * con una mantisa entera y una división por una potencia de 10: si la mantisa
+ * no supera 2^53 y hay como mucho 22 decimales, las dos cantidades son exactas
+ * y la división está correctamente redondeada, así que el resultado es
+ * idéntico al de Double.parseDouble(). Es el caso de las coordenadas con 6 a 12
+ * decimales, de las altitudes y de las extensiones.<br/>
+ * Cualquier otro formato (exponentes, más dígitos, NaN, Infinity, hexadecimal...)
+ * se delega en Double.parseDouble(), por lo que el resultado y las excepciones
+ * son siempre los de Double.parseDouble().
+ *
+ * @author shiguera
+ *
+ */
+public final class DecimalParser {
+
+	private static final long MAX_EXACT_MANTISSA = 1L << 53;
+	private static final double[] POWERS_OF_TEN = new double[] {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+		1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+	private DecimalParser() {
+	}
+
+	/**
+	 * Equivalente a Double.parseDouble(cad.toString())
+	 * @throws NumberFormatException si cad no es un número
+	 * @throws NullPointerException si cad es null
+	 */
+	public static double parseDouble(CharSequence cad) {
+		int start = 0;
+		int end = cad.length();
+		// Double.parseDouble() ignora los caracteres de control y espacios de los extremos
+		while(start < end && cad.charAt(start) <= ' ') {
+			start++;
+		}
+		while(end > start && cad.charAt(end-1) <= ' ') {
+			end--;
+		}
+		int i = start;
+		boolean negative = false;
+		if(i < end && (cad.charAt(i) == '-' || cad.charAt(i) == '+')) {
+			negative = (cad.charAt(i) == '-');
+			i++;
+		}
+		long mantissa = 0L;
+		int decimals = -1;
+		int digits = 0;
+		for(; i<end; i++) {
+			char c = cad.charAt(i);
+			if(c >= '0' && c <= '9') {
+				mantissa = mantissa*10 + (c-'0');
+				if(mantissa > MAX_EXACT_MANTISSA) {
+					break;
+				}
+				digits++;
+				if(decimals >= 0) {
+					decimals++;
+				}
+			} else if(c == '.' && decimals < 0) {
+				decimals = 0;
+			} else {
+				break;
+			}
+		}
+		if(i == end && digits > 0 && decimals <= 22) {
+			return toDouble(mantissa, decimals, negative);
+		}
+		return Double.parseDouble(cad.subSequence(start, end).toString());
+	}
+
+	/**
+	 * Lee el número de los caracteres chars[start]..chars[end-1]
+	 * @throws NumberFormatException si el rango no es un número
+	 */
+	public static double parseDouble(char[] chars, int start, int end) {
+		while(start < end && chars[start] <= ' ') {
+			start++;
+		}
+		while(end > start && chars[end-1] <= ' ') {
+			end--;
+		}
+		int i = start;
+		boolean negative = false;
+		if(i < end && (chars[i] == '-' || chars[i] == '+')) {
+			negative = (chars[i] == '-');
+			i++;
+		}
+		long mantissa = 0L;
+		int decimals = -1;
+		int digits = 0;
+		for(; i<end; i++) {
+			char c = chars[i];
+			if(c >= '0' && c <= '9') {
+				mantissa = mantissa*10 + (c-'0');
+				if(mantissa > MAX_EXACT_MANTISSA) {
+					break;
+				}
+				digits++;
+				if(decimals >= 0) {
+					decimals++;
+				}
+			} else if(c == '.' && decimals < 0) {
+				decimals = 0;
+			} else {
+				break;
+			}
+		}
+		if(i == end && digits > 0 && decimals <= 22) {
+			return toDouble(mantissa, decimals, negative);
+		}
+		return Double.parseDouble(new String(chars, start, end-start));
+	}
+
+	/**
+	 * Lee el número de los bytes ASCII buffer.get(start)..buffer.get(end-1).
+	 * No modifica la posición del buffer
+	 * @throws NumberFormatException si el rango no es un número
+	 */
+	public static double parseDouble(ByteBuffer buffer, int start, int end) {
+		while(start < end && (buffer.get(start)&0xFF) <= ' ') {
+			start++;
+		}
+		while(end > start && (buffer.get(end-1)&0xFF) <= ' ') {
+			end--;
+		}
+		int i = start;
+		boolean negative = false;
+		if(i < end && (buffer.get(i) == '-' || buffer.get(i) == '+')) {
+			negative = (buffer.get(i) == '-');
+			i++;
+		}
+		long mantissa = 0L;
+		int decimals = -1;
+		int digits = 0;
+		for(; i<end; i++) {
+			byte b = buffer.get(i);
+			if(b >= '0' && b <= '9') {
+				mantissa = mantissa*10 + (b-'0');
+				if(mantissa > MAX_EXACT_MANTISSA) {
+					break;
+				}
+				digits++;
+				if(decimals >= 0) {
+					decimals++;
+				}
+			} else if(b == '.' && decimals < 0) {
+				decimals = 0;
+			} else {
+				break;
+			}
+		}
+		if(i == end && digits > 0 && decimals <= 22) {
+			return toDouble(mantissa, decimals, negative);
+		}
+		char[] chars = new char[end-start];
+		for(int j=0; j<chars.length; j++) {
+			chars[j] = (char)(buffer.get(start+j)&0xFF);
+		}
+		return Double.parseDouble(new String(chars));
+	}
+
+	private static double toDouble(long mantissa, int decimals, boolean negative) {
+		double value = (double)mantissa;
+		if(decimals > 0) {
+			value = value / POWERS_OF_TEN[decimals];
+		}
+		return (negative ? -value : value);
+	}
+}
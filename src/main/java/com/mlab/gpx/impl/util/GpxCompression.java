@@ -0,0 +1,216 @@
+package com.mlab.gpx.impl.util;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Lectura y escritura transparente de ficheros gpx comprimidos.<br/>
+ * Al leer, el formato se detecta por los primeros bytes (no por la extensión):
+ * gzip (.gpx.gz), zlib/deflate y zip. De los zip se lee la primera entrada
+ * '.gpx'; para leer todas ver 'GpxFactory.readGpxDocuments()'. Al escribir,
+ * el formato se elige por la extensión del fichero: '.gz', '.zip' o
+ * '.zz'/'.deflate'.<br/>
+ * Todo se hace en streaming sobre los InputStream/OutputStream de java.util.zip,
+ * sin ficheros temporales y sin descomprimir el documento completo en memoria.
+ *
+ * @author shiguera
+ *
+ */
+public final class GpxCompression {
+
+	public enum Format {NONE, GZIP, DEFLATE, ZIP}
+
+	private static final int BUFFER_SIZE = 1 << 16;
+	private static final String GPX_EXTENSION = ".gpx";
+
+	private GpxCompression() {
+	}
+
+	/**
+	 * Detecta el formato por los primeros bytes del stream. El InputStream
+	 * tiene que admitir mark() y reset()
+	 */
+	public static Format detect(InputStream in) throws IOException {
+		in.mark(4);
+		int b0 = in.read();
+		int b1 = in.read();
+		int b2 = in.read();
+		int b3 = in.read();
+		in.reset();
+		if(b0 == 0x1F && b1 == 0x8B) {
+			return Format.GZIP;
+		}
+		if(b0 == 'P' && b1 == 'K' && b2 == 3 && b3 == 4) {
+			return Format.ZIP;
+		}
+		// Cabecera zlib: método 8 y checksum de CMF/FLG
+		if(b0 >= 0 && b1 >= 0 && (b0 & 0x0F) == 8 && (b0 >> 4) <= 7 && ((b0 << 8) | b1) % 31 == 0) {
+			return Format.DEFLATE;
+		}
+		return Format.NONE;
+	}
+	/**
+	 * Detecta el formato de un fichero por sus primeros bytes
+	 */
+	public static Format detect(File file) throws IOException {
+		InputStream in = new BufferedInputStream(new FileInputStream(file), 8);
+		try {
+			return detect(in);
+		} finally {
+			in.close();
+		}
+	}
+	/**
+	 * @return true si el fichero está comprimido o false si no lo
+	 * está o no se puede leer
+	 */
+	public static boolean isCompressed(File file) {
+		try {
+			return detect(file) != Format.NONE;
+		} catch (IOException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Devuelve un InputStream que descomprime el stream si está comprimido.
+	 * De los zip se devuelve la primera entrada '.gpx'
+	 * @param in InputStream, que se cierra al cerrar el resultado
+	 * @return InputStream con los bytes del documento
+	 * @throws IOException si no se puede leer o el zip no tiene entradas '.gpx'
+	 */
+	public static InputStream decompress(InputStream in) throws IOException {
+		InputStream buffered = (in.markSupported() ? in : new BufferedInputStream(in, BUFFER_SIZE));
+		switch(detect(buffered)) {
+		case GZIP:
+			return new BufferedInputStream(new GZIPInputStream(buffered, BUFFER_SIZE), BUFFER_SIZE);
+		case DEFLATE:
+			return new BufferedInputStream(new InflaterInputStream(buffered), BUFFER_SIZE);
+		case ZIP:
+			ZipEntries entries = new ZipEntries(buffered);
+			if(!entries.next()) {
+				entries.close();
+				throw new IOException("GpxCompression: no gpx entries in zip");
+			}
+			return new BufferedInputStream(entries.zip, BUFFER_SIZE);
+		default:
+			return buffered;
+		}
+	}
+	/**
+	 * Abre un fichero, comprimido o no, para leer el documento. Si no se
+	 * puede leer el formato, el fichero se cierra
+	 */
+	public static InputStream openInputStream(File file) throws IOException {
+		InputStream in = new FileInputStream(file);
+		try {
+			return decompress(in);
+		} catch (IOException | RuntimeException e) {
+			Util.close(in);
+			throw e;
+		}
+	}
+
+	/**
+	 * Recorre las entradas '.gpx' de un zip
+	 */
+	public static class ZipEntries {
+		private final ZipInputStream zip;
+		private String name;
+
+		public ZipEntries(InputStream in) {
+			this.zip = new ZipInputStream(in.markSupported() ? in : new BufferedInputStream(in, BUFFER_SIZE));
+		}
+		/**
+		 * Avanza a la siguiente entrada '.gpx'
+		 * @return false si no hay más
+		 */
+		public boolean next() throws IOException {
+			ZipEntry entry = zip.getNextEntry();
+			while(entry != null && (entry.isDirectory() ||
+					!entry.getName().toLowerCase().endsWith(GPX_EXTENSION))) {
+				entry = zip.getNextEntry();
+			}
+			name = (entry != null ? entry.getName() : null);
+			return entry != null;
+		}
+		/**
+		 * Nombre de la entrada actual
+		 */
+		public String getName() {
+			return name;
+		}
+		/**
+		 * InputStream de la entrada actual. Cerrarlo no cierra el zip
+		 */
+		public InputStream getInputStream() {
+			return new FilterInputStream(zip) {
+				@Override
+				public void close() {
+				}
+			};
+		}
+		public void close() throws IOException {
+			zip.close();
+		}
+	}
+
+	/**
+	 * Formato de escritura según la extensión del fichero
+	 */
+	public static Format formatForName(String filename) {
+		String name = filename.toLowerCase();
+		if(name.endsWith(".gz")) {
+			return Format.GZIP;
+		} else if(name.endsWith(".zip")) {
+			return Format.ZIP;
+		} else if(name.endsWith(".zz") || name.endsWith(".deflate")) {
+			return Format.DEFLATE;
+		}
+		return Format.NONE;
+	}
+	/**
+	 * Abre un fichero para escribir comprimiendo según su extensión. En los
+	 * '.zip' se crea una sola entrada con el nombre del fichero sin '.zip'
+	 * @param file Fichero destino
+	 * @return OutputStream con buffer; hay que cerrarlo para terminar el fichero
+	 */
+	public static OutputStream openOutputStream(File file) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			switch(formatForName(file.getName())) {
+			case GZIP:
+				return new BufferedOutputStream(new GZIPOutputStream(out, BUFFER_SIZE), BUFFER_SIZE);
+			case DEFLATE:
+				return new BufferedOutputStream(new DeflaterOutputStream(out), BUFFER_SIZE);
+			case ZIP:
+				ZipOutputStream zip = new ZipOutputStream(out);
+				String name = file.getName().substring(0, file.getName().length() - 4);
+				if(!name.toLowerCase().endsWith(GPX_EXTENSION)) {
+					name += GPX_EXTENSION;
+				}
+				zip.putNextEntry(new ZipEntry(name));
+				return new BufferedOutputStream(zip, BUFFER_SIZE);
+			default:
+				return new BufferedOutputStream(out, BUFFER_SIZE);
+			}
+		} catch (IOException e) {
+			Util.close(out);
+			throw e;
+		}
+	}
+}
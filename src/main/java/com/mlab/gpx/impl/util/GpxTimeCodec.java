@@ -0,0 +1,286 @@
+package com.mlab.gpx.impl.util;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Lectura y escritura de las fechas de los documentos gpx sin SimpleDateFormat.
+ * Todos los métodos son estáticos y thread-safe.<br/>
+ * <b>Lectura</b>: fechas ISO-8601 'yyyy-MM-ddTHH:mm:ss[.f]' con entre 0 y 9
+ * dígitos decimales en los segundos y sufijo 'Z', '+HH:MM', '+HHMM', '+HH' o
+ * sin sufijo (UTC). No crea objetos. La librería ha escrito siempre los decimales
+ * como una repetición de los segundos ('13:51:04.04Z'); cuando hay exactamente
+ * dos decimales iguales a los segundos se leen como 0 milisegundos, igual que
+ * hacía Util.parseGpxDate().<br/>
+ * <b>Escritura</b>: el formato de siempre de la librería 'yyyy-MM-ddTHH:mm:ss.ssZ'.
+ * Como solo depende del segundo, los textos se guardan en una caché indexada
+ * por el segundo, de modo que los puntos de un mismo segundo o de un documento
+ * que se escribe varias veces no vuelven a formatearse. formatIso() y
+ * appendIsoTo() escriben en cambio ISO-8601 estándar con milisegundos
+ * ('yyyy-MM-ddTHH:mm:ss.SSSZ'), para formatos como KML o GeoJSON.
+ *
+ * @author shiguera
+ *
+ */
+public final class GpxTimeCodec {
+
+	/**
+	 * Valor que devuelve parse() si la cadena no es una fecha válida
+	 */
+	public static final long INVALID_TIME = Long.MIN_VALUE;
+
+	private static final int CACHE_SIZE = 1024;
+	private static final Entry[] CACHE = new Entry[CACHE_SIZE];
+
+	/**
+	 * Texto de un segundo. Inmutable: se puede publicar en la caché sin sincronizar
+	 */
+	private static final class Entry {
+		final long second;
+		final String text;
+		Entry(long second, String text) {
+			this.second = second;
+			this.text = text;
+		}
+	}
+
+	private GpxTimeCodec() {
+	}
+
+	/**
+	 * Lee una fecha gpx
+	 * @param cad Cadena con la fecha. Se ignoran los espacios de los extremos
+	 * @return Milisegundos UTC o INVALID_TIME si la cadena no es una fecha válida
+	 */
+	public static long parse(CharSequence cad) {
+		if(cad == null) {
+			return INVALID_TIME;
+		}
+		return parse(cad, 0, cad.length());
+	}
+	/**
+	 * Lee una fecha gpx de los caracteres cad[start]..cad[end-1]
+	 * @return Milisegundos UTC o INVALID_TIME si el rango no es una fecha válida
+	 */
+	public static long parse(CharSequence cad, int start, int end) {
+		while(start < end && cad.charAt(start) <= ' ') {
+			start++;
+		}
+		while(end > start && cad.charAt(end-1) <= ' ') {
+			end--;
+		}
+		if(end - start < 19) {
+			return INVALID_TIME;
+		}
+		int i = start;
+		int year = digits(cad, i, 4);
+		int month = digits(cad, i+5, 2);
+		int day = digits(cad, i+8, 2);
+		int hour = digits(cad, i+11, 2);
+		int minute = digits(cad, i+14, 2);
+		int second = digits(cad, i+17, 2);
+		char t = cad.charAt(i+10);
+		if(year < 0 || month < 0 || day < 0 || hour < 0 || minute < 0 || second < 0 ||
+				cad.charAt(i+4) != '-' || cad.charAt(i+7) != '-' || (t != 'T' && t != 't') ||
+				cad.charAt(i+13) != ':' || cad.charAt(i+16) != ':') {
+			return INVALID_TIME;
+		}
+		i += 19;
+		// Decimales de los segundos
+		int fraction = 0;
+		int fractionDigits = 0;
+		if(i < end && cad.charAt(i) == '.') {
+			i++;
+			while(i < end && cad.charAt(i) >= '0' && cad.charAt(i) <= '9') {
+				if(fractionDigits < 9) {
+					fraction = fraction*10 + (cad.charAt(i)-'0');
+				}
+				fractionDigits++;
+				i++;
+			}
+			if(fractionDigits == 0) {
+				return INVALID_TIME;
+			}
+		}
+		// Zona horaria
+		int offsetMinutes = 0;
+		if(i < end) {
+			char c = cad.charAt(i);
+			if(c == 'Z' || c == 'z') {
+				i++;
+			} else if(c == '+' || c == '-') {
+				int sign = (c == '-' ? -1 : 1);
+				int offsetHours = digits(cad, i+1, 2);
+				if(offsetHours < 0 || i+3 > end) {
+					return INVALID_TIME;
+				}
+				i += 3;
+				int offsetMins = 0;
+				if(i < end) {
+					if(cad.charAt(i) == ':') {
+						i++;
+					}
+					if(i+2 > end) {
+						return INVALID_TIME;
+					}
+					offsetMins = digits(cad, i, 2);
+					i += 2;
+				}
+				if(offsetMins < 0 || offsetMins > 59 || offsetHours > 18) {
+					return INVALID_TIME;
+				}
+				offsetMinutes = sign*(offsetHours*60 + offsetMins);
+			}
+		}
+		if(i != end || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) ||
+				hour > 23 || minute > 59 || second > 59) {
+			return INVALID_TIME;
+		}
+		int millis;
+		if(fractionDigits == 2 && fraction == second) {
+			// Formato de la librería: los decimales repiten los segundos
+			millis = 0;
+		} else {
+			int scale = Math.min(fractionDigits, 9);
+			for(int k=scale; k<3; k++) {
+				fraction *= 10;
+			}
+			for(int k=3; k<scale; k++) {
+				fraction /= 10;
+			}
+			millis = fraction;
+		}
+		long days = daysFromCivil(year, month, day);
+		return ((days*24L + hour)*60L + minute - offsetMinutes)*60000L + second*1000L + millis;
+	}
+
+	/**
+	 * Formatea una fecha en el formato de la librería 'yyyy-MM-ddTHH:mm:ss.ssZ'.
+	 * Produce el mismo texto que el SimpleDateFormat que se utilizaba antes
+	 * @param t Milisegundos UTC
+	 * @return String con la fecha
+	 */
+	public static String format(long t) {
+		long second = Math.floorDiv(t, 1000L);
+		int index = (int)(second & (CACHE_SIZE-1));
+		Entry entry = CACHE[index];
+		if(entry != null && entry.second == second) {
+			return entry.text;
+		}
+		String text = formatSecond(second);
+		CACHE[index] = new Entry(second, text);
+		return text;
+	}
+	/**
+	 * Añade la fecha formateada con format() al StringBuilder
+	 */
+	public static StringBuilder appendTo(StringBuilder builder, long t) {
+		return builder.append(format(t));
+	}
+	/**
+	 * Formatea una fecha en ISO-8601 con milisegundos 'yyyy-MM-ddTHH:mm:ss.SSSZ'
+	 * @param t Milisegundos UTC
+	 * @return String con la fecha
+	 */
+	public static String formatIso(long t) {
+		return appendIsoTo(new StringBuilder(24), t).toString();
+	}
+	/**
+	 * Añade la fecha formateada con formatIso() al StringBuilder
+	 */
+	public static StringBuilder appendIsoTo(StringBuilder builder, long t) {
+		String text = format(t);
+		int millis = (int)Math.floorMod(t, 1000L);
+		builder.append(text, 0, text.length() - 4).append('.');
+		builder.append((char)('0' + millis/100));
+		builder.append((char)('0' + (millis/10)%10));
+		builder.append((char)('0' + millis%10));
+		return builder.append('Z');
+	}
+
+	private static String formatSecond(long second) {
+		long days = Math.floorDiv(second, 86400L);
+		int secondOfDay = (int)Math.floorMod(second, 86400L);
+		// Fecha civil a partir de los días desde 1970-01-01
+		long z = days + 719468L;
+		long era = Math.floorDiv(z, 146097L);
+		int doe = (int)(z - era*146097L);
+		int yoe = (doe - doe/1460 + doe/36524 - doe/146096) / 365;
+		int doy = doe - (365*yoe + yoe/4 - yoe/100);
+		int mp = (5*doy + 2)/153;
+		int day = doy - (153*mp + 2)/5 + 1;
+		int month = (mp < 10 ? mp+3 : mp-9);
+		long year = yoe + era*400 + (month <= 2 ? 1 : 0);
+		if(year < 1600 || year > 9999) {
+			// SimpleDateFormat utiliza el calendario juliano antes de 1582
+			SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.ss'Z'");
+			format.setTimeZone(TimeZone.getTimeZone("UTC"));
+			return format.format(new Date(second*1000L));
+		}
+		int hour = secondOfDay / 3600;
+		int minute = (secondOfDay / 60) % 60;
+		int sec = secondOfDay % 60;
+		char[] chars = new char[23];
+		put(chars, 0, (int)year, 4);
+		chars[4] = '-';
+		put(chars, 5, month, 2);
+		chars[7] = '-';
+		put(chars, 8, day, 2);
+		chars[10] = 'T';
+		put(chars, 11, hour, 2);
+		chars[13] = ':';
+		put(chars, 14, minute, 2);
+		chars[16] = ':';
+		put(chars, 17, sec, 2);
+		chars[19] = '.';
+		put(chars, 20, sec, 2);
+		chars[22] = 'Z';
+		return new String(chars);
+	}
+	private static void put(char[] chars, int offset, int value, int count) {
+		for(int i=offset+count-1; i>=offset; i--) {
+			chars[i] = (char)('0' + value%10);
+			value /= 10;
+		}
+	}
+	/**
+	 * @return Valor de 'count' dígitos a partir de 'start' o -1 si no son dígitos
+	 */
+	private static int digits(CharSequence cad, int start, int count) {
+		if(start+count > cad.length()) {
+			return -1;
+		}
+		int value = 0;
+		for(int i=start; i<start+count; i++) {
+			char c = cad.charAt(i);
+			if(c < '0' || c > '9') {
+				return -1;
+			}
+			value = value*10 + (c-'0');
+		}
+		return value;
+	}
+	private static int daysInMonth(int year, int month) {
+		switch(month) {
+		case 2:
+			boolean leap = (year%4==0 && year%100!=0) || year%400==0;
+			return (leap ? 29 : 28);
+		case 4: case 6: case 9: case 11:
+			return 30;
+		default:
+			return 31;
+		}
+	}
+	/**
+	 * Días desde 1970-01-01 de una fecha del calendario gregoriano
+	 */
+	private static long daysFromCivil(int year, int month, int day) {
+		int y = (month <= 2 ? year-1 : year);
+		int era = (y >= 0 ? y : y-399) / 400;
+		int yoe = y - era*400;
+		int doy = (153*(month + (month > 2 ? -3 : 9)) + 2)/5 + day-1;
+		int doe = yoe*365 + yoe/4 - yoe/100 + doy;
+		return era*146097L + doe - 719468L;
+	}
+}
@@ -0,0 +1,123 @@
+package com.mlab.gpx.impl.util;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * InputStream que cuenta los bytes y los caracteres UTF-8 que se leen a
+ * través de él y guarda los últimos 64KB, para poder traducir a bytes
+ * el desplazamiento en caracteres que da un parser xml
+ * (javax.xml.stream.Location.getCharacterOffset()).<br/>
+ * Los parsers leen por adelantado, así que el desplazamiento de un error
+ * suele estar algo antes de la posición del stream; basta con que esté
+ * dentro de los bytes guardados.
+ *
+ * @author shiguera
+ *
+ */
+public class OffsetInputStream extends FilterInputStream {
+
+	private static final int HISTORY_SIZE = 1 << 16;
+	private static final int HISTORY_MASK = HISTORY_SIZE - 1;
+
+	private final byte[] history;
+	private long byteCount;
+	private long charCount;
+
+	public OffsetInputStream(InputStream in) {
+		super(in);
+		this.history = new byte[HISTORY_SIZE];
+		this.byteCount = 0L;
+		this.charCount = 0L;
+	}
+
+	@Override
+	public int read() throws IOException {
+		int b = in.read();
+		if(b >= 0) {
+			record((byte)b);
+		}
+		return b;
+	}
+	@Override
+	public int read(byte[] buffer, int offset, int length) throws IOException {
+		int count = in.read(buffer, offset, length);
+		for(int i=0; i<count; i++) {
+			record(buffer[offset+i]);
+		}
+		return count;
+	}
+	@Override
+	public long skip(long n) throws IOException {
+		byte[] buffer = new byte[(int)Math.min(n, 8192L)];
+		long skipped = 0L;
+		while(skipped < n) {
+			int count = read(buffer, 0, (int)Math.min(buffer.length, n - skipped));
+			if(count < 0) {
+				break;
+			}
+			skipped += count;
+		}
+		return skipped;
+	}
+	@Override
+	public boolean markSupported() {
+		return false;
+	}
+
+	private void record(byte b) {
+		history[(int)(byteCount & HISTORY_MASK)] = b;
+		byteCount++;
+		charCount += charsOf(b);
+	}
+	/**
+	 * Caracteres (char de Java) que empiezan en un byte UTF-8: 0 en los
+	 * bytes de continuación y 2 en los que inician un par surrogate
+	 */
+	private static int charsOf(byte b) {
+		if((b & 0xC0) == 0x80) {
+			return 0;
+		} else if((b & 0xF8) == 0xF0) {
+			return 2;
+		}
+		return 1;
+	}
+
+	public long getByteCount() {
+		return byteCount;
+	}
+	public long getCharCount() {
+		return charCount;
+	}
+
+	/**
+	 * Desplazamiento en bytes de un desplazamiento en caracteres
+	 * @param charOffset Desplazamiento en caracteres
+	 * @param utf8 true si el documento está en UTF-8, false si es de un byte
+	 * por carácter (ISO-8859-1, US-ASCII...)
+	 * @return Desplazamiento en bytes, como mucho los bytes leidos,
+	 * o -1 si queda antes de los bytes guardados
+	 */
+	public long byteOffsetOf(long charOffset, boolean utf8) {
+		if(charOffset < 0L) {
+			return -1L;
+		}
+		if(!utf8) {
+			return Math.min(charOffset, byteCount);
+		}
+		if(charOffset >= charCount) {
+			return byteCount;
+		}
+		long chars = charCount;
+		long position = byteCount;
+		while(chars > charOffset) {
+			if(byteCount - position >= HISTORY_SIZE) {
+				return -1L;
+			}
+			position--;
+			chars -= charsOf(history[(int)(position & HISTORY_MASK)]);
+		}
+		return position;
+	}
+}
@@ -0,0 +1,316 @@
+package com.mlab.gpx.impl.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.mlab.gpx.api.CompositeGpxNode;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxNode;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.Route;
+import com.mlab.gpx.impl.TrackSegment;
+
+/**
+ * Codificación de secuencias de puntos en el formato 'encoded polyline'
+ * de Google. La latitud y la longitud se redondean a 'precision' decimales
+ * (5 en el formato de Google, 6 en OSRM/Valhalla) y se guardan como
+ * diferencias con el punto anterior, en zigzag y en grupos de 5 bits
+ * escritos como caracteres ASCII entre '?' y '~'.<br/>
+ * Opcionalmente se añaden a cada punto, tras la latitud y la longitud, la
+ * altitud en centímetros y el tiempo en milisegundos, con la misma
+ * codificación de diferencias; con un muestreo regular las diferencias son
+ * casi constantes y ocupan pocos caracteres. Un punto sin tiempo (negativo)
+ * se codifica y se decodifica como -1. Sin esos canales el resultado es un
+ * polyline estándar.<br/>
+ * Los métodos con arrays (encode(), append(), count() y decode()) no crean
+ * objetos por punto. Los métodos con CompositeGpxNode codifican los WayPoint
+ * de un TrackSegment o una Route y decodifican creándolos con una factory;
+ * las extensiones quedan a -1.0. Todos los métodos son estáticos y
+ * thread-safe. Una cadena mal formada produce IllegalArgumentException en
+ * los métodos con arrays y null en los que crean nodos.
+ *
+ * @author shiguera
+ *
+ */
+public final class PolylineCodec {
+
+	/**
+	 * Precisión del formato de Google
+	 */
+	public static final int PRECISION_5 = 5;
+	/**
+	 * Precisión de OSRM, Valhalla...
+	 */
+	public static final int PRECISION_6 = 6;
+	/**
+	 * Decimales de la altitud
+	 */
+	public static final int ELEVATION_DECIMALS = 2;
+
+	private static final int MAX_PRECISION = 9;
+	private static final double[] POWERS_OF_TEN = new double[] {
+		1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
+	private static final Double MISSING_VALUE = Double.valueOf(-1.0);
+	/**
+	 * Tiempo de los puntos que no lo tienen
+	 */
+	private static final long NO_TIME = -1L;
+
+	private PolylineCodec() {
+	}
+
+	/**
+	 * Codifica los puntos 0..count-1
+	 * @param latitudes Latitudes
+	 * @param longitudes Longitudes
+	 * @param elevations Altitudes o null si no se codifican
+	 * @param times Tiempos en milisegundos o null si no se codifican
+	 * @param count Número de puntos
+	 * @param precision Decimales de latitud y longitud
+	 * @throws IllegalArgumentException si la precisión no está entre 0 y 9
+	 */
+	public static String encode(double[] latitudes, double[] longitudes,
+			double[] elevations, long[] times, int count, int precision) {
+		StringBuilder builder = new StringBuilder(count * (elevations != null || times != null ? 12 : 8));
+		return append(builder, latitudes, longitudes, elevations, times, count, precision).toString();
+	}
+	/**
+	 * Añade los puntos codificados al final de un StringBuilder
+	 * @return El mismo StringBuilder
+	 * @see #encode(double[], double[], double[], long[], int, int)
+	 */
+	public static StringBuilder append(StringBuilder builder, double[] latitudes, double[] longitudes,
+			double[] elevations, long[] times, int count, int precision) {
+		double factor = factorOf(precision);
+		double elevationFactor = POWERS_OF_TEN[ELEVATION_DECIMALS];
+		long lastLat = 0L, lastLon = 0L, lastEle = 0L, lastTime = 0L;
+		for(int i=0; i<count; i++) {
+			long lat = Math.round(latitudes[i] * factor);
+			long lon = Math.round(longitudes[i] * factor);
+			appendValue(builder, lat - lastLat);
+			appendValue(builder, lon - lastLon);
+			lastLat = lat;
+			lastLon = lon;
+			if(elevations != null) {
+				long ele = Math.round(elevations[i] * elevationFactor);
+				appendValue(builder, ele - lastEle);
+				lastEle = ele;
+			}
+			if(times != null) {
+				long time = (times[i] < 0L ? NO_TIME : times[i]);
+				appendValue(builder, time - lastTime);
+				lastTime = time;
+			}
+		}
+		return builder;
+	}
+	/**
+	 * Número de puntos de una cadena codificada, para dimensionar los
+	 * arrays de decode()
+	 * @throws IllegalArgumentException si la cadena no es válida
+	 */
+	public static int count(CharSequence encoded, boolean withElevation, boolean withTime) {
+		int channels = channelsOf(withElevation, withTime);
+		int values = 0;
+		int length = encoded.length();
+		for(int i=0; i<length; i++) {
+			int b = encoded.charAt(i) - 63;
+			if(b < 0 || b > 63) {
+				throw new IllegalArgumentException("Invalid polyline character at "+i);
+			}
+			if(b < 0x20) {
+				values++;
+			}
+		}
+		if(values % channels != 0 || (length > 0 && encoded.charAt(length - 1) - 63 >= 0x20)) {
+			throw new IllegalArgumentException("Truncated polyline");
+		}
+		return values / channels;
+	}
+	/**
+	 * Decodifica los puntos en los arrays, que deben tener al menos
+	 * count() elementos
+	 * @param encoded Cadena codificada
+	 * @param precision Decimales de latitud y longitud con que se codificó
+	 * @param latitudes Latitudes
+	 * @param longitudes Longitudes
+	 * @param elevations Altitudes o null si la cadena no las tiene
+	 * @param times Tiempos en milisegundos o null si la cadena no los tiene
+	 * @return Número de puntos
+	 * @throws IllegalArgumentException si la cadena no es válida
+	 * @throws ArrayIndexOutOfBoundsException si los puntos no caben en los arrays
+	 */
+	public static int decode(CharSequence encoded, int precision, double[] latitudes,
+			double[] longitudes, double[] elevations, long[] times) {
+		double factor = factorOf(precision);
+		double elevationFactor = POWERS_OF_TEN[ELEVATION_DECIMALS];
+		int length = encoded.length();
+		int[] position = new int[] {0};
+		long lat = 0L, lon = 0L, ele = 0L, time = 0L;
+		int count = 0;
+		while(position[0] < length) {
+			lat += readValue(encoded, position);
+			lon += readValue(encoded, position);
+			latitudes[count] = lat / factor;
+			longitudes[count] = lon / factor;
+			if(elevations != null) {
+				ele += readValue(encoded, position);
+				elevations[count] = ele / elevationFactor;
+			}
+			if(times != null) {
+				time += readValue(encoded, position);
+				times[count] = (time < 0L ? NO_TIME : time);
+			}
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Codifica los WayPoint de un TrackSegment o una Route
+	 * @param node TrackSegment, Route o cualquier CompositeGpxNode de WayPoint
+	 * @param precision Decimales de latitud y longitud
+	 * @param withElevation Si se codifica la altitud
+	 * @param withTime Si se codifica el tiempo
+	 */
+	public static String encode(CompositeGpxNode node, int precision, boolean withElevation, boolean withTime) {
+		int size = node.size();
+		double[] latitudes = new double[size];
+		double[] longitudes = new double[size];
+		double[] elevations = (withElevation ? new double[size] : null);
+		long[] times = (withTime ? new long[size] : null);
+		int count = 0;
+		for(int i=0; i<size; i++) {
+			GpxNode point = node.get(i);
+			if(point instanceof WayPoint) {
+				WayPoint wp = (WayPoint)point;
+				latitudes[count] = wp.getLatitude();
+				longitudes[count] = wp.getLongitude();
+				if(withElevation) {
+					elevations[count] = wp.getAltitude();
+				}
+				if(withTime) {
+					times[count] = wp.getTime();
+				}
+				count++;
+			}
+		}
+		return encode(latitudes, longitudes, elevations, times, count, precision);
+	}
+	/**
+	 * Decodifica un TrackSegment. Los puntos se añaden con
+	 * 'TrackSegment.addWayPoint()', que solo admite tiempos crecientes, así
+	 * que la cadena debe llevar el canal de tiempo. Si algún punto no se
+	 * puede añadir el resultado es null, en lugar de un TrackSegment al que
+	 * le faltan puntos
+	 * @return TrackSegment o null si la cadena no es válida, no tiene tiempos
+	 * o los tiempos no son crecientes
+	 */
+	public static TrackSegment decodeTrackSegment(CharSequence encoded, int precision,
+			boolean withElevation, boolean withTime, GpxFactory factory) {
+		if(!withTime) {
+			return null;
+		}
+		List<WayPoint> points = decodeWayPoints(encoded, precision, withElevation, withTime, factory);
+		if(points == null) {
+			return null;
+		}
+		TrackSegment segment = new TrackSegment();
+		for(WayPoint wp: points) {
+			if(!segment.addWayPoint(wp)) {
+				return null;
+			}
+		}
+		return segment;
+	}
+	/**
+	 * Decodifica una Route. Sin canal de tiempo los puntos tienen tiempo -1
+	 * @return Route o null si la cadena no es válida
+	 */
+	public static Route decodeRoute(CharSequence encoded, int precision,
+			boolean withElevation, boolean withTime, GpxFactory factory) {
+		List<WayPoint> points = decodeWayPoints(encoded, precision, withElevation, withTime, factory);
+		if(points == null) {
+			return null;
+		}
+		Route route = new Route();
+		for(WayPoint wp: points) {
+			route.addWayPoint(wp);
+		}
+		return route;
+	}
+
+	private static List<WayPoint> decodeWayPoints(CharSequence encoded, int precision,
+			boolean withElevation, boolean withTime, GpxFactory factory) {
+		double[] latitudes, longitudes, elevations;
+		long[] times;
+		int count;
+		try {
+			count = count(encoded, withElevation, withTime);
+			latitudes = new double[count];
+			longitudes = new double[count];
+			elevations = new double[count];
+			times = new long[count];
+			decode(encoded, precision, latitudes, longitudes,
+				withElevation ? elevations : null, withTime ? times : null);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+		int extensions = factory.getExtensionTags().length;
+		List<WayPoint> points = new ArrayList<WayPoint>(count);
+		for(int i=0; i<count; i++) {
+			List<Double> values = new ArrayList<Double>(3 + extensions);
+			values.add(Double.valueOf(longitudes[i]));
+			values.add(Double.valueOf(latitudes[i]));
+			values.add(Double.valueOf(elevations[i]));
+			for(int k=0; k<extensions; k++) {
+				values.add(MISSING_VALUE);
+			}
+			WayPoint wp = factory.createWayPoint("", "", withTime ? times[i] : -1L, values);
+			if(wp != null) {
+				points.add(wp);
+			}
+		}
+		return points;
+	}
+
+	private static void appendValue(StringBuilder builder, long value) {
+		long zigzag = (value << 1) ^ (value >> 63);
+		while(zigzag >= 0x20L || zigzag < 0L) {
+			builder.append((char)((0x20 | (int)(zigzag & 0x1F)) + 63));
+			zigzag >>>= 5;
+		}
+		builder.append((char)(zigzag + 63));
+	}
+	/**
+	 * Lee un valor desde position[0] y avanza la posición
+	 */
+	private static long readValue(CharSequence encoded, int[] position) {
+		long result = 0L;
+		int shift = 0;
+		int length = encoded.length();
+		while(true) {
+			if(position[0] >= length || shift > 63) {
+				throw new IllegalArgumentException("Truncated polyline");
+			}
+			int b = encoded.charAt(position[0]++) - 63;
+			if(b < 0 || b > 63) {
+				throw new IllegalArgumentException("Invalid polyline character at "+(position[0]-1));
+			}
+			result |= (long)(b & 0x1F) << shift;
+			shift += 5;
+			if(b < 0x20) {
+				return (result >>> 1) ^ -(result & 1L);
+			}
+		}
+	}
+	private static int channelsOf(boolean withElevation, boolean withTime) {
+		return 2 + (withElevation ? 1 : 0) + (withTime ? 1 : 0);
+	}
+	private static double factorOf(int precision) {
+		if(precision < 0 || precision > MAX_PRECISION) {
+			throw new IllegalArgumentException("Invalid polyline precision: "+precision);
+		}
+		return POWERS_OF_TEN[precision];
+	}
+}
@@ -2,6 +2,7 @@ package com.mlab.gpx.impl.util;
 
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.Closeable;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
@@ -80,19 +81,28 @@ public class Util {
 	 * arroja IllegalArgumentException
 	 */
 	public static String doubleToString(double value, int digits, int decimals) {
-		// System.out.println(value);
+		checkDoubleFormat(value, digits, decimals);
+		return DecimalFormatter.format(value, decimals);
+	}
+	/**
+	 * Añade a un StringBuilder la cadena de 'doubleToString()', sin
+	 * crear cadenas intermedias
+	 * @param builder StringBuilder
+	 * @param value double valor
+	 * @param digits número total de dígitos
+	 * @param decimals número de decimales
+	 * @return el mismo StringBuilder
+	 * Si value es NaN o infinito, o digits<=0 o decimals<0 
+	 * arroja IllegalArgumentException
+	 */
+	public static StringBuilder appendDouble(StringBuilder builder, double value, int digits, int decimals) {
+		checkDoubleFormat(value, digits, decimals);
+		return DecimalFormatter.append(builder, value, decimals);
+	}
+	private static void checkDoubleFormat(double value, int digits, int decimals) {
 		if(Double.isNaN(value) || Double.isInfinite(value) || digits <= 0 || decimals <0) {
 			throw new IllegalArgumentException();
 		}
-		StringBuilder builder = new StringBuilder();
-		builder.append("%");
-		builder.append(String.format("%d", digits));;
-		builder.append(".");
-		builder.append(String.format("%d", decimals));;
-		builder.append("f");
-		
-		String cad = String.format(builder.toString(), value).replace(',', '.').trim();
-		return cad;
 	}
 	/**
 	 * Extrae la fecha del vídeo a partir del nombre del fichero
@@ -142,39 +152,26 @@ public class Util {
     	return cad;
     }
     /**
-     * Formatea una fecha 'yyyy-MM-ddThh:mm:ss.ssZ'
+     * Formatea una fecha 'yyyy-MM-ddThh:mm:ss.ssZ'. Ver GpxTimeCodec.format()
      * @param t tiempo en milisegundos de la fecha
      * @return 'yyyy-MM-ddThh:mm:ss.ssZ'
      */
     public static String dateTimeToStringGpxFormat(long t) {
-    	SimpleDateFormat format= new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.ss'Z'");
-   		format.setTimeZone(TimeZone.getTimeZone("UTC"));
-    	return format.format(new Date(t));
+    	return GpxTimeCodec.format(t);
     }
     /**
-     * Extrae la fecha y hora de una cadena en formato de fecha GPX
-     * @param cadGpxDateTime Cadena de fecha y hora en la forma:<br>
-     * yyyy-MM-dd'T'HH:mm:ss.ss'Z'
+     * Extrae la fecha y hora de una cadena en formato de fecha GPX.
+     * Ver GpxTimeCodec.parse()
+     * @param cadGpxDateTime Cadena de fecha y hora ISO-8601 en la forma:<br>
+     * yyyy-MM-dd'T'HH:mm:ss[.f]['Z'|+HH:MM]
      * @return long con la fecha-hora o -1l si hay errores
      */
     public static long parseGpxDate(String cadGpxDateTime) {
-    	SimpleDateFormat format = null;
-    	if(cadGpxDateTime.length()==23) {
-    		format= new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.ss'Z'");	
-    	} else if (cadGpxDateTime.length()==22) {
-        	format= new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.s'Z'");    		
-    	} else if (cadGpxDateTime.length()==20) {
-        	format= new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss'Z'");    		
+    	long t = GpxTimeCodec.parse(cadGpxDateTime);
+    	if(t == GpxTimeCodec.INVALID_TIME) {
+    		LOG.warn("Util.parseGpxDate(): can't parse date "+cadGpxDateTime);
+    		return -1l;
     	}
-		format.setTimeZone(TimeZone.getTimeZone("UTC"));
-		Date date;
-		long t = -1l;
-		try {
-			date = format.parse(cadGpxDateTime);
-			t = date.getTime();
-		} catch (ParseException e) {			
-			e.printStackTrace();
-		}
 		return t;
     }
     /**
@@ -317,6 +314,20 @@ public class Util {
         }
         return outputStream.toString();
     }	
+	/**
+	 * Cierra un Closeable ignorando los errores. Admite null
+	 * @param closeable
+	 */
+	public static void close(Closeable closeable) {
+		if(closeable == null) {
+			return;
+		}
+		try {
+			closeable.close();
+		} catch (IOException e) {
+			LOG.warn("Util.close(): "+e.getMessage());
+		}
+	}
 	/**
 	 * Lee una matriz de doubles desde un fichero CSV
 	 * @param filename Nombre del fichero
@@ -726,8 +737,7 @@ public class Util {
 	}
 	
 	public static double[] proyUtmWGS84(double lon, double lat) {
-		EllipsoidWGS84 ell = new EllipsoidWGS84();
-		return ell.proyUTM(lon, lat);
+		return EllipsoidWGS84.WGS84.proyUTM(lon, lat);
 	}
 	/**
 	 * Calcula la proyección UTM de los puntos de un TrackSegment 
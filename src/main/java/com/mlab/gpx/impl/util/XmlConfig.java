@@ -0,0 +1,47 @@
+package com.mlab.gpx.impl.util;
+
+/**
+ * Configuración de los DocumentBuilder y Transformer que proporciona
+ * XmlFactory. Es inmutable; se cambia con 'XmlFactory.setConfig()'.<br/>
+ * Por defecto los DocumentBuilder no son 'namespace aware', igual que los
+ * de siempre de la librería (los nombres de etiqueta se comparan con su
+ * prefijo, 'mlab:speed'), y tanto DocumentBuilder como Transformer
+ * se crean con XMLConstants.FEATURE_SECURE_PROCESSING.
+ *
+ * @author shiguera
+ *
+ */
+public final class XmlConfig {
+
+	private final boolean namespaceAware;
+	private final boolean secureProcessing;
+	private final int indentAmount;
+
+	/**
+	 * Configuración por defecto: sin namespaces, con secure processing
+	 * e indentación de 3 espacios
+	 */
+	public XmlConfig() {
+		this(false, true, 3);
+	}
+	/**
+	 * @param namespaceAware DocumentBuilder 'namespace aware'
+	 * @param secureProcessing Activa XMLConstants.FEATURE_SECURE_PROCESSING
+	 * @param indentAmount Espacios de indentación en los xml formateados
+	 */
+	public XmlConfig(boolean namespaceAware, boolean secureProcessing, int indentAmount) {
+		this.namespaceAware = namespaceAware;
+		this.secureProcessing = secureProcessing;
+		this.indentAmount = indentAmount;
+	}
+
+	public boolean isNamespaceAware() {
+		return namespaceAware;
+	}
+	public boolean isSecureProcessing() {
+		return secureProcessing;
+	}
+	public int getIndentAmount() {
+		return indentAmount;
+	}
+}
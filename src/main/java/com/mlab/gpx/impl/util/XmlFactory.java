@@ -1,28 +1,181 @@
 package com.mlab.gpx.impl.util;
 
+import java.io.InputStream;
+import java.io.Reader;
 import java.io.StringReader;
 import java.io.StringWriter;
+import java.util.Map;
+import java.util.logging.Logger;
+
+import javax.xml.XMLConstants;
 
 import javax.xml.parsers.DocumentBuilder;
 import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import javax.xml.transform.OutputKeys;
 import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
 import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
 import org.w3c.dom.Document;
+import org.w3c.dom.Element;
 import org.w3c.dom.Node;
 import org.xml.sax.InputSource;
 
 import com.mlab.gpx.api.GpxFactory;
 
 public class XmlFactory {
-	private final static int XMLFORMAT_INDENT = 3;
-	final static String DOUBLE_DEFAULTPRECISSION_FORMAT = "%12.6f";
-	final static String DOUBLE_BIGPRECISSION_FORMAT = "%12.6f";
-	final static String DOUBLE_SHORTPRECISSION_FORMAT = "%8.2f";
+	private static final Logger LOG = Logger.getLogger(XmlFactory.class.getName());
+	/**
+	 * Factory StAX compartida. Se configura una sola vez y a partir de ahí
+	 * solo se utiliza para crear readers, lo que es seguro entre threads.
+	 * No es 'namespace aware', igual que los DocumentBuilder de esta clase:
+	 * los nombres de etiqueta se comparan con su prefijo ('mlab:speed').
+	 */
+	private final static XMLInputFactory XML_INPUT_FACTORY = createXmlInputFactory();
+	
+	/**
+	 * Factories DOM y de transformación configuradas con un XmlConfig. Las
+	 * factories se crean una sola vez por configuración (newInstance() hace
+	 * la búsqueda del servicio y la carga de clases). 'generation' numera
+	 * las configuraciones sucesivas de setConfig().
+	 */
+	private static final class XmlPool {
+		final XmlConfig config;
+		final int generation;
+		final DocumentBuilderFactory documentBuilderFactory;
+		final TransformerFactory transformerFactory;
+
+		XmlPool(XmlConfig config, int generation) {
+			this.config = config;
+			this.generation = generation;
+			this.documentBuilderFactory = DocumentBuilderFactory.newInstance();
+			this.documentBuilderFactory.setNamespaceAware(config.isNamespaceAware());
+			this.transformerFactory = TransformerFactory.newInstance();
+			if(config.isSecureProcessing()) {
+				try {
+					documentBuilderFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+					transformerFactory.setFeature(XMLConstants.FEATURE_SECURE_PROCESSING, true);
+				} catch (Exception e) {
+					LOG.warning("XmlFactory: secure processing not supported: "+e.getMessage());
+				}
+			}
+		}
+	}
+	private static volatile XmlPool pool = new XmlPool(new XmlConfig(), 0);
+
+	/**
+	 * DocumentBuilder y Transformer de un thread, que no son thread-safe,
+	 * con la generación de la configuración con la que se crearon
+	 */
+	private static final class ThreadObjects {
+		int generation = -1;
+		DocumentBuilder documentBuilder;
+		Transformer transformer;
+
+		/**
+		 * Descarta los objetos creados con una configuración anterior
+		 */
+		void check(XmlPool current) {
+			if(generation != current.generation) {
+				generation = current.generation;
+				documentBuilder = null;
+				transformer = null;
+			}
+		}
+	}
+	private static final ThreadLocal<ThreadObjects> THREAD_OBJECTS = new ThreadLocal<ThreadObjects>() {
+		@Override
+		protected ThreadObjects initialValue() {
+			return new ThreadObjects();
+		}
+	};
+
+	/**
+	 * Configuración actual de los DocumentBuilder y Transformer
+	 */
+	public static XmlConfig getConfig() {
+		return pool.config;
+	}
+	/**
+	 * Cambia la configuración de los DocumentBuilder y Transformer. Cada
+	 * thread descarta los que ya tiene en su siguiente llamada a
+	 * getDocumentBuilder() o getTransformer()
+	 * @param config XmlConfig
+	 */
+	public static synchronized void setConfig(XmlConfig config) {
+		pool = new XmlPool(config, pool.generation + 1);
+	}
+	/**
+	 * DocumentBuilder del thread actual, reiniciado con reset(). No se
+	 * debe compartir con otros threads ni guardar entre llamadas
+	 * @return DocumentBuilder
+	 * @throws ParserConfigurationException
+	 */
+	public static DocumentBuilder getDocumentBuilder() throws ParserConfigurationException {
+		XmlPool current = pool;
+		ThreadObjects objects = THREAD_OBJECTS.get();
+		objects.check(current);
+		DocumentBuilder builder = objects.documentBuilder;
+		if(builder == null) {
+			builder = current.documentBuilderFactory.newDocumentBuilder();
+			objects.documentBuilder = builder;
+		} else {
+			builder.reset();
+		}
+		return builder;
+	}
+	/**
+	 * Transformer identidad del thread actual, reiniciado con reset().
+	 * No se debe compartir con otros threads ni guardar entre llamadas
+	 * @return Transformer
+	 * @throws TransformerConfigurationException
+	 */
+	public static Transformer getTransformer() throws TransformerConfigurationException {
+		XmlPool current = pool;
+		ThreadObjects objects = THREAD_OBJECTS.get();
+		objects.check(current);
+		Transformer transformer = objects.transformer;
+		if(transformer == null) {
+			transformer = current.transformerFactory.newTransformer();
+			objects.transformer = transformer;
+		} else {
+			transformer.reset();
+		}
+		return transformer;
+	}
+
+	private static XMLInputFactory createXmlInputFactory() {
+		XMLInputFactory factory = XMLInputFactory.newInstance();
+		factory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, Boolean.FALSE);
+		factory.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, Boolean.FALSE);
+		return factory;
+	}
+	/**
+	 * Crea un XMLStreamReader (StAX) sobre un Reader de caracteres
+	 * @param reader
+	 * @return XMLStreamReader
+	 * @throws XMLStreamException
+	 */
+	public static XMLStreamReader createXmlStreamReader(Reader reader) throws XMLStreamException {
+		return XML_INPUT_FACTORY.createXMLStreamReader(reader);
+	}
+	/**
+	 * Crea un XMLStreamReader (StAX) sobre un InputStream. La codificación
+	 * se toma de la declaración xml del documento
+	 * @param inputStream
+	 * @return XMLStreamReader
+	 * @throws XMLStreamException
+	 */
+	public static XMLStreamReader createXmlStreamReader(InputStream inputStream) throws XMLStreamException {
+		return XML_INPUT_FACTORY.createXMLStreamReader(inputStream);
+	}
 	/**
 	 * Convierte un Node xml en una cadena de texto
 	 * @param node org.w3c.dom.Node con el xml
@@ -35,12 +188,11 @@ public class XmlFactory {
 		String xmlString="";
 		try	{
 			// Set up the output transformer
-			TransformerFactory transfac = TransformerFactory.newInstance();
-			Transformer trans = transfac.newTransformer();
+			Transformer trans = getTransformer();
 			trans.setOutputProperty(OutputKeys.OMIT_XML_DECLARATION, (withDeclaration?"no":"yes"));
 			trans.setOutputProperty(OutputKeys.INDENT, "yes");
 			trans.setOutputProperty("{http://xml.apache.org/xslt}indent-amount",
-					String.format("%d", XmlFactory.XMLFORMAT_INDENT));
+					String.format("%d", getConfig().getIndentAmount()));
 	
 			// Print the DOM node
 			StringWriter sw = new StringWriter();
@@ -63,12 +215,11 @@ public class XmlFactory {
 		if(cadxml==null || cadxml.length()==0) {
 			return null;
 		}
-		DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
 		DocumentBuilder dBuilder=null;
 		InputSource is = null;
 		Document doc = null;
 		try {
-			dBuilder = dbFactory.newDocumentBuilder();
+			dBuilder = getDocumentBuilder();
 		    is = new InputSource();
 			is.setCharacterStream(new StringReader(cadxml));
 		    doc = dBuilder.parse(is);	
@@ -80,6 +231,30 @@ public class XmlFactory {
 		
 		return doc;
 	}
+	/**
+	 * Construye un Document con un elemento raíz 'rootName' que tiene
+	 * como hijos un elemento de texto por cada entrada del Map
+	 * @param rootName nombre del elemento raíz
+	 * @param textElements Map nombre de etiqueta -> contenido de texto
+	 * @return Document o null si hay errores
+	 */
+	public static Document createDocument(String rootName, Map<String, String> textElements) {
+		Document doc = null;
+		try {
+			doc = getDocumentBuilder().newDocument();
+			Element root = doc.createElement(rootName);
+			doc.appendChild(root);
+			for(Map.Entry<String, String> entry: textElements.entrySet()) {
+				Element element = doc.createElement(entry.getKey());
+				element.setTextContent(entry.getValue());
+				root.appendChild(element);
+			}
+		} catch (Exception e) {
+	        e.printStackTrace();
+	        return null;
+	    }
+		return doc;
+	}
 	/**
 	 * Formatea una cadena xml con cambios de linea y tabulaciones. 
 	 * En la salida no muestra la declaración '<xml...>'
@@ -162,7 +337,7 @@ public class XmlFactory {
 		tagname += name;
 		StringBuilder builder = new StringBuilder();
 		builder.append(createOpenTag(tagname));
-		builder.append(String.format(DOUBLE_DEFAULTPRECISSION_FORMAT, value).replace(',','.').trim());
+		DecimalFormatter.append(builder, value, 6);
 		builder.append(createCloseTag(tagname));
 		return builder.toString();
 	}
@@ -170,15 +345,64 @@ public class XmlFactory {
 		if(namespace=="" && name == "") {
 			throw new IllegalArgumentException("ERROR empty String for tagname");
 		}
-		String tagname = "";
-		if(namespace!="") {
-			tagname = namespace+":";
-		}
-		tagname += name;
 		StringBuilder builder = new StringBuilder();
-		builder.append(createOpenTag(tagname));
-		builder.append(Util.doubleToString(value, digits, decimals));
-		builder.append(createCloseTag(tagname));
+		appendDoubleTag(builder, namespace, name, value, digits, decimals);
+		return builder.toString();
+	}
+	/**
+	 * Añade a un StringBuilder la misma cadena que 'createDoubleTag()',
+	 * sin crear cadenas intermedias para el nombre de la etiqueta
+	 */
+	public static void appendDoubleTag(StringBuilder builder, String namespace, String name,
+			double value, int digits, int decimals) {
+		builder.append('<');
+		appendTagName(builder, namespace, name);
+		builder.append('>');
+		Util.appendDouble(builder, value, digits, decimals);
+		builder.append("</");
+		appendTagName(builder, namespace, name);
+		builder.append('>');
+	}
+	private static void appendTagName(StringBuilder builder, String namespace, String name) {
+		if(namespace.length() != 0) {
+			builder.append(namespace).append(':');
+		}
+		builder.append(name);
+	}
+	/**
+	 * Añade un texto a un StringBuilder escapando los caracteres
+	 * '&amp;', '&lt;' y '&gt;', para utilizarlo como contenido de un elemento xml
+	 * @param builder StringBuilder al que se añade el texto
+	 * @param text Texto sin escapar
+	 */
+	public static void appendEscaped(StringBuilder builder, String text) {
+		int length = text.length();
+		for(int i=0; i<length; i++) {
+			char c = text.charAt(i);
+			switch(c) {
+			case '&':
+				builder.append("&amp;");
+				break;
+			case '<':
+				builder.append("&lt;");
+				break;
+			case '>':
+				builder.append("&gt;");
+				break;
+			default:
+				builder.append(c);
+			}
+		}
+	}
+	/**
+	 * Texto escapado con 'appendEscaped()'
+	 */
+	public static String escape(String text) {
+		if(text.indexOf('&') < 0 && text.indexOf('<') < 0 && text.indexOf('>') < 0) {
+			return text;
+		}
+		StringBuilder builder = new StringBuilder(text.length() + 16);
+		appendEscaped(builder, text);
 		return builder.toString();
 	}
 
@@ -0,0 +1,139 @@
+package com.mlab.gpx.test.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.api.GpxDiagnostics;
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+
+public class TestGpxDiagnostics extends TestCase {
+
+	private final String docgpx =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>"+
+			"<gpx version=\"1.1\">"+
+				"<wpt lat=\"46.57638889\" lon=\"8.89263889\"><name>CAÑADA</name></wpt>"+
+				"<wpt lat=\"abc\" lon=\"8.89263889\"><name>MAL</name></wpt>"+
+				"<trk><trkseg>"+
+					"<trkpt lat=\"46.57638889\" lon=\"8.89302778\"><time>2007-10-14T10:13:20Z</time></trkpt>"+
+					"<trkpt lat=\"46.57652778\" lon=\"8.89322222\"><time>2007-10-14T10:13:48Z</time></trkpt>"+
+					"<trkpt lat=\"46.57661111\" lon=\"8.89344444\"><time>2007-10-14T10:14:08Z</time></trkpt>"+
+				"</trkseg></trk>"+
+			"</gpx>";
+
+	public void testComplete() throws Exception {
+		System.out.print("Testing GpxFactory.recoverGpxDocument() complete...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		GpxDiagnostics diagnostics = new GpxDiagnostics();
+		GpxDocument doc = factory.recoverGpxDocument(new ByteArrayInputStream(docgpx.getBytes("UTF-8")), diagnostics);
+		assertNotNull(doc);
+		assertFalse(diagnostics.isDamaged());
+		assertEquals("", diagnostics.getReason());
+		assertEquals(4, diagnostics.getPointCount());
+		assertEquals(1, diagnostics.getSkippedPointCount());
+		assertEquals(factory.parseGpxDocument(docgpx).asGpx(), doc.asGpx());
+		// trkpt con tiempo no creciente, que TrackSegment rechaza
+		String cad = docgpx.replace("10:14:08Z", "10:13:00Z");
+		diagnostics = new GpxDiagnostics();
+		doc = factory.recoverGpxDocument(new ByteArrayInputStream(cad.getBytes("UTF-8")), diagnostics);
+		assertEquals(2, doc.getTrack(0).wayPointCount());
+		assertEquals(3, diagnostics.getPointCount());
+		System.out.println("OK");
+	}
+	public void testTruncated() throws Exception {
+		System.out.print("Testing GpxFactory.recoverGpxDocument() truncated...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		// Cortado en mitad del tercer trkpt
+		String cad = docgpx.substring(0, docgpx.lastIndexOf("<trkpt")+20);
+		byte[] bytes = cad.getBytes("UTF-8");
+		assertNull(factory.parseGpxDocument(new ByteArrayInputStream(bytes)));
+		GpxDiagnostics diagnostics = new GpxDiagnostics();
+		GpxDocument doc = factory.recoverGpxDocument(new ByteArrayInputStream(bytes), diagnostics);
+		assertNotNull(doc);
+		assertTrue(diagnostics.isDamaged());
+		assertTrue(diagnostics.getReason().length() > 0);
+		assertEquals(bytes.length, diagnostics.getByteOffset());
+		assertEquals(3, diagnostics.getPointCount());
+		assertEquals(1, doc.wayPointCount());
+		assertEquals("CAÑADA", doc.getWayPoint(0).getName());
+		assertEquals(2, doc.getTrack(0).wayPointCount());
+		// Fichero comprimido
+		File file = File.createTempFile("gpxrecover", ".gpx.gz");
+		try {
+			OutputStream out = new java.util.zip.GZIPOutputStream(new FileOutputStream(file));
+			out.write(bytes);
+			out.close();
+			doc = factory.recoverGpxDocument(file, diagnostics);
+			assertNotNull(doc);
+			assertEquals(file, doc.getGpxFile());
+			assertEquals(2, doc.getTrack(0).wayPointCount());
+			assertEquals(bytes.length, diagnostics.getByteOffset());
+		} finally {
+			file.delete();
+		}
+		System.out.println("OK");
+	}
+	public void testMalformed() throws Exception {
+		System.out.print("Testing GpxFactory.recoverGpxDocument() malformed...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		String cad = docgpx.replace("<time>2007-10-14T10:14:08Z</time>", "<time>2007-10-14T10:14:08Z</tim>");
+		byte[] bytes = cad.getBytes("UTF-8");
+		GpxDiagnostics diagnostics = new GpxDiagnostics();
+		GpxDocument doc = factory.recoverGpxDocument(new ByteArrayInputStream(bytes), diagnostics);
+		assertNotNull(doc);
+		assertTrue(diagnostics.isDamaged());
+		assertEquals(2, doc.getTrack(0).wayPointCount());
+		long charOffset = diagnostics.getCharacterOffset();
+		assertTrue(charOffset > cad.indexOf("</tim>"));
+		// 'Ñ' ocupa dos bytes
+		assertEquals(cad.substring(0, (int)charOffset).getBytes("UTF-8").length, diagnostics.getByteOffset());
+		assertEquals(charOffset+1, diagnostics.getByteOffset());
+		// Desde un Reader no se conoce el desplazamiento en bytes
+		doc = factory.recoverGpxDocument(new StringReader(cad), diagnostics);
+		assertEquals(2, doc.getTrack(0).wayPointCount());
+		assertEquals(-1L, diagnostics.getByteOffset());
+		// Sin elemento gpx
+		assertNull(factory.recoverGpxDocument(new ByteArrayInputStream("<kml></kml>".getBytes("UTF-8")), diagnostics));
+		assertTrue(diagnostics.isDamaged());
+		assertNull(factory.recoverGpxDocument(new ByteArrayInputStream(new byte[0]), diagnostics));
+		assertTrue(diagnostics.isDamaged());
+		System.out.println("OK");
+	}
+	public void testLargeFile() throws Exception {
+		System.out.print("Testing GpxFactory.recoverGpxDocument() large file...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		InputStream is = getClass().getClassLoader().getResourceAsStream("test.gpx");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			byte[] buffer = new byte[1 << 16];
+			int count;
+			while((count = is.read(buffer)) > 0) {
+				out.write(buffer, 0, count);
+			}
+		} finally {
+			is.close();
+		}
+		byte[] full = out.toByteArray();
+		GpxDocument eager = factory.parseGpxDocument(new ByteArrayInputStream(full));
+		int points = eager.getTrack(0).wayPointCount();
+		byte[] half = new byte[full.length / 2];
+		System.arraycopy(full, 0, half, 0, half.length);
+		GpxDiagnostics diagnostics = new GpxDiagnostics();
+		GpxDocument doc = factory.recoverGpxDocument(new ByteArrayInputStream(half), diagnostics);
+		assertTrue(diagnostics.isDamaged());
+		assertEquals(half.length, diagnostics.getByteOffset());
+		int recovered = doc.getTrack(0).wayPointCount();
+		assertTrue(recovered > points / 3 && recovered < points);
+		assertEquals(eager.getTrack(0).getTrackSegment(0).getWayPoint(recovered-1).asGpx(),
+			doc.getTrack(0).getTrackSegment(0).getWayPoint(recovered-1).asGpx());
+		System.out.println("OK");
+	}
+}
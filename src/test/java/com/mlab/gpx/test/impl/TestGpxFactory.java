@@ -1,7 +1,6 @@
 package com.mlab.gpx.test.impl;
 
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
+import java.io.StringReader;
 
 import junit.framework.TestCase;
 
@@ -9,8 +8,10 @@ import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import com.mlab.gpx.api.AbstractGpxHandler;
 import com.mlab.gpx.api.GpxDocument;
 import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxHandler;
 import com.mlab.gpx.api.WayPoint;
 import com.mlab.gpx.api.GpxFactory.Type;
 import com.mlab.gpx.impl.Track;
@@ -70,32 +71,53 @@ public class TestGpxFactory extends TestCase {
 
 		System.out.println("OK");
 	}
+	public void testParseWithHandler() {
+		System.out.print("Testing GpxFactory.parse(GpxHandler)...");
+		final int[] counts = new int[4];
+		GpxHandler handler = new AbstractGpxHandler() {
+			@Override
+			public void onWayPoint(String name, String description, long time,
+					double longitude, double latitude, double altitude, double[] extensions) {
+				assertEquals("LAGORETICO", name);
+				counts[0]++;
+			}
+			@Override
+			public void startSegment(int trackIndex, int segmentIndex) {
+				counts[1]++;
+			}
+			@Override
+			public void onTrackPoint(int trackIndex, int segmentIndex, long time,
+					double longitude, double latitude, double altitude, double[] extensions) {
+				assertEquals(0, extensions.length);
+				assertTrue(time > 0);
+				counts[2]++;
+			}
+			@Override
+			public void endDocument() {
+				counts[3]++;
+			}
+		};
+		assertTrue(factory.parse(new StringReader(docgpx), handler));
+		assertEquals(1, counts[0]);
+		assertEquals(1, counts[1]);
+		assertEquals(3, counts[2]);
+		assertEquals(1, counts[3]);
+		// Extensiones de AndroidGpxFactory
+		GpxFactory android = GpxFactory.getFactory(Type.AndroidGpxFactory);
+		assertTrue(android.parse(new StringReader(docgpx), new AbstractGpxHandler() {
+			@Override
+			public void onTrackPoint(int trackIndex, int segmentIndex, long time,
+					double longitude, double latitude, double altitude, double[] extensions) {
+				assertEquals(3, extensions.length);
+				assertEquals(-1.0, extensions[0]);
+			}
+		}));
+		assertFalse(factory.parse(new StringReader("<gpx><trk>"), handler));
+		System.out.println("OK");
+	}
 	public void testParseWayPoint() {
 		System.out.print("Testing GpxFactory.parseWayPoint()...");
-		Method method = null;
-		try {
-			method = GpxFactory.class.getDeclaredMethod("parseWayPoint", String.class);
-		} catch (SecurityException e1) {
-			// TODO Auto-generated catch block
-			e1.printStackTrace();
-		} catch (NoSuchMethodException e1) {
-			// TODO Auto-generated catch block
-			e1.printStackTrace();
-		}
-		method.setAccessible(true);
-		WayPoint wp = null;
-		try {
-			wp = (WayPoint) method.invoke(factory, wpt);
-		} catch (IllegalArgumentException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (IllegalAccessException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (InvocationTargetException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
+		WayPoint wp = factory.parseWayPoint(new StringReader(wpt));
 		assertNotNull(wp);
 		assertEquals(46.57638889, wp.getLatitude());
 		assertEquals(8.89263889, wp.getLongitude());
@@ -107,30 +129,7 @@ public class TestGpxFactory extends TestCase {
 	}
 	public void testParseTrack() {
 		System.out.print("Testing GpxFactory.parseTrack()...");
-		Method method = null;
-		try {
-			method = GpxFactory.class.getDeclaredMethod("parseTrack", String.class);
-		} catch (SecurityException e1) {
-			// TODO Auto-generated catch block
-			e1.printStackTrace();
-		} catch (NoSuchMethodException e1) {
-			// TODO Auto-generated catch block
-			e1.printStackTrace();
-		}
-		method.setAccessible(true);
-		Track track = null;
-		try {
-			track = (Track) method.invoke(factory, trk);
-		} catch (IllegalArgumentException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (IllegalAccessException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		} catch (InvocationTargetException e) {
-			// TODO Auto-generated catch block
-			e.printStackTrace();
-		}
+		Track track = factory.parseTrack(new StringReader(trk));
 		assertNotNull(track);
 		// numero de segmentos
 		assertEquals(1,track.size());
@@ -0,0 +1,120 @@
+package com.mlab.gpx.test.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.api.AbstractGpxHandler;
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+import com.mlab.gpx.api.GpxFilter;
+import com.mlab.gpx.api.GpxProjection;
+import com.mlab.gpx.impl.AndroidWayPoint;
+import com.mlab.gpx.impl.GpxEnvelope;
+import com.mlab.gpx.impl.stream.IndexedWayPoint;
+import com.mlab.gpx.impl.stream.WayPointIterator;
+import com.mlab.gpx.impl.util.Util;
+
+public class TestGpxFilter extends TestCase {
+
+	private final String docgpx =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>"+
+			"<gpx version=\"1.1\" xmlns:mlab=\"http://mercatorlab.com/downloads/mlab.xsd\">"+
+				"<wpt lat=\"46.57638889\" lon=\"8.89263889\"><name>LAGORETICO</name></wpt>"+
+				"<wpt lat=\"40.40000000\" lon=\"-3.70000000\"><name>MADRID</name></wpt>"+
+				"<trk><trkseg>"+
+					"<trkpt lat=\"46.57638889\" lon=\"8.89302778\"><time>2007-10-14T10:13:20Z</time>"+
+						"<extensions><mlab:accuracy>5.0</mlab:accuracy></extensions></trkpt>"+
+					"<trkpt lat=\"46.57652778\" lon=\"8.89322222\"><time>2007-10-14T10:13:48Z</time>"+
+						"<extensions><mlab:accuracy>30.0</mlab:accuracy></extensions></trkpt>"+
+					"<trkpt lat=\"46.57661111\" lon=\"8.89344444\"><time>2007-10-14T10:14:08Z</time></trkpt>"+
+				"</trkseg><trkseg>"+
+					"<trkpt lat=\"40.40100000\" lon=\"-3.70100000\"><time>2007-10-14T11:00:00Z</time>"+
+						"<extensions><mlab:accuracy>4.0</mlab:accuracy></extensions></trkpt>"+
+				"</trkseg></trk>"+
+			"</gpx>";
+
+	private final GpxEnvelope swiss = new GpxEnvelope(46.0, 8.0, 47.0, 9.0);
+
+	public void testAccepts() {
+		System.out.print("Testing GpxFilter.accepts()...");
+		assertTrue(GpxFilter.ALL.isAll());
+		assertTrue(GpxFilter.ALL.accepts(0.0, 0.0, -1L, -1.0));
+		GpxFilter filter = GpxFilter.ALL.withEnvelope(swiss).withTimeWindow(1000L, 2000L).withMinimumAccuracy(10.0);
+		assertFalse(filter.isAll());
+		assertTrue(filter.accepts(8.5, 46.5, 1000L, 10.0));
+		assertFalse(filter.accepts(9.5, 46.5, 1500L, 5.0));
+		assertFalse(filter.accepts(8.5, 46.5, 2001L, 5.0));
+		assertFalse(filter.accepts(8.5, 46.5, -1L, 5.0));
+		assertFalse(filter.accepts(8.5, 46.5, 1500L, -1.0));
+		assertFalse(filter.accepts(8.5, 46.5, 1500L, 10.5));
+		assertEquals(46.0, filter.getEnvelope().getMinLat());
+		AndroidWayPoint wp = new AndroidWayPoint("", "", 1500L, 8.5, 46.5, 600.0, 1.0, 0.0, 8.0);
+		assertTrue(filter.accepts(wp));
+		System.out.println("OK");
+	}
+	public void testParseGpxDocument() {
+		System.out.print("Testing GpxFactory.parseGpxDocument(GpxFilter)...");
+		GpxFactory factory = GpxFactory.getFactory(Type.AndroidGpxFactory);
+		// Área: se quedan fuera un wpt y el segundo segmento
+		GpxDocument doc = factory.parseGpxDocument(new StringReader(docgpx), GpxProjection.ALL,
+			GpxFilter.ALL.withEnvelope(swiss));
+		assertNotNull(doc);
+		assertEquals(1, doc.wayPointCount());
+		assertEquals("LAGORETICO", doc.getWayPoint(0).getName());
+		assertEquals(1, doc.getTrack(0).segmentsCount());
+		assertEquals(3, doc.getTrack(0).wayPointCount());
+		// Tiempo: los wpt no tienen tiempo
+		long t0 = Util.parseGpxDate("2007-10-14T10:13:30Z");
+		long t1 = Util.parseGpxDate("2007-10-14T11:00:00Z");
+		doc = factory.parseGpxDocument(new StringReader(docgpx), GpxProjection.ALL,
+			GpxFilter.ALL.withTimeWindow(t0, t1));
+		assertEquals(0, doc.wayPointCount());
+		assertEquals(2, doc.getTrack(0).segmentsCount());
+		assertEquals(3, doc.getTrack(0).wayPointCount());
+		// Precisión
+		doc = factory.parseGpxDocument(new ByteArrayInputStream(docgpx.getBytes()), GpxProjection.ALL,
+			GpxFilter.ALL.withMinimumAccuracy(10.0));
+		assertEquals(2, doc.getTrack(0).wayPointCount());
+		// Ningún punto: no se añaden tracks vacíos
+		doc = factory.parseGpxDocument(new StringReader(docgpx), GpxProjection.ALL,
+			GpxFilter.ALL.withEnvelope(new GpxEnvelope(0.0, 0.0, 1.0, 1.0)));
+		assertFalse(doc.hasTracks());
+		System.out.println("OK");
+	}
+	public void testIterateAndParse() throws Exception {
+		System.out.print("Testing GpxFactory.iterateWayPoints(GpxFilter)...");
+		// SimpleGpxFactory no lee las extensiones, pero el filtro de precisión sí
+		GpxFactory factory = GpxFactory.getFactory(Type.SimpleGpxFactory);
+		WayPointIterator iterator = factory.iterateWayPoints(new ByteArrayInputStream(docgpx.getBytes()),
+			GpxProjection.ALL, GpxFilter.ALL.withMinimumAccuracy(10.0));
+		int count = 0;
+		try {
+			while(iterator.hasNext()) {
+				IndexedWayPoint p = iterator.next();
+				assertEquals("trkpt", p.getWayPoint().getTag());
+				count++;
+			}
+		} finally {
+			iterator.close();
+		}
+		assertEquals(2, count);
+		// Filtro sobre campos que no están en la proyección
+		final int[] points = new int[1];
+		factory = GpxFactory.getFactory(Type.AndroidGpxFactory);
+		boolean result = factory.parse(new ByteArrayInputStream(docgpx.getBytes()), new AbstractGpxHandler() {
+			@Override
+			public void onTrackPoint(int trackIndex, int segmentIndex, long time,
+					double longitude, double latitude, double altitude, double[] extensions) {
+				assertEquals(-1L, time);
+				assertEquals(-1.0, extensions[2]);
+				points[0]++;
+			}
+		}, GpxProjection.POSITION, GpxFilter.ALL.withEnvelope(swiss).withMinimumAccuracy(10.0));
+		assertTrue(result);
+		assertEquals(1, points[0]);
+		System.out.println("OK");
+	}
+}
@@ -0,0 +1,113 @@
+package com.mlab.gpx.test.impl;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.util.EnumSet;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.api.AbstractGpxHandler;
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+import com.mlab.gpx.api.GpxProjection;
+import com.mlab.gpx.api.GpxProjection.Field;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.TrackSegment;
+import com.mlab.gpx.impl.stream.IndexedWayPoint;
+import com.mlab.gpx.impl.stream.WayPointIterator;
+
+public class TestGpxProjection extends TestCase {
+
+	private final String docgpx =
+		"<?xml version=\"1.0\" encoding=\"UTF-8\"?>"+
+			"<gpx version=\"1.1\" xmlns:mlab=\"http://mercatorlab.com/downloads/mlab.xsd\">"+
+				"<wpt lat=\"46.57638889\" lon=\"8.89263889\">"+
+					"<ele>2372</ele><name>LAGORETICO</name><desc>Lago</desc>"+
+				"</wpt>"+
+				"<trk><name>Example gpx</name><trkseg>"+
+					"<trkpt lat=\"46.57638889\" lon=\"8.89302778\"><ele>2374</ele><time>2007-10-14T10:13:20Z</time>"+
+						"<name>P1</name><extensions><mlab:speed>7.35</mlab:speed><mlab:pressure>948.27</mlab:pressure></extensions></trkpt>"+
+					"<trkpt lat=\"46.57652778\" lon=\"8.89322222\"><ele>2375</ele><time>2007-10-14T10:13:48Z</time>"+
+						"<extensions><mlab:speed>7.98</mlab:speed><mlab:pressure>948.14</mlab:pressure></extensions></trkpt>"+
+				"</trkseg></trk>"+
+			"</gpx>";
+
+	public void testFields() {
+		System.out.print("Testing GpxProjection...");
+		assertEquals(EnumSet.allOf(Field.class), GpxProjection.ALL.getFields());
+		assertTrue(GpxProjection.POSITION.getFields().isEmpty());
+		assertTrue(GpxProjection.POSITION_TIME.includesTime());
+		assertFalse(GpxProjection.POSITION_TIME.includesName());
+		GpxProjection projection = GpxProjection.of(Field.NAME).with(Field.TIME);
+		assertEquals(EnumSet.of(Field.NAME, Field.TIME), projection.getFields());
+		assertEquals(GpxProjection.of(Field.TIME, Field.NAME), projection);
+		System.out.println("OK");
+	}
+	public void testParseGpxDocument() {
+		System.out.print("Testing GpxFactory.parseGpxDocument(GpxProjection)...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		GpxDocument full = factory.parseGpxDocument(new StringReader(docgpx));
+		// El tiempo se lee siempre para poder construir los TrackSegment
+		GpxDocument doc = factory.parseGpxDocument(new StringReader(docgpx), GpxProjection.POSITION);
+		assertNotNull(doc);
+		assertEquals(full.wayPointCount(), doc.wayPointCount());
+		assertEquals("", doc.getWayPoint(0).getName());
+		assertEquals("", doc.getWayPoint(0).getDescription());
+		assertEquals(-1.0, doc.getWayPoint(0).getAltitude());
+		TrackSegment segment = doc.getTrack(0).getTrackSegment(0);
+		assertEquals(2, segment.size());
+		WayPoint wp = segment.getWayPoint(1);
+		WayPoint fullWp = full.getTrack(0).getTrackSegment(0).getWayPoint(1);
+		assertEquals(fullWp.getTime(), wp.getTime());
+		assertEquals(fullWp.getLongitude(), wp.getLongitude());
+		assertEquals(fullWp.getLatitude(), wp.getLatitude());
+		assertEquals(7.98, fullWp.getValues()[3]);
+		assertEquals(-1.0, wp.getValues()[3]);
+		assertEquals(-1.0, wp.getValues()[9]);
+		// Solo las extensiones
+		doc = factory.parseGpxDocument(new ByteArrayInputStream(docgpx.getBytes()),
+			GpxProjection.of(Field.EXTENSIONS));
+		wp = doc.getTrack(0).getTrackSegment(0).getWayPoint(0);
+		assertEquals("", wp.getName());
+		assertEquals(7.35, wp.getValues()[3]);
+		assertEquals(948.27, wp.getValues()[9]);
+		System.out.println("OK");
+	}
+	public void testIterateAndParse() throws Exception {
+		System.out.print("Testing GpxFactory.iterateWayPoints(GpxProjection)...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		InputStream is = new ByteArrayInputStream(docgpx.getBytes());
+		WayPointIterator iterator = factory.iterateWayPoints(is, GpxProjection.of(Field.NAME));
+		try {
+			IndexedWayPoint p = iterator.next();
+			assertEquals("LAGORETICO", p.getWayPoint().getName());
+			assertEquals("", p.getWayPoint().getDescription());
+			p = iterator.next();
+			assertEquals("P1", p.getWayPoint().getName());
+			assertEquals(-1L, p.getWayPoint().getTime());
+			assertEquals(46.57638889, p.getWayPoint().getLatitude());
+			assertEquals(-1.0, p.getWayPoint().getValues()[3]);
+			assertTrue(iterator.hasNext());
+		} finally {
+			iterator.close();
+		}
+		final int[] count = new int[1];
+		boolean result = factory.parse(new ByteArrayInputStream(docgpx.getBytes()), new AbstractGpxHandler() {
+			@Override
+			public void onTrackPoint(int trackIndex, int segmentIndex, long time,
+					double longitude, double latitude, double altitude, double[] extensions) {
+				assertTrue(time > 0);
+				assertEquals(-1.0, altitude);
+				for(double value: extensions) {
+					assertEquals(-1.0, value);
+				}
+				count[0]++;
+			}
+		}, GpxProjection.POSITION_TIME);
+		assertTrue(result);
+		assertEquals(2, count[0]);
+		System.out.println("OK");
+	}
+}
@@ -0,0 +1,140 @@
+package com.mlab.gpx.test.impl;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+import com.mlab.gpx.impl.LazyGpxDocument;
+import com.mlab.gpx.impl.stream.GpxElementIndex;
+import com.mlab.gpx.impl.stream.GpxIndex;
+import com.mlab.gpx.impl.util.Util;
+
+public class TestLazyGpxDocument extends TestCase {
+
+	private final String docgpx =
+			"<?xml version=\"1.0\" encoding=\"UTF-8\" ?>"+
+				"<!-- comentario <trk> -->"+
+				"<gpx version=\"1.1\" creator=\"a > b\" xmlns:mlab=\"http://mercatorlab.com/downloads/mlab.xsd\"><metadata></metadata>"+
+					"<wpt lat=\"46.576389\" lon=\"8.892639\"><ele>2372.00</ele><name>CAÑADA</name></wpt>"+
+					"<wpt lat=\"46.5\" lon=\"8.8\"/>"+
+					"<rte><name>R1</name><rtept lat=\"46.1\" lon=\"8.1\"></rtept><rtept lat=\"46.2\" lon=\"8.2\"></rtept></rte>"+
+					"<trk><name><![CDATA[<trkseg>]]></name><trkseg>"+
+						"<trkpt lat=\"46.576389\" lon=\"8.893028\"><ele>2374.00</ele><time>2007-10-14T10:13:20Z</time>"+
+						"<extensions><mlab:speed>1.5</mlab:speed></extensions></trkpt>\n"+
+						"<trkpt lat=\"46.576528\" lon=\"8.893222\"><ele>2375.00</ele><time>2007-10-14T10:13:48Z</time></trkpt>\n"+
+					"</trkseg><trkseg>"+
+						"<trkpt lat=\"46.6\" lon=\"8.9\"><time>2007-10-14T11:00:00Z</time></trkpt>"+
+					"</trkseg></trk>"+
+					"<trk><trkseg><trkpt lat=\"40.0\" lon=\"-3.0\"><time>2007-10-15T08:00:00Z</time></trkpt></trkseg></trk>"+
+				"</gpx>";
+
+	public void testIndex() throws Exception {
+		System.out.print("Testing GpxIndex.build()...");
+		Path path = Files.createTempFile("gpxindex", ".gpx");
+		try {
+			Files.write(path, docgpx.getBytes("UTF-8"));
+			GpxIndex index = GpxIndex.build(path.toFile());
+			assertNotNull(index);
+			assertEquals(2, index.getWayPoints().size());
+			assertEquals(1, index.getRoutes().size());
+			assertEquals(2, index.getTracks().size());
+			assertEquals(2, index.getRoutes().get(0).getPointCount());
+			GpxElementIndex trk = index.getTracks().get(0);
+			assertEquals(3, trk.getPointCount());
+			assertEquals(2, trk.getSegments().size());
+			assertEquals(2, trk.getSegments().get(0).getPointCount());
+			assertEquals(Util.parseGpxDate("2007-10-14T10:13:20Z"), trk.getStartTime());
+			assertEquals(Util.parseGpxDate("2007-10-14T11:00:00Z"), trk.getEndTime());
+			assertEquals(Util.parseGpxDate("2007-10-14T10:13:48Z"), trk.getSegments().get(0).getEndTime());
+			assertEquals(-1L, index.getWayPoints().get(1).getStartTime());
+			byte[] bytes = docgpx.getBytes("UTF-8");
+			String trkText = new String(bytes, (int)trk.getOffset(), (int)trk.getLength(), "UTF-8");
+			assertTrue(trkText.startsWith("<trk>"));
+			assertTrue(trkText.endsWith("</trk>"));
+			// Documentos no válidos
+			Files.write(path, docgpx.replace("</gpx>", "").getBytes("UTF-8"));
+			assertNull(GpxIndex.build(path.toFile()));
+			Files.write(path, docgpx.replace("<gpx ", "<kml ").replace("</gpx>", "</kml>").getBytes("UTF-8"));
+			assertNull(GpxIndex.build(path.toFile()));
+		} finally {
+			Files.delete(path);
+		}
+		System.out.println("OK");
+	}
+	public void testLazyDocument() throws Exception {
+		System.out.print("Testing LazyGpxDocument...");
+		GpxFactory factory = GpxFactory.getFactory(Type.AndroidGpxFactory);
+		Path path = Files.createTempFile("gpxlazy", ".gpx");
+		try {
+			Files.write(path, docgpx.getBytes("UTF-8"));
+			File file = path.toFile();
+			GpxDocument eager = factory.parseGpxDocument(docgpx);
+			GpxDocument doc = factory.openGpxDocument(file, 1);
+			assertTrue(doc instanceof LazyGpxDocument);
+			assertEquals(file, doc.getGpxFile());
+			assertEquals(2, doc.wayPointCount());
+			assertEquals(1, doc.routeCount());
+			assertEquals(2, doc.trackCount());
+			assertEquals("CAÑADA", doc.getWayPoint(0).getName());
+			assertEquals(eager.getWayPoint(1).asGpx(), doc.getWayPoint(1).asGpx());
+			assertEquals(eager.getRoute(0).asGpx(), doc.getRoute(0).asGpx());
+			assertEquals(eager.getTrack(1).asGpx(), doc.getTrack(1).asGpx());
+			assertEquals(eager.getTrack(0).asGpx(), doc.getTrack(0).asGpx());
+			// Caché
+			assertSame(doc.getTrack(0), doc.getTrack(0));
+			assertEquals(eager.asGpx(), doc.asGpx());
+			assertFalse(doc.addTrack(eager.getTrack(0)));
+			// La copia no comparte elementos con la caché
+			GpxDocument copy = ((LazyGpxDocument)doc).toGpxDocument();
+			assertNotSame(doc.getTrack(0), copy.getTrack(0));
+			copy.getTrack(0).setName("copia");
+			assertEquals(eager.getTrack(0).asGpx(), doc.getTrack(0).asGpx());
+			// setGpxFile() no cambia el fichero indexado
+			File other = new File(file.getParentFile(), "other.gpx");
+			doc.setGpxFile(other);
+			assertEquals(other, doc.getGpxFile());
+			assertEquals(file, ((LazyGpxDocument)doc).getSourceFile());
+			assertEquals(eager.getTrack(1).asGpx(), doc.getTrack(1).asGpx());
+			assertEquals(eager.getRoute(0).asGpx(), doc.getRoute(0).asGpx());
+			// Fallback al parser estándar
+			Files.write(path, docgpx.replace("UTF-8", "UTF-16").getBytes("UTF-16"));
+			doc = factory.openGpxDocument(file);
+			assertNotNull(doc);
+			assertFalse(doc instanceof LazyGpxDocument);
+			assertEquals(2, doc.trackCount());
+		} finally {
+			Files.delete(path);
+		}
+		System.out.println("OK");
+	}
+	public void testTestFile() throws Exception {
+		System.out.print("Testing LazyGpxDocument with test.gpx...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		Path path = Files.createTempFile("gpxlazy", ".gpx");
+		InputStream is = getClass().getClassLoader().getResourceAsStream("test.gpx");
+		try {
+			Files.copy(is, path, StandardCopyOption.REPLACE_EXISTING);
+			File file = path.toFile();
+			GpxDocument eager = GpxFactory.readGpxDocument(file);
+			LazyGpxDocument doc = LazyGpxDocument.open(factory, file, 2);
+			assertNotNull(doc);
+			assertEquals(eager.trackCount(), doc.trackCount());
+			for(int i=0; i<doc.trackCount(); i++) {
+				assertEquals(eager.getTrack(i).wayPointCount(),
+						doc.getIndex().getTracks().get(i).getPointCount());
+			}
+			assertEquals(eager.asGpx(), doc.asGpx());
+		} finally {
+			is.close();
+			Files.delete(path);
+		}
+		System.out.println("OK");
+	}
+}
@@ -1,6 +1,6 @@
 package com.mlab.gpx.test.impl;
 
-import java.lang.reflect.Method;
+import java.io.StringReader;
 
 import junit.framework.TestCase;
 
@@ -36,14 +36,7 @@ public class TestRoute extends TestCase {
 				
 		GpxFactory factory = GpxFactory.getFactory(Type.SimpleGpxFactory);
 		Route parsed = null;
-		try {
-			Method method=GpxFactory.class.getDeclaredMethod("parseRoute", String.class);
-			method.setAccessible(true);
-			parsed = (Route) method.invoke(factory, rte.asGpx());
-		} catch (Exception e) {
-			System.out.println("ERROR");
-			e.printStackTrace();
-		} 
+		parsed = factory.parseRoute(new StringReader(rte.asGpx()));
 		assertNotNull(parsed);
 		assertEquals(3,parsed.size());
 		
@@ -1,7 +1,7 @@
 package com.mlab.gpx.test.impl;
 
 import java.io.File;
-import java.lang.reflect.Method;
+import java.io.StringReader;
 
 import junit.framework.TestCase;
 
@@ -63,15 +63,7 @@ public class TestTrackSegment extends TestCase {
 		
 		GpxFactory factory = GpxFactory.getFactory(Type.SimpleGpxFactory);
 		TrackSegment parsed=null;
-		try {
-			Method method=GpxFactory.class.getDeclaredMethod(
-				"parseTrackSegment", String.class);
-			method.setAccessible(true);
-			parsed = (TrackSegment) method.invoke(factory, ts.asGpx());
-		} catch (Exception e) {
-			System.out.println("ERROR");
-			e.printStackTrace();
-		} 				
+		parsed = factory.parseTrackSegment(new StringReader(ts.asGpx()));
 		//System.out.println(parsed);
 		assertNotNull(parsed);
 		assertEquals(3,parsed.size());
@@ -1,7 +1,7 @@
 package com.mlab.gpx.test.impl;
 
 
-import java.lang.reflect.Method;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -90,14 +90,7 @@ public class TestWayPoint extends TestCase {
 		// Generar un TrackPoint parseando una cadena gpx y comprobar que no es nulo
 
 		WayPoint parsedPoint = null;
-		try {
-			Method method=GpxFactory.class.getDeclaredMethod("parseWayPoint", String.class);
-			method.setAccessible(true);
-			parsedPoint = (SimpleWayPoint) method.invoke(factory, tp.asGpx());
-			
-		} catch (Exception e) {
-			e.printStackTrace();
-		}
+		parsedPoint = factory.parseWayPoint(new StringReader(tp.asGpx()));
 		assertNotNull(parsedPoint);
 		//logger.info("\n"+parsedPoint.asGpx());		
 		assertEquals(-3.8, parsedPoint.getLongitude());
@@ -0,0 +1,84 @@
+package com.mlab.gpx.test.impl.extensions;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.NodeList;
+
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+import com.mlab.gpx.impl.extensions.ExtensionSchema;
+import com.mlab.gpx.impl.util.XmlFactory;
+
+public class TestExtensionSchema extends TestCase {
+
+	private final String[] tags = new String[] {"mlab:speed", "mlab:bearing", "mlab:accuracy", "mlab:ax"};
+
+	public void testSlots() {
+		System.out.print("Testing ExtensionSchema.slotOf()...");
+		ExtensionSchema schema = new ExtensionSchema(new String[] {"a", "b", "a"});
+		assertEquals(3, schema.size());
+		assertEquals(0, schema.slotOf("a"));
+		assertEquals(1, schema.slotOf("b"));
+		assertEquals(-1, schema.slotOf("c"));
+		assertEquals("a", schema.getTag(2));
+		double[] values = schema.newValues();
+		assertEquals(3, values.length);
+		assertEquals(-1.0, values[2]);
+		// El schema se compila una vez por factory
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		assertSame(factory.getExtensionSchema(), factory.getExtensionSchema());
+		assertEquals(factory.getExtensionTags().length, factory.getExtensionSchema().size());
+		System.out.println("OK");
+	}
+	public void testParseDocument() {
+		System.out.print("Testing ExtensionSchema.parse(Document)...");
+		String cad = "<trkpt lat=\"40.1\" lon=\"-3.2\"><ele>692.9</ele>"+
+			"<extensions><mlab:group><mlab:bearing>12.5</mlab:bearing></mlab:group>"+
+			"<mlab:speed>3.25</mlab:speed><mlab:speed>9.0</mlab:speed>"+
+			"<mlab:accuracy>abc</mlab:accuracy></extensions></trkpt>";
+		Document doc = XmlFactory.parseXmlDocument(cad);
+		assertNotNull(doc);
+		ExtensionSchema schema = new ExtensionSchema(tags);
+		double[] values = schema.parse(doc);
+		// Mismo resultado que un getElementsByTagName() por etiqueta
+		for(int i=0; i<tags.length; i++) {
+			assertEquals(tags[i], elementsByTagName(doc, tags[i]), values[i]);
+		}
+		assertEquals(3.25, values[0]);
+		assertEquals(12.5, values[1]);
+		assertEquals(-1.0, values[2]);
+		assertEquals(-1.0, values[3]);
+		System.out.println("OK");
+	}
+	public void testParseMap() {
+		System.out.print("Testing ExtensionSchema.parse(Map)...");
+		Map<String, String> map = new HashMap<String, String>();
+		map.put("mlab:speed", "1.5");
+		map.put("mlab:ax", "-0.25");
+		map.put("mlab:bearing", "");
+		map.put("ele", "600.0");
+		double[] values = new ExtensionSchema(tags).parse(map);
+		assertEquals(1.5, values[0]);
+		assertEquals(-1.0, values[1]);
+		assertEquals(-1.0, values[2]);
+		assertEquals(-0.25, values[3]);
+		assertEquals(4, ExtensionSchema.asList(values).size());
+		System.out.println("OK");
+	}
+
+	private double elementsByTagName(Document doc, String tagname) {
+		NodeList nl = doc.getElementsByTagName(tagname);
+		if(nl.getLength() > 0) {
+			try {
+				return Double.parseDouble(nl.item(0).getTextContent());
+			} catch (NumberFormatException e) {
+				return -1.0;
+			}
+		}
+		return -1.0;
+	}
+}
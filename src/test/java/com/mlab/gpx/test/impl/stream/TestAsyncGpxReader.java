@@ -0,0 +1,207 @@
+package com.mlab.gpx.test.impl.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+import com.mlab.gpx.api.GpxProgressListener;
+import com.mlab.gpx.impl.stream.AsyncGpxReader;
+
+public class TestAsyncGpxReader extends TestCase {
+
+	public void testReadAsync() throws Exception {
+		System.out.print("Testing GpxFactory.readGpxDocumentAsync()...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		Path path = Files.createTempFile("gpxasync", ".gpx");
+		InputStream is = getClass().getClassLoader().getResourceAsStream("test.gpx");
+		try {
+			Files.copy(is, path, StandardCopyOption.REPLACE_EXISTING);
+			final File file = path.toFile();
+			final AtomicLong progress = new AtomicLong();
+			final AtomicLong total = new AtomicLong();
+			GpxProgressListener listener = new GpxProgressListener() {
+				@Override
+				public void onProgress(long bytesRead, long totalBytes) {
+					total.set(totalBytes);
+					progress.set(bytesRead);
+				}
+			};
+			GpxDocument doc = factory.readGpxDocumentAsync(path, executor, listener).get(30, TimeUnit.SECONDS);
+			assertNotNull(doc);
+			assertEquals(file, doc.getGpxFile());
+			assertEquals(file.length(), progress.get());
+			assertEquals(file.length(), total.get());
+			assertEquals(GpxFactory.readGpxDocument(file).asGpx(), doc.asGpx());
+			// Executor que no es ExecutorService
+			Executor direct = new Executor() {
+				@Override
+				public void execute(Runnable command) {
+					command.run();
+				}
+			};
+			doc = factory.readGpxDocumentAsync(path, direct, null).get(30, TimeUnit.SECONDS);
+			assertNotNull(doc);
+			// Fichero inexistente
+			CompletableFuture<GpxDocument> future = factory.readGpxDocumentAsync(
+				new File(file.getPath()+".none").toPath(), executor, null);
+			try {
+				future.get(30, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof NoSuchFileException);
+			}
+		} finally {
+			is.close();
+			Files.delete(path);
+			executor.shutdown();
+		}
+		System.out.println("OK");
+	}
+	public void testParseAsync() throws Exception {
+		System.out.print("Testing GpxFactory.parseGpxDocumentAsync()...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			final AtomicLong progress = new AtomicLong();
+			final AtomicBoolean closed = new AtomicBoolean(false);
+			GpxProgressListener listener = new GpxProgressListener() {
+				@Override
+				public void onProgress(long bytesRead, long totalBytes) {
+					progress.set(bytesRead);
+				}
+			};
+			AsyncGpxReader.InputStreamSupplier supplier = new AsyncGpxReader.InputStreamSupplier() {
+				@Override
+				public InputStream open() throws IOException {
+					return new ByteArrayInputStream(readResource()) {
+						@Override
+						public void close() throws IOException {
+							closed.set(true);
+						}
+					};
+				}
+			};
+			GpxDocument doc = factory.parseGpxDocumentAsync(supplier, -1L, executor, listener).get(30, TimeUnit.SECONDS);
+			assertNotNull(doc);
+			assertTrue(doc.hasTracks());
+			assertEquals(readResource().length, progress.get());
+			assertTrue(closed.get());
+			// Documento no válido
+			supplier = new AsyncGpxReader.InputStreamSupplier() {
+				@Override
+				public InputStream open() throws IOException {
+					return new ByteArrayInputStream("<kml></kml>".getBytes("UTF-8"));
+				}
+			};
+			assertNull(factory.parseGpxDocumentAsync(supplier, -1L, executor, null).get(30, TimeUnit.SECONDS));
+			// RuntimeException en el Executor
+			supplier = new AsyncGpxReader.InputStreamSupplier() {
+				@Override
+				public InputStream open() throws IOException {
+					throw new IllegalStateException("test");
+				}
+			};
+			try {
+				factory.parseGpxDocumentAsync(supplier, -1L, executor, null).get(30, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+		} finally {
+			executor.shutdown();
+		}
+		System.out.println("OK");
+	}
+	public void testListenerError() throws Exception {
+		System.out.print("Testing AsyncGpxReader with a failing listener...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		Path path = Files.createTempFile("gpxasync", ".gpx");
+		try {
+			Files.write(path, readResource());
+			GpxProgressListener listener = new GpxProgressListener() {
+				@Override
+				public void onProgress(long bytesRead, long totalBytes) {
+					throw new IllegalStateException("listener");
+				}
+			};
+			CompletableFuture<GpxDocument> future = factory.readGpxDocumentAsync(path, executor, listener);
+			try {
+				future.get(30, TimeUnit.SECONDS);
+				fail();
+			} catch (ExecutionException e) {
+				assertTrue(e.getCause() instanceof IllegalStateException);
+				assertEquals("listener", e.getCause().getMessage());
+			}
+		} finally {
+			Files.delete(path);
+			executor.shutdown();
+		}
+		System.out.println("OK");
+	}
+	public void testCancel() throws Exception {
+		System.out.print("Testing AsyncGpxReader cancel()...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		final List<Runnable> tasks = new ArrayList<Runnable>();
+		Executor deferred = new Executor() {
+			@Override
+			public void execute(Runnable command) {
+				tasks.add(command);
+			}
+		};
+		final AtomicBoolean opened = new AtomicBoolean(false);
+		AsyncGpxReader.InputStreamSupplier supplier = new AsyncGpxReader.InputStreamSupplier() {
+			@Override
+			public InputStream open() throws IOException {
+				opened.set(true);
+				return new ByteArrayInputStream(readResource());
+			}
+		};
+		CompletableFuture<GpxDocument> future = factory.parseGpxDocumentAsync(supplier, -1L, deferred, null);
+		assertFalse(future.isDone());
+		assertTrue(future.cancel(true));
+		for(Runnable task: tasks) {
+			task.run();
+		}
+		assertTrue(future.isCancelled());
+		assertFalse(opened.get());
+		System.out.println("OK");
+	}
+
+	private byte[] readResource() throws IOException {
+		InputStream is = getClass().getClassLoader().getResourceAsStream("test.gpx");
+		try {
+			byte[] buffer = new byte[1 << 16];
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			int count;
+			while((count = is.read(buffer)) > 0) {
+				out.write(buffer, 0, count);
+			}
+			return out.toByteArray();
+		} finally {
+			is.close();
+		}
+	}
+}
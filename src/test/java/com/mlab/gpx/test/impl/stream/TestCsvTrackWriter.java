@@ -0,0 +1,111 @@
+package com.mlab.gpx.test.impl.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+import com.mlab.gpx.impl.Track;
+import com.mlab.gpx.impl.TrackSegment;
+import com.mlab.gpx.impl.stream.CsvTrackWriter;
+import com.mlab.gpx.impl.stream.CsvTrackWriter.Column;
+import com.mlab.gpx.impl.util.Util;
+
+public class TestCsvTrackWriter extends TestCase {
+
+	private byte[] readTestBytes() throws Exception {
+		InputStream is = getClass().getClassLoader().getResourceAsStream("test.gpx");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			byte[] buffer = new byte[1 << 16];
+			int count;
+			while((count = is.read(buffer)) > 0) {
+				out.write(buffer, 0, count);
+			}
+		} finally {
+			is.close();
+		}
+		return out.toByteArray();
+	}
+	/**
+	 * Columnas de 'AndroidWayPoint.asCsv(true)'
+	 */
+	private List<Column> androidColumns() {
+		List<Column> columns = new ArrayList<Column>(Column.BASIC);
+		columns.add(Column.UTM_X);
+		columns.add(Column.UTM_Y);
+		columns.add(Column.extension("speed", 0, 6));
+		columns.add(Column.extension("bearing", 1, 1));
+		columns.add(Column.extension("accuracy", 2, 1));
+		return columns;
+	}
+
+	public void testAsCsv() throws Exception {
+		System.out.print("Testing CsvTrackWriter.writeTrack()...");
+		GpxFactory factory = GpxFactory.getFactory(Type.AndroidGpxFactory);
+		GpxDocument doc = factory.parseGpxDocument(new ByteArrayInputStream(readTestBytes()));
+		Track track = doc.getTrack(0);
+		StringWriter stringWriter = new StringWriter();
+		CsvTrackWriter writer = new CsvTrackWriter(stringWriter, androidColumns(), false);
+		writer.writeTrack(track);
+		writer.close();
+		assertEquals(track.asCsv(true)+"\n", stringWriter.toString());
+		assertEquals(track.wayPointCount(), writer.getRowCount());
+		System.out.println("OK");
+	}
+	public void testHandler() throws Exception {
+		System.out.print("Testing CsvTrackWriter.asGpxHandler()...");
+		byte[] bytes = readTestBytes();
+		GpxFactory factory = GpxFactory.getFactory(Type.AndroidGpxFactory);
+		List<Column> columns = new ArrayList<Column>(Column.BASIC);
+		columns.add(Column.SPEED);
+		columns.add(Column.BEARING.withDecimals(3));
+		columns.addAll(Column.extensions(factory.getExtensionSchema(), 2));
+		// Desde el documento
+		GpxDocument doc = factory.parseGpxDocument(new ByteArrayInputStream(bytes));
+		StringWriter stringWriter = new StringWriter();
+		CsvTrackWriter writer = new CsvTrackWriter(stringWriter, columns, true);
+		writer.writeDocument(doc);
+		writer.close();
+		String expected = stringWriter.toString();
+		// Desde el parser, sin construir el documento
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writer = new CsvTrackWriter(out, columns, true);
+		assertTrue(factory.parse(new ByteArrayInputStream(bytes), writer.asGpxHandler()));
+		writer.close();
+		assertEquals(expected, new String(out.toByteArray(), "UTF-8"));
+		String[] lines = expected.split("\n");
+		assertEquals("time,epoch,lon,lat,ele,speed,bearing,speed,bearing,accuracy", lines[0]);
+		// Velocidad y rumbo calculados
+		TrackSegment segment = doc.getTrack(0).getTrackSegment(0);
+		assertTrue(lines[1].contains(",-1.00,-1.000,"));
+		String[] fields = lines[2].split(",");
+		assertEquals(Util.doubleToString(Util.speed(segment.getWayPoint(0), segment.getWayPoint(1)), 12, 2), fields[5]);
+		assertEquals(Util.doubleToString(Util.bearing(segment.getWayPoint(0), segment.getWayPoint(1)), 12, 3), fields[6]);
+		System.out.println("OK");
+	}
+	public void testDelimiter() throws Exception {
+		System.out.print("Testing CsvTrackWriter.setDelimiter()...");
+		StringWriter stringWriter = new StringWriter();
+		CsvTrackWriter writer = new CsvTrackWriter(stringWriter,
+			Arrays.asList(Column.EPOCH, Column.LONGITUDE.withName("x"), Column.extension("v", 4, 1)), true);
+		writer.setDelimiter(';');
+		writer.writePoint(1000L, -3.5, 40.25, 650.0, new double[] {1.0, 2.0});
+		writer.close();
+		assertEquals("epoch;x;v\n1000;-3.500000;-1.0\n", stringWriter.toString());
+		// Sin filas se escribe solo la cabecera
+		stringWriter = new StringWriter();
+		writer = new CsvTrackWriter(stringWriter, Column.BASIC, true);
+		writer.close();
+		assertEquals("time,epoch,lon,lat,ele\n", stringWriter.toString());
+		System.out.println("OK");
+	}
+}
@@ -0,0 +1,140 @@
+package com.mlab.gpx.test.impl.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.Route;
+import com.mlab.gpx.impl.SimpleWayPoint;
+import com.mlab.gpx.impl.Track;
+import com.mlab.gpx.impl.TrackSegment;
+import com.mlab.gpx.impl.stream.GeoJsonReader;
+import com.mlab.gpx.impl.stream.GeoJsonWriter;
+
+public class TestGeoJson extends TestCase {
+
+	private byte[] encode(GpxDocument doc, GpxFactory factory) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GeoJsonWriter writer = new GeoJsonWriter(out, factory);
+		writer.writeDocument(doc);
+		writer.close();
+		return out.toByteArray();
+	}
+	private GpxDocument decode(byte[] bytes, GpxFactory factory) throws IOException {
+		GeoJsonReader reader = new GeoJsonReader(new ByteArrayInputStream(bytes), factory);
+		try {
+			return reader.readDocument();
+		} finally {
+			reader.close();
+		}
+	}
+
+	public void testRoundTrip() throws Exception {
+		System.out.print("Testing GeoJsonWriter/GeoJsonReader round trip...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		InputStream is = getClass().getClassLoader().getResourceAsStream("test.gpx");
+		GpxDocument doc = factory.parseGpxDocument(is);
+		is.close();
+		byte[] bytes = encode(doc, factory);
+		String json = new String(bytes, "UTF-8");
+		assertTrue(json.startsWith("{\"type\":\"FeatureCollection\",\"features\":[{\"type\":\"Feature\""));
+		assertTrue(json.contains("\"coordinateProperties\":{\"times\":[\""));
+		GpxDocument copy = decode(bytes, factory);
+		assertEquals(doc.trackCount(), copy.trackCount());
+		assertEquals(doc.asGpx(), copy.asGpx());
+		System.out.println("OK");
+	}
+
+	public void testFeatures() throws Exception {
+		System.out.print("Testing GeoJsonWriter features...");
+		GpxFactory factory = GpxFactory.getFactory(Type.SimpleGpxFactory);
+		GpxDocument doc = factory.createGpxDocument();
+		doc.addWayPoint(new SimpleWayPoint("wp \"1\"", "a\\b\nc", 1250l, -3.5, 40.25, 650.0));
+		Route route = new Route();
+		route.addWayPoint(new SimpleWayPoint("", "", 1000l, -3.5, 40.25, 650.0));
+		route.addWayPoint(new SimpleWayPoint("", "", -1l, -3.25, 40.5, 651.5));
+		doc.addRoute(route);
+		Track track = new Track();
+		track.setName("track <1>");
+		track.setNumber(3);
+		TrackSegment first = new TrackSegment();
+		first.addWayPoint(new SimpleWayPoint("", "", 1000l, -3.5, 40.25, 650.0));
+		first.addWayPoint(new SimpleWayPoint("", "", 2000l, -3.25, 40.5, 651.5));
+		TrackSegment second = new TrackSegment();
+		second.addWayPoint(new SimpleWayPoint("", "", 5000l, -3.0, 40.75, 652.0));
+		track.addTrackSegment(first);
+		track.addTrackSegment(second);
+		doc.addTrack(track);
+		byte[] bytes = encode(doc, factory);
+		String json = new String(bytes, "UTF-8");
+		assertTrue(json.contains("\"geometry\":{\"type\":\"Point\",\"coordinates\":[-3.500000,40.250000,650.00]}"));
+		assertTrue(json.contains("\"name\":\"wp \\\"1\\\"\",\"desc\":\"a\\\\b\\nc\""));
+		assertTrue(json.contains("\"time\":\"1970-01-01T00:00:01.250Z\""));
+		assertTrue(json.contains("\"type\":\"MultiLineString\",\"coordinates\":[[[-3.500000,40.250000,650.00],[-3.250000,40.500000,651.50]],[[-3.000000,40.750000,652.00]]]"));
+		assertTrue(json.contains("\"gpxType\":\"rte\",\"coordinateProperties\":{\"times\":[\"1970-01-01T00:00:01.000Z\",null]}"));
+		GpxDocument copy = decode(bytes, factory);
+		assertEquals(1, copy.wayPointCount());
+		assertEquals("wp \"1\"", copy.getWayPoint(0).getName());
+		assertEquals("a\\b\nc", copy.getWayPoint(0).getDescription());
+		assertEquals(1250l, copy.getWayPoint(0).getTime());
+		assertEquals(1, copy.routeCount());
+		assertEquals(2, copy.getRoute(0).size());
+		assertEquals(-1l, copy.getRoute(0).getWayPoint(1).getTime());
+		assertEquals(1, copy.trackCount());
+		assertEquals(doc.getTrack(0).asGpx(), copy.getTrack(0).asGpx());
+		System.out.println("OK");
+	}
+
+	public void testForeignGeoJson() throws Exception {
+		System.out.print("Testing GeoJsonReader with foreign GeoJSON...");
+		GpxFactory factory = GpxFactory.getFactory(Type.AndroidGpxFactory);
+		String tag = factory.getExtensionTags()[0];
+		String json = "\uFEFF{ \"features\" : [\n" +
+			" { \"properties\": {\"name\": \"caf\\u00e9\", \"extra\": {\"a\": [1, true, null]},\n" +
+			"   \"coordinateProperties\": {\"times\": [1000, 2000], \"" + tag + "\": [1.5, 2.5e0]}},\n" +
+			"   \"type\": \"Feature\",\n" +
+			"   \"geometry\": {\"coordinates\": [[-3.5, 40.25], [-3.25, 40.5]], \"type\": \"LineString\"}},\n" +
+			" { \"type\": \"Feature\", \"geometry\": {\"type\": \"Polygon\", \"coordinates\": [[[0,0],[1,1],[0,1],[0,0]]]}},\n" +
+			" { \"type\": \"Feature\", \"geometry\": null, \"properties\": null }\n" +
+			"], \"type\": \"FeatureCollection\" }";
+		GeoJsonReader reader = new GeoJsonReader(new StringReader(json), factory);
+		GpxDocument doc = reader.readDocument();
+		reader.close();
+		assertEquals(0, doc.wayPointCount());
+		assertEquals(0, doc.routeCount());
+		assertEquals(1, doc.trackCount());
+		assertEquals("café", doc.getTrack(0).getName());
+		TrackSegment segment = doc.getTrack(0).getTrackSegment(0);
+		assertEquals(2, segment.size());
+		WayPoint wp = segment.getWayPoint(1);
+		assertEquals(2000l, wp.getTime());
+		assertEquals(-3.25, wp.getLongitude());
+		assertEquals(40.5, wp.getLatitude());
+		assertEquals(0.0, wp.getAltitude());
+		assertEquals(2.5, wp.getValues()[3]);
+		// Errores
+		String[] invalid = new String[] {"", "{\"features\":[", "[1,2]",
+			"{\"features\":[{\"geometry\":{\"type\":\"Point\",\"coordinates\":[1]}}]}",
+			"{\"features\":[{\"geometry\":{\"type\":\"Point\",\"coordinates\":[1,x]}}]}"};
+		for(String cad: invalid) {
+			reader = new GeoJsonReader(new StringReader(cad), factory);
+			try {
+				reader.readDocument();
+				fail(cad);
+			} catch (IOException e) {
+				// Esperado
+			} finally {
+				reader.close();
+			}
+		}
+		System.out.println("OK");
+	}
+}
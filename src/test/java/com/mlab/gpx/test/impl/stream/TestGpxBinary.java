@@ -0,0 +1,156 @@
+package com.mlab.gpx.test.impl.stream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.AndroidWayPoint;
+import com.mlab.gpx.impl.GpxEnvelope;
+import com.mlab.gpx.impl.Route;
+import com.mlab.gpx.impl.Track;
+import com.mlab.gpx.impl.stream.GpxBinaryHeader;
+import com.mlab.gpx.impl.stream.GpxBinaryReader;
+import com.mlab.gpx.impl.stream.GpxBinaryWriter;
+
+public class TestGpxBinary extends TestCase {
+
+	private byte[] readTestBytes() throws Exception {
+		InputStream is = getClass().getClassLoader().getResourceAsStream("test.gpx");
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			byte[] buffer = new byte[1 << 16];
+			int count;
+			while((count = is.read(buffer)) > 0) {
+				out.write(buffer, 0, count);
+			}
+		} finally {
+			is.close();
+		}
+		return out.toByteArray();
+	}
+	private byte[] encode(GpxDocument doc, GpxFactory factory) throws IOException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		GpxBinaryWriter writer = new GpxBinaryWriter(out, factory);
+		writer.writeDocument(doc);
+		writer.close();
+		return out.toByteArray();
+	}
+
+	public void testRoundTrip() throws Exception {
+		System.out.print("Testing GpxBinaryWriter/GpxBinaryReader round trip...");
+		byte[] xml = readTestBytes();
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		GpxDocument doc = factory.parseGpxDocument(new ByteArrayInputStream(xml));
+		byte[] bytes = encode(doc, factory);
+		assertTrue("binary "+bytes.length+" xml "+xml.length, bytes.length * 10 < xml.length);
+		GpxBinaryReader reader = new GpxBinaryReader(new ByteArrayInputStream(bytes), factory);
+		GpxDocument copy = reader.readDocument();
+		reader.close();
+		assertEquals(doc.asGpx(), copy.asGpx());
+		// Cabecera
+		reader = new GpxBinaryReader(new ByteArrayInputStream(bytes), factory);
+		GpxBinaryHeader header = reader.readHeader();
+		reader.close();
+		Track track = doc.getTrack(0);
+		assertEquals(track.wayPointCount(), header.getPointCount());
+		assertEquals(1, header.getTrackCount());
+		assertEquals(track.getStartTime(), header.getStartTime());
+		assertEquals(track.getEndTime(), header.getEndTime());
+		GpxEnvelope envelope = header.getEnvelope();
+		WayPoint first = track.getStartWayPoint();
+		assertTrue(envelope.getMinLat() <= first.getLatitude() && first.getLatitude() <= envelope.getMaxLat());
+		assertTrue(envelope.getMinLon() <= first.getLongitude() && first.getLongitude() <= envelope.getMaxLon());
+		assertEquals(7, header.getExtensionTags().length);
+		// Otra factory: las extensiones se asignan por etiqueta
+		GpxFactory android = GpxFactory.getFactory(Type.AndroidGpxFactory);
+		reader = new GpxBinaryReader(new ByteArrayInputStream(bytes), android);
+		copy = reader.readDocument();
+		reader.close();
+		assertEquals(android.parseGpxDocument(new ByteArrayInputStream(xml)).asGpx(), copy.asGpx());
+		System.out.println("OK");
+	}
+	public void testNamesAndRoutes() throws Exception {
+		System.out.print("Testing GpxBinaryWriter names and routes...");
+		GpxFactory factory = GpxFactory.getFactory(Type.AndroidGpxFactory);
+		GpxDocument doc = factory.createGpxDocument();
+		doc.addWayPoint(new AndroidWayPoint("Cañada", "Fuente & abrevadero", 1000L, -3.7, 40.4, 650.0, 1.5, 90.0, 5.0));
+		doc.addWayPoint(new AndroidWayPoint("", "", -1L, -3.123456789, 40.987654321, -1.0, -1.0, -1.0, -1.0));
+		Route route = new Route();
+		route.addWayPoint(new AndroidWayPoint("", "", 2000L, 2.1, 41.3, 12.125, 0.0, 0.0, 3.0));
+		route.addWayPoint(new AndroidWayPoint("R2", "", 5000L, 2.2, 41.4, 13.0, 0.0, 0.0, 3.0));
+		doc.addRoute(route);
+		Track track = new Track();
+		track.setName("Ida");
+		track.setNumber(7);
+		doc.addTrack(track);
+		File file = File.createTempFile("gpxbinary", ".bin");
+		try {
+			assertTrue(factory.writeBinaryGpxDocument(doc, file));
+			GpxDocument copy = factory.readBinaryGpxDocument(file);
+			assertNotNull(copy);
+			assertEquals(file, copy.getGpxFile());
+			assertEquals(doc.asGpx(), copy.asGpx());
+			assertEquals(-3.123456789, copy.getWayPoint(1).getLongitude());
+			assertEquals("R2", copy.getRoute(0).getWayPoint(1).getName());
+			assertEquals("Ida", copy.getTrack(0).getName());
+			assertEquals(7, copy.getTrack(0).getNumber());
+		} finally {
+			file.delete();
+		}
+		System.out.println("OK");
+	}
+	public void testErrors() throws Exception {
+		System.out.print("Testing GpxBinaryReader errors...");
+		GpxFactory factory = GpxFactory.getFactory(Type.AndroidGpxFactory);
+		GpxDocument doc = factory.parseGpxDocument(new ByteArrayInputStream(readTestBytes()));
+		byte[] bytes = encode(doc, factory);
+		byte[] half = new byte[bytes.length / 2];
+		System.arraycopy(bytes, 0, half, 0, half.length);
+		try {
+			new GpxBinaryReader(new ByteArrayInputStream(half), factory).readDocument();
+			fail();
+		} catch (IOException e) {
+			// Esperada
+		}
+		try {
+			new GpxBinaryReader(new ByteArrayInputStream("<gpx></gpx>".getBytes()), factory).readHeader();
+			fail();
+		} catch (IOException e) {
+			// Esperada
+		}
+		// Bloque con más puntos que la cabecera
+		ByteArrayOutputStream corrupt = new ByteArrayOutputStream();
+		corrupt.write(new byte[] {'M', 'G', 'P', 'B', 1, 0});
+		corrupt.write(new byte[32]);
+		corrupt.write(new byte[] {0, 0, 1, 1, 0, 0});
+		corrupt.write(new byte[] {(byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x07});
+		GpxBinaryReader reader = new GpxBinaryReader(new ByteArrayInputStream(corrupt.toByteArray()), factory);
+		assertEquals(1, reader.readHeader().getPointCount());
+		try {
+			reader.readDocument();
+			fail();
+		} catch (IOException e) {
+			// Esperada
+		}
+		File file = File.createTempFile("gpxbinary", ".bin");
+		try {
+			assertNull(factory.readBinaryGpxDocument(file));
+			FileOutputStream out = new FileOutputStream(file);
+			out.write(corrupt.toByteArray());
+			out.close();
+			assertNull(factory.readBinaryGpxDocument(file));
+		} finally {
+			file.delete();
+		}
+		System.out.println("OK");
+	}
+}
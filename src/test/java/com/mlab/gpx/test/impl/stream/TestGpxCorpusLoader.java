@@ -0,0 +1,193 @@
+package com.mlab.gpx.test.impl.stream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+import com.mlab.gpx.impl.stream.GpxCorpusLoader;
+
+public class TestGpxCorpusLoader extends TestCase {
+
+	private static class RecordingSink implements GpxCorpusLoader.Sink {
+		final Set<Path> documents = new HashSet<Path>();
+		final Set<Path> failures = new HashSet<Path>();
+		@Override
+		public void onDocument(Path path, GpxDocument doc, long nanos) {
+			assertTrue(doc.hasTracks());
+			assertTrue(nanos >= 0);
+			documents.add(path);
+		}
+		@Override
+		public void onFailure(Path path, Throwable cause, long nanos) {
+			failures.add(path);
+		}
+	}
+
+	private Path createCorpus() throws Exception {
+		Path root = Files.createTempDirectory("gpxcorpus");
+		Path sub = Files.createDirectory(root.resolve("sub"));
+		for(Path dir: Arrays.asList(root, sub)) {
+			for(int i=0; i<3; i++) {
+				InputStream is = getClass().getClassLoader().getResourceAsStream("test.gpx");
+				try {
+					Files.copy(is, dir.resolve("track"+i+".GPX"), StandardCopyOption.REPLACE_EXISTING);
+				} finally {
+					is.close();
+				}
+			}
+		}
+		Files.write(root.resolve("broken.gpx"), "<gpx><trk>".getBytes("UTF-8"));
+		Files.write(root.resolve("notes.txt"), "not a gpx".getBytes("UTF-8"));
+		return root;
+	}
+	private void delete(Path path) throws Exception {
+		if(Files.isDirectory(path)) {
+			List<Path> children = new ArrayList<Path>();
+			DirectoryStream<Path> stream = Files.newDirectoryStream(path);
+			try {
+				for(Path child: stream) {
+					children.add(child);
+				}
+			} finally {
+				stream.close();
+			}
+			for(Path child: children) {
+				delete(child);
+			}
+		}
+		Files.deleteIfExists(path);
+	}
+
+	public void testLoadDirectory() throws Exception {
+		System.out.print("Testing GpxCorpusLoader.load(directory)...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		Path root = createCorpus();
+		GpxCorpusLoader loader = new GpxCorpusLoader(factory, 3);
+		try {
+			RecordingSink sink = new RecordingSink();
+			loader.load(root, sink);
+			assertEquals(6, sink.documents.size());
+			assertEquals(1, sink.failures.size());
+			assertTrue(sink.failures.contains(root.resolve("broken.gpx")));
+			assertEquals(6, loader.getLoadedCount());
+			assertEquals(1, loader.getFailedCount());
+		} finally {
+			loader.close();
+			delete(root);
+		}
+		System.out.println("OK");
+	}
+	public void testResume() throws Exception {
+		System.out.print("Testing GpxCorpusLoader journal...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		Path root = createCorpus();
+		Path journal = root.resolve("journal.txt");
+		ExecutorService executor = Executors.newFixedThreadPool(2);
+		try {
+			// Primera carga parcial
+			GpxCorpusLoader loader = new GpxCorpusLoader(factory, executor, 2);
+			loader.setJournal(journal);
+			RecordingSink sink = new RecordingSink();
+			loader.load(Arrays.asList(root.resolve("track0.GPX"), root.resolve("broken.gpx")), sink);
+			assertEquals(1, sink.documents.size());
+			assertEquals(1, sink.failures.size());
+			assertEquals(2, Files.readAllLines(journal).size());
+			// Reanudación: se saltan los dos ficheros del journal
+			loader = new GpxCorpusLoader(factory, executor, 2);
+			loader.setJournal(journal);
+			sink = new RecordingSink();
+			loader.load(root, sink);
+			assertEquals(5, sink.documents.size());
+			assertEquals(0, sink.failures.size());
+			assertEquals(2, loader.getSkippedCount());
+			assertFalse(sink.documents.contains(root.resolve("track0.GPX")));
+			assertEquals(7, Files.readAllLines(journal).size());
+		} finally {
+			executor.shutdown();
+			delete(root);
+		}
+		System.out.println("OK");
+	}
+	public void testZip() throws Exception {
+		System.out.print("Testing GpxCorpusLoader with zip bundles...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		Path root = Files.createTempDirectory("gpxcorpus");
+		Path journal = root.resolve("journal.txt");
+		Path bundle = root.resolve("bundle.zip");
+		try {
+			byte[] gpx = readResource();
+			ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(bundle));
+			try {
+				String[] names = new String[] {"a.gpx", "dir/b.gpx", "broken.gpx", "notes.txt"};
+				for(String name: names) {
+					zip.putNextEntry(new ZipEntry(name));
+					zip.write(name.startsWith("broken") ? "<gpx><trk>".getBytes("UTF-8") : gpx);
+					zip.closeEntry();
+				}
+			} finally {
+				zip.close();
+			}
+			GpxCorpusLoader loader = new GpxCorpusLoader(factory, 2);
+			loader.setJournal(journal);
+			RecordingSink sink = new RecordingSink();
+			try {
+				loader.load(root, sink);
+			} finally {
+				loader.close();
+			}
+			assertEquals(2, sink.documents.size());
+			assertTrue(sink.documents.contains(root.resolve("bundle.zip!a.gpx")));
+			assertTrue(sink.documents.contains(root.resolve("bundle.zip!dir/b.gpx")));
+			assertEquals(1, sink.failures.size());
+			assertTrue(sink.failures.contains(root.resolve("bundle.zip!broken.gpx")));
+			assertEquals(3, Files.readAllLines(journal).size());
+			// Reanudación: se saltan las entradas del journal
+			loader = new GpxCorpusLoader(factory, 2);
+			loader.setJournal(journal);
+			sink = new RecordingSink();
+			try {
+				loader.load(Arrays.asList(bundle), sink);
+			} finally {
+				loader.close();
+			}
+			assertEquals(0, sink.documents.size());
+			assertEquals(0, sink.failures.size());
+			assertEquals(3, loader.getSkippedCount());
+		} finally {
+			delete(root);
+		}
+		System.out.println("OK");
+	}
+
+	private byte[] readResource() throws Exception {
+		InputStream is = getClass().getClassLoader().getResourceAsStream("test.gpx");
+		try {
+			byte[] buffer = new byte[1 << 16];
+			ByteArrayOutputStream out = new ByteArrayOutputStream();
+			int count;
+			while((count = is.read(buffer)) > 0) {
+				out.write(buffer, 0, count);
+			}
+			return out.toByteArray();
+		} finally {
+			is.close();
+		}
+	}
+}
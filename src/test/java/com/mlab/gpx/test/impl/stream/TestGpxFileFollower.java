@@ -0,0 +1,94 @@
+package com.mlab.gpx.test.impl.stream;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+import com.mlab.gpx.impl.Track;
+import com.mlab.gpx.impl.stream.GpxFileFollower;
+import com.mlab.gpx.impl.util.Util;
+
+public class TestGpxFileFollower extends TestCase {
+
+	private final String head =
+			"<?xml version=\"1.0\" encoding=\"UTF-8\" ?>"+
+			"<gpx version=\"1.1\" xmlns:mlab=\"http://mercatorlab.com/downloads/mlab.xsd\"><metadata></metadata>"+
+			"<trk><name>Grabación</name><trkseg>\n";
+
+	private String trkpt(int second) {
+		return "<trkpt lat=\"46.5"+second+"\" lon=\"8.8\"><ele>2374.00</ele>"+
+			"<time>"+Util.dateTimeToStringGpxFormat(1192356800000L+1000L*second)+"</time>"+
+			"<extensions><mlab:speed>1.5</mlab:speed><mlab:bearing>0.0</mlab:bearing>"+
+			"<mlab:accuracy>5.0</mlab:accuracy></extensions></trkpt>\n";
+	}
+
+	private void append(Path path, String cad) throws Exception {
+		Files.write(path, cad.getBytes("UTF-8"), StandardOpenOption.APPEND);
+	}
+
+	public void testPoll() throws Exception {
+		System.out.print("Testing GpxFileFollower.poll()...");
+		GpxFactory factory = GpxFactory.getFactory(Type.AndroidGpxFactory);
+		Path path = Files.createTempFile("gpxfollower", ".gpx");
+		try {
+			File file = path.toFile();
+			GpxFileFollower follower = factory.followGpxFile(file);
+			assertEquals(0, follower.poll());
+			append(path, head + trkpt(0) + trkpt(1));
+			assertEquals(2, follower.poll());
+			assertEquals(0, follower.poll());
+			// Punto a medio escribir
+			String third = trkpt(2);
+			append(path, third.substring(0, 40));
+			assertEquals(0, follower.poll());
+			append(path, third.substring(40, third.length()-5));
+			assertEquals(0, follower.poll());
+			long position = follower.getPosition();
+			append(path, third.substring(third.length()-5));
+			assertEquals(1, follower.poll());
+			assertTrue(follower.getPosition() > position);
+			// Nuevo segmento
+			append(path, "</trkseg><trkseg>" + trkpt(10));
+			assertEquals(1, follower.poll());
+			// Punto con tiempo no creciente
+			append(path, trkpt(5) + trkpt(11));
+			assertEquals(1, follower.poll());
+			// Puntos no válidos antes y después de un comienzo de segmento
+			String invalid = "<trkpt lat=\"x\" lon=\"8.8\"><time>2007-10-14T10:13:50Z</time></trkpt>\n";
+			append(path, invalid + trkpt(12) + "</trkseg><trkseg>" + trkpt(13) +
+				"</trkseg><trkseg>" + invalid + trkpt(14));
+			assertEquals(3, follower.poll());
+			// Segmento nuevo sin puntos válidos en este poll()
+			append(path, "</trkseg><trkseg>" + invalid);
+			assertEquals(0, follower.poll());
+			append(path, trkpt(15));
+			assertEquals(1, follower.poll());
+
+			Track track = follower.getTrack();
+			assertEquals(5, track.segmentsCount());
+			assertEquals(3, track.getTrackSegment(0).size());
+			assertEquals(3, track.getTrackSegment(1).size());
+			assertEquals(1, track.getTrackSegment(2).size());
+			assertEquals(1, track.getTrackSegment(3).size());
+			assertEquals(1, track.getTrackSegment(4).size());
+			assertEquals(1192356800000L+13000L, track.getTrackSegment(2).getStartTime());
+			assertEquals(1192356800000L+15000L, track.getEndTime());
+			assertEquals(1.5, track.getTrackSegment(0).getStartWayPoint().getValues()[3], 0.001);
+
+			// Cierre del fichero
+			append(path, "</trkseg></trk></gpx>");
+			assertEquals(0, follower.poll());
+			// Fichero truncado
+			Files.write(path, head.getBytes("UTF-8"));
+			assertEquals(-1, follower.poll());
+		} finally {
+			Files.delete(path);
+		}
+		System.out.println("OK");
+	}
+}
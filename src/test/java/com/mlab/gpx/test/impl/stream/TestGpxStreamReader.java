@@ -0,0 +1,76 @@
+package com.mlab.gpx.test.impl.stream;
+
+import java.io.StringReader;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.impl.stream.GpxStreamReader;
+
+public class TestGpxStreamReader extends TestCase {
+
+	private final String docgpx =
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>"+
+				"<gpx version=\"1.1\" xmlns:mlab=\"http://mercatorlab.com/downloads/mlab.xsd\">"+
+					"<metadata><name>Example gpx</name></metadata>"+
+					"<wpt lat=\"46.57638889\" lon=\"8.89263889\">"+
+						"<ele>2372</ele>"+
+						"<name>LAGORETICO</name>"+
+					"</wpt>"+
+					"<rte><rtept lat=\"46.5\" lon=\"8.8\"/><rtept lat=\"46.6\" lon=\"8.9\"/></rte>"+
+					"<trk><name>Example gpx</name><number>1</number><trkseg>"+
+						"<trkpt lat=\"46.57638889\" lon=\"8.89302778\"><ele>2374</ele><time>2007-10-14T10:13:20Z</time>"+
+						"<extensions><mlab:speed>3.5</mlab:speed></extensions></trkpt>"+
+						"<trkpt lat=\"bad\" lon=\"8.89322222\"><ele>2375</ele><time>2007-10-14T10:13:48Z</time></trkpt>"+
+						"<trkpt lat=\"46.57661111\" lon=\"8.89344444\"><ele>2376</ele><time>2007-10-14T10:14:08Z</time></trkpt>"+
+					"</trkseg></trk>"+
+				"</gpx>";
+
+	public void testEvents() throws Exception {
+		System.out.print("Testing GpxStreamReader.next()...");
+		GpxStreamReader reader = new GpxStreamReader(new StringReader(docgpx));
+		assertEquals("gpx", reader.getRootName());
+		int[] expected = new int[] {GpxStreamReader.WAYPOINT,
+			GpxStreamReader.START_ROUTE, GpxStreamReader.ROUTE_POINT, GpxStreamReader.ROUTE_POINT, GpxStreamReader.END_ROUTE,
+			GpxStreamReader.START_TRACK, GpxStreamReader.START_SEGMENT, GpxStreamReader.TRACK_POINT,
+			GpxStreamReader.TRACK_POINT, GpxStreamReader.END_SEGMENT, GpxStreamReader.END_TRACK,
+			GpxStreamReader.END_DOCUMENT};
+		for(int i=0; i<expected.length; i++) {
+			assertEquals(expected[i], reader.next());
+		}
+		assertFalse(reader.hasNext());
+		reader.close();
+		System.out.println("OK");
+	}
+	public void testPointValues() throws Exception {
+		System.out.print("Testing GpxStreamReader point values...");
+		GpxStreamReader reader = new GpxStreamReader(new StringReader(docgpx));
+		assertEquals(GpxStreamReader.WAYPOINT, reader.next());
+		assertEquals(46.57638889, reader.getLatitude());
+		assertEquals(8.89263889, reader.getLongitude());
+		assertEquals(2372.0, reader.getAltitude());
+		assertEquals("LAGORETICO", reader.getName());
+		assertEquals("", reader.getDescription());
+		assertEquals(-1l, reader.getTime());
+
+		int event = reader.next();
+		while(event != GpxStreamReader.TRACK_POINT) {
+			event = reader.next();
+		}
+		assertEquals(0, reader.getTrackIndex());
+		assertEquals(0, reader.getSegmentIndex());
+		assertEquals(1192356800000l, reader.getTime());
+		assertEquals("3.5", reader.getTags().get("mlab:speed"));
+		reader.close();
+		System.out.println("OK");
+	}
+	public void testFragment() throws Exception {
+		System.out.print("Testing GpxStreamReader fragments...");
+		GpxStreamReader reader = new GpxStreamReader(new StringReader(
+			"<trkpt lat=\"46.5\" lon=\"8.8\"><ele>10.5</ele></trkpt>"));
+		assertEquals("trkpt", reader.getRootName());
+		assertEquals(GpxStreamReader.TRACK_POINT, reader.next());
+		assertEquals(10.5, reader.getAltitude());
+		assertEquals(GpxStreamReader.END_DOCUMENT, reader.next());
+		System.out.println("OK");
+	}
+}
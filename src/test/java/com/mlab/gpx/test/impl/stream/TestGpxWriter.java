@@ -0,0 +1,156 @@
+package com.mlab.gpx.test.impl.stream;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.nio.channels.Channels;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+import com.mlab.gpx.impl.AndroidWayPoint;
+import com.mlab.gpx.impl.SimpleWayPoint;
+import com.mlab.gpx.impl.Track;
+import com.mlab.gpx.impl.TrackSegment;
+import com.mlab.gpx.impl.extensions.ExtendedWayPoint;
+import com.mlab.gpx.impl.stream.GpxWriter;
+
+public class TestGpxWriter extends TestCase {
+
+	private GpxDocument readTestDocument(GpxFactory factory) throws Exception {
+		InputStream is = getClass().getClassLoader().getResourceAsStream("test.gpx");
+		try {
+			return factory.parseGpxDocument(is);
+		} finally {
+			is.close();
+		}
+	}
+
+	public void testWriteDocument() throws Exception {
+		System.out.print("Testing GpxWriter.writeDocument()...");
+		GpxFactory factory = GpxFactory.getFactory(Type.AndroidGpxFactory);
+		GpxDocument doc = readTestDocument(factory);
+		assertNotNull(doc);
+		String gpx = doc.asGpx();
+		assertTrue(gpx.startsWith(GpxWriter.HEAD));
+		assertTrue(gpx.endsWith(GpxWriter.FOOTER));
+		// Writer
+		StringWriter stringWriter = new StringWriter();
+		GpxWriter writer = new GpxWriter(stringWriter);
+		writer.writeDocument(doc);
+		writer.close();
+		assertEquals(gpx, stringWriter.toString());
+		// OutputStream
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		writer = new GpxWriter(out);
+		writer.writeDocument(doc);
+		writer.close();
+		assertEquals(gpx, new String(out.toByteArray(), "UTF-8"));
+		// WritableByteChannel
+		out = new ByteArrayOutputStream();
+		writer = new GpxWriter(Channels.newChannel(out));
+		writer.writeDocument(doc);
+		writer.close();
+		assertEquals(gpx, new String(out.toByteArray(), "UTF-8"));
+		System.out.println("OK");
+	}
+	public void testWriteByParts() throws Exception {
+		System.out.print("Testing GpxWriter.writeTrack()...");
+		GpxFactory factory = GpxFactory.getFactory(Type.AndroidGpxFactory);
+		GpxDocument doc = readTestDocument(factory);
+		Track track = doc.getTrack(0);
+		TrackSegment segment = track.getTrackSegment(0);
+		StringWriter stringWriter = new StringWriter();
+		GpxWriter writer = new GpxWriter(stringWriter);
+		writer.writeTrackSegment(segment);
+		writer.flush();
+		assertEquals(segment.asGpx(), stringWriter.toString());
+		stringWriter.getBuffer().setLength(0);
+		writer.writeStartDocument();
+		writer.writeMetadata(doc.getMetadata());
+		writer.writeTrack(track);
+		writer.writeEndDocument();
+		writer.close();
+		GpxDocument copy = factory.parseGpxDocument(stringWriter.toString());
+		assertNotNull(copy);
+		assertEquals(track.asGpx(), copy.getTrack(0).asGpx());
+		System.out.println("OK");
+	}
+	public void testEscape() throws Exception {
+		System.out.print("Testing GpxWriter escape...");
+		GpxFactory factory = GpxFactory.getFactory(Type.AndroidGpxFactory);
+		GpxDocument doc = factory.createGpxDocument();
+		AndroidWayPoint wp = new AndroidWayPoint("A&B <1>", "x<y", 1000L, -3.7, 40.4, 650.0, 1.0, 90.0, 5.0);
+		doc.addWayPoint(wp);
+		Track track = new Track();
+		track.setName("Ida & vuelta");
+		track.setNumber(3);
+		TrackSegment segment = new TrackSegment();
+		segment.addWayPoint(wp.clone());
+		track.addTrackSegment(segment);
+		doc.addTrack(track);
+		String gpx = doc.asGpx();
+		assertTrue(gpx.contains("<name>A&amp;B &lt;1&gt;</name>"));
+		assertTrue(gpx.contains("<trk><name>Ida &amp; vuelta</name><number>3</number>"));
+		GpxDocument copy = factory.parseGpxDocument(gpx);
+		assertNotNull(copy);
+		assertEquals("A&B <1>", copy.getWayPoint(0).getName());
+		assertEquals("x<y", copy.getWayPoint(0).getDescription());
+		assertEquals(wp.asGpx(), copy.getWayPoint(0).asGpx());
+		System.out.println("OK");
+	}
+
+	public void testSubclassOverrides() throws Exception {
+		System.out.print("Testing GpxWriter with subclasses that override asGpx()...");
+		// Cada segmento admite WayPoint de una misma dimensión
+		TrackSegment segment = new TrackSegment();
+		TrackSegment extendedSegment = new TrackSegment();
+		TrackSegment androidSegment = new TrackSegment();
+		assertTrue(segment.addWayPoint(new SimpleWayPoint("", "", 1000l, -3.5, 40.25, 650.0) {
+			@Override
+			protected String extensionsAsGpx() {
+				return "<extensions><my:simple>1</my:simple></extensions>";
+			}
+		}));
+		assertTrue(extendedSegment.addWayPoint(new ExtendedWayPoint("", "", 2000l, -3.25, 40.5, 651.0,
+				1.0, 2.0, 3.0, 4.0, 5.0, 6.0, 7.0) {
+			@Override
+			public String extensionsAsGpx() {
+				return "<extensions><my:extended>2</my:extended></extensions>";
+			}
+		}));
+		assertTrue(androidSegment.addWayPoint(new AndroidWayPoint("", "", 3000l, -3.0, 40.75, 652.0, 1.0, 2.0, 3.0) {
+			@Override
+			public String asGpx() {
+				return "<trkpt custom=\"3\"/>";
+			}
+		}));
+		String gpx = segment.asGpx() + extendedSegment.asGpx() + androidSegment.asGpx();
+		assertTrue(gpx.contains("<my:simple>1</my:simple>"));
+		assertTrue(gpx.contains("<my:extended>2</my:extended>"));
+		assertFalse(gpx.contains("<mlab:ax>"));
+		assertTrue(gpx.contains("<trkpt custom=\"3\"/>"));
+		Track track = new Track() {
+			@Override
+			public String asGpx() {
+				return "<trk><name>custom</name></trk>";
+			}
+		};
+		track.addTrackSegment(segment);
+		Track plain = new Track();
+		assertTrue(plain.addTrackSegment(segment));
+		assertTrue(plain.addTrackSegment(extendedSegment));
+		assertTrue(plain.addTrackSegment(androidSegment));
+		StringWriter out = new StringWriter();
+		GpxWriter writer = new GpxWriter(out);
+		writer.writeTrack(track);
+		writer.writeTrack(plain);
+		writer.close();
+		assertEquals("<trk><name>custom</name></trk>"+plain.asGpx(), out.toString());
+		assertTrue(plain.asGpx().contains("<my:extended>2</my:extended>"));
+		assertTrue(plain.asGpx().contains("<trkpt custom=\"3\"/>"));
+		System.out.println("OK");
+	}
+}
@@ -0,0 +1,81 @@
+package com.mlab.gpx.test.impl.stream;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+import com.mlab.gpx.impl.stream.MappedGpxScanner;
+import com.mlab.gpx.impl.util.Util;
+
+public class TestMappedGpxScanner extends TestCase {
+
+	private final String docgpx =
+			"<?xml version=\"1.0\" encoding=\"UTF-8\" ?>"+
+				"<gpx version=\"1.1\" xmlns:mlab=\"http://mercatorlab.com/downloads/mlab.xsd\"><metadata></metadata>"+
+					"<wpt  lat=\"46.576389\" lon=\"8.892639\"><ele>2372.00</ele><name>LAGO</name></wpt>"+
+					"<trk><number>0</number><trkseg>"+
+						"<trkpt  lat=\"46.576389\" lon=\"8.893028\"><ele>2374.00</ele><time>2007-10-14T10:13:20.20Z</time>"+
+						"<extensions><mlab:ax>1.5</mlab:ax><mlab:pressure>948.27</mlab:pressure></extensions></trkpt>\n"+
+						"<trkpt  lat=\"-46.576528\" lon=\"8.893222\"><ele>2375.00</ele><time>2007-10-14T10:13:48Z</time></trkpt>\n"+
+					"</trkseg></trk>"+
+				"</gpx>";
+
+	public void testScan() throws Exception {
+		System.out.print("Testing MappedGpxScanner.scan()...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		GpxDocument doc = new MappedGpxScanner(factory).scan(ByteBuffer.wrap(docgpx.getBytes("UTF-8")));
+		assertNotNull(doc);
+		assertEquals(factory.parseGpxDocument(docgpx).asGpx(), doc.asGpx());
+		assertEquals(1, doc.getWayPoints().size());
+		assertEquals("LAGO", doc.getWayPoints().get(0).getName());
+		assertEquals(1, doc.getTracks().size());
+		assertEquals(2, doc.getTracks().get(0).getTrackSegment(0).size());
+		assertEquals(Util.parseGpxDate("2007-10-14T10:13:20.20Z"),
+				doc.getTracks().get(0).getTrackSegment(0).getStartWayPoint().getTime());
+		System.out.println("OK");
+	}
+	public void testUnexpectedContent() throws Exception {
+		System.out.print("Testing MappedGpxScanner unexpected content...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		MappedGpxScanner scanner = new MappedGpxScanner(factory);
+		assertNull(scanner.scan(ByteBuffer.wrap(docgpx.replace("<metadata>", "<!-- c --><metadata>").getBytes("UTF-8"))));
+		assertNull(scanner.scan(ByteBuffer.wrap(docgpx.replace("LAGO", "LAGO &amp; RIO").getBytes("UTF-8"))));
+		assertNull(scanner.scan(ByteBuffer.wrap(docgpx.replace("1.5", "1.5e0").getBytes("UTF-8"))));
+		assertNull(scanner.scan(ByteBuffer.wrap(docgpx.replace("mlab:ax", "mlab:other").getBytes("UTF-8"))));
+		assertNull(scanner.scan(ByteBuffer.wrap(docgpx.replace("UTF-8", "ISO-8859-1").getBytes("UTF-8"))));
+		assertNull(scanner.scan(ByteBuffer.wrap(docgpx.replace("</gpx>", "").getBytes("UTF-8"))));
+		System.out.println("OK");
+	}
+	public void testReadTrustedGpxDocument() throws Exception {
+		System.out.print("Testing GpxFactory.readTrustedGpxDocument()...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		Path path = Files.createTempFile("gpxparser", ".gpx");
+		InputStream is = getClass().getClassLoader().getResourceAsStream("test.gpx");
+		try {
+			Files.copy(is, path, StandardCopyOption.REPLACE_EXISTING);
+			File file = path.toFile();
+			assertNotNull(new MappedGpxScanner(factory).scan(file));
+			GpxDocument doc = factory.readTrustedGpxDocument(file);
+			assertNotNull(doc);
+			assertEquals(file, doc.getGpxFile());
+			assertEquals(GpxFactory.readGpxDocument(file).asGpx(), doc.asGpx());
+			// Fallback al parser estándar
+			Files.write(path, docgpx.replace("<metadata>", "<!-- c --><metadata>").getBytes("UTF-8"));
+			doc = factory.readTrustedGpxDocument(file);
+			assertNotNull(doc);
+			assertEquals(1, doc.getWayPoints().size());
+		} finally {
+			is.close();
+			Files.delete(path);
+		}
+		System.out.println("OK");
+	}
+}
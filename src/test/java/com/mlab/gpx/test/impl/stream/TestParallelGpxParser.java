@@ -0,0 +1,90 @@
+package com.mlab.gpx.test.impl.stream;
+
+import java.io.File;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.extensions.ExtendedGpxFactory;
+import com.mlab.gpx.impl.stream.ParallelGpxParser;
+
+public class TestParallelGpxParser extends TestCase {
+
+	private final String docgpx =
+			"<?xml version=\"1.0\" encoding=\"UTF-8\" ?>"+
+				"<gpx version=\"1.1\"><metadata></metadata>"+
+					"<wpt  lat=\"46.576389\" lon=\"8.892639\"><ele>2372.00</ele><name>LAGO</name></wpt>"+
+					"<trk><number>0</number><trkseg>"+
+						"<trkpt  lat=\"46.576389\" lon=\"8.893028\"><ele>2374.00</ele><time>2007-10-14T10:13:20Z</time></trkpt>"+
+						"<trkpt  lat=\"46.576528\" lon=\"8.893222\"><ele>2375.00</ele><time>2007-10-14T10:13:48Z</time></trkpt>"+
+					"</trkseg><trkseg>"+
+						"<trkpt  lat=\"46.576611\" lon=\"8.893444\"><ele>2376.00</ele><time>2007-10-14T10:14:08Z</time></trkpt>"+
+					"</trkseg></trk>"+
+					"<trk><trkseg>"+
+						"<trkpt  lat=\"46.576700\" lon=\"8.893500\"><ele>2377.00</ele><time>2007-10-14T10:15:00Z</time></trkpt>"+
+						"<trkpt  lat=\"46.576800\" lon=\"8.893600\"><ele>2378.00</ele><time>2007-10-14T10:15:10Z</time></trkpt>"+
+					"</trkseg></trk>"+
+				"</gpx>";
+
+	public void testParse() throws Exception {
+		System.out.print("Testing ParallelGpxParser.parse()...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		Path path = Files.createTempFile("gpxparser", ".gpx");
+		ForkJoinPool pool = new ForkJoinPool(4);
+		try {
+			Files.write(path, docgpx.getBytes("UTF-8"));
+			String expected = factory.parseGpxDocument(docgpx).asGpx();
+			// Rangos de tamaño mínimo: cada trkpt en su propio rango
+			for(long chunkSize=1; chunkSize<=docgpx.length(); chunkSize*=2) {
+				GpxDocument doc = new ParallelGpxParser(factory, pool, chunkSize).parse(path.toFile());
+				assertNotNull(doc);
+				assertEquals(expected, doc.asGpx());
+			}
+			// Documento no reconocido
+			Files.write(path, docgpx.replace("</trkseg><trkseg>", "</trkseg><!-- c --><trkseg>").getBytes("UTF-8"));
+			assertNull(new ParallelGpxParser(factory, pool, 64).parse(path.toFile()));
+			GpxDocument doc = factory.readGpxDocumentInParallel(path.toFile(), pool);
+			assertNotNull(doc);
+			assertEquals(expected, doc.asGpx());
+			// RuntimeException en un rango: null para que se lea de forma secuencial
+			Files.write(path, docgpx.getBytes("UTF-8"));
+			GpxFactory failing = new ExtendedGpxFactory() {
+				@Override
+				public WayPoint createWayPoint(String name, String description, long time, List<Double> values) {
+					throw new IllegalStateException("test");
+				}
+			};
+			assertNull(new ParallelGpxParser(failing, pool, 64).parse(path.toFile()));
+		} finally {
+			pool.shutdown();
+			Files.delete(path);
+		}
+		System.out.println("OK");
+	}
+	public void testLargeFile() throws Exception {
+		System.out.print("Testing GpxFactory.readGpxDocumentInParallel()...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		Path path = Files.createTempFile("gpxparser", ".gpx");
+		InputStream is = getClass().getClassLoader().getResourceAsStream("test.gpx");
+		try {
+			Files.copy(is, path, StandardCopyOption.REPLACE_EXISTING);
+			File file = path.toFile();
+			GpxDocument doc = new ParallelGpxParser(factory, ForkJoinPool.commonPool(), 4096).parse(file);
+			assertNotNull(doc);
+			assertEquals(GpxFactory.readGpxDocument(file).asGpx(), doc.asGpx());
+		} finally {
+			is.close();
+			Files.delete(path);
+		}
+		System.out.println("OK");
+	}
+}
@@ -0,0 +1,68 @@
+package com.mlab.gpx.test.impl.stream;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+import com.mlab.gpx.impl.extensions.ExtendedWayPoint;
+import com.mlab.gpx.impl.stream.IndexedWayPoint;
+import com.mlab.gpx.impl.stream.WayPointIterator;
+
+public class TestWayPointIterator extends TestCase {
+
+	private final String docgpx =
+			"<?xml version=\"1.0\" encoding=\"UTF-8\"?>"+
+				"<gpx version=\"1.1\">"+
+					"<wpt lat=\"46.57638889\" lon=\"8.89263889\"><ele>2372</ele><name>LAGORETICO</name></wpt>"+
+					"<trk><trkseg>"+
+						"<trkpt lat=\"46.57638889\" lon=\"8.89302778\"><ele>2374</ele><time>2007-10-14T10:13:20Z</time>"+
+						"<extensions><mlab:ax>1.5</mlab:ax></extensions></trkpt>"+
+						"<trkpt lat=\"46.57652778\" lon=\"8.89322222\"><ele>2375</ele><time>2007-10-14T10:13:48Z</time></trkpt>"+
+					"</trkseg><trkseg>"+
+						"<trkpt lat=\"46.57661111\" lon=\"8.89344444\"><ele>2376</ele><time>2007-10-14T10:14:08Z</time></trkpt>"+
+					"</trkseg></trk>"+
+				"</gpx>";
+
+	public void testIterator() throws Exception {
+		System.out.print("Testing WayPointIterator...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		WayPointIterator it = factory.iterateWayPoints(new ByteArrayInputStream(docgpx.getBytes("UTF-8")));
+		assertNotNull(it);
+		IndexedWayPoint p = it.next();
+		assertEquals("wpt", p.getWayPoint().getTag());
+		assertEquals("LAGORETICO", p.getWayPoint().getName());
+		assertEquals(-1, p.getTrackIndex());
+		p = it.next();
+		assertEquals("trkpt", p.getWayPoint().getTag());
+		assertEquals(0, p.getTrackIndex());
+		assertEquals(0, p.getSegmentIndex());
+		assertEquals(1.5, ((ExtendedWayPoint)p.getWayPoint()).getAx());
+		p = it.next();
+		assertEquals(0, p.getSegmentIndex());
+		p = it.next();
+		assertEquals(1, p.getSegmentIndex());
+		assertEquals(2376.0, p.getWayPoint().getAltitude());
+		assertFalse(it.hasNext());
+		it.close();
+		System.out.println("OK");
+	}
+	public void testStream() throws Exception {
+		System.out.print("Testing GpxFactory.streamWayPoints()...");
+		Path path = Files.createTempFile("gpxparser", ".gpx");
+		Files.write(path, docgpx.getBytes("UTF-8"));
+		GpxFactory factory = GpxFactory.getFactory(Type.SimpleGpxFactory);
+		Stream<IndexedWayPoint> stream = factory.streamWayPoints(path);
+		try {
+			assertEquals(3, stream.filter(p -> p.getTrackIndex() == 0).count());
+		} finally {
+			stream.close();
+			Files.delete(path);
+		}
+		System.out.println("OK");
+	}
+}
@@ -0,0 +1,121 @@
+package com.mlab.gpx.test.impl.tserie;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.TrackSegment;
+import com.mlab.gpx.impl.tserie.AverageStrategy;
+import com.mlab.gpx.impl.tserie.MappedTSerie;
+import com.mlab.gpx.impl.tserie.TSerie;
+
+public class TestMappedTSerie extends TestCase {
+
+	private TSerie createTSerie() {
+		TSerie tserie = new TSerie();
+		assertTrue(tserie.add(1000l, new double[]{1.0,2.0,3.0}));
+		assertTrue(tserie.add(2000l, new double[]{2.0,3.0,4.0}));
+		assertTrue(tserie.add(4000l, new double[]{4.0,5.0,6.0}));
+		return tserie;
+	}
+
+	public void testQueries() throws Exception {
+		System.out.print("Testing MappedTSerie queries...");
+		TSerie tserie = createTSerie();
+		File file = File.createTempFile("tserie", ".col");
+		file.deleteOnExit();
+		MappedTSerie.write(tserie, new String[] {"lon", "lat", "ele"}, file);
+		MappedTSerie mapped = MappedTSerie.open(file);
+		assertEquals(3, mapped.size());
+		assertEquals(3, mapped.getDimension());
+		assertEquals(1000l, mapped.firsTime());
+		assertEquals(4000l, mapped.lastTime());
+		assertEquals(2, mapped.indexOfChannel("ele"));
+		assertEquals(5.0, mapped.getValue(2, 1));
+		for(long t=0l; t<=5000l; t+=250l) {
+			assertEquals(tserie.isInRange(t), mapped.isInRange(t));
+			assertEquals(tserie.indexOfFloor(t), mapped.indexOfFloor(t));
+			assertEquals(tserie.indexOfCeiling(t), mapped.indexOfCeiling(t));
+			double[] expected = tserie.getValues(t);
+			double[] values = mapped.getValues(t);
+			if(expected == null) {
+				assertNull(values);
+			} else {
+				assertEquals(expected.length, values.length);
+				for(int i=0; i<expected.length; i++) {
+					assertEquals(expected[i], values[i]);
+				}
+			}
+		}
+		AverageStrategy strategy = new AverageStrategy(1000l);
+		assertEquals(tserie.getValues(2000l, strategy) == null, mapped.getValues(2000l, strategy) == null);
+		assertFalse(mapped.add(5000l, new double[]{1.0,2.0,3.0}));
+		assertEquals(3, mapped.size());
+		mapped.close();
+		System.out.println("OK");
+	}
+
+	public void testTrackSegment() throws Exception {
+		System.out.print("Testing MappedTSerie.write(TrackSegment)...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		InputStream is = getClass().getClassLoader().getResourceAsStream("test.gpx");
+		GpxDocument doc = factory.parseGpxDocument(is);
+		is.close();
+		TrackSegment segment = doc.getTrack(0).getTrackSegment(0);
+		assertTrue(segment.size() > 2);
+		File file = File.createTempFile("segment", ".col");
+		file.deleteOnExit();
+		MappedTSerie.write(segment, factory, file);
+		MappedTSerie mapped = MappedTSerie.open(file);
+		assertEquals(segment.size(), mapped.size());
+		assertEquals(segment.getStartTime(), mapped.firsTime());
+		assertEquals(segment.getEndTime(), mapped.lastTime());
+		assertEquals("lon", mapped.getChannels()[0]);
+		assertEquals(factory.getExtensionTags()[0], mapped.getChannels()[3]);
+		for(int i=0; i<segment.size(); i++) {
+			WayPoint wp = segment.getWayPoint(i);
+			assertEquals(wp.getTime(), mapped.getTime(i));
+			double[] values = mapped.getValues(i);
+			assertEquals(wp.getLongitude(), values[0]);
+			assertEquals(wp.getLatitude(), values[1]);
+			assertEquals(wp.getAltitude(), values[2]);
+		}
+		long middle = (mapped.getTime(0) + mapped.getTime(1)) / 2l;
+		double[] expected = segment.getValues(middle);
+		double[] values = mapped.getValues(middle);
+		for(int i=0; i<expected.length; i++) {
+			assertEquals(expected[i], values[i]);
+		}
+		mapped.close();
+		System.out.println("OK");
+	}
+
+	public void testInvalidFile() throws Exception {
+		System.out.print("Testing MappedTSerie.open() with invalid files...");
+		File file = File.createTempFile("invalid", ".col");
+		file.deleteOnExit();
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("not a column file".getBytes("UTF-8"));
+		out.close();
+		try {
+			MappedTSerie.open(file);
+			fail();
+		} catch (IOException e) {
+			// Esperado
+		}
+		try {
+			MappedTSerie.write(createTSerie(), new String[] {"lon"}, file);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Esperado
+		}
+		System.out.println("OK");
+	}
+}
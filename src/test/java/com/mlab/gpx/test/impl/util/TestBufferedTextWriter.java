@@ -0,0 +1,40 @@
+package com.mlab.gpx.test.impl.util;
+
+import java.io.StringWriter;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.impl.util.BufferedTextWriter;
+
+public class TestBufferedTextWriter extends TestCase {
+
+	public void testDrain() throws Exception {
+		System.out.print("Testing BufferedTextWriter...");
+		StringWriter writer = new StringWriter();
+		BufferedTextWriter out = new BufferedTextWriter(writer);
+		StringBuilder expected = new StringBuilder();
+		out.getBuffer().append("abc");
+		out.drain();
+		assertEquals(0, writer.getBuffer().length());
+		// Más de dos veces FLUSH_SIZE: se vuelca en varios trozos
+		for(int i=0; i<3*BufferedTextWriter.FLUSH_SIZE; i++) {
+			out.getBuffer().append((char)('a' + i%26));
+		}
+		expected.append(out.getBuffer());
+		out.drain();
+		assertEquals(0, out.getBuffer().length());
+		assertEquals(expected.toString(), writer.toString());
+		out.getBuffer().append("xyz");
+		out.close();
+		assertEquals(expected.append("xyz").toString(), writer.toString());
+		// Sin destino todo queda en el buffer
+		out = new BufferedTextWriter(null);
+		for(int i=0; i<2*BufferedTextWriter.FLUSH_SIZE; i++) {
+			out.getBuffer().append('a');
+		}
+		out.drain();
+		out.close();
+		assertEquals(2*BufferedTextWriter.FLUSH_SIZE, out.getBuffer().length());
+		System.out.println("OK");
+	}
+}
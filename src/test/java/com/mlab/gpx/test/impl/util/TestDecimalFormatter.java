@@ -0,0 +1,87 @@
+package com.mlab.gpx.test.impl.util;
+
+import java.util.Locale;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.impl.util.DecimalFormatter;
+import com.mlab.gpx.impl.util.Util;
+
+public class TestDecimalFormatter extends TestCase {
+
+	private final double[] numbers = new double[] {
+		0.0, -0.0, 1.0, -1.0, 0.5, 1.5, 2.5, -2.5, 0.125, 0.375, 1.005, 2.675,
+		40.404194, -3.994934, 692.945, -0.0000001, 0.0000005, 0.0000015,
+		123.456789012345, -179.9999995, 9007199254740993.0, 1234567890.12345678,
+		1e15, 1e20, -1e300, 4.9e-324, Double.MAX_VALUE, Double.NaN,
+		Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY};
+
+	private String expected(double value, int decimals) {
+		return String.format(Locale.ROOT, "%12."+decimals+"f", value).trim();
+	}
+
+	public void testFormat() {
+		System.out.print("Testing DecimalFormatter.format()...");
+		char[] chars = new char[512];
+		byte[] bytes = new byte[512];
+		for(double value: numbers) {
+			for(int decimals=0; decimals<=20; decimals++) {
+				String cad = expected(value, decimals);
+				assertEquals(cad, DecimalFormatter.format(value, decimals));
+				StringBuilder builder = new StringBuilder("x");
+				assertEquals("x"+cad, DecimalFormatter.append(builder, value, decimals).toString());
+				int end = DecimalFormatter.format(value, decimals, chars, 3);
+				assertEquals(cad, new String(chars, 3, end-3));
+				end = DecimalFormatter.format(value, decimals, bytes, 5);
+				assertEquals(cad, new String(bytes, 5, end-5));
+			}
+		}
+		try {
+			DecimalFormatter.format(1.0, -1);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Esperada
+		}
+		System.out.println("OK");
+	}
+	public void testRandom() {
+		System.out.print("Testing DecimalFormatter with random values...");
+		Random random = new Random(19);
+		for(int i=0; i<200000; i++) {
+			double value;
+			switch(i % 4) {
+			case 0:
+				value = (random.nextDouble()-0.5)*360.0;
+				break;
+			case 1:
+				value = random.nextGaussian()*1000.0;
+				break;
+			case 2:
+				// Valores con pocos decimales, cerca de los puntos medios
+				value = (random.nextInt(2000000)-1000000)/1000.0 + 0.0005;
+				break;
+			default:
+				value = Double.longBitsToDouble(random.nextLong());
+			}
+			int decimals = random.nextInt(13);
+			assertEquals(expected(value, decimals), DecimalFormatter.format(value, decimals));
+		}
+		System.out.println("OK");
+	}
+	public void testUtil() {
+		System.out.print("Testing Util.appendDouble()...");
+		StringBuilder builder = new StringBuilder();
+		Util.appendDouble(builder, -3.7038, 12, 6).append(',');
+		Util.appendDouble(builder, 650.0, 8, 2);
+		assertEquals("-3.703800,650.00", builder.toString());
+		assertEquals("40.404194", Util.doubleToString(40.4041942, 12, 6));
+		try {
+			Util.appendDouble(builder, Double.NaN, 12, 6);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Esperada
+		}
+		System.out.println("OK");
+	}
+}
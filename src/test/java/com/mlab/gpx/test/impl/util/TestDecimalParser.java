@@ -0,0 +1,59 @@
+package com.mlab.gpx.test.impl.util;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.impl.util.DecimalParser;
+import com.mlab.gpx.impl.util.Util;
+
+public class TestDecimalParser extends TestCase {
+
+	private final String[] numbers = new String[] {
+		"0", "-0.0", "1", "1.", ".5", "+2.25", "40.404194", "-3.994934", "692.94",
+		"-0.903794", "948.27", "0.000001", "123.456789012345", "-179.999999999999",
+		"9007199254740993", "1234567890.12345678", "1.5e3", "NaN", "-Infinity",
+		" 12.5\n", "2.5d", "0x1p3"};
+
+	public void testParseDouble() {
+		System.out.print("Testing DecimalParser.parseDouble()...");
+		for(String cad: numbers) {
+			double expected = Double.parseDouble(cad);
+			assertEquals(cad, Double.doubleToLongBits(expected),
+				Double.doubleToLongBits(DecimalParser.parseDouble(cad)));
+			char[] chars = ("<"+cad+">").toCharArray();
+			assertEquals(cad, Double.doubleToLongBits(expected),
+				Double.doubleToLongBits(DecimalParser.parseDouble(chars, 1, chars.length-1)));
+			ByteBuffer buffer = ByteBuffer.wrap(("<"+cad+">").getBytes());
+			assertEquals(cad, Double.doubleToLongBits(expected),
+				Double.doubleToLongBits(DecimalParser.parseDouble(buffer, 1, buffer.limit()-1)));
+		}
+		System.out.println("OK");
+	}
+	public void testLibraryFormats() {
+		System.out.print("Testing DecimalParser with library formats...");
+		Random random = new Random(17);
+		for(int i=0; i<20000; i++) {
+			double value = (random.nextDouble()-0.5)*360.0;
+			String[] cads = new String[] {Util.doubleToString(value, 12, 6),
+				Util.doubleToString(value, 20, 12), String.format("%8.2f", value).replace(',', '.').trim()};
+			for(String cad: cads) {
+				assertEquals(cad, Double.parseDouble(cad), DecimalParser.parseDouble(cad), 0.0);
+			}
+		}
+		System.out.println("OK");
+	}
+	public void testInvalid() {
+		System.out.print("Testing DecimalParser invalid numbers...");
+		String[] invalid = new String[] {"", "-", ".", "1.2.3", "abc", "12,5"};
+		for(String cad: invalid) {
+			try {
+				DecimalParser.parseDouble(cad);
+				fail(cad);
+			} catch (NumberFormatException e) {
+			}
+		}
+		System.out.println("OK");
+	}
+}
@@ -0,0 +1,114 @@
+package com.mlab.gpx.test.impl.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+import com.mlab.gpx.impl.util.GpxCompression;
+import com.mlab.gpx.impl.util.GpxCompression.Format;
+
+public class TestGpxCompression extends TestCase {
+
+	private final String docgpx =
+			"<?xml version=\"1.0\" encoding=\"UTF-8\" ?>"+
+				"<gpx version=\"1.1\"><metadata></metadata>"+
+					"<wpt lat=\"46.576389\" lon=\"8.892639\"><ele>2372.00</ele><name>CAÑADA</name></wpt>"+
+					"<trk><trkseg>"+
+						"<trkpt lat=\"46.576389\" lon=\"8.893028\"><ele>2374.00</ele><time>2007-10-14T10:13:20Z</time></trkpt>"+
+						"<trkpt lat=\"46.576528\" lon=\"8.893222\"><ele>2375.00</ele><time>2007-10-14T10:13:48Z</time></trkpt>"+
+					"</trkseg></trk>"+
+				"</gpx>";
+
+	private byte[] compress(Format format, String... docs) throws Exception {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		OutputStream out;
+		if(format == Format.GZIP) {
+			out = new GZIPOutputStream(bytes);
+		} else if(format == Format.DEFLATE) {
+			out = new DeflaterOutputStream(bytes);
+		} else {
+			ZipOutputStream zip = new ZipOutputStream(bytes);
+			zip.putNextEntry(new ZipEntry("readme.txt"));
+			zip.write("readme".getBytes("UTF-8"));
+			for(int i=0; i<docs.length; i++) {
+				zip.putNextEntry(new ZipEntry("dir/track"+i+".gpx"));
+				zip.write(docs[i].getBytes("UTF-8"));
+			}
+			zip.close();
+			return bytes.toByteArray();
+		}
+		out.write(docs[0].getBytes("UTF-8"));
+		out.close();
+		return bytes.toByteArray();
+	}
+	private String read(InputStream in) throws Exception {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		byte[] buffer = new byte[1024];
+		int count;
+		while((count = in.read(buffer)) > 0) {
+			out.write(buffer, 0, count);
+		}
+		in.close();
+		return out.toString("UTF-8");
+	}
+
+	public void testDecompress() throws Exception {
+		System.out.print("Testing GpxCompression.decompress()...");
+		assertEquals(Format.NONE, GpxCompression.detect(new ByteArrayInputStream(docgpx.getBytes("UTF-8"))));
+		assertEquals(docgpx, read(GpxCompression.decompress(new ByteArrayInputStream(docgpx.getBytes("UTF-8")))));
+		for(Format format: new Format[] {Format.GZIP, Format.DEFLATE, Format.ZIP}) {
+			byte[] bytes = compress(format, docgpx);
+			assertEquals(format, GpxCompression.detect(new ByteArrayInputStream(bytes)));
+			assertEquals(docgpx, read(GpxCompression.decompress(new ByteArrayInputStream(bytes))));
+		}
+		assertEquals(Format.GZIP, GpxCompression.formatForName("track.GPX.GZ"));
+		assertEquals(Format.NONE, GpxCompression.formatForName("track.gpx"));
+		System.out.println("OK");
+	}
+	public void testReadWrite() throws Exception {
+		System.out.print("Testing GpxFactory compressed files...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		GpxDocument doc = factory.parseGpxDocument(docgpx);
+		String expected = doc.asGpx();
+		Path dir = Files.createTempDirectory("gpxcompression");
+		try {
+			for(String name: new String[] {"track.gpx", "track.gpx.gz", "track.gpx.zip", "track.zz"}) {
+				File file = dir.resolve(name).toFile();
+				assertTrue(GpxFactory.writeGpxDocument(doc, file));
+				assertEquals(!name.equals("track.gpx"), GpxCompression.isCompressed(file));
+				assertEquals(expected, GpxFactory.readGpxDocument(file).asGpx());
+				assertEquals(expected, factory.readTrustedGpxDocument(file).asGpx());
+				assertEquals(expected, factory.openGpxDocument(file).asGpx());
+				assertEquals(file, factory.readGpxDocuments(file).get(0).getGpxFile());
+			}
+			// Zip con varios documentos
+			File zip = dir.resolve("bundle.zip").toFile();
+			Files.write(zip.toPath(), compress(Format.ZIP, docgpx, docgpx.replace("CAÑADA", "LAGO")));
+			List<GpxDocument> docs = factory.readGpxDocuments(zip);
+			assertEquals(2, docs.size());
+			assertEquals("CAÑADA", docs.get(0).getWayPoint(0).getName());
+			assertEquals("LAGO", docs.get(1).getWayPoint(0).getName());
+			assertEquals("CAÑADA", factory.readTrustedGpxDocument(zip).getWayPoint(0).getName());
+		} finally {
+			for(File file: dir.toFile().listFiles()) {
+				file.delete();
+			}
+			Files.delete(dir);
+		}
+		System.out.println("OK");
+	}
+}
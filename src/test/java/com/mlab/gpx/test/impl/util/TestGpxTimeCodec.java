@@ -0,0 +1,83 @@
+package com.mlab.gpx.test.impl.util;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Random;
+import java.util.TimeZone;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.impl.util.GpxTimeCodec;
+import com.mlab.gpx.impl.util.Util;
+
+public class TestGpxTimeCodec extends TestCase {
+
+	public void testFormat() {
+		System.out.print("Testing GpxTimeCodec.format()...");
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.ss'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		Random random = new Random(7);
+		long[] times = new long[] {0L, 1000L, -1L, 1372341064000L, 951782400000L, -11676096000000L};
+		for(long t: times) {
+			assertEquals(format.format(new Date(t)), GpxTimeCodec.format(t));
+		}
+		for(int i=0; i<20000; i++) {
+			long t = (long)((random.nextDouble()-0.3)*4e12);
+			assertEquals(format.format(new Date(t)), GpxTimeCodec.format(t));
+			// Segunda llamada desde la caché
+			assertEquals(format.format(new Date(t)), GpxTimeCodec.format(t));
+		}
+		assertEquals("1970-01-01T00:00:01.01Z", Util.dateTimeToStringGpxFormat(1000L));
+		System.out.println("OK");
+	}
+	public void testFormatIso() {
+		System.out.print("Testing GpxTimeCodec.formatIso()...");
+		SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+		format.setTimeZone(TimeZone.getTimeZone("UTC"));
+		Random random = new Random(11);
+		assertEquals("1970-01-01T00:00:01.000Z", GpxTimeCodec.formatIso(1000L));
+		assertEquals("1969-12-31T23:59:59.999Z", GpxTimeCodec.formatIso(-1L));
+		assertEquals("2007-10-14T10:13:20.007Z", GpxTimeCodec.formatIso(1192356800007L));
+		for(int i=0; i<20000; i++) {
+			long t = (long)((random.nextDouble()-0.3)*4e12);
+			String text = GpxTimeCodec.formatIso(t);
+			assertEquals(format.format(new Date(t)), text);
+			assertEquals(t, GpxTimeCodec.parse(text));
+		}
+		System.out.println("OK");
+	}
+	public void testParse() {
+		System.out.print("Testing GpxTimeCodec.parse()...");
+		long t = 1192356800000L;
+		assertEquals(t, GpxTimeCodec.parse("2007-10-14T10:13:20Z"));
+		assertEquals(t, GpxTimeCodec.parse(" 2007-10-14T10:13:20Z\n"));
+		assertEquals(t, GpxTimeCodec.parse("2007-10-14T10:13:20"));
+		// Formato de la librería: los decimales repiten los segundos
+		assertEquals(t, GpxTimeCodec.parse("2007-10-14T10:13:20.20Z"));
+		assertEquals(t+500, GpxTimeCodec.parse("2007-10-14T10:13:20.5Z"));
+		assertEquals(t+123, GpxTimeCodec.parse("2007-10-14T10:13:20.123Z"));
+		assertEquals(t+123, GpxTimeCodec.parse("2007-10-14T10:13:20.123456789Z"));
+		assertEquals(t, GpxTimeCodec.parse("2007-10-14T12:13:20+02:00"));
+		assertEquals(t, GpxTimeCodec.parse("2007-10-14T12:13:20+0200"));
+		assertEquals(t, GpxTimeCodec.parse("2007-10-14T12:13:20+02"));
+		assertEquals(t, GpxTimeCodec.parse("2007-10-14T06:43:20-03:30"));
+		assertEquals(951782400000L, GpxTimeCodec.parse("2000-02-29T00:00:00Z"));
+		for(int i=0; i<1000; i++) {
+			long time = 1000L*(long)(i*3600*24*17.3);
+			assertEquals(time, GpxTimeCodec.parse(GpxTimeCodec.format(time)));
+		}
+		assertEquals(t, Util.parseGpxDate("2007-10-14T10:13:20.20Z"));
+		System.out.println("OK");
+	}
+	public void testInvalid() {
+		System.out.print("Testing GpxTimeCodec invalid dates...");
+		String[] invalid = new String[] {null, "", "2007-10-14", "2007-10-14T10:13", "2007-13-14T10:13:20Z",
+			"2007-02-29T10:13:20Z", "2007-10-14T24:13:20Z", "2007-10-14 10:13:20Z", "2007-10-14T10:13:20.Z",
+			"2007-10-14T10:13:20+2", "2007-10-14T10:13:20ZZ", "abcd-10-14T10:13:20Z"};
+		for(String cad: invalid) {
+			assertEquals(cad, GpxTimeCodec.INVALID_TIME, GpxTimeCodec.parse(cad));
+		}
+		assertEquals(-1L, Util.parseGpxDate("2007-10-14T10:13"));
+		System.out.println("OK");
+	}
+}
@@ -0,0 +1,55 @@
+package com.mlab.gpx.test.impl.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.impl.util.OffsetInputStream;
+
+public class TestOffsetInputStream extends TestCase {
+
+	public void testByteOffsetOf() throws Exception {
+		System.out.print("Testing OffsetInputStream.byteOffsetOf()...");
+		String cad = "<name>Ca\u00F1ada \uD83D\uDE00 \u00F1</name>";
+		byte[] bytes = cad.getBytes("UTF-8");
+		OffsetInputStream in = new OffsetInputStream(new ByteArrayInputStream(bytes));
+		byte[] buffer = new byte[7];
+		while(in.read(buffer, 0, buffer.length) > 0) {
+		}
+		assertEquals(bytes.length, in.getByteCount());
+		assertEquals(cad.length(), in.getCharCount());
+		for(int i=0; i<=cad.length(); i++) {
+			if(i > 0 && Character.isHighSurrogate(cad.charAt(i-1))) {
+				// Mitad de un par surrogate
+				continue;
+			}
+			assertEquals(cad.substring(0, i).getBytes("UTF-8").length, in.byteOffsetOf(i, true));
+		}
+		// Más allá de lo leido: los bytes leidos
+		assertEquals(bytes.length, in.byteOffsetOf(cad.length()+50, true));
+		assertEquals(-1L, in.byteOffsetOf(-1L, true));
+		assertEquals(5L, in.byteOffsetOf(5L, false));
+		in.close();
+		System.out.println("OK");
+	}
+	public void testHistory() throws Exception {
+		System.out.print("Testing OffsetInputStream history...");
+		byte[] bytes = new byte[200000];
+		for(int i=0; i<bytes.length; i++) {
+			bytes[i] = (byte)('a' + (i % 26));
+		}
+		InputStream in = new OffsetInputStream(new ByteArrayInputStream(bytes));
+		assertEquals(1000L, in.skip(1000L));
+		assertEquals('a' + (1000 % 26), in.read());
+		byte[] buffer = new byte[4096];
+		while(in.read(buffer) > 0) {
+		}
+		OffsetInputStream offsets = (OffsetInputStream)in;
+		assertEquals(bytes.length - 100, offsets.byteOffsetOf(bytes.length - 100, true));
+		// Fuera de los últimos 64KB
+		assertEquals(-1L, offsets.byteOffsetOf(1000L, true));
+		in.close();
+		System.out.println("OK");
+	}
+}
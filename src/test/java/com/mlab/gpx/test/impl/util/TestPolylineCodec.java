@@ -0,0 +1,143 @@
+package com.mlab.gpx.test.impl.util;
+
+import java.io.InputStream;
+
+import junit.framework.TestCase;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.Route;
+import com.mlab.gpx.impl.SimpleWayPoint;
+import com.mlab.gpx.impl.TrackSegment;
+import com.mlab.gpx.impl.util.PolylineCodec;
+
+public class TestPolylineCodec extends TestCase {
+
+	public void testArrays() {
+		System.out.print("Testing PolylineCodec arrays...");
+		// Ejemplo de la documentación de Google
+		double[] lats = new double[] {38.5, 40.7, 43.252};
+		double[] lons = new double[] {-120.2, -120.95, -126.453};
+		String encoded = PolylineCodec.encode(lats, lons, null, null, 3, PolylineCodec.PRECISION_5);
+		assertEquals("_p~iF~ps|U_ulLnnqC_mqNvxq`@", encoded);
+		assertEquals(3, PolylineCodec.count(encoded, false, false));
+		double[] latitudes = new double[3];
+		double[] longitudes = new double[3];
+		assertEquals(3, PolylineCodec.decode(encoded, PolylineCodec.PRECISION_5, latitudes, longitudes, null, null));
+		for(int i=0; i<3; i++) {
+			assertEquals(lats[i], latitudes[i], 1e-9);
+			assertEquals(lons[i], longitudes[i], 1e-9);
+		}
+		// Altitud y tiempo
+		double[] eles = new double[] {650.25, 649.0, -12.5};
+		long[] times = new long[] {1388534400000l, 1388534401000l, 1388534461000l};
+		encoded = PolylineCodec.encode(lats, lons, eles, times, 3, PolylineCodec.PRECISION_6);
+		assertEquals(3, PolylineCodec.count(encoded, true, true));
+		double[] elevations = new double[3];
+		long[] decodedTimes = new long[3];
+		PolylineCodec.decode(encoded, PolylineCodec.PRECISION_6, latitudes, longitudes, elevations, decodedTimes);
+		for(int i=0; i<3; i++) {
+			assertEquals(lats[i], latitudes[i], 1e-9);
+			assertEquals(eles[i], elevations[i], 1e-9);
+			assertEquals(times[i], decodedTimes[i]);
+		}
+		assertEquals("", PolylineCodec.encode(lats, lons, null, null, 0, 5));
+		System.out.println("OK");
+	}
+
+	public void testInvalid() {
+		System.out.print("Testing PolylineCodec with invalid input...");
+		String[] invalid = new String[] {"_p~iF~ps|", "_p~iF~ps|U_ulL", "_p~iF ps|U"};
+		for(String cad: invalid) {
+			try {
+				PolylineCodec.count(cad, false, false);
+				fail(cad);
+			} catch (IllegalArgumentException e) {
+				// Esperado
+			}
+			try {
+				PolylineCodec.decode(cad, 5, new double[8], new double[8], null, null);
+				fail(cad);
+			} catch (IllegalArgumentException e) {
+				// Esperado
+			}
+		}
+		try {
+			PolylineCodec.encode(new double[0], new double[0], null, null, 0, 10);
+			fail();
+		} catch (IllegalArgumentException e) {
+			// Esperado
+		}
+		GpxFactory factory = GpxFactory.getFactory(Type.SimpleGpxFactory);
+		assertNull(PolylineCodec.decodeRoute("_p~iF~ps|", 5, false, false, factory));
+		assertNull(PolylineCodec.decodeTrackSegment("_p~iF~ps|U", 5, false, false, factory));
+		System.out.println("OK");
+	}
+
+	public void testTrackSegment() throws Exception {
+		System.out.print("Testing PolylineCodec with TrackSegment and Route...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		InputStream is = getClass().getClassLoader().getResourceAsStream("test.gpx");
+		GpxDocument doc = factory.parseGpxDocument(is);
+		is.close();
+		TrackSegment segment = doc.getTrack(0).getTrackSegment(0);
+		String encoded = PolylineCodec.encode(segment, PolylineCodec.PRECISION_6, true, true);
+		assertTrue(encoded.length() * 5 < segment.asGpx().length());
+		TrackSegment copy = PolylineCodec.decodeTrackSegment(encoded, PolylineCodec.PRECISION_6, true, true, factory);
+		assertEquals(segment.size(), copy.size());
+		for(int i=0; i<segment.size(); i++) {
+			WayPoint wp = segment.getWayPoint(i);
+			WayPoint decoded = copy.getWayPoint(i);
+			assertEquals(wp.getLatitude(), decoded.getLatitude(), 5e-7);
+			assertEquals(wp.getLongitude(), decoded.getLongitude(), 5e-7);
+			assertEquals(wp.getAltitude(), decoded.getAltitude(), 5e-3);
+			assertEquals(wp.getTime(), decoded.getTime());
+		}
+		// Route sin tiempos
+		encoded = PolylineCodec.encode(segment, PolylineCodec.PRECISION_5, false, false);
+		Route route = PolylineCodec.decodeRoute(encoded, PolylineCodec.PRECISION_5, false, false, factory);
+		assertEquals(segment.size(), route.size());
+		assertEquals(-1l, route.getWayPoint(0).getTime());
+		assertEquals(segment.getWayPoint(0).getLatitude(), route.getWayPoint(0).getLatitude(), 5e-6);
+		assertEquals(encoded, PolylineCodec.encode(route, PolylineCodec.PRECISION_5, false, false));
+		System.out.println("OK");
+	}
+
+	public void testTimes() {
+		System.out.print("Testing PolylineCodec time channel...");
+		GpxFactory factory = GpxFactory.getFactory(Type.SimpleGpxFactory);
+		// Puntos a menos de un segundo
+		TrackSegment fast = new TrackSegment();
+		long[] times = new long[] {1388534400000l, 1388534400200l, 1388534400450l, 1388534400451l, 1388534401999l};
+		for(int i=0; i<times.length; i++) {
+			assertTrue(fast.addWayPoint(new SimpleWayPoint("", "", times[i], -3.5+i*1e-4, 40.25, 650.0)));
+		}
+		String encoded = PolylineCodec.encode(fast, PolylineCodec.PRECISION_5, true, true);
+		TrackSegment copy = PolylineCodec.decodeTrackSegment(encoded, PolylineCodec.PRECISION_5, true, true, factory);
+		assertNotNull(copy);
+		assertEquals(times.length, copy.size());
+		for(int i=0; i<times.length; i++) {
+			assertEquals(times[i], copy.getWayPoint(i).getTime());
+		}
+		// Puntos sin tiempo
+		Route route = new Route();
+		route.addWayPoint(new SimpleWayPoint("", "", -1l, -3.5, 40.25, 650.0));
+		route.addWayPoint(new SimpleWayPoint("", "", 1000l, -3.25, 40.5, 651.5));
+		route.addWayPoint(new SimpleWayPoint("", "", -1l, -3.0, 40.75, 652.0));
+		encoded = PolylineCodec.encode(route, PolylineCodec.PRECISION_5, false, true);
+		Route decoded = PolylineCodec.decodeRoute(encoded, PolylineCodec.PRECISION_5, false, true, factory);
+		assertEquals(3, decoded.size());
+		assertEquals(-1l, decoded.getWayPoint(0).getTime());
+		assertEquals(1000l, decoded.getWayPoint(1).getTime());
+		assertEquals(-1l, decoded.getWayPoint(2).getTime());
+		double[] lats = new double[] {0.0, 0.0};
+		long[] decodedTimes = new long[2];
+		PolylineCodec.decode(PolylineCodec.encode(lats, lats, null, new long[] {-5l, 0l}, 2, 5),
+			5, new double[2], new double[2], null, decodedTimes);
+		assertEquals(-1l, decodedTimes[0]);
+		assertEquals(0l, decodedTimes[1]);
+		System.out.println("OK");
+	}
+}
@@ -2,11 +2,15 @@ package com.mlab.gpx.test.impl.util;
 
 import static org.junit.Assert.*;
 
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.transform.Transformer;
+
 import org.junit.Test;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
 import org.w3c.dom.NodeList;
 
+import com.mlab.gpx.impl.util.XmlConfig;
 import com.mlab.gpx.impl.util.XmlFactory;
 
 public class TestXmlFactory {
@@ -47,5 +51,52 @@ public class TestXmlFactory {
 		System.out.println("OK");
 		
 	}
-	
+	@Test
+	public void testPooledBuilders() throws Exception {
+		System.out.print("Testing XmlFactory.getDocumentBuilder()...");
+		assertSame(XmlFactory.getDocumentBuilder(), XmlFactory.getDocumentBuilder());
+		assertSame(XmlFactory.getTransformer(), XmlFactory.getTransformer());
+		final DocumentBuilder[] other = new DocumentBuilder[1];
+		Thread thread = new Thread(new Runnable() {
+			@Override
+			public void run() {
+				try {
+					other[0] = XmlFactory.getDocumentBuilder();
+				} catch (Exception e) {
+				}
+			}
+		});
+		thread.start();
+		thread.join();
+		assertNotNull(other[0]);
+		assertNotSame(XmlFactory.getDocumentBuilder(), other[0]);
+		// El builder sigue siendo válido después de un error
+		assertNull(XmlFactory.parseXmlDocument("<company>"));
+		assertNotNull(XmlFactory.parseXmlDocument(cadxml));
+		System.out.println("OK");
+	}
+	@Test
+	public void testConfig() throws Exception {
+		System.out.print("Testing XmlFactory.setConfig()...");
+		XmlConfig config = XmlFactory.getConfig();
+		assertFalse(config.isNamespaceAware());
+		assertTrue(config.isSecureProcessing());
+		DocumentBuilder builder = XmlFactory.getDocumentBuilder();
+		Transformer transformer = XmlFactory.getTransformer();
+		try {
+			XmlFactory.setConfig(new XmlConfig(true, true, 2));
+			// Los objetos del thread creados con la configuración anterior se descartan
+			assertNotSame(builder, XmlFactory.getDocumentBuilder());
+			assertNotSame(transformer, XmlFactory.getTransformer());
+			assertTrue(XmlFactory.getDocumentBuilder().isNamespaceAware());
+			Document doc = XmlFactory.parseXmlDocument(cadxml);
+			NodeList list = doc.getDocumentElement().getElementsByTagName("staff");
+			assertEquals("<staff id=\"1001\">\n  <firstname>", 
+				XmlFactory.nodeAsFormatedXmlString(list.item(0), false).substring(0, 31));
+		} finally {
+			XmlFactory.setConfig(config);
+		}
+		assertFalse(XmlFactory.getDocumentBuilder().isNamespaceAware());
+		System.out.println("OK");
+	}
 }
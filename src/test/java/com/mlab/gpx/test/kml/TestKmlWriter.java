@@ -0,0 +1,144 @@
+package com.mlab.gpx.test.kml;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.StringWriter;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import junit.framework.TestCase;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NodeList;
+
+import com.mlab.gpx.api.GpxDocument;
+import com.mlab.gpx.api.GpxFactory;
+import com.mlab.gpx.api.GpxFactory.Type;
+import com.mlab.gpx.api.WayPoint;
+import com.mlab.gpx.impl.SimpleWayPoint;
+import com.mlab.gpx.impl.Track;
+import com.mlab.gpx.impl.TrackSegment;
+import com.mlab.gpx.impl.kml.KmlWriter;
+
+public class TestKmlWriter extends TestCase {
+
+	private GpxDocument readTestDocument(GpxFactory factory) throws Exception {
+		InputStream is = getClass().getClassLoader().getResourceAsStream("test.gpx");
+		try {
+			return factory.parseGpxDocument(is);
+		} finally {
+			is.close();
+		}
+	}
+	private Document parse(byte[] bytes) throws Exception {
+		return DocumentBuilderFactory.newInstance().newDocumentBuilder()
+			.parse(new ByteArrayInputStream(bytes));
+	}
+
+	private String coordinatesOf(NodeList lines, int index) {
+		Element line = (Element)lines.item(index);
+		return line.getElementsByTagName("coordinates").item(0).getTextContent().trim();
+	}
+
+	public void testWriteDocument() throws Exception {
+		System.out.print("Testing KmlWriter.writeDocument()...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		GpxDocument gpxDoc = readTestDocument(factory);
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		KmlWriter writer = new KmlWriter(out);
+		writer.writeDocument(gpxDoc, "test & doc");
+		writer.close();
+		Document doc = parse(out.toByteArray());
+		assertEquals("kml", doc.getDocumentElement().getTagName());
+		assertEquals("test & doc", doc.getElementsByTagName("name").item(0).getTextContent());
+		assertEquals(3, doc.getElementsByTagName("Style").getLength());
+		NodeList lines = doc.getElementsByTagName("LineString");
+		int segments = 0;
+		int points = 0;
+		for(int t=0; t<gpxDoc.trackCount(); t++) {
+			Track track = gpxDoc.getTrack(t);
+			for(int s=0; s<track.segmentsCount(); s++) {
+				if(track.getTrackSegment(s).size() >= 2) {
+					segments++;
+					points += track.getTrackSegment(s).size();
+				}
+			}
+		}
+		assertTrue(segments > 0);
+		assertEquals(segments, lines.getLength());
+		int coordinates = 0;
+		for(int i=0; i<lines.getLength(); i++) {
+			String text = coordinatesOf(lines, i);
+			coordinates += text.split(" ").length;
+		}
+		assertEquals(points, coordinates);
+		// Primer punto
+		WayPoint wp = gpxDoc.getTrack(0).getTrackSegment(0).getStartWayPoint();
+		String first = coordinatesOf(lines, 0).split(" ")[0];
+		String[] values = first.split(",");
+		assertEquals(wp.getLongitude(), Double.parseDouble(values[0]), 1e-6);
+		assertEquals(wp.getLatitude(), Double.parseDouble(values[1]), 1e-6);
+		assertEquals(wp.getAltitude(), Double.parseDouble(values[2]), 1e-2);
+		System.out.println("OK");
+	}
+
+	public void testWriteParts() throws Exception {
+		System.out.print("Testing KmlWriter parts...");
+		TrackSegment segment = new TrackSegment();
+		segment.addWayPoint(new SimpleWayPoint("a <1>", "", 1000l, -3.5, 40.25, 650.0));
+		segment.addWayPoint(new SimpleWayPoint("", "", 2000l, -3.25, 40.5, 655.5));
+		TrackSegment single = new TrackSegment();
+		single.addWayPoint(new SimpleWayPoint("", "", 3000l, -3.0, 40.0, 600.0));
+		StringWriter out = new StringWriter();
+		KmlWriter writer = new KmlWriter(out);
+		writer.writeStartDocument(null);
+		writer.writeLineStyle("line\"1", "ff0000ff", 2.5);
+		writer.writeTrackSegment(segment, "segment", "line\"1");
+		writer.writeTrackSegment(single, "single", null);
+		writer.writeWayPoint(segment.getStartWayPoint(), null);
+		writer.writeEndDocument();
+		writer.close();
+		String kml = out.toString();
+		assertTrue(kml.contains("<coordinates>-3.500000,40.250000,650.00 -3.250000,40.500000,655.50 </coordinates>"));
+		assertTrue(kml.contains("<Style id=\"line&quot;1\"><LineStyle><color>ff0000ff</color><width>2.5</width>"));
+		assertTrue(kml.contains("<name>a &lt;1&gt;</name>"));
+		assertTrue(kml.contains("<TimeStamp><when>1970-01-01T00:00:01.000Z</when></TimeStamp>"));
+		assertFalse(kml.contains("single"));
+		Document doc = parse(kml.getBytes("UTF-8"));
+		assertEquals(1, doc.getElementsByTagName("LineString").getLength());
+		assertEquals(1, doc.getElementsByTagName("Point").getLength());
+		System.out.println("OK");
+	}
+
+	public void testKmz() throws Exception {
+		System.out.print("Testing KmlWriter.createKmz()...");
+		GpxFactory factory = GpxFactory.getFactory(Type.ExtendedGpxFactory);
+		GpxDocument gpxDoc = readTestDocument(factory);
+		ByteArrayOutputStream kml = new ByteArrayOutputStream();
+		KmlWriter writer = new KmlWriter(kml);
+		writer.writeDocument(gpxDoc, "test");
+		writer.close();
+		ByteArrayOutputStream kmz = new ByteArrayOutputStream();
+		writer = KmlWriter.createKmz(kmz);
+		writer.writeDocument(gpxDoc, "test");
+		writer.close();
+		assertTrue(kmz.size() < kml.size());
+		ZipInputStream zip = new ZipInputStream(new ByteArrayInputStream(kmz.toByteArray()));
+		ZipEntry entry = zip.getNextEntry();
+		assertEquals(KmlWriter.KMZ_ENTRY, entry.getName());
+		ByteArrayOutputStream content = new ByteArrayOutputStream();
+		byte[] buffer = new byte[8192];
+		int count;
+		while((count = zip.read(buffer)) > 0) {
+			content.write(buffer, 0, count);
+		}
+		assertNull(zip.getNextEntry());
+		zip.close();
+		assertEquals(kml.toString("UTF-8"), content.toString("UTF-8"));
+		System.out.println("OK");
+	}
+}